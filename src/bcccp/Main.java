@@ -11,15 +11,22 @@ import bcccp.carpark.exit.ExitController;
 import bcccp.carpark.exit.ExitUI;
 import bcccp.carpark.paystation.PaystationController;
 import bcccp.carpark.paystation.PaystationUI;
+import bcccp.journal.JournalCompactor;
 import bcccp.tickets.adhoc.AdhocTicketFactory;
-import bcccp.tickets.adhoc.AdhocTicketDAO;
+import bcccp.tickets.adhoc.AdhocTicketSweeper;
+import bcccp.tickets.adhoc.BarcodeFilteredAdhocTicketDAO;
+import bcccp.tickets.adhoc.ColumnarAdhocTicketArchive;
+import bcccp.tickets.adhoc.FileTicketNumberCoordinator;
 import bcccp.tickets.adhoc.IAdhocTicket;
-import bcccp.tickets.adhoc.IAdhocTicketDAO;
+import bcccp.tickets.adhoc.JournaledAdhocTicketDAO;
+import bcccp.tickets.adhoc.TicketNumberAllocator;
 import bcccp.tickets.season.ISeasonTicket;
-import bcccp.tickets.season.ISeasonTicketDAO;
+import bcccp.tickets.season.JournaledSeasonTicketDAO;
 import bcccp.tickets.season.SeasonTicket;
-import bcccp.tickets.season.SeasonTicketDAO;
 import bcccp.tickets.season.UsageRecordFactory;
+import bcccp.time.IClock;
+import bcccp.time.SystemClock;
+import java.nio.file.Paths;
 import java.util.Date;
 
 public class Main {
@@ -41,28 +48,65 @@ public class Main {
 					Gate xgate = new Gate(1330, 320);
 					CarSensor xos = new CarSensor("Exit Outside Sensor", 1330, 440);
 					
-					IAdhocTicketDAO adhocTicketDAO = new AdhocTicketDAO(new AdhocTicketFactory());
-					ISeasonTicketDAO seasonTicketDAO = new SeasonTicketDAO(new UsageRecordFactory());
+					//swap in a SimulatedClock to run the carpark faster than real time
+					IClock clock = SystemClock.INSTANCE;
 					
-					Carpark carpark = new Carpark("Bathurst Chase", 20, 2, adhocTicketDAO, seasonTicketDAO);
+					//ticket numbers are leased from a file, so they are not issued again after a restart
+					TicketNumberAllocator ticketNumbers = new TicketNumberAllocator(
+							new FileTicketNumberCoordinator(Paths.get("adhoc-ticket-numbers.seq")));
+					//tickets are journaled, so the cars on site are known again after a restart.
+					//the journal is compacted into a snapshot every hour
+					JournalCompactor adhocJournal = new JournalCompactor(Paths.get("adhoc-ticket-journal"));
+					JournaledAdhocTicketDAO adhocTicketDAO = new JournaledAdhocTicketDAO(
+							new AdhocTicketFactory(clock), adhocJournal, clock, ticketNumbers);
+					adhocJournal.start(adhocTicketDAO, 3600000L);
+					//tickets issued but not used within a day are taken out with exited ones,
+					//into an archive on disk
+					ColumnarAdhocTicketArchive archive = new ColumnarAdhocTicketArchive(Paths.get("adhoc-ticket-archive"));
+					AdhocTicketSweeper sweeper = new AdhocTicketSweeper(adhocTicketDAO, archive, clock, 86400000L);
+					sweeper.start();
+					//one hook, as hooks run in no set order: the sweeper stops before the archive
+					//it writes to is closed, and the compactor before the journal it compacts
+					//season tickets and their usage are journaled too, and compacted every hour
+					JournalCompactor seasonJournal = new JournalCompactor(Paths.get("season-ticket-journal"));
+					JournaledSeasonTicketDAO seasonTicketDAO = new JournaledSeasonTicketDAO(
+							new UsageRecordFactory(), seasonJournal, clock);
+					seasonJournal.start(seasonTicketDAO, 3600000L);
+					Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+						sweeper.stop();
+						archive.close();
+						adhocJournal.stop();
+						adhocTicketDAO.close();
+						seasonJournal.stop();
+						seasonTicketDAO.close();
+					}));
+					
+					//scans of unknown barcodes are turned away before the tickets are searched
+					BarcodeFilteredAdhocTicketDAO filteredTicketDAO = new BarcodeFilteredAdhocTicketDAO(adhocTicketDAO);
+					
+					Carpark carpark = new Carpark("Bathurst Chase", 20, 2, filteredTicketDAO, seasonTicketDAO, clock);
 					
 					ISeasonTicket t1 = new SeasonTicket("S1111","Bathurst Chase", 1L, 99999999999999999L);
 					ISeasonTicket t2 = new SeasonTicket("S2222","Bathurst Chase", 1L, 99999999999999999L);
 					
-					carpark.registerSeasonTicket(t1);
-					carpark.registerSeasonTicket(t2);
+					//tickets replayed from the journal are already registered
+					for (ISeasonTicket ticket : new ISeasonTicket[] {t1, t2}) {
+						if (seasonTicketDAO.findTicketById(ticket.getId()) == null) {
+							carpark.registerSeasonTicket(ticket);
+						}
+					}
 					
 					@SuppressWarnings("unused")
 					EntryController entryController = 
-							new EntryController(carpark, egate, eos, eis, eui);
+							new EntryController(carpark, egate, eos, eis, eui, clock);
 					
 					@SuppressWarnings("unused")
 					PaystationController payController = 
-							new PaystationController(carpark, pui);
+							new PaystationController(carpark, pui, clock);
 					
 					@SuppressWarnings("unused")
 					ExitController exitController = 
-					new ExitController(carpark, xgate, xis, xos, xui);
+					new ExitController(carpark, xgate, xis, xos, xui, clock);
 					
 					eos.setVisible(true);
 					egate.setVisible(true);
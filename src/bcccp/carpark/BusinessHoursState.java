@@ -0,0 +1,96 @@
+package bcccp.carpark;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+
+/**
+ * Whether a carpark is within business hours, together with the period over which
+ * that answer holds: from the instant the state was worked out until the next opening
+ * or closing time. A carpark keeps the current state and only works out a new one when
+ * the clock passes the end of that period, so checking business hours is a compare
+ * against a precomputed instant rather than a calendar calculation.
+ *
+ * Business hours are Monday to Friday, after 07:00:00 and before 19:00:00, timed to
+ * the second, as they were when checked by parsing the time of day.
+ */
+public class BusinessHoursState {
+
+	//the first whole second after 07:00:00 is the first that counts as business hours
+	private static final LocalTime OPENING_TIME = LocalTime.of(7, 0, 1);
+	private static final LocalTime CLOSING_TIME = LocalTime.of(19, 0);
+
+	private final boolean open;
+	private final long validFrom;
+	private final long validUntil;
+
+
+	private BusinessHoursState(boolean open, long validFrom, long validUntil) {
+		this.open = open;
+		this.validFrom = validFrom;
+		this.validUntil = validUntil;
+	}
+
+
+    /**
+     * Works out the business hours state at an instant.
+     * @param zone zone of the carpark
+     * @param epochMillis
+     * @return state, valid from the instant until the next opening or closing time
+     */
+	public static BusinessHoursState at(ZoneId zone, long epochMillis) {
+		LocalDate date = Instant.ofEpochMilli(epochMillis).atZone(zone).toLocalDate();
+		if (isBusinessDay(date)) {
+			long opens = instant(date, OPENING_TIME, zone);
+			long closes = instant(date, CLOSING_TIME, zone);
+			if (epochMillis >= opens && epochMillis < closes) {
+				return new BusinessHoursState(true, epochMillis, closes);
+			}
+			if (epochMillis < opens) {
+				return new BusinessHoursState(false, epochMillis, opens);
+			}
+		}
+		//closed until the next business day opens
+		do {
+			date = date.plusDays(1);
+		} while (!isBusinessDay(date));
+		return new BusinessHoursState(false, epochMillis, instant(date, OPENING_TIME, zone));
+	}
+
+
+	public boolean isOpen() {
+		return open;
+	}
+
+	public long getValidFrom() {
+		return validFrom;
+	}
+
+	public long getValidUntil() {
+		return validUntil;
+	}
+
+
+    /**
+     * Returns true if this state still holds at an instant.
+     * @param epochMillis
+     * @return boolean
+     */
+	public boolean isValidAt(long epochMillis) {
+		return epochMillis < validUntil && epochMillis >= validFrom;
+	}
+
+
+	private static boolean isBusinessDay(LocalDate date) {
+		DayOfWeek day = date.getDayOfWeek();
+		return day != DayOfWeek.SATURDAY && day != DayOfWeek.SUNDAY;
+	}
+
+
+	private static long instant(LocalDate date, LocalTime time, ZoneId zone) {
+		return date.atTime(time).atZone(zone).toInstant().toEpochMilli();
+	}
+
+}
@@ -2,16 +2,17 @@ package bcccp.carpark;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import bcccp.carpark.tariff.CachedTariffEngine;
+import bcccp.carpark.tariff.HolidayCalendar;
+import bcccp.carpark.tariff.ITariffEngine;
+import bcccp.carpark.tariff.TariffRules;
 import bcccp.tickets.adhoc.IAdhocTicket;
 import bcccp.tickets.adhoc.IAdhocTicketDAO;
 import bcccp.tickets.season.ISeasonTicket;
 import bcccp.tickets.season.ISeasonTicketDAO;
-import java.sql.Time;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.GregorianCalendar;
+import bcccp.time.IClock;
+import bcccp.time.SystemClock;
+import java.time.ZoneId;
 
 
 
@@ -24,8 +25,15 @@ public class Carpark implements ICarpark {
 	private int numberOfCarsParked;
 	private IAdhocTicketDAO adhocTicketDAO;
 	private ISeasonTicketDAO seasonTicketDAO;
-        final float BH_RATE = 4; 
-        final float OOH_RATE = 2;
+        static final float BH_RATE = 4; 
+        static final float OOH_RATE = 2;
+        static final int QUOTE_CACHE_SIZE = 4096;
+        private volatile ITariffEngine tariffEngine;
+        private TariffRules tariffRules = TariffRules.standard(BH_RATE, OOH_RATE);
+        private HolidayCalendar holidayCalendar = HolidayCalendar.NONE;
+        private volatile ZoneId zone = ZoneId.systemDefault();
+        private volatile BusinessHoursState businessHoursState;
+        private IClock clock;
 
         
 	
@@ -41,6 +49,63 @@ public class Carpark implements ICarpark {
     public Carpark(String name, int capacity, int seasonCapacity,
 			IAdhocTicketDAO adhocTicketDAO, 
 			ISeasonTicketDAO seasonTicketDAO) throws RuntimeException {
+            this(name, capacity, seasonCapacity, adhocTicketDAO, seasonTicketDAO,
+                    standardTariff(TariffRules.standard(BH_RATE, OOH_RATE), ZoneId.systemDefault(), HolidayCalendar.NONE, SystemClock.INSTANCE));
+        }
+
+    /**
+     * Constructs a Carpark object that charges adhoc tickets with the tariff engine passed to it.
+     * setTariffRates, setHolidayCalendar and setZone replace the engine with the standard tariff.
+     *
+     * @param name
+     * @param capacity
+     * @param seasonCapacity
+     * @param adhocTicketDAO
+     * @param seasonTicketDAO
+     * @param tariffEngine
+     */
+    public Carpark(String name, int capacity, int seasonCapacity,
+			IAdhocTicketDAO adhocTicketDAO, 
+			ISeasonTicketDAO seasonTicketDAO,
+			ITariffEngine tariffEngine) throws RuntimeException {
+            this(name, capacity, seasonCapacity, adhocTicketDAO, seasonTicketDAO, tariffEngine, SystemClock.INSTANCE);
+        }
+
+    /**
+     * Constructs a Carpark object with the standard tariff that reads the current time from the clock passed to it.
+     *
+     * @param name
+     * @param capacity
+     * @param seasonCapacity
+     * @param adhocTicketDAO
+     * @param seasonTicketDAO
+     * @param clock
+     */
+    public Carpark(String name, int capacity, int seasonCapacity,
+			IAdhocTicketDAO adhocTicketDAO, 
+			ISeasonTicketDAO seasonTicketDAO,
+			IClock clock) throws RuntimeException {
+            this(name, capacity, seasonCapacity, adhocTicketDAO, seasonTicketDAO,
+                    standardTariff(TariffRules.standard(BH_RATE, OOH_RATE), ZoneId.systemDefault(), HolidayCalendar.NONE, clock), clock);
+        }
+
+    /**
+     * Constructs a Carpark object that charges adhoc tickets with the tariff engine passed to it
+     * and reads the current time from the clock passed to it.
+     *
+     * @param name
+     * @param capacity
+     * @param seasonCapacity
+     * @param adhocTicketDAO
+     * @param seasonTicketDAO
+     * @param tariffEngine
+     * @param clock
+     */
+    public Carpark(String name, int capacity, int seasonCapacity,
+			IAdhocTicketDAO adhocTicketDAO, 
+			ISeasonTicketDAO seasonTicketDAO,
+			ITariffEngine tariffEngine,
+			IClock clock) throws RuntimeException {
             //Sets the name of the carpark, throws exception at null value
             if (name != null){            
                 this.carparkId = name;
@@ -66,6 +131,19 @@ public class Carpark implements ICarpark {
             
             //Initialises an arraylist of observers
             this.observers = new ArrayList<>();
+            
+            //Assigns the tariff engine used to charge adhoc tickets, throws exception at null value
+            if (tariffEngine == null) {
+                throw new RuntimeException("Tariff engine is null");
+            }
+            this.tariffEngine = tariffEngine;
+            
+            //Assigns the clock the current time is read from, throws exception at null value
+            if (clock == null) {
+                throw new RuntimeException("Clock is null");
+            }
+            this.clock = clock;
+            this.businessHoursState = BusinessHoursState.at(zone, clock.currentTimeMillis());
         
 	}
 
@@ -152,10 +230,21 @@ public class Carpark implements ICarpark {
 
 
     @Override
-	public float calculateAdhocTicketCharge(long entryDateTime) {
-            Date current = new Date();
-            //calcCharge from given entryDateTime and current as payingTime
-            return calcCharge(entryDateTime, current.getTime());
+	public long calculateAdhocTicketCharge(long entryDateTime) {
+            //calcCharge from given entryDateTime and current time as payingTime
+            return calcCharge(entryDateTime, clock.currentTimeMillis());
+	}
+
+    /**
+     * Calculates the charges for many adhoc tickets paid at the same time, such as
+     * for end of day audits or pricing reports.
+     * @param entryDateTimes entry time of each ticket
+     * @param payingDateTime time the charges are calculated at
+     * @param charges filled with the charge in cents for each ticket
+     */
+    @Override
+	public void calculateAdhocTicketCharges(long[] entryDateTimes, long payingDateTime, long[] charges) {
+            tariffEngine.calcChargesCents(entryDateTimes, payingDateTime, charges);
 	}
 
 
@@ -211,9 +300,10 @@ public class Carpark implements ICarpark {
     @Override
 	public boolean isSeasonTicketValid(String ticketId) {
             ISeasonTicket seasonTicket = seasonTicketDAO.findTicketById(ticketId);  
+            long now = clock.currentTimeMillis();
 
-            return ((seasonTicket != null) && (System.currentTimeMillis() <= seasonTicket.getEndValidPeriod()) &&
-                   (System.currentTimeMillis() >= seasonTicket.getStartValidPeriod()) && (isBusinessHours()));
+            return ((seasonTicket != null) && (now <= seasonTicket.getEndValidPeriod()) &&
+                   (now >= seasonTicket.getStartValidPeriod()) && (isBusinessHours()));
 	}
 
 /**
@@ -263,209 +353,131 @@ public class Carpark implements ICarpark {
 		seasonTicketDAO.recordTicketExit(ticketId);
 
 }
-     /**
-     *Calculates whether or not the carpark is within business hours and days.
+    /**
+     * Returns whether the carpark is within business hours, Monday to Friday from 07:00 to 19:00.
+     * The answer is worked out again only once the clock passes the next opening or closing time.
      * @return boolean
      */
+    @Override
         public boolean isBusinessHours(){
-            SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss");
-            boolean businessHours = false;
-            try {
-            //sets opening business hours at 7am
-            String stringOpeningTime = "07:00:00";
-            Date openingTime = sdf.parse(stringOpeningTime);
-            Calendar calenderOpeningTime = Calendar.getInstance();
-            calenderOpeningTime.setTime(openingTime);
-
-            //sets closing business hours at 7pm
-            String stringClosingTime = "19:00:00";
-            Date closingTime = sdf.parse(stringClosingTime);
-            Calendar calenderClosingTime = Calendar.getInstance();
-            calenderClosingTime.setTime(closingTime);
-
-            //sets current time
-            Calendar calendarCurrentTime = Calendar.getInstance();
-            String stringCurrentTime = sdf.format(calendarCurrentTime.getTime());
-            Date currentTime = sdf.parse(stringCurrentTime);
-            calendarCurrentTime.setTime(currentTime);
-
-            //tests if current time is between opening time and closing time
-            Date current = calendarCurrentTime.getTime();
-            if (current.after(calenderOpeningTime.getTime()) && (current.before(calenderClosingTime.getTime()))) {
-                businessHours = true;
-            }
-        } catch (ParseException e) {
-            e.printStackTrace();
+            BusinessHoursState state = businessHoursState;
+            long now = clock.currentTimeMillis();
+            if (!state.isValidAt(now)) {
+                //under the lock setZone holds, so a state for the old zone cannot replace the one it sets
+                synchronized (this) {
+                    state = BusinessHoursState.at(zone, now);
+                    businessHoursState = state;
+                }
             }
-                
-            Calendar c = Calendar.getInstance();
-            //Retrieves current day as integer from 1-7 Sunday =1, Saturday = 7
-            int day= c.get(Calendar.DAY_OF_WEEK);     
-                
-            return ((businessHours == true) && (day >= 2) && (day <= 6));
+            return state.isOpen();
       }
 
-        @SuppressWarnings("deprecation")
-		public float calcCharge(long start, long end) {
-            //create Date objects with given long values
-            Date startTime = new Date(start);
-            Date endTime = new Date(end);
+    /**
+     * Calculates the charge for a stay between two instants.
+     * @param start entry time in epoch milliseconds
+     * @param end payment time in epoch milliseconds
+     * @return charge in cents
+     */
+        public long calcCharge(long start, long end) {
+            return tariffEngine.calcChargeCents(start, end);
+        }
 
-            int daysBetweenDates = daysBetween(startTime, endTime);
-            int curDayBetween = 0;
-            
-            int curDayOfWeek = startTime.getDay();
-            
-            System.out.println("days between: " + daysBetweenDates);
-            
-            //initialize float = 0, currentStartTime = startTime
-            float charge = 0;
-            Date curStartTime = new Date(startTime.getTime());           
-            
-            //run while look as long as currentDay does not = endDay
-            while (curDayBetween != daysBetweenDates) {
-                Date curEndTime = new Date(startTime.getTime());   //set endDay time to midnight. 
-                curEndTime.setHours(23);
-                curEndTime.setMinutes(59);
-                curEndTime.setSeconds(59);
-                
-                //if the start time is midnight, then have to set all values to 0. 
-                if (curStartTime.getHours() == 23 && curStartTime.getMinutes() == 59 && curStartTime.getSeconds() == 59) {
-                		curStartTime.setHours(0);
-                		curStartTime.setMinutes(0);
-                		curStartTime.setSeconds(0);
-                }
-                //call calcDayCharge method, passing in current values. 
-                charge += calcDayCharge(curStartTime, curEndTime, curDayOfWeek);
-                //reset currentStartTime to endTime
-                curStartTime = new Date(curEndTime.getTime());
-                //increment day, check if passed into new week
-                curDayBetween++;
-                curDayOfWeek++;
-                if (curDayOfWeek == 7) {
-                    curDayOfWeek = 0;
-                }
+    /**
+     * Returns the tariff engine used to charge adhoc tickets, for example to read its quote cache counters.
+     * @return tariffEngine
+     */
+        public ITariffEngine getTariffEngine() {
+            return tariffEngine;
+        }
+
+    /**
+     * Replaces the tariff engine used to charge adhoc tickets.
+     * @param tariffEngine
+     */
+        public void setTariffEngine(ITariffEngine tariffEngine) {
+            if (tariffEngine == null) {
+                throw new RuntimeException("Tariff engine is null");
             }
-            //if current day is the same as end day, reset midnight to 0 values. 
-            if (curStartTime.getHours() == 23 && curStartTime.getMinutes() == 59 && curStartTime.getSeconds() == 59) {
-        		curStartTime.setHours(0);
-        		curStartTime.setMinutes(0);
-        		curStartTime.setSeconds(0);
+            this.tariffEngine = tariffEngine;
         }
-            //call calc method. 
-            charge += calcDayCharge(curStartTime, endTime, curDayOfWeek);
-            //return accumulated charge
-            return charge;
+
+    /**
+     * Changes the hourly rates of the standard tariff. Paystations keep pricing
+     * with the old rates until the new rates have been compiled. The standard tariff
+     * replaces any engine passed to the constructor or to setTariffEngine.
+     * @param bhRate charge per hour during business hours
+     * @param oohRate charge per hour out of business hours
+     */
+        public synchronized void setTariffRates(float bhRate, float oohRate) {
+            this.tariffRules = TariffRules.standard(bhRate, oohRate);
+            setTariffEngine(standardTariff(tariffRules, zone, holidayCalendar, clock));
         }
 
-        //calcDayCharge checks for BH and OOH and determines correct charge
-        @SuppressWarnings("deprecation")
-		private float calcDayCharge(Date startDate, Date endDate, int day) {
-            
-            //create time objets from given Date objects
-            Time startTime = new Time(startDate.getHours(), startDate.getMinutes(), startDate.getSeconds());
-            Time endTime = new Time(endDate.getHours(), endDate.getMinutes(), endDate.getSeconds());
-            //create Business Hours Time Objects
-            Time startBH = new Time(7, 0, 0);
-            Time endBH = new Time(19, 0, 0);
-
-            //initialize dayCharge
-            float dayCharge = (float) 0.0;
-            //check if it is business day
-            if (isBusinessDay(day)) { 
-                
-                //if isBusiness Day and all Out of Hours
-                if (endTime.before(startBH) || startTime.after(endBH)) {
-                    dayCharge = (float) (((getMinutes(endTime) - getMinutes(startTime))/60.0) * OOH_RATE);
-                    dayCharge = (float) (Math.round(dayCharge * 100.0) / 100.0);
-                }
-                //if isBusiness Day and all in Business Hours
-                else if (startTime.after(startBH) && endTime.before(endBH)) {
-                    dayCharge = (float) (((getMinutes(endTime) - getMinutes(startTime))/60.0) * BH_RATE);
-                    dayCharge = (float) (Math.round(dayCharge * 100.0) / 100.0);
-                }
-                //if isBusiness Day and Out of Hours start / Business Hours end
-                else if (startTime.before(startBH) && endTime.before(endBH)) {
-                    dayCharge = (float) (((getMinutes(startBH) - getMinutes(startTime))/60.0) * OOH_RATE);
-                    dayCharge += ((getMinutes(endTime) - getMinutes(startBH))/60.0) * BH_RATE;
-                    dayCharge = (float) (Math.round(dayCharge * 100.0) / 100.0);
-                }
-                //if isBusinessDay and Business Hours start / Out of Hours end
-                else if (startTime.after(startBH) && startTime.before(endBH) && endTime.after(endBH)) {
-                    dayCharge = (float) (((getMinutes(endBH) - getMinutes(startTime))/60.0) * BH_RATE);
-                    dayCharge += ((getMinutes(endTime) - getMinutes(endBH))/60.0) * OOH_RATE;
-                    dayCharge = (float) (Math.round(dayCharge * 100.0) / 100.0);
-                }
-                //if isBusiness Day Out of Hours start / through Business Hours / Out of Hours end
-                else if (startTime.before(startBH) && endTime.after(endBH)) {
-                    dayCharge = (float) (((getMinutes(startBH) - getMinutes(startTime))/60.0) * OOH_RATE);
-                    dayCharge += ((getMinutes(endBH) - getMinutes(startBH))/60.0) * BH_RATE;
-                    dayCharge += ((getMinutes(endTime) - getMinutes(endBH))/60.0) * OOH_RATE;
-                    dayCharge = (float) (Math.round(dayCharge * 100.0) / 100.0);
-                }
-                else {
-                    //else time error
-                    System.out.println("time error");
-                }
-            }
-            //else not Busines Day, all Out of Hours
-            else {
-                dayCharge = (float) (((getMinutes(endTime) - getMinutes(startTime))/60.0) * OOH_RATE);
-                dayCharge = (float) (Math.round(dayCharge * 100.0) / 100.0);
-                System.out.println(dayCharge);
+    /**
+     * Changes the public holidays observed by the standard tariff, for example after
+     * loading a new calendar with HolidayCalendar.load. The tariff is recompiled with
+     * the current rates and swapped in, so paystations keep pricing while it is built
+     * and quotes cached under the old calendar are dropped. The standard tariff replaces
+     * any engine passed to the constructor or to setTariffEngine.
+     * @param holidayCalendar
+     */
+        public synchronized void setHolidayCalendar(HolidayCalendar holidayCalendar) {
+            if (holidayCalendar == null) {
+                throw new RuntimeException("Holiday calendar is null");
             }
-            //return dayCharge
-            return dayCharge;
+            ITariffEngine engine = standardTariff(tariffRules, zone, holidayCalendar, clock);
+            this.holidayCalendar = holidayCalendar;
+            setTariffEngine(engine);
         }
-        
-        //isBusinessDay() takes int and returns true or false for Business Day
-        private boolean isBusinessDay(int day) {
-            if (day > 0 && day < 5) {
-                return true;
+
+    /**
+     * Changes the zone business hours and the standard tariff find local days and times
+     * of day in. The tariff is recompiled with the current rates and holidays and swapped
+     * in, replacing any engine passed to the constructor or to setTariffEngine.
+     * @param zone
+     */
+        public synchronized void setZone(ZoneId zone) {
+            if (zone == null) {
+                throw new RuntimeException("Carpark zone is null");
             }
-            else
-                return false;
+            ITariffEngine engine = standardTariff(tariffRules, zone, holidayCalendar, clock);
+            this.zone = zone;
+            this.businessHoursState = BusinessHoursState.at(zone, clock.currentTimeMillis());
+            setTariffEngine(engine);
         }
-        
-        //getMinutes() takes a Time object and returns the amount of total minutes. Calculated from hours, minutes and seconds
-        @SuppressWarnings("deprecation")
-        private int getMinutes(Time time) {
-            int minutes = 0;
-            minutes += time.getMinutes();
-            minutes += (time.getHours() * 60);
-            if (time.getSeconds() >= 30) {
-            	minutes++;
-            } 
-            return minutes;
+
+    /**
+     * Returns the zone the carpark's local days and times of day are found in.
+     * @return zone
+     */
+        public ZoneId getZone() {
+            return zone;
+        }
+
+    /**
+     * Returns the clock the carpark reads the current time from.
+     * @return clock
+     */
+        public IClock getClock() {
+            return clock;
+        }
+
+    /**
+     * Returns the public holidays observed by the standard tariff.
+     * @return holidayCalendar
+     */
+        public synchronized HolidayCalendar getHolidayCalendar() {
+            return holidayCalendar;
+        }
+
+        //the standard tariff, with repeated quotes served from a cache. its zone offsets are
+        //tabulated around the clock's current time, so a simulated clock sets the year too
+        private static ITariffEngine standardTariff(TariffRules rules, ZoneId zone, HolidayCalendar holidays, IClock clock) {
+            if (clock == null) {
+                throw new RuntimeException("Clock is null");
+            }
+            return new CachedTariffEngine(rules.compile(zone, holidays, clock.currentTimeMillis()), QUOTE_CACHE_SIZE);
         }
-        
-        private int daysBetween(Date d1, Date d2) {
-        	Calendar startCal = new GregorianCalendar();
-        	Calendar endCal = new GregorianCalendar();
-        	
-        	startCal.setTime(d1);
-        	endCal.setTime(d2);
-                
-                int currentYear = startCal.get(Calendar.YEAR);
-                int endYear = endCal.get(Calendar.YEAR);
-                
-                int days = 0;
-                
-               while (currentYear != endYear) {
-                   Calendar lastDayOfYear = new GregorianCalendar(currentYear, 11, 31);
-                   int dayDecember31 = lastDayOfYear.get(Calendar.DAY_OF_YEAR);
-                   
-                   days += dayDecember31 - (startCal.get(Calendar.DAY_OF_YEAR));
-                   
-                   currentYear++;
-                   startCal.set(currentYear, 0, 1);  //set current to Jan 1st of next year.            
-               }
-        	
-        	days += (endCal.get(Calendar.DAY_OF_YEAR)) - (startCal.get(Calendar.DAY_OF_YEAR));
-
-        	return days;
-        	
-        	}
         
 
 }
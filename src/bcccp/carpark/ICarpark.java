@@ -13,7 +13,8 @@ public interface ICarpark {
 	public IAdhocTicket issueAdhocTicket();
 	public void recordAdhocTicketEntry();
 	public IAdhocTicket getAdhocTicket(String barcode);
-	public float calculateAdhocTicketCharge(long entryDateTime);
+	public long calculateAdhocTicketCharge(long entryDateTime);
+	public void calculateAdhocTicketCharges(long[] entryDateTimes, long payingDateTime, long[] charges);
 	public void recordAdhocTicketExit();
 	
 	public void registerSeasonTicket(ISeasonTicket seasonTicket);
@@ -23,6 +24,8 @@ public interface ICarpark {
 	public boolean isSeasonTicketInUse(String ticketId);
 	public void recordSeasonTicketEntry(String ticketId);
 	public void recordSeasonTicketExit(String ticketId);
+	
+	public boolean isBusinessHours();
 
 
 }
@@ -0,0 +1,43 @@
+package bcccp.carpark;
+
+/**
+ * Helpers for amounts of money held as a whole number of cents in a long.
+ * Sums of cents are exact, unlike sums of float dollars.
+ */
+public class Money {
+
+	private Money() {
+	}
+
+
+    /**
+     * Formats an amount of cents as dollars with two decimal places, such as "12.05".
+     * @param cents
+     * @return formatted amount
+     */
+	public static String format(long cents) {
+		StringBuilder builder = new StringBuilder(12);
+		long magnitude = cents;
+		if (cents < 0) {
+			builder.append('-');
+			magnitude = -cents;
+		}
+		long fraction = magnitude % 100;
+		builder.append(magnitude / 100).append('.');
+		if (fraction < 10) {
+			builder.append('0');
+		}
+		return builder.append(fraction).toString();
+	}
+
+
+    /**
+     * Converts an amount in dollars to the nearest whole cent.
+     * @param dollars
+     * @return cents
+     */
+	public static long fromDollars(double dollars) {
+		return Math.round(dollars * 100);
+	}
+
+}
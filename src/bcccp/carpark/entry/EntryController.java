@@ -7,6 +7,8 @@ import bcccp.carpark.ICarpark;
 import bcccp.carpark.ICarparkObserver;
 import bcccp.carpark.IGate;
 import bcccp.tickets.adhoc.IAdhocTicket;
+import bcccp.time.IClock;
+import bcccp.time.SystemClock;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -30,6 +32,7 @@ public class EntryController
 	private IAdhocTicket  adhocTicket = null;
 	private long entryTime;
 	private String seasonTicketId = null;
+	private IClock clock;
         Boolean flagEntering = false;
 	
     /**
@@ -45,6 +48,27 @@ public class EntryController
 			ICarSensor os, 
 			ICarSensor is,
 			IEntryUI ui) {
+		this(carpark, entryGate, os, is, ui, SystemClock.INSTANCE);
+	}
+
+    /**
+     * Creates an Controller object for a carpark entry point that reads entry times from the clock passed to it.
+     * @param carpark
+     * @param entryGate
+     * @param os
+     * @param is
+     * @param ui
+     * @param clock
+     */
+    public EntryController(Carpark carpark, IGate entryGate, 
+			ICarSensor os, 
+			ICarSensor is,
+			IEntryUI ui,
+			IClock clock) {
+		if (clock == null) {
+			throw new RuntimeException("Clock is null");
+		}
+		this.clock = clock;
 		this.carpark = carpark;
                 this.entryGate = entryGate;
                 this.outsideSensor = os;
@@ -193,7 +217,7 @@ public class EntryController
 				
 				String carparkId = adhocTicket.getCarparkId();
 				int ticketNo = adhocTicket.getTicketNo();
-				entryTime = System.currentTimeMillis();
+				entryTime = clock.currentTimeMillis();
 				//entryTime = adhocTicket.getEntryDateTime();
 				String barcode = adhocTicket.getBarcode();
 				
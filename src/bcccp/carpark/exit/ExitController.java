@@ -6,6 +6,8 @@ import bcccp.carpark.ICarSensorResponder;
 import bcccp.carpark.ICarpark;
 import bcccp.carpark.IGate;
 import bcccp.tickets.adhoc.IAdhocTicket;
+import bcccp.time.IClock;
+import bcccp.time.SystemClock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -28,6 +30,7 @@ public class ExitController
 	private IAdhocTicket  adhocTicket = null;
 	private long exitTime;
 	private String seasonTicketId = null;
+	private IClock clock;
         Boolean flagLeaving = false;
         Boolean flagValid = false;
 	
@@ -44,6 +47,27 @@ public class ExitController
 			ICarSensor is,
 			ICarSensor os, 
 			IExitUI ui) {
+		this(carpark, exitGate, is, os, ui, SystemClock.INSTANCE);
+	}
+
+    /**
+     * Creates an Controller object for a carpark exit point that reads exit times from the clock passed to it.
+     * @param carpark
+     * @param exitGate
+     * @param is
+     * @param os
+     * @param ui
+     * @param clock
+     */
+    public ExitController(Carpark carpark, IGate exitGate, 
+			ICarSensor is,
+			ICarSensor os, 
+			IExitUI ui,
+			IClock clock) {
+		if (clock == null) {
+			throw new RuntimeException("Clock is null");
+		}
+		this.clock = clock;
 		this.carpark = carpark;
                 this.exitGate = exitGate;
                 this.outsideSensor = os;
@@ -186,7 +210,7 @@ public class ExitController
         if (state == STATE.WAITING) {
 			if (isAdhocTicket(ticketStr)) {
 				adhocTicket = carpark.getAdhocTicket(ticketStr);
-				exitTime = System.currentTimeMillis();
+				exitTime = clock.currentTimeMillis();
 				if (adhocTicket != null && adhocTicket.isPaid() && exitTime - adhocTicket.getPaidDateTime() <= 900000) {
 					setState(STATE.PROCESSED);
 				}
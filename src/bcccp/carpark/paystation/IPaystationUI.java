@@ -4,7 +4,7 @@ public interface IPaystationUI {
 	public void registerController(IPaystationController controller);
 	public void deregisterController();
 	
-	public void printTicket(String carparkId, int ticketNo, long entryTime, long paidTime, float charge, String barcode);
+	public void printTicket(String carparkId, int ticketNo, long entryTime, long paidTime, long charge, String barcode);
 	public void display(String message);
 	public void beep();
 
@@ -1,7 +1,10 @@
 package bcccp.carpark.paystation;
 
 import bcccp.carpark.ICarpark;
+import bcccp.carpark.Money;
 import bcccp.tickets.adhoc.IAdhocTicket;
+import bcccp.time.IClock;
+import bcccp.time.SystemClock;
 
 public class PaystationController 
 		implements IPaystationController {
@@ -14,7 +17,8 @@ public class PaystationController
 	private ICarpark carpark;
 
 	private IAdhocTicket  adhocTicket = null;
-	private float charge;
+	private long charge;
+	private IClock clock;
 	
     /**
      * Creates an Controller object for a carpark paystation, requiring a user interface.
@@ -22,6 +26,20 @@ public class PaystationController
      * @param ui
      */
     public PaystationController(ICarpark carpark, IPaystationUI ui) {
+		this(carpark, ui, SystemClock.INSTANCE);
+	}
+
+    /**
+     * Creates an Controller object for a carpark paystation that reads payment times from the clock passed to it.
+     * @param carpark
+     * @param ui
+     * @param clock
+     */
+    public PaystationController(ICarpark carpark, IPaystationUI ui, IClock clock) {
+		if (clock == null) {
+			throw new RuntimeException("Clock is null");
+		}
+		this.clock = clock;
 		this.carpark = carpark;
                 this.ui = ui;
                 entryControllerRegister(); //Registers the entry controller as a responder to those sensors, 
@@ -83,9 +101,9 @@ public class PaystationController
 			adhocTicket = carpark.getAdhocTicket(barcode);
 			if (adhocTicket != null && adhocTicket.getEntryDateTime() != 0) {
                             if (adhocTicket.isPaid()){
-                                if (System.currentTimeMillis() - adhocTicket.getPaidDateTime() > 900000){
+                                if (clock.currentTimeMillis() - adhocTicket.getPaidDateTime() > 900000){
                                    charge = carpark.calculateAdhocTicketCharge(adhocTicket.getPaidDateTime());
-                                   ui.display("Pay " + String.format("%.2f", charge));
+                                   ui.display("Pay " + Money.format(charge));
                                     setState(STATE.WAITING);
                                 } else {
                                     ui.display("Ticket Already Paid");
@@ -93,7 +111,7 @@ public class PaystationController
                                 }    
                             } else {
                                 charge = carpark.calculateAdhocTicketCharge(adhocTicket.getEntryDateTime());
-				ui.display("Pay " + String.format("%.2f", charge));
+				ui.display("Pay " + Money.format(charge));
 				setState(STATE.WAITING);
                             }
                         } else {
@@ -115,7 +133,7 @@ public class PaystationController
     @Override
 	public void ticketPaid() {
 		if (state_ == STATE.WAITING) {
-			long payTime = System.currentTimeMillis();
+			long payTime = clock.currentTimeMillis();
 			
 			adhocTicket.pay(payTime, charge);
 			
@@ -123,7 +141,7 @@ public class PaystationController
 			int ticketNo = adhocTicket.getTicketNo();
 			long entryTime = adhocTicket.getEntryDateTime();
 			long paidTime = adhocTicket.getPaidDateTime();
-			float charge = adhocTicket.getCharge();
+			long charge = adhocTicket.getCharge();
 			String barcode = adhocTicket.getBarcode();
 			
 			ui.printTicket(carparkId, ticketNo, entryTime, paidTime, charge, barcode);
@@ -15,6 +15,7 @@ import javax.swing.SwingConstants;
 import javax.swing.JButton;
 import java.awt.event.ActionListener;
 import java.util.Date;
+import bcccp.carpark.Money;
 import java.awt.event.ActionEvent;
 import javax.swing.JTextArea;
 import java.awt.Color;
@@ -195,7 +196,7 @@ public class PaystationUI extends JFrame implements IPaystationUI {
 	
 	
 	@Override
-	public void printTicket(String carparkId, int tNo, long entryTime, long paidTime, float charge, String barcode) {
+	public void printTicket(String carparkId, int tNo, long entryTime, long paidTime, long charge, String barcode) {
 		Date entryDate = new Date(entryTime);
 		Date paidDate = new Date(paidTime);
 		StringBuilder builder = new StringBuilder();
@@ -203,7 +204,7 @@ public class PaystationUI extends JFrame implements IPaystationUI {
 		builder.append("Ticket No  : " + tNo + "\n");
 		builder.append("Entry Time : " + entryDate + "\n");
 		builder.append("Paid  Time : " + paidDate + "\n");
-		builder.append("Charge     : " + String.format("%.2f", charge) + "\n");
+		builder.append("Charge     : " + Money.format(charge) + "\n");
 		builder.append("Barcode    : " + barcode + "\n");
 		
 		ticketPrinterTextArea.setText(builder.toString());			
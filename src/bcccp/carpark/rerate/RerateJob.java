@@ -0,0 +1,170 @@
+package bcccp.carpark.rerate;
+
+import bcccp.carpark.tariff.ITariffEngine;
+import bcccp.carpark.tariff.ZoneOffsetCache;
+import bcccp.tickets.adhoc.IAdhocTicket;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Works out what paid adhoc tickets would have been charged under a different tariff,
+ * and the resulting change in revenue for each day. Tickets are read into chunks of
+ * primitive arrays, and each chunk is re-rated on a fork join pool by splitting it
+ * until the pieces are small enough to charge in a plain loop.
+ *
+ * The tariff engine is called from many threads at once. A compiled tariff such as
+ * ClosedFormTariff should be used rather than a CachedTariffEngine, whose lock would
+ * let only one thread calculate at a time.
+ */
+public class RerateJob {
+
+	private static final long MILLIS_PER_DAY = 86400000L;
+
+	//tickets read from an iterator before a chunk is handed to the pool
+	private static final int CHUNK_SIZE = 1 << 16;
+
+	//tickets re-rated in a single task without splitting further
+	private static final int LEAF_SIZE = 4096;
+
+	private final ITariffEngine engine;
+	private final ForkJoinPool pool;
+	private final ZoneOffsetCache offsets;
+
+
+    /**
+     * Creates a job that re-rates tickets on the common fork join pool.
+     * @param engine tariff the tickets are re-rated with
+     * @param zone zone whose local days the revenue is totalled by
+     * @param anchorMillis instant the tickets are expected near, such as the start of the period re-rated
+     */
+	public RerateJob(ITariffEngine engine, ZoneId zone, long anchorMillis) {
+		this(engine, zone, ForkJoinPool.commonPool(), anchorMillis);
+	}
+
+
+    /**
+     * Creates a job that re-rates tickets on the pool passed to it, with the zone offsets
+     * first tabulated for the local year of the given instant.
+     * @param engine tariff the tickets are re-rated with
+     * @param zone zone whose local days the revenue is totalled by
+     * @param pool
+     * @param anchorMillis instant the tickets are expected near, such as the start of the period re-rated
+     */
+	public RerateJob(ITariffEngine engine, ZoneId zone, ForkJoinPool pool, long anchorMillis) {
+		if (engine == null || zone == null || pool == null) {
+			throw new RuntimeException("Tariff engine, zone or pool is null");
+		}
+		this.engine = engine;
+		this.pool = pool;
+		this.offsets = new ZoneOffsetCache(zone, anchorMillis);
+	}
+
+
+    /**
+     * Re-rates the paid tickets read from an iterator; unpaid tickets are skipped.
+     * Only a few chunks are held at once, so the tickets can be streamed from an
+     * archive rather than loaded together.
+     * @param tickets
+     * @return revenue deltas by day of payment
+     */
+	public RevenueDeltas rerate(Iterator<? extends IAdhocTicket> tickets) {
+		RevenueDeltas result = new RevenueDeltas();
+		ArrayDeque<ForkJoinTask<RevenueDeltas>> running = new ArrayDeque<>();
+		int maxRunning = 2 * pool.getParallelism();
+
+		while (tickets.hasNext()) {
+			long[] entryTimes = new long[CHUNK_SIZE];
+			long[] paidTimes = new long[CHUNK_SIZE];
+			long[] charges = new long[CHUNK_SIZE];
+			int count = 0;
+			while (count < CHUNK_SIZE && tickets.hasNext()) {
+				IAdhocTicket ticket = tickets.next();
+				long paid = ticket.getPaidDateTime();
+				if (paid <= 0) {
+					continue;
+				}
+				entryTimes[count] = ticket.getEntryDateTime();
+				paidTimes[count] = paid;
+				charges[count] = ticket.getCharge();
+				count++;
+			}
+			if (count > 0) {
+				running.add(pool.submit(new RerateTask(entryTimes, paidTimes, charges, 0, count)));
+			}
+			if (running.size() >= maxRunning) {
+				result.merge(running.poll().join());
+			}
+		}
+		while (!running.isEmpty()) {
+			result.merge(running.poll().join());
+		}
+		return result;
+	}
+
+
+    /**
+     * Re-rates tickets already held in arrays, one element per ticket.
+     * @param entryTimes entry times in epoch milliseconds
+     * @param paidTimes payment times in epoch milliseconds
+     * @param charges charges paid in cents
+     * @return revenue deltas by day of payment
+     */
+	public RevenueDeltas rerate(long[] entryTimes, long[] paidTimes, long[] charges) {
+		if (entryTimes == null || paidTimes == null || charges == null
+				|| paidTimes.length != entryTimes.length || charges.length != entryTimes.length) {
+			throw new RuntimeException("Ticket arrays differ in length");
+		}
+		return pool.invoke(new RerateTask(entryTimes, paidTimes, charges, 0, entryTimes.length));
+	}
+
+
+	//local days since the epoch of an instant
+	private long localDay(long epochMillis) {
+		return Math.floorDiv(epochMillis + offsets.offsetMillis(epochMillis), MILLIS_PER_DAY);
+	}
+
+
+	//re-rates the tickets [from, to) of a set of arrays
+	private class RerateTask extends RecursiveTask<RevenueDeltas> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long[] entryTimes;
+		private final long[] paidTimes;
+		private final long[] charges;
+		private final int from;
+		private final int to;
+
+		RerateTask(long[] entryTimes, long[] paidTimes, long[] charges, int from, int to) {
+			this.entryTimes = entryTimes;
+			this.paidTimes = paidTimes;
+			this.charges = charges;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected RevenueDeltas compute() {
+			if (to - from > LEAF_SIZE) {
+				int middle = (from + to) >>> 1;
+				RerateTask left = new RerateTask(entryTimes, paidTimes, charges, from, middle);
+				left.fork();
+				RevenueDeltas result = new RerateTask(entryTimes, paidTimes, charges, middle, to).compute();
+				result.merge(left.join());
+				return result;
+			}
+
+			RevenueDeltas result = new RevenueDeltas();
+			for (int i = from; i < to; i++) {
+				long paid = paidTimes[i];
+				result.add(localDay(paid), charges[i], engine.calcChargeCents(entryTimes[i], paid));
+			}
+			return result;
+		}
+	}
+
+}
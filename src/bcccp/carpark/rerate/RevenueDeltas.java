@@ -0,0 +1,114 @@
+package bcccp.carpark.rerate;
+
+import java.time.LocalDate;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The change in adhoc ticket revenue from re-rating tickets with a new tariff,
+ * totalled for each local day the tickets were paid on.
+ */
+public class RevenueDeltas {
+
+	private long firstDay = 0;
+	private long[] dailyDeltaCents = new long[0];
+	private long ticketCount = 0;
+	private long previousCents = 0;
+	private long reratedCents = 0;
+
+
+	public long getTicketCount() {
+		return ticketCount;
+	}
+
+	public long getPreviousCents() {
+		return previousCents;
+	}
+
+	public long getReratedCents() {
+		return reratedCents;
+	}
+
+	public long getTotalDeltaCents() {
+		return reratedCents - previousCents;
+	}
+
+
+    /**
+     * Returns the change in revenue for tickets paid on a day.
+     * @param day local date of payment
+     * @return change in cents, positive when the new tariff charges more
+     */
+	public long getDeltaCents(LocalDate day) {
+		long index = day.toEpochDay() - firstDay;
+		if (index < 0 || index >= dailyDeltaCents.length) {
+			return 0;
+		}
+		return dailyDeltaCents[(int) index];
+	}
+
+
+    /**
+     * Returns the change in revenue for every day on which it is not zero.
+     * @return changes in cents by local date of payment
+     */
+	public SortedMap<LocalDate, Long> getDailyDeltas() {
+		SortedMap<LocalDate, Long> deltas = new TreeMap<>();
+		for (int i = 0; i < dailyDeltaCents.length; i++) {
+			if (dailyDeltaCents[i] != 0) {
+				deltas.put(LocalDate.ofEpochDay(firstDay + i), dailyDeltaCents[i]);
+			}
+		}
+		return deltas;
+	}
+
+
+	//records one re-rated ticket against the local day it was paid on
+	void add(long epochDay, long previous, long rerated) {
+		include(epochDay, epochDay);
+		dailyDeltaCents[(int) (epochDay - firstDay)] += rerated - previous;
+		ticketCount++;
+		previousCents += previous;
+		reratedCents += rerated;
+	}
+
+
+	//adds the totals of another set of deltas into this one
+	void merge(RevenueDeltas other) {
+		if (other.dailyDeltaCents.length > 0) {
+			include(other.firstDay, other.firstDay + other.dailyDeltaCents.length - 1);
+			int offset = (int) (other.firstDay - firstDay);
+			for (int i = 0; i < other.dailyDeltaCents.length; i++) {
+				dailyDeltaCents[offset + i] += other.dailyDeltaCents[i];
+			}
+		}
+		ticketCount += other.ticketCount;
+		previousCents += other.previousCents;
+		reratedCents += other.reratedCents;
+	}
+
+
+	//grows the daily array, with room to spare, so it covers the days [from, to]
+	private void include(long from, long to) {
+		if (dailyDeltaCents.length == 0) {
+			firstDay = from;
+			dailyDeltaCents = new long[(int) (to - from + 1)];
+			return;
+		}
+		long lastDay = firstDay + dailyDeltaCents.length - 1;
+		if (from >= firstDay && to <= lastDay) {
+			return;
+		}
+		long newFirst = Math.min(from, firstDay);
+		long newLast = Math.max(to, lastDay);
+		long length = Math.max(newLast - newFirst + 1, 2L * dailyDeltaCents.length);
+		if (newFirst < firstDay) {
+			newFirst = newLast - length + 1;
+		}
+		long[] grown = new long[(int) length];
+		System.arraycopy(dailyDeltaCents, 0, grown, (int) (firstDay - newFirst), dailyDeltaCents.length);
+		firstDay = newFirst;
+		dailyDeltaCents = grown;
+	}
+
+}
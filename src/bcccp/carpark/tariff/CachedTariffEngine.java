@@ -0,0 +1,129 @@
+package bcccp.carpark.tariff;
+
+import java.util.Arrays;
+
+/**
+ * Remembers recent charge quotes from another tariff engine, keyed by the entry minute
+ * and the pricing minute. Tickets re-inserted at a paystation, and cars that entered in
+ * the same minute and pay in the same minute, then share one calculation.
+ *
+ * The wrapped engine must price stays on whole minutes, rounding 30 seconds or more up,
+ * as ClosedFormTariff does; any two stays with the same key then have the same charge.
+ *
+ * Quotes are held in a fixed number of slots chosen by hashing the key, and a new quote
+ * evicts whatever quote held its slot. Keys and charges are kept in primitive arrays, so
+ * looking up a quote allocates nothing.
+ */
+public class CachedTariffEngine implements ITariffEngine {
+
+	private static final long EMPTY = -1;
+
+	private final ITariffEngine engine;
+	private final long[] keys;
+	private final long[] charges;
+	private final int mask;
+	private int size = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+
+    /**
+     * Creates a cache in front of a tariff engine.
+     * @param engine engine used to calculate quotes that are not cached
+     * @param capacity maximum number of quotes held, rounded up to a power of two
+     */
+	public CachedTariffEngine(ITariffEngine engine, int capacity) {
+		if (engine == null) {
+			throw new RuntimeException("Tariff engine is null");
+		}
+		if (capacity <= 0 || capacity > (1 << 30)) {
+			throw new RuntimeException("Invalid quote cache capacity");
+		}
+		int slots = Integer.highestOneBit(capacity);
+		if (slots < capacity) {
+			slots <<= 1;
+		}
+		this.engine = engine;
+		this.keys = new long[slots];
+		this.charges = new long[slots];
+		this.mask = slots - 1;
+		Arrays.fill(keys, EMPTY);
+	}
+
+
+	@Override
+	public long calcChargeCents(long start, long end) {
+		long startMinute = nearestMinute(start);
+		long endMinute = nearestMinute(end);
+		if (endMinute <= startMinute || startMinute < 0) {
+			//the minimum charge depends on the exact times within a single minute
+			return engine.calcChargeCents(start, end);
+		}
+		long key = (startMinute << 32) | (endMinute & 0xFFFFFFFFL);
+		int slot = slot(key);
+
+		synchronized (this) {
+			if (keys[slot] == key) {
+				hits++;
+				return charges[slot];
+			}
+			misses++;
+		}
+		long charge = engine.calcChargeCents(start, end);
+		synchronized (this) {
+			if (keys[slot] == EMPTY) {
+				size++;
+			}
+			else if (keys[slot] != key) {
+				evictions++;
+			}
+			keys[slot] = key;
+			charges[slot] = charge;
+		}
+		return charge;
+	}
+
+
+    /**
+     * Batches are passed straight to the wrapped engine, as each entry time is usually different.
+     */
+	@Override
+	public void calcChargesCents(long[] starts, long end, long[] charges) {
+		engine.calcChargesCents(starts, end, charges);
+	}
+
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	public int capacity() {
+		return keys.length;
+	}
+
+
+	private int slot(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash >>> 32) & mask;
+	}
+
+
+	//epoch minute, rounding 30 seconds or more up to the next minute
+	private static long nearestMinute(long epochMillis) {
+		return Math.floorDiv(Math.floorDiv(epochMillis, 1000L) + 30, 60L);
+	}
+
+}
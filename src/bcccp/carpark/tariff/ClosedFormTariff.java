@@ -0,0 +1,238 @@
+package bcccp.carpark.tariff;
+
+import java.time.ZoneId;
+import java.util.TimeZone;
+
+/**
+ * Calculates adhoc ticket charges in constant time, whatever the length of stay.
+ * Whole days between entry and payment are summed from a weekly table, and only
+ * the partial days at either end of the stay are read from the per-minute table.
+ *
+ * Times are rounded to the nearest minute, each day's charge is rounded to the nearest
+ * cent and capped, and the minimum charge is applied to the stay as a whole.
+ * Public holidays are charged at the holiday rates, read from a table compiled for
+ * every day of the years the holiday calendar covers.
+ *
+ * Local times come from a ZoneOffsetTable for the carpark's zone, so converting an
+ * instant is a table lookup. A stay that crosses a daylight saving transition is split
+ * at the transition and each part is charged in its own offset, so the time charged is
+ * the time actually parked; the parts of the day of the transition are added together
+ * before the day is rounded and capped. The table of the active year is kept whatever
+ * is charged, and stays in other years read tables from a ZoneOffsetCache.
+ */
+public class ClosedFormTariff implements ITariffEngine {
+
+	private static final int MINUTES_PER_DAY = WeeklyRateTable.MINUTES_PER_DAY;
+
+	private final ZoneId zone;
+	private volatile YearlyRateTable table;
+	private final ZoneOffsetCache offsets;
+
+
+    /**
+     * Creates the standard tariff from hourly business hours and out of hours rates.
+     * @param bhRate charge per hour during business hours
+     * @param oohRate charge per hour out of business hours
+     * @param zone time zone used to find the local day and time of day
+     * @param anchorMillis instant most stays are expected near, usually the current time
+     */
+	public ClosedFormTariff(float bhRate, float oohRate, TimeZone zone, long anchorMillis) {
+		this(TariffRules.standard(bhRate, oohRate), zone == null ? null : zone.toZoneId(), HolidayCalendar.NONE,
+				anchorMillis);
+	}
+
+
+    /**
+     * Creates a tariff by compiling a set of rules and a holiday calendar, with the zone
+     * offsets first tabulated for the local year of the given instant.
+     * @param rules
+     * @param zone zone used to find the local day and time of day
+     * @param holidays
+     * @param anchorMillis instant most stays are expected near, usually the current time
+     */
+	public ClosedFormTariff(TariffRules rules, ZoneId zone, HolidayCalendar holidays, long anchorMillis) {
+		if (zone == null) {
+			throw new RuntimeException("Tariff time zone is null");
+		}
+		this.zone = zone;
+		this.table = new YearlyRateTable(new WeeklyRateTable(rules), holidays);
+		this.offsets = new ZoneOffsetCache(zone, anchorMillis);
+	}
+
+
+    /**
+     * Replaces the rules. The new table is compiled before it is swapped in, so
+     * charges calculated meanwhile use the old rules rather than waiting.
+     * @param rules
+     */
+	public void setRules(TariffRules rules) {
+		this.table = new YearlyRateTable(new WeeklyRateTable(rules), table.getCalendar());
+	}
+
+
+    /**
+     * Replaces the holiday calendar, keeping the current rules. As with setRules, the
+     * new table is compiled before it is swapped in.
+     * @param holidays
+     */
+	public void setHolidays(HolidayCalendar holidays) {
+		this.table = new YearlyRateTable(table.getRates(), holidays);
+	}
+
+
+	public HolidayCalendar getHolidays() {
+		return table.getCalendar();
+	}
+
+
+    /**
+     * Returns the charge in cents for a stay between two instants.
+     * @param start entry time in epoch milliseconds
+     * @param end payment time in epoch milliseconds
+     * @return charge in cents
+     */
+	@Override
+	public long calcChargeCents(long start, long end) {
+		YearlyRateTable rates = this.table;
+		if (end <= start) {
+			return 0;
+		}
+		ZoneOffsetTable zoneOffsets = offsets.at(start);
+		if (zoneOffsets.nextTransition(start) < end) {
+			return rates.applyMinimum(splitStayCents(rates, start, end));
+		}
+		int offset = zoneOffsets.offsetMillis(start);
+		return rates.applyMinimum(stayCents(rates, localMinute(start, offset), localMinute(end, offset)));
+	}
+
+
+    /**
+     * Calculates the charges in cents for many stays that all end at the same instant.
+     * Work that depends only on the end of the stays is done once, outside the loop.
+     * @param starts entry times in epoch milliseconds
+     * @param end payment time in epoch milliseconds
+     * @param charges filled with the charge in cents for each entry time
+     */
+	@Override
+	public void calcChargesCents(long[] starts, long end, long[] charges) {
+		if (starts == null || charges == null || charges.length < starts.length) {
+			throw new RuntimeException("Charges array is smaller than starts array");
+		}
+		YearlyRateTable rates = this.table;
+		ZoneOffsetTable zoneOffsets = offsets.at(end);
+		int endOffset = zoneOffsets.offsetMillis(end);
+		long endMinute = localMinute(end, endOffset);
+		long endDay = Math.floorDiv(endMinute, MINUTES_PER_DAY);
+		int endMinuteOfDay = (int) (endMinute - endDay * MINUTES_PER_DAY);
+		long lastDayCents = rates.dayCents(endDay, 0, endMinuteOfDay);
+
+		for (int i = 0; i < starts.length; i++) {
+			long start = starts[i];
+			if (start >= end) {
+				charges[i] = 0;
+				continue;
+			}
+			if (!zoneOffsets.covers(start) || zoneOffsets.nextTransition(start) < end) {
+				//the stay crosses a transition or leaves the window, so charge it alone
+				charges[i] = calcChargeCents(start, end);
+				continue;
+			}
+			long startMinute = localMinute(start, endOffset);
+			long startDay = Math.floorDiv(startMinute, MINUTES_PER_DAY);
+			int startMinuteOfDay = (int) (startMinute - startDay * MINUTES_PER_DAY);
+
+			long cents;
+			if (startMinute >= endMinute) {
+				cents = 0;
+			}
+			else if (startDay == endDay) {
+				cents = rates.dayCents(startDay, startMinuteOfDay, endMinuteOfDay);
+			}
+			else {
+				cents = rates.dayCents(startDay, startMinuteOfDay, MINUTES_PER_DAY)
+						+ rates.fullDaysCents(startDay + 1, endDay - startDay - 1)
+						+ lastDayCents;
+			}
+			charges[i] = rates.applyMinimum(cents);
+		}
+	}
+
+
+	public ZoneId getZone() {
+		return zone;
+	}
+
+
+	//sum of the daily charges between two local minutes
+	private long stayCents(YearlyRateTable rates, long startMinute, long endMinute) {
+		if (endMinute <= startMinute) {
+			return 0;
+		}
+
+		long startDay = Math.floorDiv(startMinute, MINUTES_PER_DAY);
+		long endDay = Math.floorDiv(endMinute, MINUTES_PER_DAY);
+		int startMinuteOfDay = (int) (startMinute - startDay * MINUTES_PER_DAY);
+		int endMinuteOfDay = (int) (endMinute - endDay * MINUTES_PER_DAY);
+
+		if (startDay == endDay) {
+			return rates.dayCents(startDay, startMinuteOfDay, endMinuteOfDay);
+		}
+
+		//partial first day, whole days in between, partial last day
+		long charge = rates.dayCents(startDay, startMinuteOfDay, MINUTES_PER_DAY);
+		charge += rates.fullDaysCents(startDay + 1, endDay - startDay - 1);
+		charge += rates.dayCents(endDay, 0, endMinuteOfDay);
+		return charge;
+	}
+
+
+	//sum of the daily charges for a stay split at each offset transition, where the
+	//parts of a day that fall either side of a transition are rounded together
+	private long splitStayCents(YearlyRateTable rates, long start, long end) {
+		long charge = 0;
+		long pendingDay = Long.MIN_VALUE;
+		long pendingRateMinutes = 0;
+
+		long from = start;
+		while (from < end) {
+			ZoneOffsetTable zoneOffsets = offsets.at(from);
+			int offset = zoneOffsets.offsetMillis(from);
+			long to = Math.min(zoneOffsets.nextTransition(from), end);
+			long startMinute = localMinute(from, offset);
+			long endMinute = localMinute(to, offset);
+			from = to;
+			if (endMinute <= startMinute) {
+				continue;
+			}
+
+			long startDay = Math.floorDiv(startMinute, MINUTES_PER_DAY);
+			long endDay = Math.floorDiv(endMinute, MINUTES_PER_DAY);
+			int startMinuteOfDay = (int) (startMinute - startDay * MINUTES_PER_DAY);
+			int endMinuteOfDay = (int) (endMinute - endDay * MINUTES_PER_DAY);
+
+			if (startDay != pendingDay) {
+				charge += rates.roundDayCents(pendingRateMinutes);
+				pendingDay = startDay;
+				pendingRateMinutes = 0;
+			}
+			if (startDay == endDay) {
+				pendingRateMinutes += rates.dayRateMinutes(startDay, startMinuteOfDay, endMinuteOfDay);
+				continue;
+			}
+			pendingRateMinutes += rates.dayRateMinutes(startDay, startMinuteOfDay, MINUTES_PER_DAY);
+			charge += rates.roundDayCents(pendingRateMinutes);
+			charge += rates.fullDaysCents(startDay + 1, endDay - startDay - 1);
+			pendingDay = endDay;
+			pendingRateMinutes = rates.dayRateMinutes(endDay, 0, endMinuteOfDay);
+		}
+		return charge + rates.roundDayCents(pendingRateMinutes);
+	}
+
+
+	//local minutes since the epoch, rounding 30 seconds or more up to the next minute
+	private static long localMinute(long epochMillis, int offsetMillis) {
+		long localSeconds = Math.floorDiv(epochMillis + offsetMillis, 1000L);
+		return Math.floorDiv(localSeconds + 30, 60L);
+	}
+
+}
@@ -0,0 +1,6 @@
+package bcccp.carpark.tariff;
+
+/**
+ * The kinds of day a tariff can charge differently.
+ */
+public enum DayType { BUSINESS, NON_BUSINESS, HOLIDAY }
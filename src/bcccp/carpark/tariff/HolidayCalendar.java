@@ -0,0 +1,89 @@
+package bcccp.carpark.tariff;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * The public holidays observed by a carpark. A calendar is only a list of dates;
+ * tariffs compile it into a YearlyRateTable so charges never search the list.
+ */
+public class HolidayCalendar {
+
+	public static final HolidayCalendar NONE = new HolidayCalendar(Collections.<LocalDate>emptyList());
+
+	//compiled tables hold a day for every year in the calendar, so keep the span sensible
+	private static final int MAX_YEARS = 200;
+
+	private final SortedSet<LocalDate> holidays;
+
+
+    /**
+     * Creates a calendar from a collection of holiday dates.
+     * @param holidays
+     */
+	public HolidayCalendar(Collection<LocalDate> holidays) {
+		if (holidays == null) {
+			throw new RuntimeException("Holidays are null");
+		}
+		TreeSet<LocalDate> dates = new TreeSet<>();
+		for (LocalDate holiday : holidays) {
+			if (holiday == null) {
+				throw new RuntimeException("Holiday date is null");
+			}
+			dates.add(holiday);
+		}
+		if (!dates.isEmpty() && dates.last().getYear() - dates.first().getYear() >= MAX_YEARS) {
+			throw new RuntimeException("Holiday calendar spans more than " + MAX_YEARS + " years");
+		}
+		this.holidays = Collections.unmodifiableSortedSet(dates);
+	}
+
+
+    /**
+     * Loads a calendar from a text file with one yyyy-MM-dd date per line.
+     * Blank lines, and anything after a #, are ignored.
+     * @param file
+     * @return calendar
+     * @throws IOException if the file cannot be read
+     */
+	public static HolidayCalendar load(Path file) throws IOException {
+		List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		TreeSet<LocalDate> dates = new TreeSet<>();
+		for (int i = 0; i < lines.size(); i++) {
+			String line = lines.get(i);
+			int comment = line.indexOf('#');
+			if (comment >= 0) {
+				line = line.substring(0, comment);
+			}
+			line = line.trim();
+			if (line.isEmpty()) {
+				continue;
+			}
+			try {
+				dates.add(LocalDate.parse(line));
+			} catch (DateTimeParseException e) {
+				throw new RuntimeException("Invalid holiday date on line " + (i + 1) + " of " + file, e);
+			}
+		}
+		return new HolidayCalendar(dates);
+	}
+
+
+	public boolean isHoliday(LocalDate date) {
+		return holidays.contains(date);
+	}
+
+	public SortedSet<LocalDate> getHolidays() {
+		return holidays;
+	}
+
+}
@@ -0,0 +1,8 @@
+package bcccp.carpark.tariff;
+
+public interface ITariffEngine {
+	
+	public long calcChargeCents(long start, long end);
+	public void calcChargesCents(long[] starts, long end, long[] charges);
+
+}
@@ -0,0 +1,159 @@
+package bcccp.carpark.tariff;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes a carpark's tariff: which days of the week are business days, the hourly
+ * rate for time bands on each type of day, a daily cap and a minimum charge.
+ * Rules are only read when they are compiled, so they can be edited freely and
+ * compiled again to produce a new tariff engine.
+ */
+public class TariffRules {
+
+	private static final int MINUTES_PER_DAY = WeeklyRateTable.MINUTES_PER_DAY;
+
+	private final boolean[] businessDays = new boolean[WeeklyRateTable.DAYS_PER_WEEK];
+	private final List<Band> bands = new ArrayList<>();
+	private int defaultCentsPerHour = 0;
+	private long dailyCapCents = -1;
+	private long minimumChargeCents = 0;
+
+
+    /**
+     * Returns the standard tariff: business hours from 07:00 to 19:00, Monday to Thursday,
+     * charged at bhRate, and all other times charged at oohRate.
+     * @param bhRate charge per hour during business hours
+     * @param oohRate charge per hour out of business hours
+     * @return rules
+     */
+	public static TariffRules standard(float bhRate, float oohRate) {
+		TariffRules rules = new TariffRules();
+		for (int day = 1; day < 5; day++) {
+			rules.setBusinessDay(day, true);
+		}
+		rules.setDefaultRate(oohRate);
+		rules.addBand(DayType.BUSINESS, 7 * 60, 19 * 60, bhRate);
+		return rules;
+	}
+
+
+    /**
+     * Sets whether a day of the week is a business day.
+     * @param dayOfWeek Sunday = 0
+     * @param businessDay
+     */
+	public void setBusinessDay(int dayOfWeek, boolean businessDay) {
+		if (dayOfWeek < 0 || dayOfWeek >= businessDays.length) {
+			throw new RuntimeException("Invalid day of week");
+		}
+		businessDays[dayOfWeek] = businessDay;
+	}
+
+
+    /**
+     * Sets the hourly rate charged for any time not covered by a band.
+     * @param rate charge per hour
+     */
+	public void setDefaultRate(float rate) {
+		this.defaultCentsPerHour = toCents(rate);
+	}
+
+
+    /**
+     * Adds a time band. Where bands overlap, the band added last applies.
+     * @param dayType type of day the band applies to
+     * @param fromMinute first minute of the day in the band
+     * @param toMinute minute of the day the band ends, up to 1440
+     * @param rate charge per hour
+     */
+	public void addBand(DayType dayType, int fromMinute, int toMinute, float rate) {
+		if (dayType == null) {
+			throw new RuntimeException("Band day type is null");
+		}
+		if (fromMinute < 0 || toMinute > MINUTES_PER_DAY || fromMinute >= toMinute) {
+			throw new RuntimeException("Invalid band times");
+		}
+		bands.add(new Band(dayType, fromMinute, toMinute, toCents(rate)));
+	}
+
+
+    /**
+     * Sets the most that is charged for any single day.
+     * @param cap maximum daily charge, or a negative value for no cap
+     */
+	public void setDailyCap(float cap) {
+		this.dailyCapCents = cap < 0 ? -1 : Math.round(cap * 100);
+	}
+
+
+    /**
+     * Sets the least that is charged for any stay.
+     * @param minimum minimum charge
+     */
+	public void setMinimumCharge(float minimum) {
+		this.minimumChargeCents = toCents(minimum);
+	}
+
+
+    /**
+     * Compiles the rules and a holiday calendar into a tariff engine for a carpark in the
+     * given zone, tabulating its zone offsets around the given instant. Holidays are
+     * charged by the bands added for DayType.HOLIDAY and the default rate.
+     * @param zone
+     * @param holidays
+     * @param anchorMillis instant most stays are expected near, usually the current time
+     * @return tariff engine
+     */
+	public ITariffEngine compile(ZoneId zone, HolidayCalendar holidays, long anchorMillis) {
+		return new ClosedFormTariff(this, zone, holidays, anchorMillis);
+	}
+
+
+	DayType dayType(int dayOfWeek) {
+		return businessDays[dayOfWeek] ? DayType.BUSINESS : DayType.NON_BUSINESS;
+	}
+
+	int defaultCentsPerHour() {
+		return defaultCentsPerHour;
+	}
+
+	List<Band> bands() {
+		return Collections.unmodifiableList(bands);
+	}
+
+	long dailyCapCents() {
+		return dailyCapCents;
+	}
+
+	long minimumChargeCents() {
+		return minimumChargeCents;
+	}
+
+
+	private static int toCents(float amount) {
+		if (amount < 0) {
+			throw new RuntimeException("Tariff rates cannot be negative");
+		}
+		return Math.round(amount * 100);
+	}
+
+
+	//an hourly rate applying to part of one type of day
+	static class Band {
+		final DayType dayType;
+		final int fromMinute;
+		final int toMinute;
+		final int centsPerHour;
+
+		Band(DayType dayType, int fromMinute, int toMinute, int centsPerHour) {
+			this.dayType = dayType;
+			this.fromMinute = fromMinute;
+			this.toMinute = toMinute;
+			this.centsPerHour = centsPerHour;
+		}
+	}
+
+}
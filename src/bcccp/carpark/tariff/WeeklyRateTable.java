@@ -0,0 +1,174 @@
+package bcccp.carpark.tariff;
+
+import java.util.Arrays;
+
+/**
+ * A compiled tariff for one week, from Sunday 00:00 to the following Sunday 00:00.
+ * Holds the cumulative charge at every minute of the week, so the charge for any
+ * period within a day is two array reads and a subtraction. Holidays have a separate
+ * one-day table. The bands, day types, cap and minimum of the TariffRules it was
+ * compiled from are not consulted again.
+ *
+ * Charges are accumulated in rate-minutes (cents per hour times minutes), which keeps
+ * the table exact in integers; dividing by 60 gives cents. Tables are immutable, so
+ * a new table can be built and swapped in while paystations are reading the old one.
+ */
+public class WeeklyRateTable {
+
+	public static final int MINUTES_PER_DAY = 1440;
+	public static final int DAYS_PER_WEEK = 7;
+	public static final int MINUTES_PER_WEEK = DAYS_PER_WEEK * MINUTES_PER_DAY;
+
+	private final int[] cumulativeRateMinutes = new int[MINUTES_PER_WEEK + 1];
+	private final int[] cumulativeHolidayRateMinutes = new int[MINUTES_PER_DAY + 1];
+
+	//rounded full day charges, repeated twice so any run of up to seven days
+	//can be read as a difference of two prefix sums
+	private final long[] dayPrefixCents = new long[2 * DAYS_PER_WEEK + 1];
+
+	private final long dailyCapCents;
+	private final long minimumChargeCents;
+
+
+    /**
+     * Builds the table from hourly business hours and out of hours rates.
+     * @param bhRate charge per hour from 07:00 to 19:00 on business days
+     * @param oohRate charge per hour at all other times
+     */
+	public WeeklyRateTable(float bhRate, float oohRate) {
+		this(TariffRules.standard(bhRate, oohRate));
+	}
+
+
+    /**
+     * Compiles a table from a set of tariff rules.
+     * @param rules
+     */
+	public WeeklyRateTable(TariffRules rules) {
+		if (rules == null) {
+			throw new RuntimeException("Tariff rules are null");
+		}
+		this.dailyCapCents = rules.dailyCapCents();
+		this.minimumChargeCents = rules.minimumChargeCents();
+
+		DayType[] dayTypes = DayType.values();
+		int[][] minuteRates = new int[dayTypes.length][MINUTES_PER_DAY];
+		for (DayType dayType : dayTypes) {
+			Arrays.fill(minuteRates[dayType.ordinal()], rules.defaultCentsPerHour());
+		}
+		for (TariffRules.Band band : rules.bands()) {
+			Arrays.fill(minuteRates[band.dayType.ordinal()], band.fromMinute, band.toMinute, band.centsPerHour);
+		}
+
+		long total = 0;
+		int minute = 0;
+		for (int day = 0; day < DAYS_PER_WEEK; day++) {
+			int[] rates = minuteRates[rules.dayType(day).ordinal()];
+			for (int minuteOfDay = 0; minuteOfDay < MINUTES_PER_DAY; minuteOfDay++) {
+				total += rates[minuteOfDay];
+				if (total > Integer.MAX_VALUE) {
+					throw new RuntimeException("Tariff rates are too high");
+				}
+				cumulativeRateMinutes[++minute] = (int) total;
+			}
+		}
+
+		int[] holidayRates = minuteRates[DayType.HOLIDAY.ordinal()];
+		total = 0;
+		for (int minuteOfDay = 0; minuteOfDay < MINUTES_PER_DAY; minuteOfDay++) {
+			total += holidayRates[minuteOfDay];
+			if (total > Integer.MAX_VALUE) {
+				throw new RuntimeException("Tariff rates are too high");
+			}
+			cumulativeHolidayRateMinutes[minuteOfDay + 1] = (int) total;
+		}
+
+		for (int i = 0; i < 2 * DAYS_PER_WEEK; i++) {
+			dayPrefixCents[i + 1] = dayPrefixCents[i] + dayCents(i % DAYS_PER_WEEK, 0, MINUTES_PER_DAY);
+		}
+	}
+
+
+    /**
+     * Returns the charge in cents for the minutes [from, to) of a single day,
+     * rounded to the nearest cent and limited to the daily cap.
+     * @param dayOfWeek Sunday = 0
+     * @param from first minute of the day charged
+     * @param to minute of the day the charge ends, up to 1440
+     * @return charge in cents
+     */
+	public long dayCents(int dayOfWeek, int from, int to) {
+		return roundDayCents(dayRateMinutes(dayOfWeek, from, to));
+	}
+
+
+    /**
+     * Returns the unrounded charge for the minutes [from, to) of a single day, in
+     * rate-minutes. Parts of the same day can be added before rounding with roundDayCents.
+     * @param dayOfWeek Sunday = 0
+     * @param from first minute of the day charged
+     * @param to minute of the day the charge ends, up to 1440
+     * @return charge in cents per hour times minutes
+     */
+	public long dayRateMinutes(int dayOfWeek, int from, int to) {
+		int base = dayOfWeek * MINUTES_PER_DAY;
+		return (long) cumulativeRateMinutes[base + to] - cumulativeRateMinutes[base + from];
+	}
+
+
+    /**
+     * Returns the charge in cents for the minutes [from, to) of a public holiday,
+     * rounded to the nearest cent and limited to the daily cap.
+     * @param from first minute of the day charged
+     * @param to minute of the day the charge ends, up to 1440
+     * @return charge in cents
+     */
+	public long holidayCents(int from, int to) {
+		return roundDayCents(holidayRateMinutes(from, to));
+	}
+
+
+	public long holidayRateMinutes(int from, int to) {
+		return (long) cumulativeHolidayRateMinutes[to] - cumulativeHolidayRateMinutes[from];
+	}
+
+
+    /**
+     * Converts a day's charge in rate-minutes to cents, rounded to the nearest cent
+     * and limited to the daily cap.
+     * @param rateMinutes
+     * @return charge in cents
+     */
+	public long roundDayCents(long rateMinutes) {
+		return capped((rateMinutes + 30) / 60);
+	}
+
+
+    /**
+     * Returns the charge in cents for a run of whole days.
+     * @param firstDayOfWeek day of the week of the first day, Sunday = 0
+     * @param count number of whole days
+     * @return charge in cents
+     */
+	public long fullDaysCents(int firstDayOfWeek, long count) {
+		int remainder = (int) (count % DAYS_PER_WEEK);
+		return (count / DAYS_PER_WEEK) * dayPrefixCents[DAYS_PER_WEEK]
+				+ dayPrefixCents[firstDayOfWeek + remainder] - dayPrefixCents[firstDayOfWeek];
+	}
+
+
+	private long capped(long cents) {
+		return dailyCapCents < 0 ? cents : Math.min(cents, dailyCapCents);
+	}
+
+
+    /**
+     * Applies the minimum charge to the total charge for a stay.
+     * @param cents
+     * @return charge in cents
+     */
+	public long applyMinimum(long cents) {
+		return Math.max(cents, minimumChargeCents);
+	}
+
+}
@@ -0,0 +1,167 @@
+package bcccp.carpark.tariff;
+
+import java.time.LocalDate;
+
+/**
+ * A weekly rate table combined with a holiday calendar, compiled for every day of the
+ * years the calendar covers. Each day has a bit saying whether it is a holiday and an
+ * entry in a cumulative array of whole day charges, so the charge for any run of days
+ * is at most three prefix differences and never consults the calendar.
+ * Days outside the covered years have no holidays and are charged from the weekly table.
+ */
+public class YearlyRateTable {
+
+	private static final int DAYS_PER_WEEK = WeeklyRateTable.DAYS_PER_WEEK;
+	private static final int MINUTES_PER_DAY = WeeklyRateTable.MINUTES_PER_DAY;
+
+	private final WeeklyRateTable rates;
+	private final HolidayCalendar calendar;
+
+	//covered days are [firstDay, endDay) as epoch days
+	private final long firstDay;
+	private final long endDay;
+	private final long[] holidayBits;
+	private final long[] cumulativeDayCents;
+
+
+    /**
+     * Compiles a holiday calendar against a weekly rate table.
+     * @param rates
+     * @param calendar
+     */
+	public YearlyRateTable(WeeklyRateTable rates, HolidayCalendar calendar) {
+		if (rates == null || calendar == null) {
+			throw new RuntimeException("Rate table or holiday calendar is null");
+		}
+		this.rates = rates;
+		this.calendar = calendar;
+
+		if (calendar.getHolidays().isEmpty()) {
+			this.firstDay = 0;
+			this.endDay = 0;
+			this.holidayBits = new long[0];
+			this.cumulativeDayCents = new long[1];
+			return;
+		}
+
+		this.firstDay = LocalDate.of(calendar.getHolidays().first().getYear(), 1, 1).toEpochDay();
+		this.endDay = LocalDate.of(calendar.getHolidays().last().getYear() + 1, 1, 1).toEpochDay();
+		int days = (int) (endDay - firstDay);
+
+		this.holidayBits = new long[(days + 63) >>> 6];
+		for (LocalDate holiday : calendar.getHolidays()) {
+			int index = (int) (holiday.toEpochDay() - firstDay);
+			holidayBits[index >>> 6] |= 1L << index;
+		}
+
+		this.cumulativeDayCents = new long[days + 1];
+		long wholeHolidayCents = rates.holidayCents(0, MINUTES_PER_DAY);
+		for (int index = 0; index < days; index++) {
+			long dayCents = isHolidayIndex(index)
+					? wholeHolidayCents
+					: rates.dayCents(dayOfWeek(firstDay + index), 0, MINUTES_PER_DAY);
+			cumulativeDayCents[index + 1] = cumulativeDayCents[index] + dayCents;
+		}
+	}
+
+
+	public WeeklyRateTable getRates() {
+		return rates;
+	}
+
+	public HolidayCalendar getCalendar() {
+		return calendar;
+	}
+
+
+    /**
+     * Returns true if an epoch day is a holiday.
+     * @param epochDay local days since 1 January 1970
+     * @return boolean
+     */
+	public boolean isHoliday(long epochDay) {
+		return epochDay >= firstDay && epochDay < endDay && isHolidayIndex((int) (epochDay - firstDay));
+	}
+
+
+    /**
+     * Returns the charge in cents for the minutes [from, to) of a single day.
+     * @param epochDay local days since 1 January 1970
+     * @param from first minute of the day charged
+     * @param to minute of the day the charge ends, up to 1440
+     * @return charge in cents
+     */
+	public long dayCents(long epochDay, int from, int to) {
+		if (isHoliday(epochDay)) {
+			return rates.holidayCents(from, to);
+		}
+		return rates.dayCents(dayOfWeek(epochDay), from, to);
+	}
+
+
+	public long dayRateMinutes(long epochDay, int from, int to) {
+		if (isHoliday(epochDay)) {
+			return rates.holidayRateMinutes(from, to);
+		}
+		return rates.dayRateMinutes(dayOfWeek(epochDay), from, to);
+	}
+
+
+	public long roundDayCents(long rateMinutes) {
+		return rates.roundDayCents(rateMinutes);
+	}
+
+
+    /**
+     * Returns the charge in cents for a run of whole days.
+     * @param startDay first day, as local days since 1 January 1970
+     * @param count number of whole days
+     * @return charge in cents
+     */
+	public long fullDaysCents(long startDay, long count) {
+		long stopDay = startDay + count;
+		long charge = 0;
+
+		//days before the covered years
+		long before = Math.min(stopDay, firstDay) - startDay;
+		if (before > 0) {
+			charge += rates.fullDaysCents(dayOfWeek(startDay), before);
+		}
+
+		//days within the covered years
+		long from = Math.max(startDay, firstDay);
+		long to = Math.min(stopDay, endDay);
+		if (from < to) {
+			charge += cumulativeDayCents[(int) (to - firstDay)] - cumulativeDayCents[(int) (from - firstDay)];
+		}
+
+		//days after the covered years
+		long afterStart = Math.max(startDay, endDay);
+		if (afterStart < stopDay) {
+			charge += rates.fullDaysCents(dayOfWeek(afterStart), stopDay - afterStart);
+		}
+		return charge;
+	}
+
+
+	public long applyMinimum(long cents) {
+		return rates.applyMinimum(cents);
+	}
+
+
+    /**
+     * Returns the day of the week of an epoch day.
+     * @param epochDay local days since 1 January 1970
+     * @return day of week, Sunday = 0
+     */
+	public static int dayOfWeek(long epochDay) {
+		//1 January 1970 was a Thursday
+		return (int) Math.floorMod(epochDay + 4, (long) DAYS_PER_WEEK);
+	}
+
+
+	private boolean isHolidayIndex(int index) {
+		return (holidayBits[index >>> 6] & (1L << index)) != 0;
+	}
+
+}
@@ -0,0 +1,78 @@
+package bcccp.carpark.tariff;
+
+import java.time.ZoneId;
+
+/**
+ * The zone offset tables a calculation reads local times from. The table of the active
+ * year is built once and never replaced, so instants outside its window do not move it
+ * away from the instants most calls are about. Tables for instants outside it are kept
+ * in a short list, most recent first, dropping the oldest when it is full, so a run over
+ * old tickets builds a table once for each few years. Finding a cached table allocates
+ * nothing. Safe to share between threads.
+ */
+public class ZoneOffsetCache {
+
+	private static final int MAX_CACHED_TABLES = 8;
+
+	private final ZoneId zone;
+	private final ZoneOffsetTable active;
+	//replaced rather than changed, so a reader scans a list no other thread writes to
+	private volatile ZoneOffsetTable[] cached = new ZoneOffsetTable[0];
+
+
+    /**
+     * Builds the active table for the local year of an instant.
+     * @param zone
+     * @param anchorMillis instant most calls are expected near
+     */
+	public ZoneOffsetCache(ZoneId zone, long anchorMillis) {
+		this.active = ZoneOffsetTable.around(zone, anchorMillis);
+		this.zone = zone;
+	}
+
+
+	public ZoneId getZone() {
+		return zone;
+	}
+
+	public ZoneOffsetTable getActive() {
+		return active;
+	}
+
+
+    /**
+     * Returns a table covering an instant: the active table if it does, otherwise a
+     * cached table, or a new one around the local year of the instant.
+     * @param epochMillis
+     * @return table covering the instant
+     */
+	public ZoneOffsetTable at(long epochMillis) {
+		if (active.covers(epochMillis)) {
+			return active;
+		}
+		ZoneOffsetTable[] tables = this.cached;
+		for (ZoneOffsetTable table : tables) {
+			if (table.covers(epochMillis)) {
+				return table;
+			}
+		}
+		ZoneOffsetTable table = ZoneOffsetTable.around(zone, epochMillis);
+		//a table added by another thread meanwhile may be dropped, and is built again if needed
+		ZoneOffsetTable[] added = new ZoneOffsetTable[Math.min(tables.length + 1, MAX_CACHED_TABLES)];
+		added[0] = table;
+		System.arraycopy(tables, 0, added, 1, added.length - 1);
+		this.cached = added;
+		return table;
+	}
+
+
+    /**
+     * Returns the UTC offset at an instant.
+     * @param epochMillis
+     * @return offset in milliseconds
+     */
+	public int offsetMillis(long epochMillis) {
+		return at(epochMillis).offsetMillis(epochMillis);
+	}
+
+}
@@ -0,0 +1,122 @@
+package bcccp.carpark.tariff;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The UTC offsets of a time zone over a window of three years around an active year,
+ * with every offset transition in the window found in advance. Within the window the
+ * offset at an instant is a scan of the few transitions in a primitive array, instead
+ * of a search of the zone's rules. Tables are immutable; a tariff builds a new table
+ * when it is asked about an instant outside the window.
+ */
+public class ZoneOffsetTable {
+
+	private final ZoneId zone;
+	private final int activeYear;
+	private final long windowStart;
+	private final long windowEnd;
+
+	//transitions[i] is the instant offsets[i + 1] takes effect; offsets[0] applies from windowStart
+	private final long[] transitions;
+	private final int[] offsets;
+
+
+    /**
+     * Finds the offset transitions of a zone from the start of the year before the
+     * active year to the end of the year after it.
+     * @param zone
+     * @param activeYear
+     */
+	public ZoneOffsetTable(ZoneId zone, int activeYear) {
+		if (zone == null) {
+			throw new RuntimeException("Tariff time zone is null");
+		}
+		this.zone = zone;
+		this.activeYear = activeYear;
+		this.windowStart = LocalDate.of(activeYear - 1, 1, 1).atStartOfDay(zone).toInstant().toEpochMilli();
+		this.windowEnd = LocalDate.of(activeYear + 2, 1, 1).atStartOfDay(zone).toInstant().toEpochMilli();
+
+		ZoneRules rules = zone.getRules();
+		List<ZoneOffsetTransition> found = new ArrayList<>();
+		ZoneOffsetTransition next = rules.nextTransition(Instant.ofEpochMilli(windowStart));
+		while (next != null && next.toEpochSecond() * 1000 < windowEnd) {
+			found.add(next);
+			next = rules.nextTransition(next.getInstant());
+		}
+
+		this.transitions = new long[found.size()];
+		this.offsets = new int[found.size() + 1];
+		offsets[0] = rules.getOffset(Instant.ofEpochMilli(windowStart)).getTotalSeconds() * 1000;
+		for (int i = 0; i < found.size(); i++) {
+			transitions[i] = found.get(i).toEpochSecond() * 1000;
+			offsets[i + 1] = found.get(i).getOffsetAfter().getTotalSeconds() * 1000;
+		}
+	}
+
+
+    /**
+     * Builds the table whose active year is the local year of an instant.
+     * @param zone
+     * @param epochMillis
+     * @return table covering the instant
+     */
+	public static ZoneOffsetTable around(ZoneId zone, long epochMillis) {
+		return new ZoneOffsetTable(zone, Instant.ofEpochMilli(epochMillis).atZone(zone).getYear());
+	}
+
+
+	public ZoneId getZone() {
+		return zone;
+	}
+
+	public int getActiveYear() {
+		return activeYear;
+	}
+
+
+    /**
+     * Returns true if an instant is within the window of this table.
+     * @param epochMillis
+     * @return boolean
+     */
+	public boolean covers(long epochMillis) {
+		return epochMillis >= windowStart && epochMillis < windowEnd;
+	}
+
+
+    /**
+     * Returns the UTC offset at an instant within the window.
+     * @param epochMillis
+     * @return offset in milliseconds
+     */
+	public int offsetMillis(long epochMillis) {
+		int i = 0;
+		while (i < transitions.length && epochMillis >= transitions[i]) {
+			i++;
+		}
+		return offsets[i];
+	}
+
+
+    /**
+     * Returns the first transition after an instant within the window. When there
+     * is none, the end of the window is returned, as the offset beyond it is not known.
+     * @param epochMillis
+     * @return next transition in epoch milliseconds
+     */
+	public long nextTransition(long epochMillis) {
+		for (int i = 0; i < transitions.length; i++) {
+			if (transitions[i] > epochMillis) {
+				return transitions[i];
+			}
+		}
+		return windowEnd;
+	}
+
+}
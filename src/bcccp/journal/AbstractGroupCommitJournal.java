@@ -0,0 +1,262 @@
+package bcccp.journal;
+
+import bcccp.metrics.Histogram;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * The group commit shared by the journals. Writers hand their records to the journal,
+ * which stores them at once but does not force them to disk, and then wait; a flusher
+ * thread forces everything stored so far once a given number of records are waiting or
+ * the oldest has waited a given time, and then releases every writer in the batch. One
+ * fsync is shared by all the records that arrive while it is gathering, so durability
+ * does not limit how fast lanes can write.
+ *
+ * Each record is framed as its length, its bytes and a CRC32 of them, so that a torn
+ * record left by a crash can be recognised when the journal is read back. The time each
+ * record waits to become durable and the size of each batch are kept in histograms.
+ */
+public abstract class AbstractGroupCommitJournal implements IJournal {
+
+	protected static final int FRAME_BYTES = 8;
+	protected static final int MAX_RECORD_BYTES = 1 << 20;
+
+	private final String name;
+	private final int maxBatch;
+	private final long maxDelayNanos;
+	private Thread flusher;
+
+	private final Histogram writeLatency = new Histogram("write latency ns");
+	private final Histogram batchSizes = new Histogram("batch size");
+
+	//records waiting to be forced and sequence numbers, guarded by lock
+	private final Object lock = new Object();
+	private long[] pendingNanos = new long[64];
+	private int pendingCount = 0;
+	private long writtenSeq = 0;
+	private long durableSeq = 0;
+	private IOException failure;
+	private boolean closed = false;
+
+
+    /**
+     * @param name used to name the flusher thread and in errors
+     * @param maxBatch records that are forced to disk together at most
+     * @param maxDelayMillis longest a record waits for others to join its batch
+     */
+	protected AbstractGroupCommitJournal(String name, int maxBatch, long maxDelayMillis) {
+		if (maxBatch <= 0 || maxDelayMillis < 0) {
+			throw new RuntimeException("Invalid group commit settings");
+		}
+		this.name = name;
+		this.maxBatch = maxBatch;
+		this.maxDelayNanos = maxDelayMillis * 1000000;
+	}
+
+
+    /**
+     * Stores a framed record after those already stored, without forcing it to disk.
+     * Called with the journal's lock held, so records are stored one at a time.
+     * @param record
+     * @param crc CRC32 of the record
+     * @throws IOException
+     */
+	protected abstract void store(byte[] record, int crc) throws IOException;
+
+
+    /**
+     * Forces every record stored so far to disk. Called by the flusher without the
+     * journal's lock, so records may be stored while it runs.
+     * @throws IOException
+     */
+	protected abstract void force() throws IOException;
+
+
+    /**
+     * Releases the files once the flusher has stopped.
+     * @throws IOException
+     */
+	protected abstract void release() throws IOException;
+
+
+    /**
+     * Starts the flusher, once the journal has been read back and is ready to store.
+     */
+	protected void start() {
+		flusher = new Thread(this::flushBatches, "Journal flusher " + name);
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+
+    /**
+     * Adds a record and waits until it is on disk.
+     * @param record
+     */
+	@Override
+	public void append(byte[] record) {
+		awaitDurable(write(record));
+	}
+
+
+    /**
+     * Adds a record without waiting, so a caller can release its own locks first.
+     * @param record
+     * @return sequence number to wait for with awaitDurable
+     */
+	@Override
+	public long write(byte[] record) {
+		if (record.length == 0 || record.length > MAX_RECORD_BYTES) {
+			throw new RuntimeException("Invalid journal record length " + record.length);
+		}
+		int crc = crc(record, record.length);
+		synchronized (lock) {
+			if (failure != null) {
+				throw new RuntimeException("Journal write failed", failure);
+			}
+			if (closed) {
+				throw new RuntimeException("Journal is closed");
+			}
+			try {
+				store(record, crc);
+			} catch (IOException e) {
+				failure = e;
+				lock.notifyAll();
+				throw new RuntimeException("Journal write failed", e);
+			}
+			if (pendingCount == pendingNanos.length) {
+				pendingNanos = Arrays.copyOf(pendingNanos, 2 * pendingCount);
+			}
+			pendingNanos[pendingCount++] = System.nanoTime();
+			if (pendingCount == 1 || pendingCount >= maxBatch) {
+				lock.notifyAll();
+			}
+			return ++writtenSeq;
+		}
+	}
+
+
+    /**
+     * Waits until a record is on disk.
+     * @param seq sequence number returned by write
+     */
+	@Override
+	public void awaitDurable(long seq) {
+		synchronized (lock) {
+			boolean interrupted = false;
+			while (durableSeq < seq && failure == null) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			if (durableSeq < seq) {
+				throw new RuntimeException("Journal write failed", failure);
+			}
+		}
+	}
+
+
+    /**
+     * Forces any pending records to disk, stops the flusher and releases the files.
+     */
+	@Override
+	public void close() {
+		synchronized (lock) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			lock.notifyAll();
+		}
+		try {
+			flusher.join();
+			release();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot close journal " + name, e);
+		}
+	}
+
+
+	@Override
+	public Histogram getWriteLatency() {
+		return writeLatency;
+	}
+
+	@Override
+	public Histogram getBatchSizes() {
+		return batchSizes;
+	}
+
+
+	//the lock that store is called with, for subclasses that change where records go
+	protected final Object getLock() {
+		return lock;
+	}
+
+
+	protected static int crc(byte[] bytes, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, length);
+		return (int) crc.getValue();
+	}
+
+
+	private void flushBatches() {
+		while (true) {
+			long[] batchNanos;
+			long seq;
+			synchronized (lock) {
+				try {
+					while (pendingCount == 0 && !closed) {
+						lock.wait();
+					}
+					//give the batch time to fill, unless closing
+					while (pendingCount < maxBatch && !closed) {
+						long remaining = pendingNanos[0] + maxDelayNanos - System.nanoTime();
+						if (remaining <= 0) {
+							break;
+						}
+						lock.wait(remaining / 1000000, (int) (remaining % 1000000));
+					}
+				} catch (InterruptedException e) {
+					closed = true;
+				}
+				if (pendingCount == 0 || failure != null) {
+					return;
+				}
+				batchNanos = Arrays.copyOf(pendingNanos, pendingCount);
+				seq = writtenSeq;
+				pendingCount = 0;
+			}
+
+			try {
+				force();
+			} catch (IOException e) {
+				synchronized (lock) {
+					failure = e;
+					lock.notifyAll();
+				}
+				return;
+			}
+
+			long now = System.nanoTime();
+			for (long written : batchNanos) {
+				writeLatency.record(now - written);
+			}
+			batchSizes.record(batchNanos.length);
+			synchronized (lock) {
+				durableSeq = seq;
+				lock.notifyAll();
+			}
+		}
+	}
+
+}
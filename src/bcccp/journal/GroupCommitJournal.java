@@ -0,0 +1,107 @@
+package bcccp.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A journal in a single append-only file. Each record is written to the file as it is
+ * added and the file is forced to disk once for each batch.
+ *
+ * When a journal is opened its records are read back in order and a torn or corrupt
+ * tail, left by a crash part way through a write, is cut off.
+ */
+public class GroupCommitJournal extends AbstractGroupCommitJournal {
+
+	private final Path file;
+	private final FileChannel channel;
+
+
+    /**
+     * Opens a journal, creating the file if there is none, and reads back the records
+     * already in it.
+     * @param file
+     * @param reader given each record in order, or null to skip reading
+     * @param maxBatch records that are forced to disk together at most
+     * @param maxDelayMillis longest a record waits for others to join its batch
+     */
+	public GroupCommitJournal(Path file, IJournalReader reader, int maxBatch, long maxDelayMillis) {
+		super(String.valueOf(file), maxBatch, maxDelayMillis);
+		if (file == null) {
+			throw new RuntimeException("journal file is null");
+		}
+		this.file = file;
+		try {
+			this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			long end = recover(reader);
+			channel.truncate(end);
+			channel.position(end);
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot open journal " + file, e);
+		}
+		start();
+	}
+
+
+	public Path getFile() {
+		return file;
+	}
+
+
+	@Override
+	protected void store(byte[] record, int crc) throws IOException {
+		ByteBuffer frame = ByteBuffer.allocate(record.length + FRAME_BYTES);
+		frame.putInt(record.length).put(record).putInt(crc).flip();
+		while (frame.hasRemaining()) {
+			channel.write(frame);
+		}
+	}
+
+
+	@Override
+	protected void force() throws IOException {
+		channel.force(false);
+	}
+
+
+	@Override
+	protected void release() throws IOException {
+		channel.close();
+	}
+
+
+	//reads the records in the file, returning the position after the last good one
+	private long recover(IJournalReader reader) throws IOException {
+		long size = channel.size();
+		ByteBuffer header = ByteBuffer.allocate(4);
+		long position = 0;
+		while (position + FRAME_BYTES <= size) {
+			header.clear();
+			channel.read(header, position);
+			int length = header.getInt(0);
+			if (length <= 0 || length > MAX_RECORD_BYTES || position + FRAME_BYTES + length > size) {
+				break;
+			}
+			byte[] bytes = new byte[length + 4];
+			ByteBuffer record = ByteBuffer.wrap(bytes);
+			while (record.hasRemaining()) {
+				if (channel.read(record, position + 4 + record.position()) < 0) {
+					break;
+				}
+			}
+			if (record.getInt(length) != crc(bytes, length)) {
+				break;
+			}
+			if (reader != null) {
+				record.position(0).limit(length);
+				reader.read(record.slice());
+			}
+			position += FRAME_BYTES + length;
+		}
+		return position;
+	}
+
+}
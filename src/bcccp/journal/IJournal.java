@@ -0,0 +1,19 @@
+package bcccp.journal;
+
+import bcccp.metrics.Histogram;
+import java.io.Closeable;
+
+public interface IJournal extends Closeable {
+
+	public long write(byte[] record);
+	public void awaitDurable(long seq);
+	public void append(byte[] record);
+
+	public Histogram getWriteLatency();
+	public Histogram getBatchSizes();
+
+	@Override
+	public void close();
+
+
+}
@@ -0,0 +1,8 @@
+package bcccp.journal;
+
+public interface IJournalOpener {
+
+	public IJournal open(IJournalReader reader);
+
+
+}
@@ -0,0 +1,10 @@
+package bcccp.journal;
+
+import java.nio.ByteBuffer;
+
+public interface IJournalReader {
+
+	public void read(ByteBuffer record);
+
+
+}
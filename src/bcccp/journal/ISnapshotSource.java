@@ -0,0 +1,8 @@
+package bcccp.journal;
+
+public interface ISnapshotSource {
+
+	public void writeSnapshot(ISnapshotWriter writer);
+
+
+}
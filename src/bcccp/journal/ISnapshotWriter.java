@@ -0,0 +1,8 @@
+package bcccp.journal;
+
+public interface ISnapshotWriter {
+
+	public void add(byte[] record);
+
+
+}
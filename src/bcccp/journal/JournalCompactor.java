@@ -0,0 +1,349 @@
+package bcccp.journal;
+
+import bcccp.metrics.Histogram;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps a MappedSegmentJournal from growing without bound by saving snapshots of the
+ * state it records and deleting the segments the snapshot covers. Opening the journal
+ * through a compactor loads the newest snapshot and then reads back only the segments
+ * written after it, so recovery is a snapshot load plus a short replay.
+ *
+ * A compaction rolls the journal to a new segment, asks the source for its state, and
+ * writes it to a snapshot file, which is forced and renamed into place before older
+ * snapshots and segments are deleted. Writers carry on while this happens, so a snapshot
+ * may already hold changes also recorded after its segment; sources read back their own
+ * records over a snapshot in a way that allows for this. Snapshot and compaction times
+ * are kept in histograms.
+ */
+public class JournalCompactor implements IJournalOpener {
+
+	private static final int MAGIC = 0x534e4150;
+	private static final String PREFIX = "snapshot-";
+	private static final String SUFFIX = ".snapshot";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final int DEFAULT_MAX_BATCH = 64;
+	private static final long DEFAULT_MAX_DELAY = 2;
+
+	private final Path directory;
+	private final int segmentBytes;
+	private final int maxBatch;
+	private final long maxDelayMillis;
+	private MappedSegmentJournal journal;
+
+	private final Histogram snapshotMillis = new Histogram("snapshot ms");
+	private final Histogram compactionMillis = new Histogram("compaction ms");
+	private long lastSnapshotRecords = 0;
+	private long lastSnapshotBytes = 0;
+	private long segmentsDeleted = 0;
+
+	private ScheduledExecutorService executor;
+
+
+    /**
+     * Creates a compactor for a journal with 64 MB segments, forcing up to 64 records at
+     * once, at most 2 ms apart.
+     * @param directory holding the segments and snapshots
+     */
+	public JournalCompactor(Path directory) {
+		this(directory, MappedSegmentJournal.DEFAULT_SEGMENT_BYTES, DEFAULT_MAX_BATCH, DEFAULT_MAX_DELAY);
+	}
+
+
+    /**
+     * Creates a compactor; the journal is opened by open.
+     * @param directory holding the segments and snapshots
+     * @param segmentBytes size of each segment file
+     * @param maxBatch records that are forced to disk together at most
+     * @param maxDelayMillis longest a record waits for others to join its batch
+     */
+	public JournalCompactor(Path directory, int segmentBytes, int maxBatch, long maxDelayMillis) {
+		if (directory == null) {
+			throw new RuntimeException("journal directory is null");
+		}
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		this.maxBatch = maxBatch;
+		this.maxDelayMillis = maxDelayMillis;
+	}
+
+
+    /**
+     * Loads the newest snapshot into a reader, then opens the journal and reads back
+     * the segments written since.
+     * @param reader given the snapshot's records and then the journal's
+     * @return journal
+     */
+	@Override
+	public synchronized IJournal open(IJournalReader reader) {
+		if (journal != null) {
+			throw new RuntimeException("Journal " + directory + " is already open");
+		}
+		long marker;
+		try {
+			Files.createDirectories(directory);
+			marker = loadSnapshot(reader);
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot load snapshot from " + directory, e);
+		}
+		journal = new MappedSegmentJournal(directory, reader, segmentBytes, maxBatch, maxDelayMillis, marker);
+		return journal;
+	}
+
+
+    /**
+     * Saves a snapshot of a source and deletes the segments and snapshots it replaces.
+     * @param source
+     */
+	public synchronized void compact(ISnapshotSource source) {
+		if (journal == null) {
+			throw new RuntimeException("Journal " + directory + " is not open");
+		}
+		long start = System.nanoTime();
+		long marker = journal.roll();
+		Path snapshot = directory.resolve(String.format("%s%016x%s", PREFIX, marker, SUFFIX));
+		Path temp = directory.resolve(snapshot.getFileName() + TEMP_SUFFIX);
+		SnapshotFileWriter writer = null;
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				writer = new SnapshotFileWriter(channel, marker);
+				source.writeSnapshot(writer);
+				writer.finish();
+				channel.force(true);
+			}
+			Files.move(temp, snapshot, StandardCopyOption.ATOMIC_MOVE);
+			forceDirectory();
+		} catch (IOException | RuntimeException e) {
+			try {
+				Files.deleteIfExists(temp);
+			} catch (IOException ignored) {
+				//the next compaction writes over it
+			}
+			throw new RuntimeException("Cannot write snapshot " + snapshot, e);
+		}
+		long snapshotted = System.nanoTime();
+
+		try {
+			for (Path older : listSnapshots()) {
+				if (!older.equals(snapshot)) {
+					Files.delete(older);
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot delete snapshots in " + directory, e);
+		}
+		int deleted = journal.deleteSegmentsBefore(marker);
+		long compacted = System.nanoTime();
+
+		snapshotMillis.record((snapshotted - start) / 1000000);
+		compactionMillis.record((compacted - start) / 1000000);
+		lastSnapshotRecords = writer.count;
+		lastSnapshotBytes = writer.bytes;
+		segmentsDeleted += deleted;
+	}
+
+
+    /**
+     * Compacts a source on a background thread at a fixed interval until stopped.
+     * @param source
+     * @param periodMillis
+     */
+	public synchronized void start(ISnapshotSource source, long periodMillis) {
+		if (executor != null) {
+			throw new RuntimeException("JournalCompactor already started");
+		}
+		if (periodMillis <= 0) {
+			throw new RuntimeException("Invalid compaction period");
+		}
+		executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "Journal compactor " + directory.getFileName());
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleWithFixedDelay(() -> {
+			try {
+				compact(source);
+			} catch (RuntimeException e) {
+				//the journal is still complete, so the next compaction can try again
+				e.printStackTrace();
+			}
+		}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+	}
+
+
+	public synchronized void stop() {
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+
+	public synchronized MappedSegmentJournal getJournal() {
+		return journal;
+	}
+
+	public Histogram getSnapshotMillis() {
+		return snapshotMillis;
+	}
+
+	public Histogram getCompactionMillis() {
+		return compactionMillis;
+	}
+
+	public synchronized long getLastSnapshotRecords() {
+		return lastSnapshotRecords;
+	}
+
+	public synchronized long getLastSnapshotBytes() {
+		return lastSnapshotBytes;
+	}
+
+	public synchronized long getSegmentsDeleted() {
+		return segmentsDeleted;
+	}
+
+
+	//gives the newest snapshot's records to a reader, returning the segment it was taken at, or 0
+	private long loadSnapshot(IJournalReader reader) throws IOException {
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + TEMP_SUFFIX)) {
+			for (Path temp : stream) {
+				Files.delete(temp);
+			}
+		}
+		List<Path> snapshots = listSnapshots();
+		if (snapshots.isEmpty()) {
+			return 0;
+		}
+		Path snapshot = snapshots.get(snapshots.size() - 1);
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		//checked in full before any record is given out, as the segments before it are gone
+		if (buffer.limit() < 12 || buffer.getInt(0) != MAGIC) {
+			throw new RuntimeException("Snapshot " + snapshot + " is corrupt");
+		}
+		long marker = buffer.getLong(4);
+		CRC32 crc = new CRC32();
+		int position = 12;
+		long count = 0;
+		while (true) {
+			if (position + 4 > buffer.limit()) {
+				throw new RuntimeException("Snapshot " + snapshot + " is incomplete");
+			}
+			int length = buffer.getInt(position);
+			if (length == 0) {
+				break;
+			}
+			if (length < 0 || position + 8 + length > buffer.limit()) {
+				throw new RuntimeException("Snapshot " + snapshot + " is corrupt");
+			}
+			ByteBuffer record = buffer.duplicate();
+			record.limit(position + 4 + length).position(position + 4);
+			crc.reset();
+			crc.update(record);
+			if ((int) crc.getValue() != buffer.getInt(position + 4 + length)) {
+				throw new RuntimeException("Snapshot " + snapshot + " is corrupt");
+			}
+			position += 8 + length;
+			count++;
+		}
+		if (position + 12 != buffer.limit() || buffer.getLong(position + 4) != count) {
+			throw new RuntimeException("Snapshot " + snapshot + " is incomplete");
+		}
+
+		position = 12;
+		for (long i = 0; i < count; i++) {
+			int length = buffer.getInt(position);
+			ByteBuffer record = buffer.duplicate();
+			record.limit(position + 4 + length).position(position + 4);
+			reader.read(record.slice());
+			position += 8 + length;
+		}
+		return marker;
+	}
+
+
+	private List<Path> listSnapshots() throws IOException {
+		List<Path> snapshots = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+			for (Path snapshot : stream) {
+				snapshots.add(snapshot);
+			}
+		}
+		Collections.sort(snapshots);
+		return snapshots;
+	}
+
+
+	private void forceDirectory() {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			//not every platform can open a directory
+		}
+	}
+
+
+	//writes records framed as in the journal, then a zero length and the number of records
+	private static class SnapshotFileWriter implements ISnapshotWriter {
+
+		private final DataOutputStream out;
+		private final CRC32 crc = new CRC32();
+		long count = 0;
+		long bytes = 12;
+
+		SnapshotFileWriter(FileChannel channel, long marker) throws IOException {
+			out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+			out.writeInt(MAGIC);
+			out.writeLong(marker);
+		}
+
+		@Override
+		public void add(byte[] record) {
+			if (record.length == 0) {
+				throw new RuntimeException("Invalid snapshot record length 0");
+			}
+			crc.reset();
+			crc.update(record, 0, record.length);
+			try {
+				out.writeInt(record.length);
+				out.write(record);
+				out.writeInt((int) crc.getValue());
+			} catch (IOException e) {
+				throw new RuntimeException("Cannot write snapshot record", e);
+			}
+			count++;
+			bytes += 8 + record.length;
+		}
+
+		void finish() throws IOException {
+			out.writeInt(0);
+			out.writeLong(count);
+			out.flush();
+			bytes += 12;
+		}
+	}
+
+}
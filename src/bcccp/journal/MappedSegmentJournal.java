@@ -0,0 +1,370 @@
+package bcccp.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A journal kept in a directory of fixed size segment files that are mapped into memory.
+ * Records are copied into the mapping of the newest segment, and each batch is forced to
+ * disk with one msync; when a record does not fit in what is left of a segment, the rest
+ * is left zeroed and a new segment is started.
+ *
+ * Opening a journal maps each segment in turn and reads its records straight out of the
+ * mapping, so reading back makes no system call per record. The first record that is
+ * torn or fails its CRC ends the journal: it can only have been written after the last
+ * batch that was forced, so it and anything after it, including later segments, were
+ * never acknowledged and are cleared.
+ *
+ * A journal can be rolled to a new segment at any time, so that everything written
+ * from then on is in that segment or later ones, and the segments before it deleted
+ * once their records have been saved elsewhere, as by a JournalCompactor.
+ */
+public class MappedSegmentJournal extends AbstractGroupCommitJournal {
+
+	public static final int DEFAULT_SEGMENT_BYTES = 64 << 20;
+	private static final int MIN_SEGMENT_BYTES = 4096;
+	private static final int DEFAULT_MAX_BATCH = 64;
+	private static final long DEFAULT_MAX_DELAY = 2;
+
+	private static final String PREFIX = "segment-";
+	private static final String SUFFIX = ".journal";
+
+	private final Path directory;
+	private final int segmentBytes;
+
+	//guarded by the journal's lock, and by segments when changed
+	private long segmentNo;
+	private MappedByteBuffer current;
+
+	//segments written to since the last force, guarded by itself
+	private final List<MappedByteBuffer> unforced = new ArrayList<>();
+
+
+    /**
+     * Opens a journal with 64 MB segments, forcing up to 64 records at once, at most
+     * 2 ms apart.
+     * @param directory
+     * @param reader given each record in order, or null to skip reading
+     */
+	public MappedSegmentJournal(Path directory, IJournalReader reader) {
+		this(directory, reader, DEFAULT_SEGMENT_BYTES, DEFAULT_MAX_BATCH, DEFAULT_MAX_DELAY);
+	}
+
+
+    /**
+     * Opens a journal, creating the directory if there is none, and reads back the
+     * records already in it.
+     * @param directory
+     * @param reader given each record in order, or null to skip reading
+     * @param segmentBytes size of each segment file
+     * @param maxBatch records that are forced to disk together at most
+     * @param maxDelayMillis longest a record waits for others to join its batch
+     */
+	public MappedSegmentJournal(Path directory, IJournalReader reader, int segmentBytes,
+			int maxBatch, long maxDelayMillis) {
+		this(directory, reader, segmentBytes, maxBatch, maxDelayMillis, 0);
+	}
+
+
+    /**
+     * Opens a journal, reading back the records from a given segment on. Segments
+     * before it, left by a compaction that did not finish, are deleted.
+     * @param directory
+     * @param reader given each record in order, or null to skip reading
+     * @param segmentBytes size of each segment file
+     * @param maxBatch records that are forced to disk together at most
+     * @param maxDelayMillis longest a record waits for others to join its batch
+     * @param firstSegment number of the first segment to read
+     */
+	public MappedSegmentJournal(Path directory, IJournalReader reader, int segmentBytes,
+			int maxBatch, long maxDelayMillis, long firstSegment) {
+		super(String.valueOf(directory), maxBatch, maxDelayMillis);
+		if (directory == null) {
+			throw new RuntimeException("journal directory is null");
+		}
+		if (segmentBytes < MIN_SEGMENT_BYTES) {
+			throw new RuntimeException("Invalid segment size " + segmentBytes);
+		}
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		try {
+			Files.createDirectories(directory);
+			for (Path segment : listSegments(directory)) {
+				if (segmentNo(segment) < firstSegment) {
+					Files.delete(segment);
+				}
+			}
+			recover(reader, firstSegment);
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot open journal " + directory, e);
+		}
+		start();
+	}
+
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+
+    /**
+     * Returns the segment files in order.
+     * @return paths
+     */
+	public List<Path> getSegments() {
+		try {
+			return listSegments(directory);
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot list journal " + directory, e);
+		}
+	}
+
+
+    /**
+     * Starts a new segment, unless nothing has been written to the current one.
+     * @return number of the segment that records written from now on start in
+     */
+	public long roll() {
+		synchronized (getLock()) {
+			if (current.position() > 0) {
+				try {
+					nextSegment();
+				} catch (IOException e) {
+					throw new RuntimeException("Cannot start a journal segment in " + directory, e);
+				}
+			}
+			return segmentNo;
+		}
+	}
+
+
+    /**
+     * Deletes the segments before a given one, never the segment being written.
+     * @param segment number of the first segment to keep
+     * @return number of segments deleted
+     */
+	public int deleteSegmentsBefore(long segment) {
+		int deleted = 0;
+		try {
+			for (Path path : listSegments(directory)) {
+				long number = segmentNo(path);
+				synchronized (getLock()) {
+					if (number >= segment || number >= segmentNo) {
+						continue;
+					}
+				}
+				Files.delete(path);
+				deleted++;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot delete journal segments in " + directory, e);
+		}
+		return deleted;
+	}
+
+
+	@Override
+	protected void store(byte[] record, int crc) throws IOException {
+		if (record.length + FRAME_BYTES > segmentBytes) {
+			throw new RuntimeException("Journal record is larger than a segment");
+		}
+		if (current.remaining() < record.length + FRAME_BYTES) {
+			nextSegment();
+		}
+		current.putInt(record.length).put(record).putInt(crc);
+	}
+
+
+	//called with the journal's lock held
+	private void nextSegment() throws IOException {
+		MappedByteBuffer next = createSegment(segmentNo + 1);
+		synchronized (unforced) {
+			unforced.add(current);
+			current = next;
+			segmentNo++;
+		}
+	}
+
+
+	@Override
+	protected void force() throws IOException {
+		List<MappedByteBuffer> buffers;
+		synchronized (unforced) {
+			buffers = new ArrayList<>(unforced);
+			buffers.add(current);
+			unforced.clear();
+		}
+		//older segments first, so no record is durable unless all before it are
+		for (MappedByteBuffer buffer : buffers) {
+			buffer.force();
+		}
+	}
+
+
+	@Override
+	protected void release() throws IOException {
+		force();
+	}
+
+
+	//reads back every segment, clearing anything after the last good record
+	private void recover(IJournalReader reader, long firstSegment) throws IOException {
+		List<Path> segments = listSegments(directory);
+		if (segments.isEmpty()) {
+			segmentNo = firstSegment;
+			current = createSegment(firstSegment);
+			return;
+		}
+
+		int last = segments.size() - 1;
+		for (int i = 0; i <= last; i++) {
+			Path segment = segments.get(i);
+			MappedByteBuffer buffer = map(segment, i == last);
+			int end = readRecords(buffer, reader);
+			if (end < 0) {
+				//a bad record: the journal ends here
+				end = -end - 1;
+				clear(buffer, end);
+				for (int j = i + 1; j <= last; j++) {
+					Files.delete(segments.get(j));
+				}
+				last = i;
+			}
+			if (i == last) {
+				if (buffer.isReadOnly()) {
+					buffer = map(segment, true);
+				}
+				clear(buffer, end);
+				buffer.position(end);
+				segmentNo = segmentNo(segment);
+				current = buffer;
+			}
+		}
+	}
+
+
+	//reads the records of a segment, returning the position after the last,
+	//or -1 - position if it ends at a record that is torn or corrupt
+	private static int readRecords(ByteBuffer buffer, IJournalReader reader) {
+		CRC32 crc = new CRC32();
+		int limit = buffer.limit();
+		int position = 0;
+		while (position + FRAME_BYTES <= limit) {
+			int length = buffer.getInt(position);
+			if (length == 0) {
+				return position;
+			}
+			if (length < 0 || length > MAX_RECORD_BYTES || position + FRAME_BYTES + length > limit) {
+				return -position - 1;
+			}
+			ByteBuffer record = buffer.duplicate();
+			record.limit(position + 4 + length).position(position + 4);
+			crc.reset();
+			crc.update(record);
+			if ((int) crc.getValue() != buffer.getInt(position + 4 + length)) {
+				return -position - 1;
+			}
+			if (reader != null) {
+				record.position(position + 4);
+				reader.read(record.slice());
+			}
+			position += FRAME_BYTES + length;
+		}
+		return position;
+	}
+
+
+	//zeroes a segment from a position, writing only where it is not zero already
+	private static void clear(MappedByteBuffer buffer, int from) {
+		if (buffer.isReadOnly()) {
+			return;
+		}
+		boolean changed = false;
+		int position = from;
+		for (; position < buffer.limit() && (position & 7) != 0; position++) {
+			if (buffer.get(position) != 0) {
+				buffer.put(position, (byte) 0);
+				changed = true;
+			}
+		}
+		for (; position + 8 <= buffer.limit(); position += 8) {
+			if (buffer.getLong(position) != 0) {
+				buffer.putLong(position, 0);
+				changed = true;
+			}
+		}
+		for (; position < buffer.limit(); position++) {
+			if (buffer.get(position) != 0) {
+				buffer.put(position, (byte) 0);
+				changed = true;
+			}
+		}
+		if (changed) {
+			buffer.force();
+		}
+	}
+
+
+	private MappedByteBuffer createSegment(long number) throws IOException {
+		Path segment = directory.resolve(String.format("%s%016x%s", PREFIX, number, SUFFIX));
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			//mapping past the end of the file extends it with zeroes
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+			channel.force(true);
+		}
+		forceDirectory();
+		return buffer;
+	}
+
+
+	private static MappedByteBuffer map(Path segment, boolean writable) throws IOException {
+		try (FileChannel channel = writable
+				? FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)
+				: FileChannel.open(segment, StandardOpenOption.READ)) {
+			return channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+					0, channel.size());
+		}
+	}
+
+
+	//makes a new segment's directory entry durable, where the platform allows it
+	private void forceDirectory() {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			//not every platform can open a directory
+		}
+	}
+
+
+	static List<Path> listSegments(Path directory) throws IOException {
+		List<Path> segments = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+			for (Path segment : stream) {
+				segments.add(segment);
+			}
+		}
+		//names hold fixed width numbers, so they sort in order
+		Collections.sort(segments);
+		return segments;
+	}
+
+
+	private static long segmentNo(Path segment) {
+		String name = segment.getFileName().toString();
+		return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()), 16);
+	}
+
+}
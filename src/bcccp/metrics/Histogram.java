@@ -0,0 +1,126 @@
+package bcccp.metrics;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of non-negative long values, such as latencies in nanoseconds or batch
+ * sizes, in a fixed number of buckets. Values below 16 are counted exactly; above that
+ * each power of two is split into 8 buckets, so a percentile is reported to within an
+ * eighth of its value. Recording takes a short lock and never allocates.
+ */
+public class Histogram {
+
+	private static final int EXACT = 16;
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = EXACT + (63 - 4) * SUB_BUCKETS;
+
+	private final String name;
+	private final long[] counts = new long[BUCKETS];
+	private long count = 0;
+	private long sum = 0;
+	private long max = 0;
+
+
+	public Histogram(String name) {
+		this.name = name;
+	}
+
+
+    /**
+     * Counts a value. Negative values are counted as 0.
+     * @param value
+     */
+	public synchronized void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts[bucket(value)]++;
+		count++;
+		sum += value;
+		if (value > max) {
+			max = value;
+		}
+	}
+
+
+	public String getName() {
+		return name;
+	}
+
+	public synchronized long getCount() {
+		return count;
+	}
+
+	public synchronized long getMax() {
+		return max;
+	}
+
+	public synchronized double getMean() {
+		return count == 0 ? 0 : (double) sum / count;
+	}
+
+
+    /**
+     * Returns a value that the given percentage of recorded values are at or below,
+     * rounded up to the top of its bucket but never above the largest value recorded.
+     * @param percentile from 0 to 100
+     * @return value, or 0 if nothing has been recorded
+     */
+	public synchronized long getValueAtPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new RuntimeException("Invalid percentile");
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(highestValue(i), max);
+			}
+		}
+		return max;
+	}
+
+
+	public synchronized void reset() {
+		Arrays.fill(counts, 0);
+		count = 0;
+		sum = 0;
+		max = 0;
+	}
+
+
+	@Override
+	public synchronized String toString() {
+		return name + ": count=" + count + ", mean=" + Math.round(getMean())
+				+ ", p50=" + getValueAtPercentile(50) + ", p99=" + getValueAtPercentile(99)
+				+ ", p99.9=" + getValueAtPercentile(99.9) + ", max=" + max;
+	}
+
+
+	private static int bucket(long value) {
+		if (value < EXACT) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return EXACT + (exponent - 4) * SUB_BUCKETS + sub;
+	}
+
+
+	//largest value counted in a bucket
+	private static long highestValue(int bucket) {
+		if (bucket < EXACT) {
+			return bucket;
+		}
+		int exponent = (bucket - EXACT) / SUB_BUCKETS + 4;
+		int sub = (bucket - EXACT) % SUB_BUCKETS;
+		long lowest = (long) (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+		return lowest + (1L << (exponent - SUB_BITS)) - 1;
+	}
+
+}
@@ -1,5 +1,7 @@
 package bcccp.tickets.adhoc;
 
+import bcccp.time.IClock;
+import bcccp.time.SystemClock;
 import java.util.Date;
 
 public class AdhocTicket implements IAdhocTicket {
@@ -9,9 +11,11 @@ public class AdhocTicket implements IAdhocTicket {
 	private long entryDateTime = 0;
 	private long paidDateTime = 0;
 	private long exitDateTime = 0;
-	private float charge = 0;
+	private long charge = 0;
 	private String barcode;
         private STATE state;
+        private final IClock clock;
+        private IAdhocTicketObserver observer;
         
         private enum STATE {ISSUED, CURRENT, PAID, EXITED };
 
@@ -19,6 +23,12 @@ public class AdhocTicket implements IAdhocTicket {
 	
         //Adhoc ticket constructor, assigning values and setting enter time to current time
 	public AdhocTicket(String carparkId, int ticketNo, String barcode) {
+            this(carparkId, ticketNo, barcode, SystemClock.INSTANCE);
+	}
+
+
+        //Adhoc ticket constructor, reading the current time from the given clock
+	public AdhocTicket(String carparkId, int ticketNo, String barcode, IClock clock) {
             if (carparkId.length() == 0 || carparkId == null) {
                 throw new RuntimeException("carparkId is empty");
             }
@@ -28,11 +38,15 @@ public class AdhocTicket implements IAdhocTicket {
             if (barcode.length() == 0 || barcode == null) {
                 throw new RuntimeException("barcode is empty");
             }
+            if (clock == null) {
+                throw new RuntimeException("clock is null");
+            }
             
             this.carparkId = carparkId;
             this.ticketNo = ticketNo;
             this.barcode = barcode;
             this.state = STATE.ISSUED;
+            this.clock = clock;
 
 	}
 
@@ -64,8 +78,12 @@ public class AdhocTicket implements IAdhocTicket {
             if(dateTime <= 0) {
                 throw new RuntimeException("Entry Datetime is less than zero");
             }
+                long previousEntryDateTime = this.entryDateTime;
                 this.entryDateTime = dateTime;	
                 this.state = STATE.CURRENT;
+                if (observer != null) {
+                    observer.ticketEntered(this, previousEntryDateTime);
+                }
 	}
 
 
@@ -83,9 +101,9 @@ public class AdhocTicket implements IAdhocTicket {
 	}
 
 
-        //assigns the paid charge to the Ticket from given float and exit long
+        //assigns the paid charge in cents to the Ticket from given long and exit long
 	@Override
-	public void pay(long dateTime, float charge) {
+	public void pay(long dateTime, long charge) {
             if (dateTime <= this.entryDateTime) {
                 throw new RuntimeException("Paid date time is less than or equal to entry date time");
             }
@@ -99,7 +117,7 @@ public class AdhocTicket implements IAdhocTicket {
         //returns the paidDateTime long
 	@Override
 	public long getPaidDateTime() {
-            if (this.state == STATE.PAID && System.currentTimeMillis() - paidDateTime > 900000){
+            if (this.state == STATE.PAID && clock.currentTimeMillis() - paidDateTime > 900000){
                 this.state = STATE.CURRENT;
             }
             return paidDateTime;
@@ -116,9 +134,9 @@ public class AdhocTicket implements IAdhocTicket {
 	}
 
 
-        //returns the assigned charge of the ticket, not used for paying of ticket. 
+        //returns the assigned charge of the ticket in cents, not used for paying of ticket. 
 	@Override
-	public float getCharge() {
+	public long getCharge() {
 		return charge;
 	}
 
@@ -132,6 +150,9 @@ public class AdhocTicket implements IAdhocTicket {
             
             this.exitDateTime = dateTime;
             this.state = STATE.EXITED;
+            if (observer != null) {
+                observer.ticketExited(this);
+            }
 
 	}
 
@@ -149,6 +170,12 @@ public class AdhocTicket implements IAdhocTicket {
             return this.state == STATE.EXITED;
 	}
 
+        //sets the observer told when the ticket enters and exits, or null for none.
+        //package-private, as only the DAO that makes the ticket indexes it
+	void setObserver(IAdhocTicketObserver observer) {
+            this.observer = observer;
+	}
+
         //not sure what this does yet, but was in Jim's example
         public String toString() {
 		Date entryDate = new Date(entryDateTime);
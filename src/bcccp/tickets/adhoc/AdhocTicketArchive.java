@@ -0,0 +1,38 @@
+package bcccp.tickets.adhoc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An archive that keeps tickets taken out of an AdhocTicketDAO in memory, in the
+ * order they were archived.
+ */
+public class AdhocTicketArchive implements IAdhocTicketArchive {
+
+        private final List<IAdhocTicket> archivedTickets = new ArrayList<>();
+
+
+        //adds a ticket to the archive
+	@Override
+	public synchronized void archive(IAdhocTicket ticket) {
+            if (ticket == null) {
+                throw new RuntimeException("ticket is null");
+            }
+            archivedTickets.add(ticket);
+	}
+
+
+        //returns a snapshot of the archived tickets
+	@Override
+	public synchronized List<IAdhocTicket> getArchivedTickets() {
+            return Collections.unmodifiableList(new ArrayList<IAdhocTicket>(archivedTickets));
+	}
+
+
+	@Override
+	public synchronized int getNumberOfArchivedTickets() {
+            return archivedTickets.size();
+	}
+
+}
@@ -1,17 +1,26 @@
 package bcccp.tickets.adhoc;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class AdhocTicketDAO  implements IAdhocTicketDAO  {
 
 	private IAdhocTicketFactory adhocTicketFactory;
 	private int currentTicketNo;
-        //using a hashmap instrad of List
+        //leases ticket numbers when set, so they carry on across restarts and nodes
+        private TicketNumberAllocator ticketNumbers;
+        //using a concurrent map instead of List, so it can be streamed without the lock
         private Map<String, IAdhocTicket> currentAdhocTickets;
+        private AdhocTicketSweeper sweeper;
+        //current tickets that have entered, by entry time, kept up to date by observing each AdhocTicket made
+        private final EntryTimeIndex entryTimeIndex = new EntryTimeIndex();
 
 	
 	//AdhocTicketDAO constructor. assigning factory and setting currentTicketNo = 1
@@ -22,7 +31,17 @@ public class AdhocTicketDAO  implements IAdhocTicketDAO  {
             
                 this.adhocTicketFactory = factory;
                 this.currentTicketNo = 1;
-                currentAdhocTickets = new HashMap<>();
+                currentAdhocTickets = new ConcurrentHashMap<>();
+	}
+
+
+        //AdhocTicketDAO constructor, numbering tickets from blocks leased by the allocator
+	public AdhocTicketDAO(IAdhocTicketFactory factory, TicketNumberAllocator allocator) {
+            this(factory);
+            if (allocator == null) {
+                throw new RuntimeException("TicketNumberAllocator is null");
+            }
+            this.ticketNumbers = allocator;
 	}
 
 
@@ -30,29 +49,76 @@ public class AdhocTicketDAO  implements IAdhocTicketDAO  {
         //createTicket method, calls AdhocTicketFactory passing in carpark Id and current ticket no. 
         //increments currentTicket no, and adds to current list. then returns new ticket
 	@Override
-	public IAdhocTicket createTicket(String carparkId) {
+	public synchronized IAdhocTicket createTicket(String carparkId) {
             if (carparkId.length() == 0 || carparkId == null) {
                 throw new RuntimeException("carparkId is empty");
             }
             
-             IAdhocTicket newTicket = adhocTicketFactory.make(carparkId, currentTicketNo);
-                currentTicketNo++;
+             IAdhocTicket newTicket = makeTicket(carparkId);
                 //add new ticket to hasMap
-                currentAdhocTickets.put(newTicket.getBarcode(), newTicket);
+                addTicket(newTicket);
                 
 		return newTicket;
 	}
 
 
+        //makes a ticket with the next ticket number without adding it, called with the lock held
+	IAdhocTicket makeTicket(String carparkId) {
+            int ticketNo = ticketNumbers == null ? currentTicketNo++ : ticketNumbers.next();
+            return adhocTicketFactory.make(carparkId, ticketNo);
+	}
+
+
+        //adds a ticket to the current tickets, the entry time index and the sweeper, called with the lock held.
+        //an AdhocTicket is observed to keep the index up to date; other tickets tell the DAO themselves
+	void addTicket(IAdhocTicket ticket) {
+            currentAdhocTickets.put(key(ticket.getBarcode()), ticket);
+            if (ticket instanceof AdhocTicket) {
+                ((AdhocTicket) ticket).setObserver(entryTimeIndex);
+            }
+            if (ticket.getEntryDateTime() > 0 && !ticket.hasExited()) {
+                entryTimeIndex.ticketEntered(ticket, 0);
+            }
+            if (sweeper != null) {
+                sweeper.track(ticket);
+            }
+	}
+
+
+        //moves a ticket that is not an AdhocTicket to its new entry time in the index
+	void ticketEntered(IAdhocTicket ticket, long previousEntryDateTime) {
+            entryTimeIndex.ticketEntered(ticket, previousEntryDateTime);
+	}
+
+
+        //takes a ticket that is not an AdhocTicket out of the index when it exits
+	void ticketExited(IAdhocTicket ticket) {
+            entryTimeIndex.ticketExited(ticket);
+	}
+
+
+        //returns the number the next ticket is given when numbers are not leased
+	synchronized int getNextTicketNo() {
+            return currentTicketNo;
+	}
+
+
+        //carries the ticket numbers on from a number already issued, as after a restart
+	synchronized void skipTicketNumbers(int nextTicketNo) {
+            currentTicketNo = Math.max(currentTicketNo, nextTicketNo);
+	}
+
+
 
         //searches currentAdhocTickets list for given barcode. Returns found ticket, or null if not found
 	@Override
-	public IAdhocTicket findTicketByBarcode(String findBarcode) {
-            //update the currentTickets here, if has exited than remove
-            IAdhocTicket ticket = currentAdhocTickets.get(findBarcode);
+	public synchronized IAdhocTicket findTicketByBarcode(String findBarcode) {
+            //update the currentTickets here, if has exited than remove.
+            //once a sweeper is set it takes exited tickets out, so they are archived first
+            IAdhocTicket ticket = currentAdhocTickets.get(key(findBarcode));
             
-            if (ticket != null && ticket.hasExited()) {
-                currentAdhocTickets.remove(ticket.getBarcode(), ticket);
+            if (ticket != null && ticket.hasExited() && sweeper == null) {
+                currentAdhocTickets.remove(key(ticket.getBarcode()), ticket);
             }
             
             return ticket;
@@ -62,11 +128,64 @@ public class AdhocTicketDAO  implements IAdhocTicketDAO  {
 
         //returns list of currentAdhocTickets
 	@Override
-	public List<IAdhocTicket> getCurrentTickets() {
+	public synchronized List<IAdhocTicket> getCurrentTickets() {
             //convert hashMap to an arrayList and then return
 		return Collections.unmodifiableList(new ArrayList<IAdhocTicket>(currentAdhocTickets.values()));
 	}
 
+
+        //streams the current tickets the filter accepts, or all of them if it is null, without copying them.
+        //tickets created or removed while the stream runs may or may not be included
+	@Override
+	public Stream<IAdhocTicket> streamCurrentTickets(AdhocTicketFilter filter) {
+            Spliterator<IAdhocTicket> tickets = currentAdhocTickets.values().spliterator();
+            return StreamSupport.stream(filter == null ? tickets : new FilteredTicketSpliterator(tickets, filter), false);
+	}
+
+        //sets the sweeper told of each new ticket, called by the sweeper when it is made
+	synchronized void setSweeper(AdhocTicketSweeper sweeper) {
+            if (this.sweeper != null && sweeper != null) {
+                throw new RuntimeException("AdhocTicketDAO already has a sweeper");
+            }
+            this.sweeper = sweeper;
+	}
+
+
+        //returns true if the ticket is still the current ticket with its barcode
+	synchronized boolean holds(IAdhocTicket ticket) {
+            return currentAdhocTickets.get(key(ticket.getBarcode())) == ticket;
+	}
+
+
+        //removes a ticket if it is still current, returning true if it was removed
+	synchronized boolean evict(IAdhocTicket ticket) {
+            if (!currentAdhocTickets.remove(key(ticket.getBarcode()), ticket)) {
+                return false;
+            }
+            entryTimeIndex.remove(ticket);
+            return true;
+	}
+
+
+        //returns the current tickets that entered before the given time, oldest first, as for overstays
+	public Collection<IAdhocTicket> getTicketsEnteredBefore(long before) {
+            return entryTimeIndex.getTicketsEnteredBefore(before);
+	}
+
+
+        //returns the current tickets that entered in the given range, oldest first, as for lost tickets
+	public Collection<IAdhocTicket> getTicketsEnteredBetween(long from, long before) {
+            return entryTimeIndex.getTicketsEnteredBetween(from, before);
+	}
+
+
+        //a concurrent map takes no null keys, so a ticket without a barcode is kept under the
+        //empty string, which is never a real barcode
+	private static String key(String barcode) {
+            return barcode == null ? "" : barcode;
+	}
+
+
 //removed the addtoCurrentList and removefromCurrentList methods, no longer required. 
 	
 	
@@ -1,9 +1,28 @@
 package bcccp.tickets.adhoc;
+import bcccp.time.IClock;
+import bcccp.time.SystemClock;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
 public class AdhocTicketFactory implements IAdhocTicketFactory {
 
+        private final IClock clock;
+
+
+        //Factory constructor, dating barcodes and tickets by the wall clock
+        public AdhocTicketFactory() {
+            this(SystemClock.INSTANCE);
+        }
+
+
+        //Factory constructor, dating barcodes and tickets by the given clock
+        public AdhocTicketFactory(IClock clock) {
+            if (clock == null) {
+                throw new RuntimeException("clock is null");
+            }
+            this.clock = clock;
+        }
+
     
         //Constructor uses given carparkId and ticketno and generates barcode, then creates ticket. 
 	@Override
@@ -17,15 +36,12 @@ public class AdhocTicketFactory implements IAdhocTicketFactory {
             
             
             //get current miliseconds assign to dateTime
-            long dateTime = System.currentTimeMillis();
+            long dateTime = clock.currentTimeMillis();
 
             
-            //create SimpleDateFormat with correct format, then convert to long value (int cannot take the size of number)
-            String formatter = new SimpleDateFormat("ddMMyyyyHHmmss").format(dateTime);
-            long date = Long.parseLong(formatter);
-
-            //create barcode by converting ticketNo and date to HexString. 
-            String barcode =  "A" + Integer.toHexString(ticketNo) + Long.toHexString(date);
+            //convert the time to the date the barcode carries, then make the barcode from it
+            long date = barcodeDate(dateTime);
+            String barcode = barcode(ticketNo, date);
             System.out.println("New barcode: " + barcode);
             
             
@@ -37,9 +53,23 @@ public class AdhocTicketFactory implements IAdhocTicketFactory {
             return newTicket;   
 	}
 	
+        //returns the date a barcode carries for a time, as the decimal number ddMMyyyyHHmmss
+        //(as a long, since an int cannot take the size of the number)
+        public static long barcodeDate(long dateTime) {
+            String formatter = new SimpleDateFormat("ddMMyyyyHHmmss").format(dateTime);
+            return Long.parseLong(formatter);
+        }
+
+
+        //returns the barcode for a ticket number and barcode date, converting both to HexString
+        public static String barcode(int ticketNo, long barcodeDate) {
+            return "A" + Integer.toHexString(ticketNo) + Long.toHexString(barcodeDate);
+        }
+
+
         //factory helper, allows for testing
 	public AdhocTicket makeTicket(String a, int b, String c) {
-		return new AdhocTicket(a, b, c);
+		return new AdhocTicket(a, b, c, clock);
 	}
 
 }
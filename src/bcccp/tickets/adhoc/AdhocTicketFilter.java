@@ -0,0 +1,49 @@
+package bcccp.tickets.adhoc;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+
+/**
+ * Chooses the tickets a DAO's view of its current tickets returns, by state and by
+ * entry time. A new filter accepts every ticket; tickets that have not entered have an
+ * entry time of 0, so a range that does not include 0 leaves them out.
+ */
+public class AdhocTicketFilter {
+
+	private final EnumSet<AdhocTicketState> states = EnumSet.allOf(AdhocTicketState.class);
+	private long enteredFrom = Long.MIN_VALUE;
+	private long enteredBefore = Long.MAX_VALUE;
+
+
+        //accepts only tickets in one of the given states
+	public void setStates(AdhocTicketState state, AdhocTicketState... others) {
+            if (state == null) {
+                throw new RuntimeException("state is null");
+            }
+            states.clear();
+            states.add(state);
+            states.addAll(Arrays.asList(others));
+	}
+
+
+        //accepts only tickets that entered at or after from and before the given time
+	public void setEntryRange(long from, long before) {
+            if (before < from) {
+                throw new RuntimeException("Entry range ends before it starts");
+            }
+            this.enteredFrom = from;
+            this.enteredBefore = before;
+	}
+
+
+	public boolean accepts(IAdhocTicket ticket) {
+            return accepts(AdhocTicketState.of(ticket), ticket.getEntryDateTime());
+	}
+
+
+        //for DAOs that can read a ticket's state and entry time without making the ticket
+	public boolean accepts(AdhocTicketState state, long entryDateTime) {
+            return states.contains(state) && entryDateTime >= enteredFrom && entryDateTime < enteredBefore;
+	}
+
+}
@@ -0,0 +1,24 @@
+package bcccp.tickets.adhoc;
+
+/**
+ * The stages an adhoc ticket passes through, from issue at the entry lane to exit.
+ */
+public enum AdhocTicketState {
+	ISSUED, CURRENT, PAID, EXITED;
+
+
+        //returns the state of a ticket, read from its flags
+	public static AdhocTicketState of(IAdhocTicket ticket) {
+            if (ticket.hasExited()) {
+                return EXITED;
+            }
+            if (ticket.isPaid()) {
+                return PAID;
+            }
+            if (ticket.isCurrent()) {
+                return CURRENT;
+            }
+            return ISSUED;
+	}
+
+}
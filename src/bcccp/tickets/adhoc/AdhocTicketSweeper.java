@@ -0,0 +1,208 @@
+package bcccp.tickets.adhoc;
+
+import bcccp.time.IClock;
+import bcccp.time.TimingWheel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes tickets that are no longer needed out of an AdhocTicketDAO and into an archive,
+ * so the DAO holds only the tickets of cars on site. A ticket is evicted once it has
+ * exited, and a ticket that was issued but never used to enter is evicted once it is
+ * older than a time to live.
+ *
+ * Every ticket is given a check time on a timing wheel when it is issued. At each check
+ * a ticket still in use is given another check a check interval later, so an exited
+ * ticket is evicted within one check interval of leaving. The sweeper runs on its own
+ * thread once started, or can be swept directly.
+ *
+ * A ticket is archived before it is evicted, so once the DAO no longer holds a ticket the
+ * archive does, and a crash between the two at worst archives a ticket the DAO still holds.
+ */
+public class AdhocTicketSweeper {
+
+	private static final long TICK_MILLIS = 1000;
+	private static final long DEFAULT_CHECK_INTERVAL = 60000;
+
+	private final AdhocTicketDAO adhocTicketDAO;
+	private final IAdhocTicketArchive archive;
+	private final IClock clock;
+	private final long issuedTimeToLive;
+	private final long checkInterval;
+
+	//guarded by this sweeper's lock, which is never held while calling the DAO
+	private final TimingWheel<Check> wheel;
+	private long exitedEvictions = 0;
+	private long abandonedEvictions = 0;
+
+	private ScheduledExecutorService executor;
+
+
+        //AdhocTicketSweeper constructor, checking tickets in use once a minute
+	public AdhocTicketSweeper(AdhocTicketDAO dao, IAdhocTicketArchive archive, IClock clock, long issuedTimeToLive) {
+            this(dao, archive, clock, issuedTimeToLive, DEFAULT_CHECK_INTERVAL);
+	}
+
+
+        //AdhocTicketSweeper constructor, tracking the tickets the DAO holds now and all it issues from now on
+	public AdhocTicketSweeper(AdhocTicketDAO dao, IAdhocTicketArchive archive, IClock clock,
+                long issuedTimeToLive, long checkInterval) {
+            if (dao == null) {
+                throw new RuntimeException("AdhocTicketDAO is null");
+            }
+            if (archive == null) {
+                throw new RuntimeException("archive is null");
+            }
+            if (clock == null) {
+                throw new RuntimeException("clock is null");
+            }
+            if (issuedTimeToLive <= 0 || checkInterval < TICK_MILLIS) {
+                throw new RuntimeException("Invalid sweep times");
+            }
+            this.adhocTicketDAO = dao;
+            this.archive = archive;
+            this.clock = clock;
+            this.issuedTimeToLive = issuedTimeToLive;
+            this.checkInterval = checkInterval;
+            this.wheel = new TimingWheel<>(TICK_MILLIS, clock.currentTimeMillis());
+
+            //tickets already held are treated as issued now
+            synchronized (dao) {
+                dao.setSweeper(this);
+                dao.streamCurrentTickets(null).forEach(this::track);
+            }
+	}
+
+
+        //gives a newly issued ticket its first check, called by the DAO
+	synchronized void track(IAdhocTicket ticket) {
+            long now = clock.currentTimeMillis();
+            Check check = new Check(ticket, now);
+            wheel.schedule(check, nextCheck(check, now));
+	}
+
+
+        //evicts the tickets whose checks are due, returning the number evicted
+	public int sweep() {
+            long now = clock.currentTimeMillis();
+            List<Check> due = new ArrayList<>();
+            synchronized (this) {
+                wheel.advance(now, due);
+            }
+
+            int evicted = 0;
+            for (Check check : due) {
+                IAdhocTicket ticket = check.ticket;
+                boolean exited = ticket.hasExited();
+                boolean abandoned = !exited && ticket.getEntryDateTime() == 0
+                        && now - check.issuedDateTime >= issuedTimeToLive;
+                if (exited || abandoned) {
+                    //the DAO lets go of tickets only through evict once it has a sweeper, so a
+                    //ticket it no longer holds has already been archived, and one it holds is
+                    //archived before it is evicted, so it is never in neither
+                    if (adhocTicketDAO.holds(ticket)) {
+                        archive.archive(ticket);
+                        adhocTicketDAO.evict(ticket);
+                        evicted++;
+                        synchronized (this) {
+                            if (exited) {
+                                exitedEvictions++;
+                            } else {
+                                abandonedEvictions++;
+                            }
+                        }
+                    }
+                } else if (adhocTicketDAO.holds(ticket)) {
+                    synchronized (this) {
+                        wheel.schedule(check, nextCheck(check, now));
+                    }
+                }
+            }
+            return evicted;
+	}
+
+
+        //sweeps every second on a background thread until stopped
+	public synchronized void start() {
+            if (executor != null) {
+                throw new RuntimeException("AdhocTicketSweeper already started");
+            }
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Adhoc ticket sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(() -> {
+                try {
+                    sweep();
+                } catch (RuntimeException e) {
+                    //a failed sweep leaves its tickets unchecked, but the next still runs
+                    e.printStackTrace();
+                }
+            }, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+
+        //stops sweeping, waiting for a sweep under way to finish. the sweep is not interrupted,
+        //as that would close the channels of an archive on disk under it
+	public void stop() {
+            ScheduledExecutorService stopping;
+            synchronized (this) {
+                stopping = executor;
+                executor = null;
+            }
+            if (stopping == null) {
+                return;
+            }
+            stopping.shutdown();
+            try {
+                stopping.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+	}
+
+
+        //returns the number of exited tickets evicted
+	public synchronized long getExitedEvictions() {
+            return exitedEvictions;
+	}
+
+
+        //returns the number of tickets evicted for never being used
+	public synchronized long getAbandonedEvictions() {
+            return abandonedEvictions;
+	}
+
+
+        //returns the number of tickets waiting for a check
+	public synchronized int getNumberOfTrackedTickets() {
+            return wheel.size();
+	}
+
+
+        //the next check, at the check interval, or sooner if the ticket has not entered by then
+	private long nextCheck(Check check, long now) {
+            long next = now + checkInterval;
+            long expires = check.issuedDateTime + issuedTimeToLive;
+            if (check.ticket.getEntryDateTime() == 0 && expires < next) {
+                next = expires;
+            }
+            return next;
+	}
+
+
+	private static class Check {
+            final IAdhocTicket ticket;
+            final long issuedDateTime;
+
+            Check(IAdhocTicket ticket, long issuedDateTime) {
+                this.ticket = ticket;
+                this.issuedDateTime = issuedDateTime;
+            }
+	}
+
+}
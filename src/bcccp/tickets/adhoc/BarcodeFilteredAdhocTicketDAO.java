@@ -0,0 +1,157 @@
+package bcccp.tickets.adhoc;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * An AdhocTicketDAO that screens barcodes through a CountingBloomFilter of the tickets
+ * held by another DAO, so that a damaged, foreign or random scan at a paystation or exit
+ * is turned away without a lookup in the DAO, which may be on disk or remote. A barcode
+ * of a ticket that is held always passes; one that is not passes only now and then, and
+ * is then looked up as before.
+ *
+ * The filter is filled from the DAO's current tickets when it is made and has each ticket
+ * created through it added. Tickets that leave the DAO stay in the filter until it is
+ * rebuilt, which happens when it holds more barcodes than it was sized for. A barcode is
+ * never removed on its own, as a lookup cannot tell whether it was the one that took the
+ * ticket out, and removing a barcode twice could hide a ticket still held. Every ticket
+ * must be created through this DAO, not the one it screens.
+ *
+ * The number of lookups, of barcodes turned away and of false positives, which passed
+ * the filter but were not found, are counted, and the rate of false positives is given
+ * both as seen and as expected from the filter's size.
+ */
+public class BarcodeFilteredAdhocTicketDAO implements IAdhocTicketDAO {
+
+	private static final int DEFAULT_EXPECTED_TICKETS = 100000;
+	private static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+	private final IAdhocTicketDAO adhocTicketDAO;
+	private final int expectedTickets;
+	private final double falsePositiveRate;
+
+	//guarded by this
+	private CountingBloomFilter filter;
+	private long rebuilds = 0;
+
+	private final AtomicLong lookups = new AtomicLong();
+	private final AtomicLong rejections = new AtomicLong();
+	private final AtomicLong falsePositives = new AtomicLong();
+
+
+        //BarcodeFilteredAdhocTicketDAO constructor, sized for 100,000 tickets with 1% false positives
+	public BarcodeFilteredAdhocTicketDAO(IAdhocTicketDAO dao) {
+            this(dao, DEFAULT_EXPECTED_TICKETS, DEFAULT_FALSE_POSITIVE_RATE);
+	}
+
+
+	public BarcodeFilteredAdhocTicketDAO(IAdhocTicketDAO dao, int expectedTickets, double falsePositiveRate) {
+            if (dao == null) {
+                throw new RuntimeException("AdhocTicketDAO is null");
+            }
+            //checks the settings before any ticket is read
+            this.filter = new CountingBloomFilter(expectedTickets, falsePositiveRate);
+            this.adhocTicketDAO = dao;
+            this.expectedTickets = expectedTickets;
+            this.falsePositiveRate = falsePositiveRate;
+            rebuild();
+	}
+
+
+        //creates the ticket in the screened DAO and adds its barcode to the filter
+	@Override
+	public IAdhocTicket createTicket(String carparkId) {
+            IAdhocTicket ticket = adhocTicketDAO.createTicket(carparkId);
+            synchronized (this) {
+                filter.add(ticket.getBarcode());
+                if (filter.getCount() > filter.getCapacity()) {
+                    rebuild();
+                }
+            }
+            return ticket;
+	}
+
+
+        //returns null for a barcode the filter turns away, and otherwise looks it up
+	@Override
+	public IAdhocTicket findTicketByBarcode(String barcode) {
+            if (barcode == null) {
+                return null;
+            }
+            lookups.incrementAndGet();
+            synchronized (this) {
+                if (!filter.mightContain(barcode)) {
+                    rejections.incrementAndGet();
+                    return null;
+                }
+            }
+
+            IAdhocTicket ticket = adhocTicketDAO.findTicketByBarcode(barcode);
+            if (ticket == null) {
+                falsePositives.incrementAndGet();
+            }
+            return ticket;
+	}
+
+
+	@Override
+	public List<IAdhocTicket> getCurrentTickets() {
+            return adhocTicketDAO.getCurrentTickets();
+	}
+
+
+	@Override
+	public Stream<IAdhocTicket> streamCurrentTickets(AdhocTicketFilter ticketFilter) {
+            return adhocTicketDAO.streamCurrentTickets(ticketFilter);
+	}
+
+
+        //fills a new filter from the screened DAO's current tickets, sized for twice as many
+        //as it holds or the number expected, whichever is more
+	public synchronized void rebuild() {
+            long held = adhocTicketDAO.streamCurrentTickets(null).count();
+            int capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(expectedTickets, 2 * held));
+            CountingBloomFilter rebuilt = new CountingBloomFilter(capacity, falsePositiveRate);
+            adhocTicketDAO.streamCurrentTickets(null).forEach(ticket -> rebuilt.add(ticket.getBarcode()));
+            filter = rebuilt;
+            rebuilds++;
+	}
+
+
+	public long getLookups() {
+            return lookups.get();
+	}
+
+
+        //returns the number of barcodes turned away without a lookup
+	public long getRejections() {
+            return rejections.get();
+	}
+
+
+        //returns the number of barcodes that passed the filter but were not found
+	public long getFalsePositives() {
+            return falsePositives.get();
+	}
+
+
+        //returns the share of barcodes not found that passed the filter, as seen so far
+	public double getFalsePositiveRate() {
+            long passed = falsePositives.get();
+            long unknown = passed + rejections.get();
+            return unknown == 0 ? 0 : (double) passed / unknown;
+	}
+
+
+        //returns the rate of false positives expected for the barcodes the filter holds now
+	public synchronized double getExpectedFalsePositiveRate() {
+            return filter.getExpectedFalsePositiveRate();
+	}
+
+
+	public synchronized long getNumberOfRebuilds() {
+            return rebuilds;
+	}
+
+}
@@ -0,0 +1,280 @@
+package bcccp.tickets.adhoc;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing table from adhoc ticket barcodes to int slots, such as the index
+ * of a ticket in an array, keyed by a long decoded from the barcode rather than by the
+ * barcode string. Keys and slots are held in primitive arrays, so lookups neither box
+ * nor hash a String.
+ *
+ * AdhocTicketFactory makes barcodes as "A" + hex(ticketNo) + hex(date), where date is
+ * the decimal number ddMMyyyyHHmmss. In hex the date is 10 digits for the 1st of January
+ * to September, 12 for days 18 to 31, and 11 otherwise, so a barcode may decode several
+ * ways; callers try each length from MIN_DATE_DIGITS to MAX_DATE_DIGITS with key(barcode,
+ * dateDigits) and check the barcode of whatever they find. A key packs the ticket number
+ * into the high 32 bits and the date, as seconds since 1 January 2000, into the low 32.
+ *
+ * The table is not thread safe; callers hold their own lock.
+ */
+public class BarcodeIndex {
+
+	public static final long NO_KEY = -1;
+	public static final int NO_SLOT = -1;
+	public static final int MIN_DATE_DIGITS = 10;
+	public static final int MAX_DATE_DIGITS = 12;
+
+	private static final int MIN_LENGTH = 1 + 1 + MIN_DATE_DIGITS;
+	private static final int MAX_LENGTH = 1 + 8 + MAX_DATE_DIGITS;
+	private static final int FIRST_YEAR = 2000;
+	private static final int LAST_YEAR = 2135;
+
+	//key 0 is never made, as ticket numbers start at 1
+	private static final long EMPTY = 0;
+
+	private long[] keys;
+	private int[] slots;
+	private int mask;
+	private int size = 0;
+
+
+	public BarcodeIndex() {
+		this(16);
+	}
+
+
+	public BarcodeIndex(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(16, expectedSize) * 2 - 1) << 1;
+		keys = new long[capacity];
+		slots = new int[capacity];
+		mask = capacity - 1;
+	}
+
+
+    /**
+     * Decodes a barcode, taking the last dateDigits hex digits as the date.
+     * Malformed barcodes are rejected before any digit is decoded where possible.
+     * @param barcode
+     * @param dateDigits MIN_DATE_DIGITS to MAX_DATE_DIGITS
+     * @return packed key, or NO_KEY if the barcode cannot be split this way
+     */
+	public static long key(String barcode, int dateDigits) {
+		if (barcode == null) {
+			return NO_KEY;
+		}
+		int length = barcode.length();
+		int ticketDigits = length - 1 - dateDigits;
+		if (length < MIN_LENGTH || length > MAX_LENGTH || barcode.charAt(0) != 'A'
+				|| dateDigits < MIN_DATE_DIGITS || dateDigits > MAX_DATE_DIGITS
+				|| ticketDigits < 1 || ticketDigits > 8 || barcode.charAt(1) == '0') {
+			return NO_KEY;
+		}
+
+		long ticketNo = 0;
+		for (int i = 1; i <= ticketDigits; i++) {
+			int digit = hexDigit(barcode.charAt(i));
+			if (digit < 0) {
+				return NO_KEY;
+			}
+			ticketNo = (ticketNo << 4) | digit;
+		}
+		if (ticketNo > Integer.MAX_VALUE) {
+			return NO_KEY;
+		}
+
+		long date = 0;
+		for (int i = ticketDigits + 1; i < length; i++) {
+			int digit = hexDigit(barcode.charAt(i));
+			if (digit < 0) {
+				return NO_KEY;
+			}
+			date = (date << 4) | digit;
+		}
+		long seconds = secondsSince2000(date);
+		if (seconds < 0) {
+			return NO_KEY;
+		}
+		return (ticketNo << 32) | seconds;
+	}
+
+
+    /**
+     * Returns the key of a barcode whose ticket number is known, as when a ticket is added.
+     * @param ticketNo
+     * @param barcode
+     * @return packed key, or NO_KEY if the barcode was not made by AdhocTicketFactory
+     */
+	public static long key(int ticketNo, String barcode) {
+		if (barcode == null || ticketNo <= 0) {
+			return NO_KEY;
+		}
+		//the date is whatever follows the ticket number
+		int ticketDigits = Integer.toHexString(ticketNo).length();
+		long key = key(barcode, barcode.length() - 1 - ticketDigits);
+		if (key == NO_KEY || (int) (key >>> 32) != ticketNo) {
+			return NO_KEY;
+		}
+		return key;
+	}
+
+
+    /**
+     * Returns the key of a ticket number and the date its barcode carries, without
+     * making the barcode.
+     * @param ticketNo
+     * @param barcodeDate date as the decimal number ddMMyyyyHHmmss
+     * @return packed key, or NO_KEY if the date is not valid
+     */
+	public static long key(int ticketNo, long barcodeDate) {
+		long seconds = secondsSince2000(barcodeDate);
+		if (ticketNo <= 0 || seconds < 0) {
+			return NO_KEY;
+		}
+		return ((long) ticketNo << 32) | seconds;
+	}
+
+
+    /**
+     * Returns the slot stored for a key.
+     * @param key
+     * @return slot, or NO_SLOT if the key is not in the table
+     */
+	public int get(long key) {
+		if (key == NO_KEY || key == EMPTY) {
+			return NO_SLOT;
+		}
+		for (int i = index(key); ; i = (i + 1) & mask) {
+			long found = keys[i];
+			if (found == key) {
+				return slots[i];
+			}
+			if (found == EMPTY) {
+				return NO_SLOT;
+			}
+		}
+	}
+
+
+    /**
+     * Stores a slot for a key, replacing any slot already stored for it.
+     * @param key
+     * @param slot
+     */
+	public void put(long key, int slot) {
+		if (key == NO_KEY || key == EMPTY) {
+			throw new RuntimeException("Invalid barcode key");
+		}
+		if (2 * (size + 1) > keys.length) {
+			resize(2 * keys.length);
+		}
+		int i = index(key);
+		while (keys[i] != EMPTY && keys[i] != key) {
+			i = (i + 1) & mask;
+		}
+		if (keys[i] == EMPTY) {
+			size++;
+		}
+		keys[i] = key;
+		slots[i] = slot;
+	}
+
+
+    /**
+     * Removes a key, moving back any keys that probed past it so no markers are left behind.
+     * @param key
+     * @return the slot that was stored, or NO_SLOT
+     */
+	public int remove(long key) {
+		if (key == NO_KEY || key == EMPTY) {
+			return NO_SLOT;
+		}
+		int i = index(key);
+		while (keys[i] != key) {
+			if (keys[i] == EMPTY) {
+				return NO_SLOT;
+			}
+			i = (i + 1) & mask;
+		}
+		int removed = slots[i];
+		size--;
+
+		int gap = i;
+		for (int j = (gap + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+			int home = index(keys[j]);
+			//move the key into the gap unless its home lies cyclically in (gap, j]
+			if (((j - home) & mask) >= ((j - gap) & mask)) {
+				keys[gap] = keys[j];
+				slots[gap] = slots[j];
+				gap = j;
+			}
+		}
+		keys[gap] = EMPTY;
+		return removed;
+	}
+
+
+	public int size() {
+		return size;
+	}
+
+
+	public void clear() {
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+	}
+
+
+	private void resize(int capacity) {
+		long[] oldKeys = keys;
+		int[] oldSlots = slots;
+		keys = new long[capacity];
+		slots = new int[capacity];
+		mask = capacity - 1;
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				put(oldKeys[i], oldSlots[i]);
+			}
+		}
+	}
+
+
+	private int index(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash >>> 32) & mask;
+	}
+
+
+	//value of a lower case hex digit as made by Integer.toHexString, or -1
+	private static int hexDigit(char c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		}
+		if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		}
+		return -1;
+	}
+
+
+	//seconds from 1 January 2000 to a ddMMyyyyHHmmss date, or -1 if it is not a valid date
+	private static long secondsSince2000(long date) {
+		int second = (int) (date % 100);
+		int minute = (int) (date / 100 % 100);
+		int hour = (int) (date / 10000 % 100);
+		int year = (int) (date / 1000000 % 10000);
+		int month = (int) (date / 10000000000L % 100);
+		long day = date / 1000000000000L;
+		if (second > 59 || minute > 59 || hour > 23 || month < 1 || month > 12
+				|| day < 1 || day > 31 || year < FIRST_YEAR || year > LAST_YEAR) {
+			return -1;
+		}
+		//days before the month in a year starting in March, so leap days fall at the end
+		int y = month <= 2 ? year - 1 : year;
+		int m = month <= 2 ? month + 9 : month - 3;
+		long days = 365L * (y - 1999) + (y / 4 - y / 100 + y / 400) - (1999 / 4 - 1999 / 100 + 1999 / 400)
+				+ (153 * m + 2) / 5 + day - 1 - 306;
+		return ((days * 24 + hour) * 60 + minute) * 60 + second;
+	}
+
+}
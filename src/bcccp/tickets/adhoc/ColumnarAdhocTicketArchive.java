@@ -0,0 +1,836 @@
+package bcccp.tickets.adhoc;
+
+import bcccp.metrics.Histogram;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A cold archive for tickets taken out of an AdhocTicketDAO, kept on disk in columns.
+ * Tickets are gathered in memory and written out a block at a time, each block a file
+ * holding one column for each ticket field, compressed on its own:
+ *
+ * ticket numbers as varints of the difference from the one before; carpark ids as
+ * varint positions in a dictionary of the block's ids; the dates barcodes carry as
+ * varint differences, with any barcode not made by AdhocTicketFactory stored whole;
+ * entry, paid and exit times as varints of the change in the difference from the one
+ * before, which is small for tickets archived in the order they exit; and charges as
+ * varints.
+ *
+ * A block file starts with the number of tickets and the length of each column, so a
+ * scan reads only the columns it needs: revenue reads exit times and charges, and dwell
+ * times entry and exit times. Archived tickets are handed back as read-only copies.
+ *
+ * Tickets gathered for the next block are also appended as rows to a pending file, forced
+ * to disk before archive returns, so a crash loses none of them. The file names the block
+ * its rows are for and is deleted once that block is written; opening the archive reads
+ * its rows back unless the block was written first, and drops a row torn by a crash.
+ */
+public class ColumnarAdhocTicketArchive implements IAdhocTicketArchive, Closeable {
+
+	public static final int DEFAULT_BLOCK_TICKETS = 8192;
+
+	private static final int MAGIC = 0x41544341;
+	private static final int VERSION = 1;
+	private static final String PREFIX = "block-";
+	private static final String SUFFIX = ".columns";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final String PENDING = "pending.rows";
+	private static final int PENDING_MAGIC = 0x41545052;
+	private static final int PENDING_HEADER_BYTES = 8;
+
+	private static final int TICKET_NO = 0;
+	private static final int CARPARK = 1;
+	private static final int DICTIONARY = 2;
+	private static final int BARCODE = 3;
+	private static final int RAW_BARCODES = 4;
+	private static final int ENTRY = 5;
+	private static final int PAID = 6;
+	private static final int EXIT = 7;
+	private static final int CHARGE = 8;
+	private static final int COLUMNS = 9;
+	private static final int HEADER_BYTES = 16 + 8 * COLUMNS;
+
+	private final Path directory;
+	private final int blockTickets;
+
+	//guarded by this
+	private final List<Path> blocks = new ArrayList<>();
+	private final List<IAdhocTicket> pending = new ArrayList<>();
+	private FileChannel pendingRows;
+	private int blockedTickets = 0;
+	private long columnBytesRead = 0;
+
+
+        //ColumnarAdhocTicketArchive constructor, writing blocks of 8192 tickets
+	public ColumnarAdhocTicketArchive(Path directory) {
+            this(directory, DEFAULT_BLOCK_TICKETS);
+	}
+
+
+        //ColumnarAdhocTicketArchive constructor, opening the blocks already in the directory
+	public ColumnarAdhocTicketArchive(Path directory, int blockTickets) {
+            if (directory == null) {
+                throw new RuntimeException("archive directory is null");
+            }
+            if (blockTickets <= 0) {
+                throw new RuntimeException("Invalid archive block size " + blockTickets);
+            }
+            this.directory = directory;
+            this.blockTickets = blockTickets;
+            try {
+                Files.createDirectories(directory);
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + TEMP_SUFFIX)) {
+                    for (Path temp : stream) {
+                        Files.delete(temp);
+                    }
+                }
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+                    for (Path block : stream) {
+                        blocks.add(block);
+                    }
+                }
+                Collections.sort(blocks);
+                for (Path block : blocks) {
+                    try (FileChannel channel = FileChannel.open(block, StandardOpenOption.READ)) {
+                        blockedTickets += readHeader(channel, block).count;
+                    }
+                }
+                readPendingRows();
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot open archive " + directory, e);
+            }
+	}
+
+
+        //adds a copy of a ticket to the archive, writing a block once enough are gathered.
+        //the copy cannot be changed, whether it is read back before or after it is written
+	@Override
+	public synchronized void archive(IAdhocTicket ticket) {
+            if (ticket == null) {
+                throw new RuntimeException("ticket is null");
+            }
+            IAdhocTicket copy = new ArchivedTicket(ticket.getTicketNo(), ticket.getBarcode(), ticket.getCarparkId(),
+                    ticket.getEntryDateTime(), ticket.getPaidDateTime(), ticket.getExitDateTime(), ticket.getCharge());
+            appendPendingRow(copy);
+            pending.add(copy);
+            if (pending.size() >= blockTickets) {
+                flush();
+            }
+	}
+
+
+        //writes the tickets gathered so far as a block
+	public synchronized void flush() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            Path block = directory.resolve(String.format("%s%08d%s", PREFIX, blocks.size(), SUFFIX));
+            Path temp = directory.resolve(block.getFileName() + TEMP_SUFFIX);
+            try {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    ByteBuffer bytes = ByteBuffer.wrap(encode(pending));
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes);
+                    }
+                    channel.force(true);
+                }
+                Files.move(temp, block, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot write archive block " + block, e);
+            }
+            blocks.add(block);
+            blockedTickets += pending.size();
+            pending.clear();
+
+            //the rows are in the block now; if the file outlives a crash, it names a block already written
+            try {
+                closePendingRows();
+                Files.deleteIfExists(directory.resolve(PENDING));
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot delete pending archive rows in " + directory, e);
+            }
+	}
+
+
+        //writes any tickets still gathered
+	@Override
+	public synchronized void close() {
+            flush();
+            try {
+                closePendingRows();
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot close pending archive rows in " + directory, e);
+            }
+	}
+
+
+        //returns read-only copies of every archived ticket, in the order they were archived
+	@Override
+	public List<IAdhocTicket> getArchivedTickets() {
+            List<Path> written;
+            List<IAdhocTicket> tickets = new ArrayList<>();
+            synchronized (this) {
+                written = new ArrayList<>(blocks);
+                tickets.addAll(pending);
+            }
+            List<IAdhocTicket> archived = new ArrayList<>();
+            for (Path block : written) {
+                readBlock(block, archived);
+            }
+            archived.addAll(tickets);
+            return Collections.unmodifiableList(archived);
+	}
+
+
+	@Override
+	public synchronized int getNumberOfArchivedTickets() {
+            return blockedTickets + pending.size();
+	}
+
+
+        //returns the charges of tickets that exited in the given range, reading only exit times and charges
+	public long getRevenue(long exitedFrom, long exitedBefore) {
+            List<Path> written;
+            long revenue = 0;
+            synchronized (this) {
+                written = new ArrayList<>(blocks);
+                for (IAdhocTicket ticket : pending) {
+                    if (ticket.getExitDateTime() >= exitedFrom && ticket.getExitDateTime() < exitedBefore) {
+                        revenue += ticket.getCharge();
+                    }
+                }
+            }
+            for (Path block : written) {
+                long[][] columns = readColumns(block, EXIT, CHARGE);
+                long[] exits = columns[0];
+                long[] charges = columns[1];
+                for (int i = 0; i < exits.length; i++) {
+                    if (exits[i] >= exitedFrom && exits[i] < exitedBefore) {
+                        revenue += charges[i];
+                    }
+                }
+            }
+            return revenue;
+	}
+
+
+        //returns how long tickets that exited in the given range stayed, reading only entry and exit times
+	public Histogram getDwellTimes(long exitedFrom, long exitedBefore) {
+            Histogram dwellTimes = new Histogram("dwell time ms");
+            List<Path> written;
+            synchronized (this) {
+                written = new ArrayList<>(blocks);
+                for (IAdhocTicket ticket : pending) {
+                    recordDwellTime(dwellTimes, ticket.getEntryDateTime(), ticket.getExitDateTime(), exitedFrom, exitedBefore);
+                }
+            }
+            for (Path block : written) {
+                long[][] columns = readColumns(block, ENTRY, EXIT);
+                for (int i = 0; i < columns[0].length; i++) {
+                    recordDwellTime(dwellTimes, columns[0][i], columns[1][i], exitedFrom, exitedBefore);
+                }
+            }
+            return dwellTimes;
+	}
+
+
+        //returns the bytes the block files take up on disk
+	public long getArchiveBytes() {
+            List<Path> written;
+            synchronized (this) {
+                written = new ArrayList<>(blocks);
+            }
+            long bytes = 0;
+            try {
+                for (Path block : written) {
+                    bytes += Files.size(block);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot read archive " + directory, e);
+            }
+            return bytes;
+	}
+
+
+        //returns the bytes read from block files so far, headers included
+	public synchronized long getColumnBytesRead() {
+            return columnBytesRead;
+	}
+
+
+	public synchronized int getNumberOfBlocks() {
+            return blocks.size();
+	}
+
+
+        //appends a ticket to the pending rows and forces it to disk, starting the file if need be
+	private void appendPendingRow(IAdhocTicket ticket) {
+            ByteArrayOutputStream row = new ByteArrayOutputStream();
+            putVarLong(row, zigZag(ticket.getTicketNo()));
+            putString(row, ticket.getBarcode());
+            putString(row, ticket.getCarparkId());
+            putVarLong(row, zigZag(ticket.getEntryDateTime()));
+            putVarLong(row, zigZag(ticket.getPaidDateTime()));
+            putVarLong(row, zigZag(ticket.getExitDateTime()));
+            putVarLong(row, zigZag(ticket.getCharge()));
+            byte[] payload = row.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(payload, 0, payload.length);
+            try {
+                if (pendingRows == null) {
+                    pendingRows = FileChannel.open(directory.resolve(PENDING),
+                            StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                    if (pendingRows.size() == 0) {
+                        ByteBuffer header = ByteBuffer.allocate(PENDING_HEADER_BYTES);
+                        header.putInt(PENDING_MAGIC).putInt(blocks.size()).flip();
+                        writeFully(pendingRows, header, 0);
+                    }
+                }
+                ByteBuffer framed = ByteBuffer.allocate(8 + payload.length);
+                framed.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+                writeFully(pendingRows, framed, pendingRows.size());
+                pendingRows.force(false);
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot write pending archive rows in " + directory, e);
+            }
+	}
+
+
+        //reads back the rows archived since the last block was written, keeping the file open to add to.
+        //a file for a block already written is deleted, and the file is cut at the first torn row
+	private void readPendingRows() throws IOException {
+            Path file = directory.resolve(PENDING);
+            if (!Files.exists(file)) {
+                return;
+            }
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+            //a header torn by a crash has no rows after it
+            if (bytes.remaining() < PENDING_HEADER_BYTES || bytes.getInt(0) != PENDING_MAGIC
+                    || bytes.getInt(4) < blocks.size()) {
+                Files.delete(file);
+                return;
+            }
+            if (bytes.getInt(4) > blocks.size()) {
+                throw new RuntimeException("Pending archive rows in " + directory + " are for a missing block");
+            }
+            int good = PENDING_HEADER_BYTES;
+            CRC32 crc = new CRC32();
+            while (bytes.limit() - good >= 8) {
+                int length = bytes.getInt(good);
+                if (length < 0 || length > bytes.limit() - good - 8) {
+                    break;
+                }
+                crc.reset();
+                crc.update(bytes.array(), good + 8, length);
+                if ((int) crc.getValue() != bytes.getInt(good + 4)) {
+                    break;
+                }
+                ByteBuffer row = ByteBuffer.wrap(bytes.array(), good + 8, length);
+                int ticketNo = (int) unZigZag(getVarLong(row));
+                String barcode = getString(row);
+                String carparkId = getString(row);
+                pending.add(new ArchivedTicket(ticketNo, barcode, carparkId, unZigZag(getVarLong(row)),
+                        unZigZag(getVarLong(row)), unZigZag(getVarLong(row)), unZigZag(getVarLong(row))));
+                good += 8 + length;
+            }
+            pendingRows = FileChannel.open(file, StandardOpenOption.WRITE);
+            pendingRows.truncate(good);
+            pendingRows.force(false);
+	}
+
+
+	private void closePendingRows() throws IOException {
+            if (pendingRows != null) {
+                pendingRows.close();
+                pendingRows = null;
+            }
+	}
+
+
+        //tickets that never entered or have not exited have no dwell time
+	private static void recordDwellTime(Histogram dwellTimes, long entry, long exit, long exitedFrom, long exitedBefore) {
+            if (entry > 0 && exit >= exitedFrom && exit < exitedBefore) {
+                dwellTimes.record(exit - entry);
+            }
+	}
+
+
+	private static byte[] encode(List<IAdhocTicket> tickets) {
+            int count = tickets.size();
+            ByteArrayOutputStream[] columns = new ByteArrayOutputStream[COLUMNS];
+            for (int i = 0; i < COLUMNS; i++) {
+                columns[i] = new ByteArrayOutputStream();
+            }
+
+            Map<String, Integer> dictionary = new HashMap<>();
+            List<String> carparkIds = new ArrayList<>();
+            long previousTicketNo = 0;
+            long previousDate = 0;
+            int rawBarcodes = 0;
+            ByteArrayOutputStream raw = new ByteArrayOutputStream();
+            long[][] times = new long[3][count];
+
+            for (int i = 0; i < count; i++) {
+                IAdhocTicket ticket = tickets.get(i);
+                int ticketNo = ticket.getTicketNo();
+                putVarLong(columns[TICKET_NO], zigZag(ticketNo - previousTicketNo));
+                previousTicketNo = ticketNo;
+
+                Integer carpark = dictionary.get(ticket.getCarparkId());
+                if (carpark == null) {
+                    carpark = carparkIds.size();
+                    dictionary.put(ticket.getCarparkId(), carpark);
+                    carparkIds.add(ticket.getCarparkId());
+                }
+                putVarLong(columns[CARPARK], carpark);
+
+                //0 marks a barcode kept whole, so dates are stored one higher
+                long date = barcodeDate(ticketNo, ticket.getBarcode());
+                if (date < 0) {
+                    putVarLong(columns[BARCODE], 0);
+                    putString(raw, ticket.getBarcode());
+                    rawBarcodes++;
+                } else {
+                    putVarLong(columns[BARCODE], zigZag(date - previousDate) + 1);
+                    previousDate = date;
+                }
+
+                times[0][i] = ticket.getEntryDateTime();
+                times[1][i] = ticket.getPaidDateTime();
+                times[2][i] = ticket.getExitDateTime();
+                putVarLong(columns[CHARGE], zigZag(ticket.getCharge()));
+            }
+
+            putVarLong(columns[DICTIONARY], carparkIds.size());
+            for (String carparkId : carparkIds) {
+                putString(columns[DICTIONARY], carparkId);
+            }
+            putVarLong(columns[RAW_BARCODES], rawBarcodes);
+            byte[] rawBytes = raw.toByteArray();
+            columns[RAW_BARCODES].write(rawBytes, 0, rawBytes.length);
+            putDeltaOfDeltas(columns[ENTRY], times[0]);
+            putDeltaOfDeltas(columns[PAID], times[1]);
+            putDeltaOfDeltas(columns[EXIT], times[2]);
+
+            byte[][] compressed = new byte[COLUMNS][];
+            int[] rawLengths = new int[COLUMNS];
+            int length = HEADER_BYTES;
+            Deflater deflater = new Deflater();
+            try {
+                for (int i = 0; i < COLUMNS; i++) {
+                    byte[] column = columns[i].toByteArray();
+                    rawLengths[i] = column.length;
+                    compressed[i] = deflate(deflater, column);
+                    length += compressed[i].length;
+                }
+            } finally {
+                deflater.end();
+            }
+
+            ByteBuffer block = ByteBuffer.allocate(length);
+            block.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(COLUMNS);
+            for (int i = 0; i < COLUMNS; i++) {
+                block.putInt(rawLengths[i]).putInt(compressed[i].length);
+            }
+            for (int i = 0; i < COLUMNS; i++) {
+                block.put(compressed[i]);
+            }
+            return block.array();
+	}
+
+
+        //returns the date a barcode made by AdhocTicketFactory carries, or -1 for any other barcode
+	private static long barcodeDate(int ticketNo, String barcode) {
+            if (barcode == null || ticketNo <= 0) {
+                return -1;
+            }
+            String prefix = "A" + Integer.toHexString(ticketNo);
+            int digits = barcode.length() - prefix.length();
+            if (!barcode.startsWith(prefix) || digits <= 0 || digits > 15) {
+                return -1;
+            }
+            long date;
+            try {
+                date = Long.parseLong(barcode.substring(prefix.length()), 16);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+            return AdhocTicketFactory.barcode(ticketNo, date).equals(barcode) ? date : -1;
+	}
+
+
+	private void readBlock(Path block, List<IAdhocTicket> tickets) {
+            try (FileChannel channel = FileChannel.open(block, StandardOpenOption.READ)) {
+                Header header = readHeader(channel, block);
+                int count = header.count;
+                long[] ticketNos = readDeltas(readColumn(channel, header, TICKET_NO, block), count);
+                long[] carparks = readVarLongs(ByteBuffer.wrap(readColumn(channel, header, CARPARK, block)), count);
+                ByteBuffer dictionaryColumn = ByteBuffer.wrap(readColumn(channel, header, DICTIONARY, block));
+                String[] carparkIds = new String[(int) getVarLong(dictionaryColumn)];
+                for (int i = 0; i < carparkIds.length; i++) {
+                    carparkIds[i] = getString(dictionaryColumn);
+                }
+                long[] dates = readVarLongs(ByteBuffer.wrap(readColumn(channel, header, BARCODE, block)), count);
+                ByteBuffer raw = ByteBuffer.wrap(readColumn(channel, header, RAW_BARCODES, block));
+                getVarLong(raw);
+                long[] entries = readDeltaOfDeltas(readColumn(channel, header, ENTRY, block), count);
+                long[] paids = readDeltaOfDeltas(readColumn(channel, header, PAID, block), count);
+                long[] exits = readDeltaOfDeltas(readColumn(channel, header, EXIT, block), count);
+                long[] charges = readVarLongs(ByteBuffer.wrap(readColumn(channel, header, CHARGE, block)), count);
+
+                long date = 0;
+                for (int i = 0; i < count; i++) {
+                    int ticketNo = (int) ticketNos[i];
+                    String barcode;
+                    if (dates[i] == 0) {
+                        barcode = getString(raw);
+                    } else {
+                        date += unZigZag(dates[i] - 1);
+                        barcode = AdhocTicketFactory.barcode(ticketNo, date);
+                    }
+                    tickets.add(new ArchivedTicket(ticketNo, barcode, carparkIds[(int) carparks[i]],
+                            entries[i], paids[i], exits[i], unZigZag(charges[i])));
+                }
+            } catch (IOException | RuntimeException e) {
+                throw new RuntimeException("Cannot read archive block " + block, e);
+            }
+	}
+
+
+        //reads the time or charge columns named, each as a long for every ticket
+	private long[][] readColumns(Path block, int... names) {
+            try (FileChannel channel = FileChannel.open(block, StandardOpenOption.READ)) {
+                Header header = readHeader(channel, block);
+                long[][] values = new long[names.length][];
+                for (int i = 0; i < names.length; i++) {
+                    byte[] column = readColumn(channel, header, names[i], block);
+                    values[i] = names[i] == CHARGE
+                            ? unZigZags(readVarLongs(ByteBuffer.wrap(column), header.count))
+                            : readDeltaOfDeltas(column, header.count);
+                }
+                return values;
+            } catch (IOException | RuntimeException e) {
+                throw new RuntimeException("Cannot read archive block " + block, e);
+            }
+	}
+
+
+	private Header readHeader(FileChannel channel, Path block) throws IOException {
+            ByteBuffer bytes = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(channel, bytes, 0);
+            if (bytes.getInt(0) != MAGIC || bytes.getInt(4) != VERSION || bytes.getInt(12) != COLUMNS) {
+                throw new RuntimeException("Archive block " + block + " is corrupt");
+            }
+            Header header = new Header(bytes.getInt(8));
+            long offset = HEADER_BYTES;
+            for (int i = 0; i < COLUMNS; i++) {
+                header.rawLengths[i] = bytes.getInt(16 + 8 * i);
+                header.compressedLengths[i] = bytes.getInt(20 + 8 * i);
+                header.offsets[i] = offset;
+                offset += header.compressedLengths[i];
+            }
+            if (offset != channel.size()) {
+                throw new RuntimeException("Archive block " + block + " is incomplete");
+            }
+            synchronized (this) {
+                columnBytesRead += HEADER_BYTES;
+            }
+            return header;
+	}
+
+
+	private byte[] readColumn(FileChannel channel, Header header, int column, Path block) throws IOException {
+            ByteBuffer compressed = ByteBuffer.allocate(header.compressedLengths[column]);
+            readFully(channel, compressed, header.offsets[column]);
+            synchronized (this) {
+                columnBytesRead += compressed.capacity();
+            }
+            byte[] bytes = new byte[header.rawLengths[column]];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed.array());
+                int length = 0;
+                while (length < bytes.length && !inflater.finished()) {
+                    int inflated = inflater.inflate(bytes, length, bytes.length - length);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    length += inflated;
+                }
+                if (length != bytes.length) {
+                    throw new RuntimeException("Archive block " + block + " is corrupt");
+                }
+            } catch (DataFormatException e) {
+                throw new RuntimeException("Archive block " + block + " is corrupt", e);
+            } finally {
+                inflater.end();
+            }
+            return bytes;
+	}
+
+
+	private static void writeFully(FileChannel channel, ByteBuffer bytes, long position) throws IOException {
+            while (bytes.hasRemaining()) {
+                position += channel.write(bytes, position);
+            }
+	}
+
+
+	private static void readFully(FileChannel channel, ByteBuffer bytes, long position) throws IOException {
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, position + bytes.position()) < 0) {
+                    throw new IOException("Unexpected end of archive block");
+                }
+            }
+	}
+
+
+	private static byte[] deflate(Deflater deflater, byte[] column) {
+            deflater.reset();
+            deflater.setInput(column);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(column.length / 2 + 16);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                compressed.write(buffer, 0, length);
+            }
+            return compressed.toByteArray();
+	}
+
+
+        //writes each value as the change in its difference from the value before
+	private static void putDeltaOfDeltas(ByteArrayOutputStream column, long[] values) {
+            long previous = 0;
+            long previousDelta = 0;
+            for (long value : values) {
+                long delta = value - previous;
+                putVarLong(column, zigZag(delta - previousDelta));
+                previous = value;
+                previousDelta = delta;
+            }
+	}
+
+
+	private static long[] readDeltaOfDeltas(byte[] column, int count) {
+            long[] values = readVarLongs(ByteBuffer.wrap(column), count);
+            long previous = 0;
+            long delta = 0;
+            for (int i = 0; i < count; i++) {
+                delta += unZigZag(values[i]);
+                previous += delta;
+                values[i] = previous;
+            }
+            return values;
+	}
+
+
+	private static long[] readDeltas(byte[] column, int count) {
+            long[] values = readVarLongs(ByteBuffer.wrap(column), count);
+            long previous = 0;
+            for (int i = 0; i < count; i++) {
+                previous += unZigZag(values[i]);
+                values[i] = previous;
+            }
+            return values;
+	}
+
+
+	private static long[] readVarLongs(ByteBuffer column, int count) {
+            long[] values = new long[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = getVarLong(column);
+            }
+            return values;
+	}
+
+
+	private static long[] unZigZags(long[] values) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = unZigZag(values[i]);
+            }
+            return values;
+	}
+
+
+        //seven bits to a byte, low bits first, the top bit set on all but the last
+	private static void putVarLong(ByteArrayOutputStream column, long value) {
+            while ((value & ~0x7fL) != 0) {
+                column.write((int) (value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            column.write((int) value);
+	}
+
+
+	private static long getVarLong(ByteBuffer column) {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = column.get();
+                value |= (long) (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new RuntimeException("Invalid varint in archive column");
+	}
+
+
+        //maps small negative numbers to small positive ones, so they make short varints
+	private static long zigZag(long value) {
+            return (value << 1) ^ (value >> 63);
+	}
+
+
+	private static long unZigZag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+	}
+
+
+	private static void putString(ByteArrayOutputStream column, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarLong(column, bytes.length);
+            column.write(bytes, 0, bytes.length);
+	}
+
+
+	private static String getString(ByteBuffer column) {
+            byte[] bytes = new byte[(int) getVarLong(column)];
+            column.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+
+        //the ticket count and where each column of a block file is
+	private static class Header {
+            final int count;
+            final int[] rawLengths = new int[COLUMNS];
+            final int[] compressedLengths = new int[COLUMNS];
+            final long[] offsets = new long[COLUMNS];
+
+            Header(int count) {
+                this.count = count;
+            }
+	}
+
+
+        //a ticket waiting to be written or read back from the archive, which cannot be changed
+	private static class ArchivedTicket implements IAdhocTicket {
+
+            private final int ticketNo;
+            private final String barcode;
+            private final String carparkId;
+            private final long entryDateTime;
+            private final long paidDateTime;
+            private final long exitDateTime;
+            private final long charge;
+
+            ArchivedTicket(int ticketNo, String barcode, String carparkId,
+                    long entryDateTime, long paidDateTime, long exitDateTime, long charge) {
+                this.ticketNo = ticketNo;
+                this.barcode = barcode;
+                this.carparkId = carparkId;
+                this.entryDateTime = entryDateTime;
+                this.paidDateTime = paidDateTime;
+                this.exitDateTime = exitDateTime;
+                this.charge = charge;
+            }
+
+            @Override
+            public int getTicketNo() {
+                return ticketNo;
+            }
+
+            @Override
+            public String getBarcode() {
+                return barcode;
+            }
+
+            @Override
+            public String getCarparkId() {
+                return carparkId;
+            }
+
+            @Override
+            public void enter(long dateTime) {
+                throw new RuntimeException("Archived ticket cannot be changed");
+            }
+
+            @Override
+            public long getEntryDateTime() {
+                return entryDateTime;
+            }
+
+            @Override
+            public boolean isCurrent() {
+                return false;
+            }
+
+            @Override
+            public void pay(long dateTime, long charge) {
+                throw new RuntimeException("Archived ticket cannot be changed");
+            }
+
+            @Override
+            public long getPaidDateTime() {
+                return paidDateTime;
+            }
+
+            @Override
+            public boolean isPaid() {
+                return false;
+            }
+
+            @Override
+            public long getCharge() {
+                return charge;
+            }
+
+            @Override
+            public void exit(long dateTime) {
+                throw new RuntimeException("Archived ticket cannot be changed");
+            }
+
+            @Override
+            public long getExitDateTime() {
+                return exitDateTime;
+            }
+
+            @Override
+            public boolean hasExited() {
+                return exitDateTime > 0;
+            }
+
+            @Override
+            public String toString() {
+                return "Carpark    : " + carparkId + "\n" +
+                       "Ticket No  : " + ticketNo + "\n" +
+                       "Entry Time : " + new Date(entryDateTime) + "\n" +
+                       "Paid Time  : " + new Date(paidDateTime) + "\n" +
+                       "Exit Time  : " + new Date(exitDateTime) + "\n" +
+                       "State      : ARCHIVED\n" +
+                       "Barcode    : " + barcode;
+            }
+	}
+
+}
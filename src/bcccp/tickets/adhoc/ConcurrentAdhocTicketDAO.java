@@ -0,0 +1,108 @@
+package bcccp.tickets.adhoc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An AdhocTicketDAO that can be shared by several entry lanes, paystations and exits
+ * running on their own threads. Ticket numbers are taken from an atomic counter, so no
+ * two tickets get the same number and no number is lost, and current tickets are held
+ * in a concurrent map keyed by barcode. No call takes a lock.
+ */
+public class ConcurrentAdhocTicketDAO implements IAdhocTicketDAO {
+
+	private final IAdhocTicketFactory adhocTicketFactory;
+	private final AtomicInteger nextTicketNo = new AtomicInteger(1);
+	//leases ticket numbers when set, so they carry on across restarts and nodes
+	private final TicketNumberAllocator ticketNumbers;
+	private final AtomicInteger issued = new AtomicInteger();
+	private final ConcurrentHashMap<String, IAdhocTicket> currentAdhocTickets = new ConcurrentHashMap<>();
+
+
+        //ConcurrentAdhocTicketDAO constructor, assigning factory and numbering tickets from 1
+	public ConcurrentAdhocTicketDAO(IAdhocTicketFactory factory) {
+            if (factory == null) {
+                throw new RuntimeException("AdhocTicketFactory is null");
+            }
+            this.adhocTicketFactory = factory;
+            this.ticketNumbers = null;
+	}
+
+
+        //ConcurrentAdhocTicketDAO constructor, numbering tickets from blocks leased by the allocator
+	public ConcurrentAdhocTicketDAO(IAdhocTicketFactory factory, TicketNumberAllocator allocator) {
+            if (factory == null) {
+                throw new RuntimeException("AdhocTicketFactory is null");
+            }
+            if (allocator == null) {
+                throw new RuntimeException("TicketNumberAllocator is null");
+            }
+            this.adhocTicketFactory = factory;
+            this.ticketNumbers = allocator;
+	}
+
+
+        //takes the next ticket number, makes the ticket and adds it to the current tickets
+	@Override
+	public IAdhocTicket createTicket(String carparkId) {
+            if (carparkId == null || carparkId.length() == 0) {
+                throw new RuntimeException("carparkId is empty");
+            }
+            int ticketNo = ticketNumbers == null ? nextTicketNo.getAndIncrement() : ticketNumbers.next();
+            if (ticketNo <= 0) {
+                throw new RuntimeException("Ticket numbers are exhausted");
+            }
+
+            IAdhocTicket newTicket = adhocTicketFactory.make(carparkId, ticketNo);
+            if (currentAdhocTickets.putIfAbsent(newTicket.getBarcode(), newTicket) != null) {
+                throw new RuntimeException("Duplicate barcode " + newTicket.getBarcode());
+            }
+            issued.incrementAndGet();
+            return newTicket;
+	}
+
+
+        //returns the current ticket with the given barcode, or null if not found.
+        //a ticket that has exited is returned once more and then removed
+	@Override
+	public IAdhocTicket findTicketByBarcode(String barcode) {
+            //a concurrent map throws on a null key, and no ticket has a null barcode
+            if (barcode == null) {
+                return null;
+            }
+            IAdhocTicket ticket = currentAdhocTickets.get(barcode);
+            if (ticket != null && ticket.hasExited()) {
+                currentAdhocTickets.remove(barcode, ticket);
+            }
+            return ticket;
+	}
+
+
+        //returns a snapshot of the current tickets
+	@Override
+	public List<IAdhocTicket> getCurrentTickets() {
+            return Collections.unmodifiableList(new ArrayList<IAdhocTicket>(currentAdhocTickets.values()));
+	}
+
+
+        //streams the current tickets the filter accepts, or all of them if it is null, without copying them.
+        //tickets created or removed while the stream runs may or may not be included
+	@Override
+	public Stream<IAdhocTicket> streamCurrentTickets(AdhocTicketFilter filter) {
+            Spliterator<IAdhocTicket> tickets = currentAdhocTickets.values().spliterator();
+            return StreamSupport.stream(filter == null ? tickets : new FilteredTicketSpliterator(tickets, filter), false);
+	}
+
+
+        //returns the number of tickets issued so far
+	public int getNumberOfTicketsIssued() {
+            return issued.get();
+	}
+
+}
@@ -0,0 +1,135 @@
+package bcccp.tickets.adhoc;
+
+/**
+ * A counting Bloom filter of barcodes. A barcode that was added, and not removed since,
+ * is always found; one that was not is found only with a small probability, set when the
+ * filter is made. Each barcode increments a few one byte counters chosen by hashing it,
+ * so it can be removed again by decrementing them. A counter that reaches 255 stays there,
+ * as it can no longer tell how many barcodes it counts.
+ *
+ * The filter is sized for a number of barcodes; holding more than that raises the rate of
+ * false positives above the one it was made for. It is not safe for concurrent use.
+ */
+public class CountingBloomFilter {
+
+	private static final int MAX_COUNT = 0xff;
+
+	private final byte[] counters;
+	private final int hashes;
+	private final int capacity;
+	private int count = 0;
+
+
+        //CountingBloomFilter constructor, sized to hold a number of barcodes with a given rate of false positives
+	public CountingBloomFilter(int capacity, double falsePositiveRate) {
+            if (capacity <= 0) {
+                throw new RuntimeException("Invalid Bloom filter capacity " + capacity);
+            }
+            if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+                throw new RuntimeException("Invalid false positive rate " + falsePositiveRate);
+            }
+            double ln2 = Math.log(2);
+            long size = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new RuntimeException("Bloom filter is too large");
+            }
+            this.counters = new byte[(int) Math.max(size, 64)];
+            this.hashes = (int) Math.max(1, Math.round((double) counters.length / capacity * ln2));
+            this.capacity = capacity;
+	}
+
+
+	public void add(String barcode) {
+            long hash = hash(barcode);
+            for (int i = 0; i < hashes; i++) {
+                int index = index(hash, i);
+                int counter = counters[index] & 0xff;
+                if (counter < MAX_COUNT) {
+                    counters[index] = (byte) (counter + 1);
+                }
+            }
+            count++;
+	}
+
+
+        //removes a barcode that was added; removing one that was not may hide others
+	public void remove(String barcode) {
+            long hash = hash(barcode);
+            for (int i = 0; i < hashes; i++) {
+                if (counters[index(hash, i)] == 0) {
+                    return;
+                }
+            }
+            for (int i = 0; i < hashes; i++) {
+                int index = index(hash, i);
+                int counter = counters[index] & 0xff;
+                if (counter < MAX_COUNT) {
+                    counters[index] = (byte) (counter - 1);
+                }
+            }
+            count--;
+	}
+
+
+        //returns false only if the barcode is certainly not in the filter
+	public boolean mightContain(String barcode) {
+            long hash = hash(barcode);
+            for (int i = 0; i < hashes; i++) {
+                if (counters[index(hash, i)] == 0) {
+                    return false;
+                }
+            }
+            return true;
+	}
+
+
+        //returns the number of barcodes added and not removed
+	public int getCount() {
+            return count;
+	}
+
+
+	public int getCapacity() {
+            return capacity;
+	}
+
+
+	public int getNumberOfCounters() {
+            return counters.length;
+	}
+
+
+	public int getNumberOfHashes() {
+            return hashes;
+	}
+
+
+        //returns the chance that a barcode not in the filter is found, for the barcodes it holds now
+	public double getExpectedFalsePositiveRate() {
+            return Math.pow(1 - Math.exp(-(double) hashes * count / counters.length), hashes);
+	}
+
+
+        //the i-th counter for a hash, by double hashing its two halves
+	private int index(long hash, int i) {
+            int combined = (int) hash + i * (int) (hash >>> 32);
+            return (combined & Integer.MAX_VALUE) % counters.length;
+	}
+
+
+        //a 64 bit FNV-1a hash of the barcode's characters, with its bits mixed
+	private static long hash(String barcode) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < barcode.length(); i++) {
+                hash ^= barcode.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            hash *= 0xc4ceb9fe1a85ec53L;
+            hash ^= hash >>> 33;
+            return hash;
+	}
+
+}
@@ -0,0 +1,96 @@
+package bcccp.tickets.adhoc;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * An index of the tickets that have entered and not yet exited, ordered by entry time,
+ * for queries such as the cars that have overstayed or the tickets that could be a
+ * driver's lost ticket. The AdhocTicketDAO that owns it sets it as the observer of each
+ * AdhocTicket it makes, so a ticket is added when it enters and removed when it exits.
+ *
+ * The index is a concurrent skip list, so adding or removing a ticket takes O(log n)
+ * and a range query O(log n) to find its start, after which the k tickets in the range
+ * are read straight from the list. Query results are live views, and may or may not
+ * show tickets entering or exiting while they are read.
+ */
+public class EntryTimeIndex implements IAdhocTicketObserver {
+
+	private final ConcurrentSkipListMap<Key, IAdhocTicket> tickets = new ConcurrentSkipListMap<>();
+
+
+        //moves a ticket to its new entry time
+	@Override
+	public void ticketEntered(IAdhocTicket ticket, long previousEntryDateTime) {
+            if (previousEntryDateTime > 0) {
+                tickets.remove(new Key(previousEntryDateTime, ticket.getTicketNo()), ticket);
+            }
+            tickets.put(new Key(ticket.getEntryDateTime(), ticket.getTicketNo()), ticket);
+	}
+
+
+	@Override
+	public void ticketExited(IAdhocTicket ticket) {
+            remove(ticket);
+	}
+
+
+        //removes a ticket that is no longer current, as when it is evicted
+	public void remove(IAdhocTicket ticket) {
+            if (ticket.getEntryDateTime() > 0) {
+                tickets.remove(new Key(ticket.getEntryDateTime(), ticket.getTicketNo()), ticket);
+            }
+	}
+
+
+        //returns the tickets that entered before the given time, oldest first
+	public Collection<IAdhocTicket> getTicketsEnteredBefore(long before) {
+            return Collections.unmodifiableCollection(tickets.headMap(new Key(before, Integer.MIN_VALUE)).values());
+	}
+
+
+        //returns the tickets that entered at or after from and before the given time, oldest first
+	public Collection<IAdhocTicket> getTicketsEnteredBetween(long from, long before) {
+            if (before < from) {
+                throw new RuntimeException("Entry range ends before it starts");
+            }
+            return Collections.unmodifiableCollection(tickets.subMap(
+                    new Key(from, Integer.MIN_VALUE), new Key(before, Integer.MIN_VALUE)).values());
+	}
+
+
+        //returns the number of tickets indexed, counting them
+	public int size() {
+            return tickets.size();
+	}
+
+
+        //an entry time, with the ticket number to tell apart tickets that entered together
+	private static final class Key implements Comparable<Key> {
+            final long entryDateTime;
+            final int ticketNo;
+
+            Key(long entryDateTime, int ticketNo) {
+                this.entryDateTime = entryDateTime;
+                this.ticketNo = ticketNo;
+            }
+
+            @Override
+            public int compareTo(Key other) {
+                int order = Long.compare(entryDateTime, other.entryDateTime);
+                return order != 0 ? order : Integer.compare(ticketNo, other.ticketNo);
+            }
+
+            @Override
+            public boolean equals(Object other) {
+                return other instanceof Key && compareTo((Key) other) == 0;
+            }
+
+            @Override
+            public int hashCode() {
+                return Long.hashCode(entryDateTime) * 31 + ticketNo;
+            }
+	}
+
+}
@@ -0,0 +1,83 @@
+package bcccp.tickets.adhoc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Leases blocks of ticket numbers from a sequence file that holds the first number not
+ * yet leased. Each lease takes an exclusive lock on the file, moves the number on by the
+ * block and forces it to disk before the block is handed out, so no number is leased
+ * twice, across restarts or by the nodes sharing the file. A lease is one small write
+ * and fsync, made once per block rather than once per ticket.
+ *
+ * The number is stored with its complement, so a file that was torn or damaged is
+ * refused rather than read as a number that may already have been leased. File locks
+ * are held for a whole JVM, so a JVM should use one coordinator for each file.
+ */
+public class FileTicketNumberCoordinator implements ITicketNumberCoordinator {
+
+	private static final int RECORD_BYTES = 16;
+
+	private final Path file;
+
+
+        //FileTicketNumberCoordinator constructor, the file is made by the first lease if there is none
+	public FileTicketNumberCoordinator(Path file) {
+            if (file == null) {
+                throw new RuntimeException("sequence file is null");
+            }
+            this.file = file;
+	}
+
+
+        //returns the first number of a block of the given size, leased to the caller alone
+	@Override
+	public synchronized long leaseBlock(int size) {
+            if (size <= 0) {
+                throw new RuntimeException("Invalid ticket number block size " + size);
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+                 FileLock lock = channel.lock()) {
+                long first = read(channel);
+                long next = first + size;
+                if (next < first) {
+                    throw new RuntimeException("Ticket numbers in " + file + " are exhausted");
+                }
+                ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+                record.putLong(next).putLong(~next).flip();
+                while (record.hasRemaining()) {
+                    channel.write(record, record.position());
+                }
+                channel.force(false);
+                lock.release();
+                return first;
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot lease ticket numbers from " + file, e);
+            }
+	}
+
+
+        //returns the first number not yet leased, 1 for a new file
+	private long read(FileChannel channel) throws IOException {
+            if (channel.size() == 0) {
+                return 1;
+            }
+            ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+            while (record.hasRemaining()) {
+                if (channel.read(record, record.position()) < 0) {
+                    throw new RuntimeException("Sequence file " + file + " is corrupt");
+                }
+            }
+            long next = record.getLong(0);
+            if (record.getLong(8) != ~next || next <= 0) {
+                throw new RuntimeException("Sequence file " + file + " is corrupt");
+            }
+            return next;
+	}
+
+}
@@ -0,0 +1,66 @@
+package bcccp.tickets.adhoc;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A Spliterator that passes on only the tickets a filter accepts, for DAOs whose tickets
+ * are in a concurrent map that can already be walked and split without a lock.
+ */
+class FilteredTicketSpliterator implements Spliterator<IAdhocTicket> {
+
+	private final Spliterator<IAdhocTicket> tickets;
+	private final AdhocTicketFilter filter;
+	private IAdhocTicket found;
+
+
+	FilteredTicketSpliterator(Spliterator<IAdhocTicket> tickets, AdhocTicketFilter filter) {
+            this.tickets = tickets;
+            this.filter = filter;
+	}
+
+
+	@Override
+	public boolean tryAdvance(Consumer<? super IAdhocTicket> action) {
+            while (tickets.tryAdvance(ticket -> found = ticket)) {
+                IAdhocTicket ticket = found;
+                found = null;
+                if (filter.accepts(ticket)) {
+                    action.accept(ticket);
+                    return true;
+                }
+            }
+            return false;
+	}
+
+
+	@Override
+	public void forEachRemaining(Consumer<? super IAdhocTicket> action) {
+            tickets.forEachRemaining(ticket -> {
+                if (filter.accepts(ticket)) {
+                    action.accept(ticket);
+                }
+            });
+	}
+
+
+	@Override
+	public Spliterator<IAdhocTicket> trySplit() {
+            Spliterator<IAdhocTicket> prefix = tickets.trySplit();
+            return prefix == null ? null : new FilteredTicketSpliterator(prefix, filter);
+	}
+
+
+        //at most, as the filter may leave tickets out
+	@Override
+	public long estimateSize() {
+            return tickets.estimateSize();
+	}
+
+
+	@Override
+	public int characteristics() {
+            return tickets.characteristics() & ~(SIZED | SUBSIZED);
+	}
+
+}
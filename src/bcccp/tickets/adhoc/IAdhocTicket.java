@@ -10,15 +10,14 @@ public interface IAdhocTicket {
 	public long getEntryDateTime();
 	public boolean isCurrent();
 	
-	public void pay(long dateTime, float charge);
+	public void pay(long dateTime, long charge);
 	public long getPaidDateTime();
 	public boolean isPaid();
-	public float getCharge();
+	public long getCharge();
 	
 	public void exit(long dateTime);
 	public long getExitDateTime();
 	public boolean hasExited();
-        
         public String toString();
 	
 	
@@ -0,0 +1,12 @@
+package bcccp.tickets.adhoc;
+
+import java.util.List;
+
+public interface IAdhocTicketArchive {
+	
+	public void archive(IAdhocTicket ticket);
+	public List<IAdhocTicket> getArchivedTickets();
+	public int getNumberOfArchivedTickets();
+
+
+}
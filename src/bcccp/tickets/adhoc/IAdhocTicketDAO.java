@@ -1,12 +1,14 @@
 package bcccp.tickets.adhoc;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface IAdhocTicketDAO {
 	
 	public IAdhocTicket createTicket(String carparkId);
 	public IAdhocTicket findTicketByBarcode(String barcode);
 	public List<IAdhocTicket> getCurrentTickets();
+	public Stream<IAdhocTicket> streamCurrentTickets(AdhocTicketFilter filter);
 
 
 
@@ -0,0 +1,9 @@
+package bcccp.tickets.adhoc;
+
+//told by an AdhocTicket when it enters and exits, so the DAO that made it can index it
+interface IAdhocTicketObserver {
+
+	public void ticketEntered(IAdhocTicket ticket, long previousEntryDateTime);
+	public void ticketExited(IAdhocTicket ticket);
+
+}
@@ -0,0 +1,13 @@
+package bcccp.tickets.adhoc;
+
+import java.util.List;
+
+/**
+ * The current tickets of a DAO divided into numbered blocks, each small enough to be
+ * copied while the DAO's lock is held.
+ */
+interface ITicketBlocks {
+
+	public void copyBlock(int block, AdhocTicketFilter filter, List<IAdhocTicket> tickets);
+
+}
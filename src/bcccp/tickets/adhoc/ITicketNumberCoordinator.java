@@ -0,0 +1,7 @@
+package bcccp.tickets.adhoc;
+
+public interface ITicketNumberCoordinator {
+
+	public long leaseBlock(int size);
+
+}
@@ -0,0 +1,163 @@
+package bcccp.tickets.adhoc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An AdhocTicketDAO that finds tickets through a BarcodeIndex, so a lookup decodes the
+ * barcode into a long key and probes a primitive table instead of hashing the string.
+ * A barcode that does not decode is rejected before the table is probed. Tickets are
+ * held in an array, and the index stores each ticket's position in it.
+ *
+ * Tickets whose barcodes were not made by AdhocTicketFactory, such as those from a
+ * factory used in testing, are kept in an ordinary map instead.
+ */
+public class IndexedAdhocTicketDAO implements IAdhocTicketDAO {
+
+	//slots copied at once when the tickets are streamed
+	private static final int BLOCK_SLOTS = 1024;
+
+	private final IAdhocTicketFactory adhocTicketFactory;
+	private int currentTicketNo = 1;
+
+	private final BarcodeIndex index = new BarcodeIndex();
+	private IAdhocTicket[] tickets = new IAdhocTicket[16];
+	//positions in tickets freed by exited tickets, used before the array grows
+	private int[] freeSlots = new int[16];
+	private int freeCount = 0;
+	private int used = 0;
+
+	private final Map<String, IAdhocTicket> otherTickets = new HashMap<>();
+
+
+        //IndexedAdhocTicketDAO constructor, assigning factory and numbering tickets from 1
+	public IndexedAdhocTicketDAO(IAdhocTicketFactory factory) {
+            if (factory == null) {
+                throw new RuntimeException("AdhocTicketFactory is null");
+            }
+            this.adhocTicketFactory = factory;
+	}
+
+
+        //makes a ticket with the next ticket number and adds it to the current tickets
+	@Override
+	public synchronized IAdhocTicket createTicket(String carparkId) {
+            if (carparkId == null || carparkId.length() == 0) {
+                throw new RuntimeException("carparkId is empty");
+            }
+            IAdhocTicket newTicket = adhocTicketFactory.make(carparkId, currentTicketNo);
+            currentTicketNo++;
+
+            long key = BarcodeIndex.key(newTicket.getTicketNo(), newTicket.getBarcode());
+            if (key == BarcodeIndex.NO_KEY) {
+                otherTickets.put(newTicket.getBarcode(), newTicket);
+                return newTicket;
+            }
+            int slot = index.get(key);
+            if (slot == BarcodeIndex.NO_SLOT) {
+                slot = allocateSlot();
+                index.put(key, slot);
+            }
+            tickets[slot] = newTicket;
+            return newTicket;
+	}
+
+
+        //returns the current ticket with the given barcode, or null if not found.
+        //a ticket that has exited is returned once more and then removed
+	@Override
+	public synchronized IAdhocTicket findTicketByBarcode(String barcode) {
+            for (int dateDigits = BarcodeIndex.MIN_DATE_DIGITS; dateDigits <= BarcodeIndex.MAX_DATE_DIGITS; dateDigits++) {
+                long key = BarcodeIndex.key(barcode, dateDigits);
+                int slot = index.get(key);
+                if (slot != BarcodeIndex.NO_SLOT && tickets[slot].getBarcode().equals(barcode)) {
+                    IAdhocTicket ticket = tickets[slot];
+                    if (ticket.hasExited()) {
+                        index.remove(key);
+                        freeSlot(slot);
+                    }
+                    return ticket;
+                }
+            }
+            if (otherTickets.isEmpty()) {
+                return null;
+            }
+            IAdhocTicket ticket = otherTickets.get(barcode);
+            if (ticket != null && ticket.hasExited()) {
+                otherTickets.remove(barcode);
+            }
+            return ticket;
+	}
+
+
+        //returns a snapshot of the current tickets
+	@Override
+	public synchronized List<IAdhocTicket> getCurrentTickets() {
+            List<IAdhocTicket> current = new ArrayList<>(index.size() + otherTickets.size());
+            for (int slot = 0; slot < used; slot++) {
+                if (tickets[slot] != null) {
+                    current.add(tickets[slot]);
+                }
+            }
+            current.addAll(otherTickets.values());
+            return Collections.unmodifiableList(current);
+	}
+
+
+        //streams the current tickets the filter accepts, or all of them if it is null, copying
+        //a block of slots at a time. The other tickets are the first block
+	@Override
+	public Stream<IAdhocTicket> streamCurrentTickets(AdhocTicketFilter filter) {
+            int blocks;
+            synchronized (this) {
+                blocks = 1 + (used + BLOCK_SLOTS - 1) / BLOCK_SLOTS;
+            }
+            return StreamSupport.stream(new TicketBlockSpliterator(this::copyBlock, filter, 0, blocks, BLOCK_SLOTS), false);
+	}
+
+
+	private synchronized void copyBlock(int block, AdhocTicketFilter filter, List<IAdhocTicket> current) {
+            if (block == 0) {
+                for (IAdhocTicket ticket : otherTickets.values()) {
+                    if (filter == null || filter.accepts(ticket)) {
+                        current.add(ticket);
+                    }
+                }
+                return;
+            }
+            int end = Math.min(used, block * BLOCK_SLOTS);
+            for (int slot = (block - 1) * BLOCK_SLOTS; slot < end; slot++) {
+                IAdhocTicket ticket = tickets[slot];
+                if (ticket != null && (filter == null || filter.accepts(ticket))) {
+                    current.add(ticket);
+                }
+            }
+	}
+
+
+	private int allocateSlot() {
+            if (freeCount > 0) {
+                return freeSlots[--freeCount];
+            }
+            if (used == tickets.length) {
+                tickets = Arrays.copyOf(tickets, 2 * used);
+            }
+            return used++;
+	}
+
+
+	private void freeSlot(int slot) {
+            tickets[slot] = null;
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, 2 * freeCount);
+            }
+            freeSlots[freeCount++] = slot;
+	}
+
+}
@@ -0,0 +1,370 @@
+package bcccp.tickets.adhoc;
+
+import bcccp.journal.GroupCommitJournal;
+import bcccp.journal.IJournal;
+import bcccp.journal.IJournalOpener;
+import bcccp.journal.ISnapshotSource;
+import bcccp.journal.ISnapshotWriter;
+import bcccp.metrics.Histogram;
+import bcccp.time.IClock;
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An AdhocTicketDAO that survives a restart. Every ticket it issues, and every entry,
+ * payment and exit recorded on those tickets, is appended to a journal before the call
+ * returns, and when the DAO is opened again the journal is replayed to rebuild the
+ * tickets of the cars still on site and to carry on the ticket numbers.
+ *
+ * The journal forces records to disk in groups, so lanes writing at the same time share
+ * one fsync. Calls wait for their own record only after releasing the DAO's lock. By
+ * default the journal is a single file; a MappedSegmentJournal reads back faster.
+ *
+ * The DAO can write a snapshot of its tickets for a JournalCompactor. Tickets go on
+ * changing while it is written, so replaying the journal over a snapshot allows for
+ * records of changes the snapshot already holds, and of tickets it has left out as exited.
+ *
+ * As an AdhocTicketDAO it can lease its ticket numbers from a TicketNumberAllocator, keeps
+ * the current tickets in an entry time index, and can be swept. A ticket the sweeper evicts
+ * before it has exited is journaled as evicted, so it is not brought back by a restart.
+ */
+public class JournaledAdhocTicketDAO extends AdhocTicketDAO implements ISnapshotSource, Closeable {
+
+	private static final byte CREATE = 1;
+	private static final byte ENTER = 2;
+	private static final byte PAY = 3;
+	private static final byte EXIT = 4;
+	private static final byte SNAPSHOT = 5;
+	private static final byte SNAPSHOT_TICKET = 6;
+	private static final byte EVICT = 7;
+
+	private static final int DEFAULT_MAX_BATCH = 64;
+	private static final long DEFAULT_MAX_DELAY = 2;
+
+	//set while the journal is opened, as replaying it makes tickets that read the clock
+	private IClock clock;
+	private final IJournal journal;
+
+	//tickets by number while the journal is replayed, and whether it is replayed over a snapshot
+	private Map<Integer, IAdhocTicket> replayed = new HashMap<>();
+	private boolean snapshotLoaded = false;
+
+
+        //JournaledAdhocTicketDAO constructor, forcing up to 64 records at once, at most 2 ms apart
+	public JournaledAdhocTicketDAO(IAdhocTicketFactory factory, Path journalFile, IClock clock) {
+            this(factory, journalFile, clock, DEFAULT_MAX_BATCH, DEFAULT_MAX_DELAY);
+	}
+
+
+        //JournaledAdhocTicketDAO constructor, journaling to a single file
+	public JournaledAdhocTicketDAO(IAdhocTicketFactory factory, Path journalFile, IClock clock,
+                int maxBatch, long maxDelayMillis) {
+            this(factory, reader -> new GroupCommitJournal(journalFile, reader, maxBatch, maxDelayMillis), clock);
+	}
+
+
+        //JournaledAdhocTicketDAO constructor, opening the journal and replaying what is in it.
+        //ticket numbers carry on from the highest in the journal
+	public JournaledAdhocTicketDAO(IAdhocTicketFactory factory, IJournalOpener journalOpener, IClock clock) {
+            super(factory);
+            this.journal = open(journalOpener, clock);
+	}
+
+
+        //JournaledAdhocTicketDAO constructor, opening the journal and replaying what is in it.
+        //ticket numbers are leased from the allocator, so they carry on across nodes as well as restarts
+	public JournaledAdhocTicketDAO(IAdhocTicketFactory factory, IJournalOpener journalOpener, IClock clock,
+                TicketNumberAllocator allocator) {
+            super(factory, allocator);
+            this.journal = open(journalOpener, clock);
+	}
+
+
+        //makes a ticket with the next ticket number, returning once its creation is on disk
+	@Override
+	public IAdhocTicket createTicket(String carparkId) {
+            if (carparkId == null || carparkId.length() == 0) {
+                throw new RuntimeException("carparkId is empty");
+            }
+            IAdhocTicket newTicket;
+            long seq;
+            synchronized (this) {
+                newTicket = new JournaledTicket(makeTicket(carparkId));
+                seq = journal.write(createRecord(newTicket));
+                addTicket(newTicket);
+            }
+            journal.awaitDurable(seq);
+            return newTicket;
+	}
+
+
+        //writes the next ticket number and the tickets that have not exited,
+        //holding the DAO's lock only while the tickets are listed
+	@Override
+	public void writeSnapshot(ISnapshotWriter writer) {
+            List<IAdhocTicket> tickets;
+            int nextTicketNo;
+            synchronized (this) {
+                tickets = getCurrentTickets();
+                nextTicketNo = getNextTicketNo();
+            }
+            writer.add(ByteBuffer.allocate(5).put(SNAPSHOT).putInt(nextTicketNo).array());
+            for (IAdhocTicket ticket : tickets) {
+                if (!ticket.hasExited()) {
+                    writer.add(snapshotRecord(ticket));
+                }
+            }
+	}
+
+
+        //removes a ticket for the sweeper, journaling the eviction of a ticket that has not exited.
+        //the record is not waited for, as a lost eviction only brings the ticket back to be swept again
+	@Override
+	synchronized boolean evict(IAdhocTicket ticket) {
+            if (!super.evict(ticket)) {
+                return false;
+            }
+            if (!ticket.hasExited()) {
+                journal.write(eventRecord(EVICT, ticket.getTicketNo(), clock.currentTimeMillis(), 0));
+            }
+            return true;
+	}
+
+
+        //returns the time records wait to reach the disk, in nanoseconds
+	public Histogram getWriteLatency() {
+            return journal.getWriteLatency();
+	}
+
+
+        //returns the number of records forced to disk together
+	public Histogram getBatchSizes() {
+            return journal.getBatchSizes();
+	}
+
+
+        //writes any pending records and closes the journal
+	@Override
+	public void close() {
+            journal.close();
+	}
+
+
+        //opens the journal, replays what is in it and adds the tickets that have not exited
+	private IJournal open(IJournalOpener journalOpener, IClock clock) {
+            if (journalOpener == null) {
+                throw new RuntimeException("journal opener is null");
+            }
+            if (clock == null) {
+                throw new RuntimeException("clock is null");
+            }
+            this.clock = clock;
+            IJournal opened = journalOpener.open(this::replay);
+
+            //exited tickets are not brought back
+            synchronized (this) {
+                for (IAdhocTicket ticket : replayed.values()) {
+                    if (!ticket.hasExited()) {
+                        addTicket(new JournaledTicket(ticket));
+                    }
+                }
+            }
+            replayed = null;
+            return opened;
+	}
+
+
+        //rebuilds a ticket from one snapshot or journal record
+	private void replay(ByteBuffer record) {
+            byte type = record.get();
+            if (type == SNAPSHOT) {
+                skipTicketNumbers(record.getInt());
+                snapshotLoaded = true;
+                return;
+            }
+            int ticketNo = record.getInt();
+            if (type == CREATE || type == SNAPSHOT_TICKET) {
+                String carparkId = getString(record);
+                String barcode = getString(record);
+                skipTicketNumbers(ticketNo + 1);
+                if (type == CREATE && replayed.containsKey(ticketNo)) {
+                    //created after the snapshot began, and already in it
+                    return;
+                }
+                IAdhocTicket ticket = new AdhocTicket(carparkId, ticketNo, barcode, clock);
+                if (type == SNAPSHOT_TICKET) {
+                    long entryDateTime = record.getLong();
+                    long paidDateTime = record.getLong();
+                    long charge = record.getLong();
+                    if (entryDateTime > 0) {
+                        ticket.enter(entryDateTime);
+                    }
+                    if (paidDateTime > 0) {
+                        ticket.pay(paidDateTime, charge);
+                    }
+                }
+                replayed.put(ticketNo, ticket);
+                return;
+            }
+            IAdhocTicket ticket = replayed.get(ticketNo);
+            if (ticket == null) {
+                if (snapshotLoaded) {
+                    //a ticket that exited before the snapshot listed it
+                    return;
+                }
+                throw new RuntimeException("Journal records an event for unknown ticket " + ticketNo);
+            }
+            switch (type) {
+                case ENTER:
+                    ticket.enter(record.getLong());
+                    break;
+                case PAY:
+                    ticket.pay(record.getLong(), record.getLong());
+                    break;
+                case EXIT:
+                    ticket.exit(record.getLong());
+                    //exited tickets need not be kept while replaying
+                    replayed.remove(ticketNo);
+                    break;
+                case EVICT:
+                    //evicted tickets are not brought back
+                    replayed.remove(ticketNo);
+                    break;
+                default:
+                    throw new RuntimeException("Unknown journal record type " + type);
+            }
+	}
+
+
+	private static byte[] createRecord(IAdhocTicket ticket) {
+            byte[] carparkId = ticket.getCarparkId().getBytes(StandardCharsets.UTF_8);
+            byte[] barcode = ticket.getBarcode().getBytes(StandardCharsets.UTF_8);
+            ByteBuffer record = ByteBuffer.allocate(1 + 4 + 2 + carparkId.length + 2 + barcode.length);
+            record.put(CREATE).putInt(ticket.getTicketNo());
+            record.putShort((short) carparkId.length).put(carparkId);
+            record.putShort((short) barcode.length).put(barcode);
+            return record.array();
+	}
+
+
+	private static byte[] snapshotRecord(IAdhocTicket ticket) {
+            byte[] carparkId = ticket.getCarparkId().getBytes(StandardCharsets.UTF_8);
+            byte[] barcode = ticket.getBarcode().getBytes(StandardCharsets.UTF_8);
+            ByteBuffer record = ByteBuffer.allocate(1 + 4 + 2 + carparkId.length + 2 + barcode.length + 24);
+            record.put(SNAPSHOT_TICKET).putInt(ticket.getTicketNo());
+            record.putShort((short) carparkId.length).put(carparkId);
+            record.putShort((short) barcode.length).put(barcode);
+            record.putLong(ticket.getEntryDateTime()).putLong(ticket.getPaidDateTime()).putLong(ticket.getCharge());
+            return record.array();
+	}
+
+
+	private static byte[] eventRecord(byte type, int ticketNo, long dateTime, long charge) {
+            ByteBuffer record = ByteBuffer.allocate(type == PAY ? 21 : 13);
+            record.put(type).putInt(ticketNo).putLong(dateTime);
+            if (type == PAY) {
+                record.putLong(charge);
+            }
+            return record.array();
+	}
+
+
+	private static String getString(ByteBuffer record) {
+            byte[] bytes = new byte[record.getShort() & 0xffff];
+            record.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+
+        //a ticket that journals each change after making it
+	private class JournaledTicket implements IAdhocTicket {
+
+            private final IAdhocTicket ticket;
+
+            JournaledTicket(IAdhocTicket ticket) {
+                this.ticket = ticket;
+            }
+
+            @Override
+            public int getTicketNo() {
+                return ticket.getTicketNo();
+            }
+
+            @Override
+            public String getBarcode() {
+                return ticket.getBarcode();
+            }
+
+            @Override
+            public String getCarparkId() {
+                return ticket.getCarparkId();
+            }
+
+            @Override
+            public void enter(long dateTime) {
+                long previousEntryDateTime = ticket.getEntryDateTime();
+                ticket.enter(dateTime);
+                ticketEntered(this, previousEntryDateTime);
+                journal.append(eventRecord(ENTER, ticket.getTicketNo(), dateTime, 0));
+            }
+
+            @Override
+            public long getEntryDateTime() {
+                return ticket.getEntryDateTime();
+            }
+
+            @Override
+            public boolean isCurrent() {
+                return ticket.isCurrent();
+            }
+
+            @Override
+            public void pay(long dateTime, long charge) {
+                ticket.pay(dateTime, charge);
+                journal.append(eventRecord(PAY, ticket.getTicketNo(), dateTime, charge));
+            }
+
+            @Override
+            public long getPaidDateTime() {
+                return ticket.getPaidDateTime();
+            }
+
+            @Override
+            public boolean isPaid() {
+                return ticket.isPaid();
+            }
+
+            @Override
+            public long getCharge() {
+                return ticket.getCharge();
+            }
+
+            @Override
+            public void exit(long dateTime) {
+                ticket.exit(dateTime);
+                ticketExited(this);
+                journal.append(eventRecord(EXIT, ticket.getTicketNo(), dateTime, 0));
+            }
+
+            @Override
+            public long getExitDateTime() {
+                return ticket.getExitDateTime();
+            }
+
+            @Override
+            public boolean hasExited() {
+                return ticket.hasExited();
+            }
+
+            @Override
+            public String toString() {
+                return ticket.toString();
+            }
+	}
+
+}
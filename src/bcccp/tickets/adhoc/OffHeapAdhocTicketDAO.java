@@ -0,0 +1,458 @@
+package bcccp.tickets.adhoc;
+
+import bcccp.time.IClock;
+import bcccp.time.SystemClock;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An AdhocTicketDAO that keeps its tickets outside the Java heap, for sites holding
+ * millions of live tickets. Ticket fields are stored in fixed width columns in direct
+ * buffers of 65536 rows each, and the barcode is not stored but made again from the
+ * ticket number and the date it carries. Tickets are found through a BarcodeIndex, so
+ * the only heap memory that grows with the number of tickets is the index's primitive
+ * arrays, which the garbage collector never has to trace.
+ *
+ * The tickets handed out are views onto a row. They are made for each call and hold
+ * only the row and ticket number, so two views of the same ticket are equal but not
+ * the same object. Once an exited ticket has been removed its row can be reused; a
+ * view of it can still be read until then, but cannot be changed.
+ */
+public class OffHeapAdhocTicketDAO implements IAdhocTicketDAO {
+
+	private static final int CHUNK_SHIFT = 16;
+	private static final int CHUNK_ROWS = 1 << CHUNK_SHIFT;
+	private static final int ROW_MASK = CHUNK_ROWS - 1;
+
+	//byte offsets of the columns in a chunk, the long columns first
+	private static final int BARCODE_DATE = 0;
+	private static final int ENTRY = 8 * CHUNK_ROWS;
+	private static final int PAID = 16 * CHUNK_ROWS;
+	private static final int EXIT = 24 * CHUNK_ROWS;
+	private static final int CHARGE = 32 * CHUNK_ROWS;
+	private static final int TICKET_NO = 40 * CHUNK_ROWS;
+	private static final int CARPARK = 44 * CHUNK_ROWS;
+	private static final int STATE = 48 * CHUNK_ROWS;
+	private static final int CHUNK_BYTES = 49 * CHUNK_ROWS;
+
+	private static final byte ISSUED = 0;
+	private static final byte CURRENT = 1;
+	private static final byte PAID_STATE = 2;
+	private static final byte EXITED = 3;
+	//exited and removed from the current tickets, its row free to reuse
+	private static final byte REMOVED = 4;
+	private static final String[] STATE_NAMES = {"ISSUED", "CURRENT", "PAID", "EXITED", "EXITED"};
+
+	//how long a paid ticket stays paid, as for AdhocTicket
+	private static final long PAID_PERIOD = 900000;
+
+	//rows copied at once when the tickets are streamed
+	private static final int BLOCK_ROWS = 1024;
+
+	private final IClock clock;
+	private final List<ByteBuffer> chunks = new ArrayList<>();
+	private int rows = 0;
+	private int[] freeRows = new int[16];
+	private int freeCount = 0;
+	private final BarcodeIndex index = new BarcodeIndex();
+
+	//carpark ids are few, so each row holds the position of its id in this list
+	private final List<String> carparkIds = new ArrayList<>();
+	private final Map<String, Integer> carparkIndexes = new HashMap<>();
+
+	private int nextTicketNo = 1;
+
+
+        //OffHeapAdhocTicketDAO constructor, dating tickets by the wall clock
+	public OffHeapAdhocTicketDAO() {
+            this(SystemClock.INSTANCE);
+	}
+
+
+        //OffHeapAdhocTicketDAO constructor, dating tickets by the given clock
+	public OffHeapAdhocTicketDAO(IClock clock) {
+            if (clock == null) {
+                throw new RuntimeException("clock is null");
+            }
+            this.clock = clock;
+	}
+
+
+        //makes a ticket with the next ticket number in a free row, with a barcode as AdhocTicketFactory makes them
+	@Override
+	public synchronized IAdhocTicket createTicket(String carparkId) {
+            if (carparkId == null || carparkId.length() == 0) {
+                throw new RuntimeException("carparkId is empty");
+            }
+            int ticketNo = nextTicketNo;
+            if (ticketNo <= 0) {
+                throw new RuntimeException("Ticket numbers are exhausted");
+            }
+            long date = AdhocTicketFactory.barcodeDate(clock.currentTimeMillis());
+            long key = BarcodeIndex.key(ticketNo, date);
+            if (key == BarcodeIndex.NO_KEY) {
+                throw new RuntimeException("Cannot index a ticket dated " + date);
+            }
+            nextTicketNo++;
+
+            int row = allocateRow();
+            putLong(BARCODE_DATE, row, date);
+            putLong(ENTRY, row, 0);
+            putLong(PAID, row, 0);
+            putLong(EXIT, row, 0);
+            putLong(CHARGE, row, 0);
+            putInt(TICKET_NO, row, ticketNo);
+            putInt(CARPARK, row, carparkIndex(carparkId));
+            putState(row, ISSUED);
+            index.put(key, row);
+            return new TicketView(row, ticketNo);
+	}
+
+
+        //returns the current ticket with the given barcode, or null if not found.
+        //a ticket that has exited is returned once more and then removed
+	@Override
+	public synchronized IAdhocTicket findTicketByBarcode(String barcode) {
+            for (int dateDigits = BarcodeIndex.MIN_DATE_DIGITS; dateDigits <= BarcodeIndex.MAX_DATE_DIGITS; dateDigits++) {
+                long key = BarcodeIndex.key(barcode, dateDigits);
+                int row = index.get(key);
+                //a key matches barcodes that differ only in leading zeros, so check the length too
+                if (row != BarcodeIndex.NO_SLOT && barcode.length() == barcodeLength(row)) {
+                    TicketView ticket = new TicketView(row, getInt(TICKET_NO, row));
+                    if (getState(row) == EXITED) {
+                        index.remove(key);
+                        putState(row, REMOVED);
+                        freeRow(row);
+                    }
+                    return ticket;
+                }
+            }
+            return null;
+	}
+
+
+        //returns views of the current tickets, in row order
+	@Override
+	public synchronized List<IAdhocTicket> getCurrentTickets() {
+            List<IAdhocTicket> tickets = new ArrayList<>(index.size());
+            for (int row = 0; row < rows; row++) {
+                if (getState(row) != REMOVED) {
+                    tickets.add(new TicketView(row, getInt(TICKET_NO, row)));
+                }
+            }
+            return Collections.unmodifiableList(tickets);
+	}
+
+
+        //streams views of the current tickets the filter accepts, or all of them if it is null,
+        //a block of rows at a time. Rows are filtered on their columns, so views are made only for the tickets streamed
+	@Override
+	public Stream<IAdhocTicket> streamCurrentTickets(AdhocTicketFilter filter) {
+            int blocks;
+            synchronized (this) {
+                blocks = (rows + BLOCK_ROWS - 1) / BLOCK_ROWS;
+            }
+            return StreamSupport.stream(new TicketBlockSpliterator(this::copyBlock, filter, 0, blocks, BLOCK_ROWS), false);
+	}
+
+
+	private synchronized void copyBlock(int block, AdhocTicketFilter filter, List<IAdhocTicket> tickets) {
+            AdhocTicketState[] states = AdhocTicketState.values();
+            int end = Math.min(rows, (block + 1) * BLOCK_ROWS);
+            for (int row = block * BLOCK_ROWS; row < end; row++) {
+                byte state = getState(row);
+                if (state == REMOVED) {
+                    continue;
+                }
+                if (filter == null || filter.accepts(states[state], getLong(ENTRY, row))) {
+                    tickets.add(new TicketView(row, getInt(TICKET_NO, row)));
+                }
+            }
+	}
+
+
+        //returns the number of tickets held, from issue until removed after exit
+	public synchronized int getNumberOfTickets() {
+            return index.size();
+	}
+
+
+        //returns the bytes of direct memory the columns take up
+	public synchronized long getOffHeapBytes() {
+            return (long) chunks.size() * CHUNK_BYTES;
+	}
+
+
+	private int allocateRow() {
+            if (freeCount > 0) {
+                return freeRows[--freeCount];
+            }
+            if (rows == chunks.size() * CHUNK_ROWS) {
+                chunks.add(ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.nativeOrder()));
+            }
+            return rows++;
+	}
+
+
+	private void freeRow(int row) {
+            if (freeCount == freeRows.length) {
+                freeRows = Arrays.copyOf(freeRows, 2 * freeCount);
+            }
+            freeRows[freeCount++] = row;
+	}
+
+
+	private int carparkIndex(String carparkId) {
+            Integer carpark = carparkIndexes.get(carparkId);
+            if (carpark == null) {
+                carpark = carparkIds.size();
+                carparkIds.add(carparkId);
+                carparkIndexes.put(carparkId, carpark);
+            }
+            return carpark;
+	}
+
+
+        //length of the barcode of a row, worked out without making it
+	private int barcodeLength(int row) {
+            return 1 + hexLength(getInt(TICKET_NO, row)) + hexLength(getLong(BARCODE_DATE, row));
+	}
+
+
+	private static int hexLength(long value) {
+            return (67 - Long.numberOfLeadingZeros(value)) / 4;
+	}
+
+
+	private long getLong(int column, int row) {
+            return chunks.get(row >>> CHUNK_SHIFT).getLong(column + 8 * (row & ROW_MASK));
+	}
+
+	private void putLong(int column, int row, long value) {
+            chunks.get(row >>> CHUNK_SHIFT).putLong(column + 8 * (row & ROW_MASK), value);
+	}
+
+	private int getInt(int column, int row) {
+            return chunks.get(row >>> CHUNK_SHIFT).getInt(column + 4 * (row & ROW_MASK));
+	}
+
+	private void putInt(int column, int row, int value) {
+            chunks.get(row >>> CHUNK_SHIFT).putInt(column + 4 * (row & ROW_MASK), value);
+	}
+
+	private byte getState(int row) {
+            return chunks.get(row >>> CHUNK_SHIFT).get(STATE + (row & ROW_MASK));
+	}
+
+	private void putState(int row, byte state) {
+            chunks.get(row >>> CHUNK_SHIFT).put(STATE + (row & ROW_MASK), state);
+	}
+
+
+        //a ticket read from and written to its row, with the same rules as AdhocTicket
+	private class TicketView implements IAdhocTicket {
+
+            private final int row;
+            private final int ticketNo;
+
+            TicketView(int row, int ticketNo) {
+                this.row = row;
+                this.ticketNo = ticketNo;
+            }
+
+
+            @Override
+            public int getTicketNo() {
+                return ticketNo;
+            }
+
+
+            @Override
+            public String getBarcode() {
+                synchronized (OffHeapAdhocTicketDAO.this) {
+                    checkRow();
+                    return AdhocTicketFactory.barcode(ticketNo, getLong(BARCODE_DATE, row));
+                }
+            }
+
+
+            @Override
+            public String getCarparkId() {
+                synchronized (OffHeapAdhocTicketDAO.this) {
+                    checkRow();
+                    return carparkIds.get(getInt(CARPARK, row));
+                }
+            }
+
+
+            @Override
+            public void enter(long dateTime) {
+                if (dateTime <= 0) {
+                    throw new RuntimeException("Entry Datetime is less than zero");
+                }
+                synchronized (OffHeapAdhocTicketDAO.this) {
+                    checkChangeable();
+                    putLong(ENTRY, row, dateTime);
+                    putState(row, CURRENT);
+                }
+            }
+
+
+            @Override
+            public long getEntryDateTime() {
+                synchronized (OffHeapAdhocTicketDAO.this) {
+                    checkRow();
+                    return getLong(ENTRY, row);
+                }
+            }
+
+
+            @Override
+            public boolean isCurrent() {
+                synchronized (OffHeapAdhocTicketDAO.this) {
+                    checkRow();
+                    return getState(row) == CURRENT;
+                }
+            }
+
+
+            @Override
+            public void pay(long dateTime, long charge) {
+                synchronized (OffHeapAdhocTicketDAO.this) {
+                    checkChangeable();
+                    if (dateTime <= getLong(ENTRY, row)) {
+                        throw new RuntimeException("Paid date time is less than or equal to entry date time");
+                    }
+                    putLong(CHARGE, row, charge);
+                    putLong(PAID, row, dateTime);
+                    putState(row, PAID_STATE);
+                }
+            }
+
+
+            //returns the paid time, and as for AdhocTicket makes a ticket paid too long ago current again
+            @Override
+            public long getPaidDateTime() {
+                synchronized (OffHeapAdhocTicketDAO.this) {
+                    checkRow();
+                    long paidDateTime = getLong(PAID, row);
+                    if (getState(row) == PAID_STATE && clock.currentTimeMillis() - paidDateTime > PAID_PERIOD) {
+                        putState(row, CURRENT);
+                    }
+                    return paidDateTime;
+                }
+            }
+
+
+            @Override
+            public boolean isPaid() {
+                synchronized (OffHeapAdhocTicketDAO.this) {
+                    checkRow();
+                    return getState(row) == PAID_STATE;
+                }
+            }
+
+
+            @Override
+            public long getCharge() {
+                synchronized (OffHeapAdhocTicketDAO.this) {
+                    checkRow();
+                    return getLong(CHARGE, row);
+                }
+            }
+
+
+            @Override
+            public void exit(long dateTime) {
+                synchronized (OffHeapAdhocTicketDAO.this) {
+                    checkChangeable();
+                    if (dateTime <= getLong(PAID, row)) {
+                        throw new RuntimeException("ExitdateTime is less than or equal to paid date time");
+                    }
+                    putLong(EXIT, row, dateTime);
+                    putState(row, EXITED);
+                }
+            }
+
+
+            @Override
+            public long getExitDateTime() {
+                synchronized (OffHeapAdhocTicketDAO.this) {
+                    checkRow();
+                    return getLong(EXIT, row);
+                }
+            }
+
+
+            @Override
+            public boolean hasExited() {
+                synchronized (OffHeapAdhocTicketDAO.this) {
+                    checkRow();
+                    byte state = getState(row);
+                    return state == EXITED || state == REMOVED;
+                }
+            }
+
+
+            @Override
+            public boolean equals(Object other) {
+                if (!(other instanceof TicketView)) {
+                    return false;
+                }
+                TicketView view = (TicketView) other;
+                return view.dao() == OffHeapAdhocTicketDAO.this && view.row == row && view.ticketNo == ticketNo;
+            }
+
+
+            @Override
+            public int hashCode() {
+                return 31 * row + ticketNo;
+            }
+
+
+            @Override
+            public String toString() {
+                synchronized (OffHeapAdhocTicketDAO.this) {
+                    checkRow();
+                    return "Carpark    : " + carparkIds.get(getInt(CARPARK, row)) + "\n" +
+                           "Ticket No  : " + ticketNo + "\n" +
+                           "Entry Time : " + new Date(getLong(ENTRY, row)) + "\n" +
+                           "Paid Time  : " + new Date(getLong(PAID, row)) + "\n" +
+                           "Exit Time  : " + new Date(getLong(EXIT, row)) + "\n" +
+                           "State      : " + STATE_NAMES[getState(row)] + "\n" +
+                           "Barcode    : " + AdhocTicketFactory.barcode(ticketNo, getLong(BARCODE_DATE, row));
+                }
+            }
+
+
+            private OffHeapAdhocTicketDAO dao() {
+                return OffHeapAdhocTicketDAO.this;
+            }
+
+
+            //the row may since have been reused for another ticket
+            private void checkRow() {
+                if (getInt(TICKET_NO, row) != ticketNo) {
+                    throw new RuntimeException("Ticket " + ticketNo + " has been removed");
+                }
+            }
+
+
+            private void checkChangeable() {
+                checkRow();
+                if (getState(row) == REMOVED) {
+                    throw new RuntimeException("Ticket " + ticketNo + " has been removed");
+                }
+            }
+	}
+
+}
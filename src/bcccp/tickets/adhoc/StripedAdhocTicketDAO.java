@@ -0,0 +1,175 @@
+package bcccp.tickets.adhoc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An AdhocTicketDAO split into independently locked stripes, for sites with enough
+ * lanes that a single map becomes a point of contention.
+ *
+ * Each stripe holds the tickets whose barcodes hash to it, and hands out its own range
+ * of ticket numbers: with N stripes, stripe i issues i + 1, i + 1 + N, i + 1 + 2N and
+ * so on. A lane takes numbers from the stripe chosen by its thread, so lanes running
+ * on different threads rarely wait for each other when issuing tickets.
+ */
+public class StripedAdhocTicketDAO implements IAdhocTicketDAO {
+
+	private final IAdhocTicketFactory adhocTicketFactory;
+	private final Stripe[] stripes;
+	private final int mask;
+
+
+        //StripedAdhocTicketDAO constructor, with a few stripes for every processor
+	public StripedAdhocTicketDAO(IAdhocTicketFactory factory) {
+            this(factory, 4 * Runtime.getRuntime().availableProcessors());
+	}
+
+
+        //StripedAdhocTicketDAO constructor, with the number of stripes rounded up to a power of two
+	public StripedAdhocTicketDAO(IAdhocTicketFactory factory, int stripeCount) {
+            if (factory == null) {
+                throw new RuntimeException("AdhocTicketFactory is null");
+            }
+            if (stripeCount <= 0 || stripeCount > (1 << 16)) {
+                throw new RuntimeException("Invalid number of stripes");
+            }
+            int count = Integer.highestOneBit(stripeCount);
+            if (count < stripeCount) {
+                count <<= 1;
+            }
+            this.adhocTicketFactory = factory;
+            this.stripes = new Stripe[count];
+            this.mask = count - 1;
+            for (int i = 0; i < count; i++) {
+                stripes[i] = new Stripe(i + 1);
+            }
+	}
+
+
+        //takes a number from this thread's stripe, makes the ticket and stores it in its barcode's stripe
+	@Override
+	public IAdhocTicket createTicket(String carparkId) {
+            if (carparkId == null || carparkId.length() == 0) {
+                throw new RuntimeException("carparkId is empty");
+            }
+            Stripe numbering = stripes[spread((int) Thread.currentThread().getId()) & mask];
+            int ticketNo;
+            synchronized (numbering) {
+                ticketNo = numbering.nextTicketNo;
+                if (ticketNo <= 0) {
+                    throw new RuntimeException("Ticket numbers are exhausted");
+                }
+                numbering.nextTicketNo += stripes.length;
+                numbering.issued++;
+            }
+
+            IAdhocTicket newTicket = adhocTicketFactory.make(carparkId, ticketNo);
+            Stripe stripe = stripeFor(newTicket.getBarcode());
+            synchronized (stripe) {
+                if (stripe.tickets.containsKey(newTicket.getBarcode())) {
+                    throw new RuntimeException("Duplicate barcode " + newTicket.getBarcode());
+                }
+                stripe.tickets.put(newTicket.getBarcode(), newTicket);
+            }
+            return newTicket;
+	}
+
+
+        //returns the current ticket with the given barcode, or null if not found.
+        //a ticket that has exited is returned once more and then removed
+	@Override
+	public IAdhocTicket findTicketByBarcode(String barcode) {
+            //a null barcode has no stripe, and no ticket has one
+            if (barcode == null) {
+                return null;
+            }
+            Stripe stripe = stripeFor(barcode);
+            synchronized (stripe) {
+                IAdhocTicket ticket = stripe.tickets.get(barcode);
+                if (ticket != null && ticket.hasExited()) {
+                    stripe.tickets.remove(barcode);
+                }
+                return ticket;
+            }
+	}
+
+
+        //returns the current tickets, copying one stripe at a time so only one lock is held at once.
+        //tickets created or removed during the copy may or may not be included
+	@Override
+	public List<IAdhocTicket> getCurrentTickets() {
+            List<IAdhocTicket> tickets = new ArrayList<>();
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    tickets.addAll(stripe.tickets.values());
+                }
+            }
+            return Collections.unmodifiableList(tickets);
+	}
+
+
+        //streams the current tickets the filter accepts, or all of them if it is null, copying one stripe at a time.
+        //parallel streams split the stripes between them
+	@Override
+	public Stream<IAdhocTicket> streamCurrentTickets(AdhocTicketFilter filter) {
+            return StreamSupport.stream(new TicketBlockSpliterator(this::copyStripe, filter, 0, stripes.length, 16), false);
+	}
+
+
+        //returns the number of tickets issued so far by all stripes
+	public int getNumberOfTicketsIssued() {
+            int issued = 0;
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    issued += stripe.issued;
+                }
+            }
+            return issued;
+	}
+
+
+	public int getNumberOfStripes() {
+            return stripes.length;
+	}
+
+
+	private void copyStripe(int block, AdhocTicketFilter filter, List<IAdhocTicket> tickets) {
+            Stripe stripe = stripes[block];
+            synchronized (stripe) {
+                for (IAdhocTicket ticket : stripe.tickets.values()) {
+                    if (filter == null || filter.accepts(ticket)) {
+                        tickets.add(ticket);
+                    }
+                }
+            }
+	}
+
+
+	private Stripe stripeFor(String barcode) {
+            return stripes[spread(barcode.hashCode()) & mask];
+	}
+
+
+        //mixes the high bits of a hash into the low bits used to pick a stripe
+	private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+	}
+
+
+        //the tickets and ticket numbers of one stripe, guarded by the stripe's own lock
+	private static class Stripe {
+            final Map<String, IAdhocTicket> tickets = new HashMap<>();
+            int nextTicketNo;
+            int issued = 0;
+
+            Stripe(int firstTicketNo) {
+                this.nextTicketNo = firstTicketNo;
+            }
+	}
+
+}
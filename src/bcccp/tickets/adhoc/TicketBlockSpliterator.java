@@ -0,0 +1,93 @@
+package bcccp.tickets.adhoc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A Spliterator over the tickets in a range of blocks, for DAOs that must hold a lock to
+ * read their tickets. Only one block is copied at a time, and the lock is not held while
+ * tickets are given to the action. Splitting halves the range of blocks still to be read.
+ *
+ * Blocks are read as they are reached, so tickets changed or removed while the tickets
+ * are walked may or may not be seen, and tickets created after it was made are not.
+ */
+class TicketBlockSpliterator implements Spliterator<IAdhocTicket> {
+
+	private final ITicketBlocks blocks;
+	private final AdhocTicketFilter filter;
+	private final int ticketsPerBlock;
+	private int block;
+	private final int fence;
+
+	private final List<IAdhocTicket> buffer = new ArrayList<>();
+	private int next = 0;
+
+
+	TicketBlockSpliterator(ITicketBlocks blocks, AdhocTicketFilter filter, int from, int fence, int ticketsPerBlock) {
+            this.blocks = blocks;
+            this.filter = filter;
+            this.block = from;
+            this.fence = fence;
+            this.ticketsPerBlock = ticketsPerBlock;
+	}
+
+
+	@Override
+	public boolean tryAdvance(Consumer<? super IAdhocTicket> action) {
+            while (next == buffer.size()) {
+                if (block >= fence) {
+                    return false;
+                }
+                buffer.clear();
+                next = 0;
+                blocks.copyBlock(block++, filter, buffer);
+            }
+            action.accept(buffer.get(next++));
+            return true;
+	}
+
+
+	@Override
+	public void forEachRemaining(Consumer<? super IAdhocTicket> action) {
+            while (true) {
+                for (; next < buffer.size(); next++) {
+                    action.accept(buffer.get(next));
+                }
+                if (block >= fence) {
+                    return;
+                }
+                buffer.clear();
+                next = 0;
+                blocks.copyBlock(block++, filter, buffer);
+            }
+	}
+
+
+	@Override
+	public Spliterator<IAdhocTicket> trySplit() {
+            int remaining = fence - block;
+            if (remaining < 2) {
+                return null;
+            }
+            int middle = block + remaining / 2;
+            Spliterator<IAdhocTicket> prefix = new TicketBlockSpliterator(blocks, filter, block, middle, ticketsPerBlock);
+            block = middle;
+            return prefix;
+	}
+
+
+        //at most, as blocks may be only part full
+	@Override
+	public long estimateSize() {
+            return (long) (fence - block) * ticketsPerBlock + buffer.size() - next;
+	}
+
+
+	@Override
+	public int characteristics() {
+            return NONNULL | CONCURRENT;
+	}
+
+}
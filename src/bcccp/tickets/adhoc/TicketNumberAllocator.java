@@ -0,0 +1,75 @@
+package bcccp.tickets.adhoc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out ticket numbers from blocks leased from a coordinator, so that numbers go
+ * on from where they were after a restart and do not collide between nodes. Each thread,
+ * such as an entry lane's, numbers its tickets from its own block without taking a lock,
+ * and goes back to the coordinator only when the block is used up.
+ *
+ * Numbers are unique but not in order across threads, and the rest of a block is never
+ * used once its thread stops or the node restarts.
+ */
+public class TicketNumberAllocator {
+
+	public static final int DEFAULT_BLOCK_SIZE = 10000;
+
+	private final ITicketNumberCoordinator coordinator;
+	private final int blockSize;
+	private final ThreadLocal<Block> blocks = ThreadLocal.withInitial(Block::new);
+	private final AtomicLong leases = new AtomicLong();
+
+
+        //TicketNumberAllocator constructor, leasing 10,000 numbers at a time
+	public TicketNumberAllocator(ITicketNumberCoordinator coordinator) {
+            this(coordinator, DEFAULT_BLOCK_SIZE);
+	}
+
+
+	public TicketNumberAllocator(ITicketNumberCoordinator coordinator, int blockSize) {
+            if (coordinator == null) {
+                throw new RuntimeException("ticket number coordinator is null");
+            }
+            if (blockSize <= 0) {
+                throw new RuntimeException("Invalid ticket number block size " + blockSize);
+            }
+            this.coordinator = coordinator;
+            this.blockSize = blockSize;
+	}
+
+
+        //returns the next number of this thread's block, leasing a new block when it is used up
+	public int next() {
+            Block block = blocks.get();
+            if (block.next == block.end) {
+                long first = coordinator.leaseBlock(blockSize);
+                if (first <= 0 || first > (long) Integer.MAX_VALUE - blockSize + 1) {
+                    throw new RuntimeException("Ticket numbers are exhausted");
+                }
+                block.next = first;
+                block.end = first + blockSize;
+                leases.incrementAndGet();
+            }
+            return (int) block.next++;
+	}
+
+
+        //returns the number of blocks leased so far
+	public long getNumberOfLeases() {
+            return leases.get();
+	}
+
+
+	public int getBlockSize() {
+            return blockSize;
+	}
+
+
+        //the numbers of one thread's block still to be used, from next up to but not including end
+	private static class Block {
+            long next = 0;
+            long end = 0;
+	}
+
+}
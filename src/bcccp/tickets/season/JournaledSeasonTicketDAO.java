@@ -0,0 +1,326 @@
+package bcccp.tickets.season;
+
+import bcccp.journal.IJournal;
+import bcccp.journal.IJournalOpener;
+import bcccp.journal.ISnapshotSource;
+import bcccp.journal.ISnapshotWriter;
+import bcccp.metrics.Histogram;
+import bcccp.time.IClock;
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+
+/**
+ * A SeasonTicketDAO that survives a restart. Registrations, deregistrations, entries
+ * and exits are appended to a journal before each call returns, and opening the DAO
+ * again replays the journal to rebuild the registered tickets and their usage records.
+ * Replayed tickets are SeasonTickets, whatever class they were registered as.
+ *
+ * The DAO can write a snapshot of its tickets for a JournalCompactor, taking its lock
+ * for one ticket at a time. Replaying the journal over a snapshot skips entries and
+ * exits the snapshot already holds.
+ */
+public class JournaledSeasonTicketDAO implements ISeasonTicketDAO, ISnapshotSource, Closeable {
+
+	private static final byte REGISTER = 1;
+	private static final byte DEREGISTER = 2;
+	private static final byte ENTRY = 3;
+	private static final byte EXIT = 4;
+	private static final byte SNAPSHOT = 5;
+	private static final byte SNAPSHOT_TICKET = 6;
+
+	private final IUsageRecordFactory factory;
+        private final IClock clock;
+        private final IJournal journal;
+        private final HashMap<String, ISeasonTicket> seasonTickets = new HashMap<>();
+        //set while replaying over a snapshot
+        private boolean snapshotLoaded = false;
+
+	/**
+         * @throws  RuntimeException if the UsageRecordFactory, journal opener or clock is null
+         * JournaledSeasonTicketDAO constructor, opening the journal and replaying what is in it
+         * @param factory
+         * @param journalOpener
+         * @param clock
+         */
+	public JournaledSeasonTicketDAO(IUsageRecordFactory factory, IJournalOpener journalOpener, IClock clock) {
+            if (factory == null) {
+                throw new RuntimeException("reference to the UsageRecordFactory is null");
+            }
+            if (journalOpener == null) {
+                throw new RuntimeException("reference to the journal opener is null");
+            }
+            if (clock == null) {
+                throw new RuntimeException("reference to the clock is null");
+            }
+            this.factory = factory;
+            this.clock = clock;
+            this.journal = journalOpener.open(this::replay);
+	}
+
+/**
+ * Registers ticket with ticket.getId() as key, returning once the registration is journaled
+ * @throws RuntimeException if ticket is null
+ * @param ticket
+ */
+	@Override
+	public void registerTicket(ISeasonTicket ticket) {
+            if (ticket == null) {
+                throw new RuntimeException("ticket is null");
+            }
+            byte[] id = bytes(ticket.getId());
+            byte[] carparkId = bytes(ticket.getCarparkId());
+            ByteBuffer record = ByteBuffer.allocate(1 + 2 + id.length + 2 + carparkId.length + 16);
+            record.put(REGISTER).putShort((short) id.length).put(id);
+            record.putShort((short) carparkId.length).put(carparkId);
+            record.putLong(ticket.getStartValidPeriod()).putLong(ticket.getEndValidPeriod());
+            long seq;
+            synchronized (this) {
+                seasonTickets.put(ticket.getId(), ticket);
+                seq = journal.write(record.array());
+            }
+            journal.awaitDurable(seq);
+	}
+
+/**
+ * Removes a registered season ticket, returning once the removal is journaled
+ * @throws RuntimeException if ticket is not registered
+ * @param ticket
+ */
+        @Override
+	public void deregisterTicket(ISeasonTicket ticket) {
+            long seq;
+            synchronized (this) {
+                if (seasonTickets.remove(ticket.getId()) == null) {
+                    throw new RuntimeException("ticket is null");
+                }
+                seq = journal.write(idRecord(DEREGISTER, ticket.getId(), 0));
+            }
+            journal.awaitDurable(seq);
+	}
+
+/**
+ * method for how many registered season tickets
+ * @return seasonTickets.size()
+ */
+	@Override
+	public synchronized int getNumberOfTickets() {
+		return seasonTickets.size();
+	}
+
+/**
+ * @param ticketId
+ * @return the registered ticket, or null
+ */
+	@Override
+	public synchronized ISeasonTicket findTicketById(String ticketId) {
+		return seasonTickets.get(ticketId);
+	}
+
+/**
+ * Records the start of a usage at the current time from the clock, returning once it is journaled
+ * @throws RuntimeException if season ticket identified by ticketId is not in the internal store
+ * @param ticketId
+ */
+	@Override
+	public void recordTicketEntry(String ticketId) {
+            long seq;
+            synchronized (this) {
+                ISeasonTicket ticket = seasonTickets.get(ticketId);
+                if (ticket == null) {
+                    throw new RuntimeException("season ticket identified by ticketId is not in the internal store");
+                }
+                long dateTime = clock.currentTimeMillis();
+                ticket.recordUsage(factory.make(ticketId, dateTime));
+                seq = journal.write(idRecord(ENTRY, ticketId, dateTime));
+            }
+            journal.awaitDurable(seq);
+	}
+
+/**
+ * Records the end of the current usage at the current time from the clock, returning once it is journaled
+ * @throws RuntimeException if season ticket identified by ticketId is not in the internal store
+ * @throws RuntimeException if the season ticket identified by ticketId is not currently in use
+ * @param ticketId
+ */
+	@Override
+	public void recordTicketExit(String ticketId) {
+            long seq;
+            synchronized (this) {
+                ISeasonTicket ticket = seasonTickets.get(ticketId);
+                if (ticket == null) {
+                    throw new RuntimeException("season ticket identified by ticketId is not in the internal store");
+                }
+                if (ticket.getCurrentUsageRecord() == null) {
+                    throw new RuntimeException("season ticket not in use");
+                }
+                long dateTime = clock.currentTimeMillis();
+                ticket.endUsage(dateTime);
+                seq = journal.write(idRecord(EXIT, ticketId, dateTime));
+            }
+            journal.awaitDurable(seq);
+	}
+
+/**
+ * Writes each registered ticket with its usage records, one ticket at a time
+ * @param writer
+ */
+	@Override
+	public void writeSnapshot(ISnapshotWriter writer) {
+            List<ISeasonTicket> tickets;
+            synchronized (this) {
+                tickets = new ArrayList<>(seasonTickets.values());
+            }
+            writer.add(new byte[] {SNAPSHOT});
+            for (ISeasonTicket ticket : tickets) {
+                byte[] record;
+                synchronized (this) {
+                    if (seasonTickets.get(ticket.getId()) != ticket) {
+                        continue;
+                    }
+                    record = snapshotRecord(ticket);
+                }
+                writer.add(record);
+            }
+	}
+
+/**
+ * @return the time records wait to reach the disk, in nanoseconds
+ */
+	public Histogram getWriteLatency() {
+		return journal.getWriteLatency();
+	}
+
+/**
+ * @return the number of records forced to disk together
+ */
+	public Histogram getBatchSizes() {
+		return journal.getBatchSizes();
+	}
+
+/**
+ * Writes any pending records and closes the journal
+ */
+	@Override
+	public void close() {
+		journal.close();
+	}
+
+        //rebuilds tickets from one snapshot or journal record
+	private void replay(ByteBuffer record) {
+            byte type = record.get();
+            if (type == SNAPSHOT) {
+                snapshotLoaded = true;
+                return;
+            }
+            String ticketId = getString(record);
+            if (type == REGISTER || type == SNAPSHOT_TICKET) {
+                String carparkId = getString(record);
+                long start = record.getLong();
+                long end = record.getLong();
+                ISeasonTicket ticket = new SeasonTicket(ticketId, carparkId, start, end);
+                if (type == SNAPSHOT_TICKET) {
+                    int usages = record.getInt();
+                    for (int i = 0; i < usages; i++) {
+                        ticket.recordUsage(factory.make(ticketId, record.getLong()));
+                        ticket.endUsage(record.getLong());
+                    }
+                    long currentStart = record.getLong();
+                    if (currentStart > 0) {
+                        ticket.recordUsage(factory.make(ticketId, currentStart));
+                    }
+                }
+                seasonTickets.put(ticketId, ticket);
+                return;
+            }
+            if (type == DEREGISTER) {
+                seasonTickets.remove(ticketId);
+                return;
+            }
+            ISeasonTicket ticket = seasonTickets.get(ticketId);
+            if (ticket == null) {
+                if (snapshotLoaded) {
+                    //deregistered before the snapshot listed it
+                    return;
+                }
+                throw new RuntimeException("Journal records a usage of unknown season ticket " + ticketId);
+            }
+            long dateTime = record.getLong();
+            if (type == ENTRY) {
+                if (snapshotLoaded && alreadyEntered(ticket, dateTime)) {
+                    return;
+                }
+                ticket.recordUsage(factory.make(ticketId, dateTime));
+            } else if (type == EXIT) {
+                if (snapshotLoaded && lastEndTime(ticket) == dateTime) {
+                    return;
+                }
+                ticket.endUsage(dateTime);
+            } else {
+                throw new RuntimeException("Unknown journal record type " + type);
+            }
+	}
+
+        //true if a snapshot already holds the usage that started at a time
+	private static boolean alreadyEntered(ISeasonTicket ticket, long dateTime) {
+            IUsageRecord current = ticket.getCurrentUsageRecord();
+            if (current != null) {
+                return current.getStartTime() == dateTime;
+            }
+            List<IUsageRecord> usages = ticket.getUsageRecords();
+            return !usages.isEmpty() && usages.get(usages.size() - 1).getStartTime() == dateTime;
+	}
+
+        //end of the last finished usage, which a snapshot may have taken after the exit
+	private static long lastEndTime(ISeasonTicket ticket) {
+            List<IUsageRecord> usages = ticket.getUsageRecords();
+            return usages.isEmpty() ? -1 : usages.get(usages.size() - 1).getEndTime();
+	}
+
+	private static byte[] snapshotRecord(ISeasonTicket ticket) {
+            byte[] id = bytes(ticket.getId());
+            byte[] carparkId = bytes(ticket.getCarparkId());
+            List<IUsageRecord> usages = ticket.getUsageRecords();
+            IUsageRecord current = ticket.getCurrentUsageRecord();
+            ByteBuffer record = ByteBuffer.allocate(1 + 2 + id.length + 2 + carparkId.length + 16
+                    + 4 + 16 * usages.size() + 8);
+            record.put(SNAPSHOT_TICKET).putShort((short) id.length).put(id);
+            record.putShort((short) carparkId.length).put(carparkId);
+            record.putLong(ticket.getStartValidPeriod()).putLong(ticket.getEndValidPeriod());
+            record.putInt(usages.size());
+            for (IUsageRecord usage : usages) {
+                record.putLong(usage.getStartTime()).putLong(usage.getEndTime());
+            }
+            record.putLong(current == null ? 0 : current.getStartTime());
+            return record.array();
+	}
+
+	private static byte[] idRecord(byte type, String ticketId, long dateTime) {
+            byte[] id = bytes(ticketId);
+            ByteBuffer record = ByteBuffer.allocate(1 + 2 + id.length + (type == DEREGISTER ? 0 : 8));
+            record.put(type).putShort((short) id.length).put(id);
+            if (type != DEREGISTER) {
+                record.putLong(dateTime);
+            }
+            return record.array();
+	}
+
+	private static byte[] bytes(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xffff) {
+                throw new RuntimeException("Season ticket field is too long");
+            }
+            return bytes;
+	}
+
+	private static String getString(ByteBuffer record) {
+            byte[] bytes = new byte[record.getShort() & 0xffff];
+            record.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
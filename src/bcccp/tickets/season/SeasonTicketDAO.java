@@ -2,12 +2,15 @@ package bcccp.tickets.season;
 
 import bcccp.tickets.season.ISeasonTicket;
 import bcccp.tickets.season.IUsageRecordFactory;
+import bcccp.time.IClock;
+import bcccp.time.SystemClock;
 import java.util.*;
 
 
 public class SeasonTicketDAO implements ISeasonTicketDAO {
 
 	private IUsageRecordFactory factory;
+        private final IClock clock;
         private HashMap<String, ISeasonTicket> seasonTickets = new HashMap();
 	
 	/**
@@ -16,11 +19,25 @@ public class SeasonTicketDAO implements ISeasonTicketDAO {
          * @param factory 
          */
 	public SeasonTicketDAO(IUsageRecordFactory factory) {
+            this(factory, SystemClock.INSTANCE);
+	}
+
+	/**
+         * @throws  RuntimeException if the reference to the UsageRecordFactory or the clock is null
+         * SeasonTicket constructor, assigning factory and the clock usage records are timed by
+         * @param factory 
+         * @param clock 
+         */
+	public SeasonTicketDAO(IUsageRecordFactory factory, IClock clock) {
            if (factory == null){
             throw new RuntimeException("reference to the UsageRecordFactory is null");
+        }
+           if (clock == null){
+            throw new RuntimeException("reference to the clock is null");
         }
                      //An instance of a class implementing the IUsageRecordFactory
                      this.factory = factory;
+                     this.clock = clock;
 
 	}
 
@@ -81,7 +98,7 @@ public class SeasonTicketDAO implements ISeasonTicketDAO {
 
 /**
  * Records ticket entry method,gets the key for the specified season tickets key and if not null 
- * record start usage method, calls IUsageRecordFactory passing in ticketId and System.currentTimeMillis() 
+ * record start usage method, calls IUsageRecordFactory passing in ticketId and the current time from the clock 
  * @throws RuntimeException if season ticket identified by ticketId is not in the internal store
  * @param ticketId 
  */
@@ -91,13 +108,13 @@ public class SeasonTicketDAO implements ISeasonTicketDAO {
                if (value == null) {
                    throw new RuntimeException("season ticket identified by ticketId is not in the internal store");
                }
-                   IUsageRecord record = factory.make(ticketId, System.currentTimeMillis());
+                   IUsageRecord record = factory.make(ticketId, clock.currentTimeMillis());
                    seasonTickets.get(ticketId).recordUsage(record);
         }
 
 /**
  * Records ticket exit method,gets the key for the specified season tickets key and if not null 
- * record end usage method, calls IUsageRecordFactory passing in ticketId and System.currentTimeMillis() 
+ * record end usage method, calls IUsageRecordFactory passing in ticketId and the current time from the clock 
  * @throws RuntimeException if season ticket identified by ticketId is not in the internal store
  * @throws RuntimeException if the season ticket identified by ticketId is not currently in use
  * @param ticketId 
@@ -111,7 +128,7 @@ public class SeasonTicketDAO implements ISeasonTicketDAO {
                     if (seasonTickets.get(ticketId).getCurrentUsageRecord() == null){
                         throw new RuntimeException("season ticket not in use");
                     }
-                        seasonTickets.get(ticketId).endUsage(System.currentTimeMillis());}
+                        seasonTickets.get(ticketId).endUsage(clock.currentTimeMillis());}
                
 	}
 
@@ -0,0 +1,11 @@
+package bcccp.time;
+
+/**
+ * The source of the current time for the carpark and ticket subsystems, so they can
+ * be run against a simulated clock as well as the wall clock.
+ */
+public interface IClock {
+
+	public long currentTimeMillis();
+
+}
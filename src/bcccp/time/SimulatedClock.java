@@ -0,0 +1,66 @@
+package bcccp.time;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A clock for simulation and testing. It starts at a chosen instant and then runs at
+ * a multiple of real time, for example 1000 times faster to push a month of traffic
+ * through the carpark in under an hour, or not at all, so that it only moves when
+ * advanced. Both can be combined: advancing a running clock jumps it forward.
+ */
+public class SimulatedClock implements IClock {
+
+	private final long startMillis;
+	private final long startNanos;
+	private final double rate;
+	private final AtomicLong advancedMillis = new AtomicLong();
+
+
+    /**
+     * Creates a clock that stays at an instant until it is advanced.
+     * @param startMillis starting time in epoch milliseconds
+     */
+	public SimulatedClock(long startMillis) {
+		this(startMillis, 0);
+	}
+
+
+    /**
+     * Creates a clock that runs at a multiple of real time.
+     * @param startMillis starting time in epoch milliseconds
+     * @param rate simulated milliseconds per real millisecond, or 0 for a stopped clock
+     */
+	public SimulatedClock(long startMillis, double rate) {
+		if (rate < 0 || Double.isNaN(rate) || Double.isInfinite(rate)) {
+			throw new RuntimeException("Invalid clock rate");
+		}
+		this.startMillis = startMillis;
+		this.startNanos = System.nanoTime();
+		this.rate = rate;
+	}
+
+
+	@Override
+	public long currentTimeMillis() {
+		long elapsed = rate == 0 ? 0 : (long) ((System.nanoTime() - startNanos) * rate / 1000000);
+		return startMillis + elapsed + advancedMillis.get();
+	}
+
+
+    /**
+     * Moves the clock forward.
+     * @param millis
+     */
+	public void advance(long millis) {
+		if (millis < 0) {
+			throw new RuntimeException("A clock cannot be moved backwards");
+		}
+		advancedMillis.addAndGet(millis);
+	}
+
+
+	public double getRate() {
+		return rate;
+	}
+
+}
@@ -0,0 +1,21 @@
+package bcccp.time;
+
+/**
+ * The wall clock. There is only one instance, so a call site that only ever sees
+ * this clock is inlined by the JIT to a plain System.currentTimeMillis().
+ */
+public final class SystemClock implements IClock {
+
+	public static final SystemClock INSTANCE = new SystemClock();
+
+
+	private SystemClock() {
+	}
+
+
+	@Override
+	public long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+}
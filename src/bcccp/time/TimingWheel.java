@@ -0,0 +1,153 @@
+package bcccp.time;
+
+import java.util.List;
+
+/**
+ * A hierarchical timing wheel: items scheduled for a deadline are returned once the
+ * wheel is advanced past it. Time is counted in ticks of a fixed length, and each of
+ * four levels has 64 slots, the first one tick wide, the next 64 ticks and so on, so
+ * scheduling is constant time and advancing costs one step per tick plus the work of
+ * moving items down a level as their deadlines come closer. Deadlines further out than
+ * the top level reaches, about 16.7 million ticks, are moved down as the wheel turns.
+ *
+ * An item is returned on the first advance to a tick at or after its deadline, never
+ * earlier. The wheel is not thread safe; callers hold their own lock.
+ */
+public class TimingWheel<T> {
+
+	private static final int SLOT_BITS = 6;
+	private static final int SLOTS = 1 << SLOT_BITS;
+	private static final int SLOT_MASK = SLOTS - 1;
+	private static final int LEVELS = 4;
+	private static final long SPAN = 1L << (SLOT_BITS * LEVELS);
+
+	private final long tickMillis;
+	private final Node<T>[][] wheels;
+	private long currentTick;
+	private int size = 0;
+
+
+    /**
+     * Creates an empty wheel.
+     * @param tickMillis length of a tick
+     * @param startMillis time the wheel starts at
+     */
+	public TimingWheel(long tickMillis, long startMillis) {
+		if (tickMillis <= 0) {
+			throw new RuntimeException("Invalid tick length");
+		}
+		this.tickMillis = tickMillis;
+		this.currentTick = Math.floorDiv(startMillis, tickMillis);
+		//generic arrays cannot be made, but every node put in the wheels holds a T
+		@SuppressWarnings("unchecked")
+		Node<T>[][] slots = (Node<T>[][]) new Node<?>[LEVELS][SLOTS];
+		this.wheels = slots;
+	}
+
+
+    /**
+     * Schedules an item. A deadline already passed is returned by the next advance.
+     * @param item
+     * @param deadlineMillis
+     */
+	public void schedule(T item, long deadlineMillis) {
+		//rounded up, so that an item is never returned before its deadline
+		long tick = Math.floorDiv(deadlineMillis, tickMillis);
+		if (tick * tickMillis < deadlineMillis) {
+			tick++;
+		}
+		insert(new Node<T>(item, tick), currentTick + 1);
+		size++;
+	}
+
+
+    /**
+     * Turns the wheel to a time, adding the items whose deadlines have come to a list.
+     * @param nowMillis
+     * @param expired list the items are added to
+     * @return number of items added
+     */
+	public int advance(long nowMillis, List<? super T> expired) {
+		long target = Math.floorDiv(nowMillis, tickMillis);
+		int count = 0;
+		while (currentTick < target) {
+			if (size == 0) {
+				currentTick = target;
+				break;
+			}
+			currentTick++;
+			for (int level = LEVELS - 1; level > 0; level--) {
+				if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+					cascade(level, (int) (currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+				}
+			}
+			int slot = (int) currentTick & SLOT_MASK;
+			Node<T> node = wheels[0][slot];
+			wheels[0][slot] = null;
+			while (node != null) {
+				Node<T> next = node.next;
+				if (node.tick > currentTick) {
+					//a deadline beyond the top level, brought nearer
+					insert(node, currentTick + 1);
+				} else {
+					expired.add(node.item);
+					size--;
+					count++;
+				}
+				node = next;
+			}
+		}
+		return count;
+	}
+
+
+	public int size() {
+		return size;
+	}
+
+	public long getTickMillis() {
+		return tickMillis;
+	}
+
+
+	private void cascade(int level, int slot) {
+		Node<T> node = wheels[level][slot];
+		wheels[level][slot] = null;
+		while (node != null) {
+			Node<T> next = node.next;
+			insert(node, currentTick);
+			node = next;
+		}
+	}
+
+
+	//places a node in the slot for its tick, or for the earliest tick if that is later
+	private void insert(Node<T> node, long earliest) {
+		long tick = Math.max(node.tick, earliest);
+		long delta = tick - currentTick;
+		if (delta >= SPAN) {
+			tick = currentTick + SPAN - 1;
+			delta = SPAN - 1;
+		}
+		int level = 0;
+		while (delta >= (1L << (SLOT_BITS * (level + 1)))) {
+			level++;
+		}
+		int slot = (int) (tick >>> (SLOT_BITS * level)) & SLOT_MASK;
+		node.next = wheels[level][slot];
+		wheels[level][slot] = node;
+	}
+
+
+	private static class Node<T> {
+		final T item;
+		final long tick;
+		Node<T> next;
+
+		Node(T item, long tick) {
+			this.item = item;
+			this.tick = tick;
+		}
+	}
+
+}
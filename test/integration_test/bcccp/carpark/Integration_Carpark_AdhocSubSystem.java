@@ -63,7 +63,7 @@ public class Integration_Carpark_AdhocSubSystem {
         ticket = carpark.issueAdhocTicket();
         
         Date current = new Date();
-        float charge = carpark.calculateAdhocTicketCharge(current.getTime()-1000000);
+        long charge = carpark.calculateAdhocTicketCharge(current.getTime()-1000000);
         
         assertTrue(charge > 0);
         
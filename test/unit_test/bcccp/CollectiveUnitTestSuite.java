@@ -5,17 +5,49 @@
  */
 package unit_test.bcccp;
 
+import unit_test.bcccp.carpark.BusinessHoursStateTest;
 import unit_test.bcccp.carpark.CarparkTest;
+import unit_test.bcccp.carpark.MoneyTest;
 import unit_test.bcccp.carpark.entry.EntryControllerTest;
 import unit_test.bcccp.carpark.exit.ExitControllerTest;
 import unit_test.bcccp.carpark.paystation.PaystationControllerTest;
+import unit_test.bcccp.carpark.rerate.RerateJobTest;
+import unit_test.bcccp.carpark.tariff.CachedTariffEngineTest;
+import unit_test.bcccp.carpark.tariff.ChargeAllocationTest;
+import unit_test.bcccp.carpark.tariff.ClosedFormTariffTest;
+import unit_test.bcccp.carpark.tariff.HolidayCalendarTest;
+import unit_test.bcccp.carpark.tariff.TariffRulesTest;
+import unit_test.bcccp.carpark.tariff.WeeklyRateTableTest;
+import unit_test.bcccp.carpark.tariff.YearlyRateTableTest;
+import unit_test.bcccp.carpark.tariff.ZoneOffsetCacheTest;
+import unit_test.bcccp.carpark.tariff.ZoneOffsetTableTest;
 import unit_test.bcccp.tickets.adhoc.testAdhocTicket;
 import unit_test.bcccp.tickets.adhoc.testAdhocTicketFactory;
 import unit_test.bcccp.tickets.adhoc.testAdhocTicketDAO;
+import unit_test.bcccp.tickets.adhoc.ConcurrentAdhocTicketDAOTest;
+import unit_test.bcccp.tickets.adhoc.StripedAdhocTicketDAOTest;
+import unit_test.bcccp.tickets.adhoc.BarcodeIndexTest;
+import unit_test.bcccp.tickets.adhoc.IndexedAdhocTicketDAOTest;
+import unit_test.bcccp.tickets.adhoc.OffHeapAdhocTicketDAOTest;
+import unit_test.bcccp.tickets.adhoc.AdhocTicketSweeperTest;
+import unit_test.bcccp.tickets.adhoc.JournaledAdhocTicketDAOTest;
 import unit_test.bcccp.tickets.season.SeasonTicketDAOTest;
 import unit_test.bcccp.tickets.season.SeasonTicketTest;
 import unit_test.bcccp.tickets.season.UsageRecordFactoryTest;
 import unit_test.bcccp.tickets.season.UsageRecordTest;
+import unit_test.bcccp.tickets.season.JournaledSeasonTicketDAOTest;
+import unit_test.bcccp.time.SimulatedClockTest;
+import unit_test.bcccp.time.TimingWheelTest;
+import unit_test.bcccp.journal.GroupCommitJournalTest;
+import unit_test.bcccp.journal.MappedSegmentJournalTest;
+import unit_test.bcccp.journal.JournalCompactorTest;
+import unit_test.bcccp.tickets.adhoc.AdhocTicketFilterTest;
+import unit_test.bcccp.tickets.adhoc.EntryTimeIndexTest;
+import unit_test.bcccp.tickets.adhoc.TicketNumberAllocatorTest;
+import unit_test.bcccp.tickets.adhoc.CountingBloomFilterTest;
+import unit_test.bcccp.tickets.adhoc.BarcodeFilteredAdhocTicketDAOTest;
+import unit_test.bcccp.tickets.adhoc.ColumnarAdhocTicketArchiveTest;
+import unit_test.bcccp.metrics.HistogramTest;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -32,16 +64,48 @@ import org.junit.runners.Suite;
  */
 @RunWith(Suite.class)
 @Suite.SuiteClasses({CarparkTest.class,
+    MoneyTest.class,
+    BusinessHoursStateTest.class,
     EntryControllerTest.class, 
     ExitControllerTest.class,
     PaystationControllerTest.class,
+    ClosedFormTariffTest.class,
+    WeeklyRateTableTest.class,
+    TariffRulesTest.class,
+    ChargeAllocationTest.class,
+    CachedTariffEngineTest.class,
+    HolidayCalendarTest.class,
+    YearlyRateTableTest.class,
+    ZoneOffsetTableTest.class,
+    ZoneOffsetCacheTest.class,
+    RerateJobTest.class,
     testAdhocTicket.class, 
     testAdhocTicketDAO.class,
     testAdhocTicketFactory.class,
+    ConcurrentAdhocTicketDAOTest.class,
+    StripedAdhocTicketDAOTest.class,
+    BarcodeIndexTest.class,
+    IndexedAdhocTicketDAOTest.class,
+    OffHeapAdhocTicketDAOTest.class,
+    AdhocTicketSweeperTest.class,
+    JournaledAdhocTicketDAOTest.class,
     SeasonTicketDAOTest.class, 
     SeasonTicketTest.class,
     UsageRecordFactoryTest.class,
-    UsageRecordTest.class })
+    UsageRecordTest.class,
+    JournaledSeasonTicketDAOTest.class,
+    SimulatedClockTest.class,
+    TimingWheelTest.class,
+    GroupCommitJournalTest.class,
+    MappedSegmentJournalTest.class,
+    JournalCompactorTest.class,
+    AdhocTicketFilterTest.class,
+    EntryTimeIndexTest.class,
+    TicketNumberAllocatorTest.class,
+    CountingBloomFilterTest.class,
+    BarcodeFilteredAdhocTicketDAOTest.class,
+    ColumnarAdhocTicketArchiveTest.class,
+    HistogramTest.class })
 public class CollectiveUnitTestSuite {
 
     @BeforeClass
@@ -62,16 +126,48 @@ public class CollectiveUnitTestSuite {
     
     public static void main(String[] args) {
       Result result = JUnitCore.runClasses(CarparkTest.class,
+    MoneyTest.class,
+    BusinessHoursStateTest.class,
     EntryControllerTest.class, 
     ExitControllerTest.class,
     PaystationControllerTest.class,
+    ClosedFormTariffTest.class,
+    WeeklyRateTableTest.class,
+    TariffRulesTest.class,
+    ChargeAllocationTest.class,
+    CachedTariffEngineTest.class,
+    HolidayCalendarTest.class,
+    YearlyRateTableTest.class,
+    ZoneOffsetTableTest.class,
+    ZoneOffsetCacheTest.class,
+    RerateJobTest.class,
     testAdhocTicket.class, 
     testAdhocTicketDAO.class,
     testAdhocTicketFactory.class,
+    ConcurrentAdhocTicketDAOTest.class,
+    StripedAdhocTicketDAOTest.class,
+    BarcodeIndexTest.class,
+    IndexedAdhocTicketDAOTest.class,
+    OffHeapAdhocTicketDAOTest.class,
+    AdhocTicketSweeperTest.class,
+    JournaledAdhocTicketDAOTest.class,
     SeasonTicketDAOTest.class, 
     SeasonTicketTest.class,
     UsageRecordFactoryTest.class,
-    UsageRecordTest.class);
+    UsageRecordTest.class,
+    JournaledSeasonTicketDAOTest.class,
+    SimulatedClockTest.class,
+    TimingWheelTest.class,
+    GroupCommitJournalTest.class,
+    MappedSegmentJournalTest.class,
+    JournalCompactorTest.class,
+    AdhocTicketFilterTest.class,
+    EntryTimeIndexTest.class,
+    TicketNumberAllocatorTest.class,
+    CountingBloomFilterTest.class,
+    BarcodeFilteredAdhocTicketDAOTest.class,
+    ColumnarAdhocTicketArchiveTest.class,
+    HistogramTest.class);
 
       for (Failure failure : result.getFailures()) {
          System.out.println(failure.toString());
@@ -0,0 +1,62 @@
+package unit_test.bcccp.carpark;
+
+import bcccp.carpark.BusinessHoursState;
+import java.time.ZoneId;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the precomputed business hours state.
+ */
+public class BusinessHoursStateTest {
+
+    private static final long SECOND = 1000L;
+    private static final long HOUR = 3600 * SECOND;
+    private static final long DAY = 24 * HOUR;
+    private static final long MONDAY = 1504483200000L; //Monday 4 September 2017, 00:00 UTC
+
+    private final ZoneId utc = ZoneId.of("UTC");
+
+    /**
+     * Test of at, either side of opening time.
+     */
+    @Test
+    public void testOpening() {
+        System.out.println("at");
+        BusinessHoursState before = BusinessHoursState.at(utc, MONDAY + 7 * HOUR);
+        assertFalse(before.isOpen());
+        assertEquals(MONDAY + 7 * HOUR + SECOND, before.getValidUntil());
+
+        BusinessHoursState after = BusinessHoursState.at(utc, MONDAY + 7 * HOUR + SECOND);
+        assertTrue(after.isOpen());
+        assertEquals(MONDAY + 19 * HOUR, after.getValidUntil());
+        assertTrue(after.isValidAt(MONDAY + 19 * HOUR - 1));
+        assertFalse(after.isValidAt(MONDAY + 19 * HOUR));
+    }
+
+    /**
+     * Test of at, after closing time on a Monday and on a Friday.
+     */
+    @Test
+    public void testClosing() {
+        BusinessHoursState monday = BusinessHoursState.at(utc, MONDAY + 19 * HOUR);
+        assertFalse(monday.isOpen());
+        assertEquals(MONDAY + DAY + 7 * HOUR + SECOND, monday.getValidUntil());
+
+        BusinessHoursState friday = BusinessHoursState.at(utc, MONDAY + 4 * DAY + 20 * HOUR);
+        assertFalse(friday.isOpen());
+        assertEquals(MONDAY + 7 * DAY + 7 * HOUR + SECOND, friday.getValidUntil());
+    }
+
+    /**
+     * Test of at on a Saturday, and of a clock moved back before the state was worked out.
+     */
+    @Test
+    public void testWeekend() {
+        BusinessHoursState saturday = BusinessHoursState.at(utc, MONDAY + 5 * DAY + 12 * HOUR);
+        assertFalse(saturday.isOpen());
+        assertEquals(MONDAY + 7 * DAY + 7 * HOUR + SECOND, saturday.getValidUntil());
+        assertFalse(saturday.isValidAt(MONDAY + 4 * DAY + 12 * HOUR));
+    }
+
+}
@@ -5,14 +5,21 @@
  */
 package unit_test.bcccp.carpark;
 
+import bcccp.carpark.BusinessHoursState;
 import bcccp.carpark.Carpark;
 import bcccp.carpark.ICarparkObserver;
+import bcccp.carpark.tariff.HolidayCalendar;
+import bcccp.carpark.tariff.ITariffEngine;
 import bcccp.tickets.adhoc.AdhocTicketDAO;
 import bcccp.tickets.adhoc.IAdhocTicket;
 import bcccp.tickets.season.*;
+import bcccp.time.SimulatedClock;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.concurrent.TimeUnit;
 import org.junit.Test;
@@ -197,7 +204,7 @@ public class CarparkTest {
 		AdhocTicketDAO mockAdhocDAO = mock(AdhocTicketDAO.class);
 		SeasonTicketDAO mockSeasonDAO = mock(SeasonTicketDAO.class);
 		Carpark sut = new Carpark("test carpark", 3, 0, mockAdhocDAO, mockSeasonDAO);
-		float charge = (float) 0.0;
+		long charge = 0;
 
 		
 		Date start = new Date();
@@ -208,6 +215,126 @@ public class CarparkTest {
 		
 	}
 
+    /**
+     * Test of calcCharge method, of class Carpark, which delegates to the tariff engine.
+     */
+    @Test
+    public void testCalcChargeUsesTariffEngine() {
+        System.out.println("calcCharge");
+        AdhocTicketDAO mockAdhocDAO = mock(AdhocTicketDAO.class);
+        SeasonTicketDAO mockSeasonDAO = mock(SeasonTicketDAO.class);
+        ITariffEngine mockEngine = mock(ITariffEngine.class);
+        when(mockEngine.calcChargeCents(1000L, 2000L)).thenReturn(1234L);
+        Carpark sut = new Carpark("test carpark", 3, 0, mockAdhocDAO, mockSeasonDAO, mockEngine);
+
+        assertEquals(1234L, sut.calcCharge(1000L, 2000L));
+        verify(mockEngine, times(1)).calcChargeCents(1000L, 2000L);
+    }
+
+    /**
+     * Test of setHolidayCalendar method, of class Carpark.
+     */
+    @Test
+    public void testSetHolidayCalendar() {
+        System.out.println("setHolidayCalendar");
+        AdhocTicketDAO mockAdhocDAO = mock(AdhocTicketDAO.class);
+        SeasonTicketDAO mockSeasonDAO = mock(SeasonTicketDAO.class);
+        Carpark sut = new Carpark("test carpark", 3, 0, mockAdhocDAO, mockSeasonDAO);
+        LocalDate christmas = LocalDate.of(2017, 12, 25);
+        long start = christmas.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long end = christmas.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+        assertEquals(7200L, sut.calcCharge(start, end));
+        sut.setHolidayCalendar(new HolidayCalendar(Collections.singletonList(christmas)));
+        assertEquals(4800L, sut.calcCharge(start, end));
+        sut.setTariffRates(5, 3);
+        assertEquals(7200L, sut.calcCharge(start, end));
+    }
+
+    /**
+     * Test of setZone method, of class Carpark, which moves business hours and replaces
+     * a custom tariff engine with the standard tariff.
+     */
+    @Test
+    public void testSetZone() {
+        System.out.println("setZone");
+        AdhocTicketDAO mockAdhocDAO = mock(AdhocTicketDAO.class);
+        SeasonTicketDAO mockSeasonDAO = mock(SeasonTicketDAO.class);
+        ITariffEngine mockEngine = mock(ITariffEngine.class);
+        ZoneId sydney = ZoneId.of("Australia/Sydney");
+        //Monday 4 September 2017, 10:00 in Sydney, 01:00 in London
+        long now = LocalDate.of(2017, 9, 4).atTime(10, 0).atZone(sydney).toInstant().toEpochMilli();
+        Carpark sut = new Carpark("test carpark", 3, 0, mockAdhocDAO, mockSeasonDAO, mockEngine, new SimulatedClock(now));
+
+        sut.setZone(sydney);
+        assertTrue(sut.isBusinessHours());
+        assertNotSame(mockEngine, sut.getTariffEngine());
+        assertEquals(400L, sut.calcCharge(now, now + 3600000L));
+        sut.setZone(ZoneId.of("Europe/London"));
+        assertEquals(ZoneId.of("Europe/London"), sut.getZone());
+        assertFalse(sut.isBusinessHours());
+        assertEquals(200L, sut.calcCharge(now, now + 3600000L));
+    }
+
+    /**
+     * Test of isBusinessHours method, of class Carpark.
+     */
+    @Test
+    public void testIsBusinessHours() {
+        System.out.println("isBusinessHours");
+        AdhocTicketDAO mockAdhocDAO = mock(AdhocTicketDAO.class);
+        SeasonTicketDAO mockSeasonDAO = mock(SeasonTicketDAO.class);
+        Carpark sut = new Carpark("test carpark", 3, 0, mockAdhocDAO, mockSeasonDAO);
+
+        BusinessHoursState expected = BusinessHoursState.at(sut.getZone(), System.currentTimeMillis());
+        boolean result = sut.isBusinessHours();
+
+        //unless the clock passed an opening or closing time during the call
+        if (expected.isValidAt(System.currentTimeMillis())) {
+            assertEquals(expected.isOpen(), result);
+        }
+    }
+
+    /**
+     * Test of calculateAdhocTicketCharge method with a simulated clock, of class Carpark.
+     */
+    @Test
+    public void testCalculateAdhocTicketChargeWithSimulatedClock() {
+        System.out.println("calculateAdhocTicketCharge simulated clock");
+        AdhocTicketDAO mockAdhocDAO = mock(AdhocTicketDAO.class);
+        SeasonTicketDAO mockSeasonDAO = mock(SeasonTicketDAO.class);
+        long entry = LocalDate.of(2017, 9, 4).atTime(9, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        SimulatedClock clock = new SimulatedClock(entry);
+        Carpark sut = new Carpark("test carpark", 3, 0, mockAdhocDAO, mockSeasonDAO, clock);
+
+        clock.advance(2 * 3600000L);
+        assertEquals(800L, sut.calculateAdhocTicketCharge(entry));
+        assertTrue(sut.isBusinessHours());
+        clock.advance(9 * 3600000L);
+        assertFalse(sut.isBusinessHours());
+    }
+
+    /**
+     * Test of calculateAdhocTicketCharges method, of class Carpark.
+     */
+    @Test
+    public void testCalculateAdhocTicketCharges() {
+        System.out.println("calculateAdhocTicketCharges");
+        AdhocTicketDAO mockAdhocDAO = mock(AdhocTicketDAO.class);
+        SeasonTicketDAO mockSeasonDAO = mock(SeasonTicketDAO.class);
+        Carpark sut = new Carpark("test carpark", 3, 0, mockAdhocDAO, mockSeasonDAO);
+        long now = System.currentTimeMillis();
+        long[] entries = {now - 900000, now - 86400000, now - 30 * 86400000L, now + 1000};
+        long[] charges = new long[entries.length];
+
+        sut.calculateAdhocTicketCharges(entries, now, charges);
+
+        for (int i = 0; i < entries.length; i++) {
+            assertEquals(sut.calcCharge(entries[i], now), charges[i]);
+        }
+        assertEquals(0, charges[3]);
+    }
+
     /**
      * Test of registerSeasonTicket method, of class Carpark.
      */
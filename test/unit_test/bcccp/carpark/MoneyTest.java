@@ -0,0 +1,50 @@
+package unit_test.bcccp.carpark;
+
+import bcccp.carpark.Money;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the cents formatting and conversion helpers.
+ */
+public class MoneyTest {
+
+    /**
+     * Test of format method, of class Money.
+     */
+    @Test
+    public void testFormat() {
+        System.out.println("format");
+        assertEquals("0.00", Money.format(0));
+        assertEquals("0.07", Money.format(7));
+        assertEquals("10.00", Money.format(1000));
+        assertEquals("12.34", Money.format(1234));
+        assertEquals("-3.05", Money.format(-305));
+    }
+
+    /**
+     * Test of fromDollars method, of class Money.
+     */
+    @Test
+    public void testFromDollars() {
+        System.out.println("fromDollars");
+        assertEquals(1267, Money.fromDollars(12.67f));
+        assertEquals(7, Money.fromDollars(0.0666667));
+    }
+
+    /**
+     * Sums of cents stay exact where sums of float dollars drift.
+     */
+    @Test
+    public void testExactRevenueTotal() {
+        long cents = 0;
+        float dollars = 0;
+        for (int i = 0; i < 1000000; i++) {
+            cents += 1267;
+            dollars += 12.67f;
+        }
+        assertEquals("12670000.00", Money.format(cents));
+        assertNotEquals(12670000.0, dollars, 0.5);
+    }
+
+}
@@ -60,7 +60,7 @@ public class PaystationControllerTest {
         AdhocTicket ticket = mock(AdhocTicket.class);
         when(ticket.getEntryDateTime()).thenReturn(1L);
         when(mockCarpark.getAdhocTicket(barcode)).thenReturn(ticket);
-        when(mockCarpark.calculateAdhocTicketCharge(any(long.class))).thenReturn(10.00f);
+        when(mockCarpark.calculateAdhocTicketCharge(any(long.class))).thenReturn(1000L);
         
         //Begin test
         instance.ticketInserted(barcode);
@@ -0,0 +1,94 @@
+package unit_test.bcccp.carpark.rerate;
+
+import bcccp.carpark.rerate.RerateJob;
+import bcccp.carpark.rerate.RevenueDeltas;
+import bcccp.carpark.tariff.HolidayCalendar;
+import bcccp.carpark.tariff.ITariffEngine;
+import bcccp.carpark.tariff.TariffRules;
+import bcccp.tickets.adhoc.AdhocTicket;
+import bcccp.tickets.adhoc.IAdhocTicket;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of re-rating historical adhoc tickets with a new tariff.
+ */
+public class RerateJobTest {
+
+    private static final long HOUR = 3600000L;
+    private static final long YEAR_2017 = 1483189200000L; //1 January 2017, 00:00 AEDT
+
+    private final ZoneId zone = ZoneId.of("Australia/Sydney");
+    private final ITariffEngine oldTariff = TariffRules.standard(4, 2).compile(zone, HolidayCalendar.NONE, YEAR_2017);
+    private final ITariffEngine newTariff = TariffRules.standard(5, 2).compile(zone, HolidayCalendar.NONE, YEAR_2017);
+
+    /**
+     * Test of rerate over a year of tickets, against a single threaded loop.
+     */
+    @Test
+    public void testMatchesSequentialLoop() {
+        System.out.println("rerate");
+        int count = 500000;
+        long[] entries = new long[count];
+        long[] paid = new long[count];
+        long[] charges = new long[count];
+        Random random = new Random(2017L);
+        for (int i = 0; i < count; i++) {
+            entries[i] = YEAR_2017 + (long) (random.nextDouble() * 365 * 24 * HOUR);
+            paid[i] = entries[i] + (long) (random.nextDouble() * 30 * HOUR);
+            charges[i] = oldTariff.calcChargeCents(entries[i], paid[i]);
+        }
+
+        SortedMap<LocalDate, Long> expected = new TreeMap<>();
+        long expectedTotal = 0;
+        for (int i = 0; i < count; i++) {
+            long delta = newTariff.calcChargeCents(entries[i], paid[i]) - charges[i];
+            expected.merge(Instant.ofEpochMilli(paid[i]).atZone(zone).toLocalDate(), delta, Long::sum);
+            expectedTotal += delta;
+        }
+        expected.values().removeIf(delta -> delta == 0);
+
+        long started = System.nanoTime();
+        RevenueDeltas result = new RerateJob(newTariff, zone, YEAR_2017).rerate(entries, paid, charges);
+        System.out.println("re-rated " + count + " tickets in " + (System.nanoTime() - started) / 1000000 + " ms");
+
+        assertEquals(count, result.getTicketCount());
+        assertEquals(expectedTotal, result.getTotalDeltaCents());
+        assertEquals(expected, result.getDailyDeltas());
+    }
+
+    /**
+     * Test of rerate with tickets read from an iterator, skipping unpaid tickets.
+     */
+    @Test
+    public void testIteratorSkipsUnpaidTickets() {
+        System.out.println("rerate iterator");
+        long entry = YEAR_2017 + 31 * 24 * HOUR + 9 * HOUR; //Wednesday 1 February 2017, 09:00
+        List<IAdhocTicket> tickets = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            IAdhocTicket ticket = new AdhocTicket("Bathurst Chase", i + 1, "A" + (i + 1));
+            ticket.enter(entry);
+            if (i % 4 != 0) {
+                ticket.pay(entry + 2 * HOUR, oldTariff.calcChargeCents(entry, entry + 2 * HOUR));
+            }
+            tickets.add(ticket);
+        }
+
+        RevenueDeltas result = new RerateJob(newTariff, zone, YEAR_2017).rerate(tickets.iterator());
+
+        assertEquals(75, result.getTicketCount());
+        assertEquals(75 * 800, result.getPreviousCents());
+        assertEquals(75 * 1000, result.getReratedCents());
+        assertEquals(75 * 200, result.getDeltaCents(LocalDate.of(2017, 2, 1)));
+        assertEquals(0, result.getDeltaCents(LocalDate.of(2017, 2, 2)));
+    }
+
+}
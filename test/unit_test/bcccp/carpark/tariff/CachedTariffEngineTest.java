@@ -0,0 +1,85 @@
+package unit_test.bcccp.carpark.tariff;
+
+import bcccp.carpark.tariff.CachedTariffEngine;
+import bcccp.carpark.tariff.HolidayCalendar;
+import bcccp.carpark.tariff.ITariffEngine;
+import bcccp.carpark.tariff.TariffRules;
+import java.time.ZoneId;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests of the charge quote cache.
+ */
+public class CachedTariffEngineTest {
+
+    private static final long MINUTE = 60000L;
+    private static final long ENTRY = 1504526400000L; //Monday 4 September 2017, 12:00 UTC
+
+    private ITariffEngine engine;
+
+    @Before
+    public void setUp() {
+        engine = TariffRules.standard(4, 2).compile(ZoneId.of("UTC"), HolidayCalendar.NONE, ENTRY);
+    }
+
+    /**
+     * Test of calcChargeCents for stays that enter and pay in the same minutes.
+     */
+    @Test
+    public void testSameMinutesShareQuote() {
+        System.out.println("calcChargeCents cache hit");
+        ITariffEngine spyEngine = spy(engine);
+        CachedTariffEngine sut = new CachedTariffEngine(spyEngine, 16);
+
+        long first = sut.calcChargeCents(ENTRY + 5000, ENTRY + 90 * MINUTE);
+        long second = sut.calcChargeCents(ENTRY + 20000, ENTRY + 90 * MINUTE + 25000);
+
+        assertEquals(engine.calcChargeCents(ENTRY, ENTRY + 90 * MINUTE), first);
+        assertEquals(first, second);
+        assertEquals(1, sut.getHits());
+        assertEquals(1, sut.getMisses());
+        verify(spyEngine, times(1)).calcChargeCents(anyLong(), anyLong());
+    }
+
+    /**
+     * Test of calcChargeCents for entries either side of the 30 second rounding point.
+     */
+    @Test
+    public void testDifferentMinutesMiss() {
+        CachedTariffEngine sut = new CachedTariffEngine(engine, 16);
+
+        sut.calcChargeCents(ENTRY + 29000, ENTRY + 90 * MINUTE);
+        sut.calcChargeCents(ENTRY + 31000, ENTRY + 90 * MINUTE);
+
+        assertEquals(0, sut.getHits());
+        assertEquals(2, sut.getMisses());
+        assertEquals(2, sut.size());
+    }
+
+    /**
+     * Test of calcChargeCents when the cache is full, which evicts older quotes.
+     */
+    @Test
+    public void testEviction() {
+        System.out.println("calcChargeCents eviction");
+        CachedTariffEngine sut = new CachedTariffEngine(engine, 4);
+
+        for (int i = 0; i < 100; i++) {
+            long entry = ENTRY - i * MINUTE;
+            assertEquals(engine.calcChargeCents(entry, ENTRY + MINUTE), sut.calcChargeCents(entry, ENTRY + MINUTE));
+        }
+
+        assertEquals(4, sut.capacity());
+        assertTrue(sut.size() <= 4);
+        assertEquals(100 - sut.size(), sut.getEvictions());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testInvalidCapacity() {
+        new CachedTariffEngine(engine, 0);
+    }
+
+}
@@ -0,0 +1,110 @@
+package unit_test.bcccp.carpark.tariff;
+
+import bcccp.carpark.Carpark;
+import bcccp.carpark.tariff.HolidayCalendar;
+import bcccp.carpark.tariff.ITariffEngine;
+import bcccp.carpark.tariff.TariffRules;
+import bcccp.tickets.adhoc.AdhocTicketDAO;
+import bcccp.tickets.adhoc.AdhocTicketFactory;
+import bcccp.tickets.season.SeasonTicketDAO;
+import bcccp.tickets.season.UsageRecordFactory;
+import java.lang.management.ManagementFactory;
+import java.time.ZoneId;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Measures heap allocation on the charge path, comparing the tariff engine with
+ * the legacy day by day calculation.
+ */
+public class ChargeAllocationTest {
+
+    private static final int CALLS = 200000;
+    private static final long DAY = 86400000L;
+    private static final long START = 1504706400000L; //Thursday 7 September 2017, Sydney
+
+    private com.sun.management.ThreadMXBean threads;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    /**
+     * Test of calcChargeCents, which should not allocate once warmed up.
+     */
+    @Test
+    public void testTariffEngineDoesNotAllocate() {
+        System.out.println("calcChargeCents allocation");
+        ITariffEngine sut = TariffRules.standard(4, 2).compile(ZoneId.of("Australia/Sydney"), HolidayCalendar.NONE, START);
+
+        //warm up so the measured calls run compiled code
+        long sink = chargeMany(sut);
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        sink += chargeMany(sut);
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+        double bytesPerCall = (double) allocated / CALLS;
+        System.out.println("tariff engine: " + bytesPerCall + " B/op, checksum " + sink);
+        assertTrue("allocated " + allocated + " bytes", bytesPerCall < 0.01);
+    }
+
+    /**
+     * Test of calculateAdhocTicketCharge, which should not allocate once warmed up.
+     */
+    @Test
+    public void testCarparkChargeDoesNotAllocate() {
+        System.out.println("calculateAdhocTicketCharge allocation");
+        Carpark sut = new Carpark("Bathurst Chase", 20, 2, new AdhocTicketDAO(new AdhocTicketFactory()),
+                new SeasonTicketDAO(new UsageRecordFactory()));
+        long entry = System.currentTimeMillis() - 3 * DAY;
+
+        float sink = 0;
+        for (int i = 0; i < CALLS; i++) {
+            sink += sut.calculateAdhocTicketCharge(entry + i);
+        }
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < CALLS; i++) {
+            sink += sut.calculateAdhocTicketCharge(entry + i);
+        }
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+        double bytesPerCall = (double) allocated / CALLS;
+        System.out.println("carpark: " + bytesPerCall + " B/op, checksum " + sink);
+        assertTrue("allocated " + allocated + " bytes", bytesPerCall < 0.01);
+    }
+
+    /**
+     * Reports the allocation of the legacy calculation for comparison.
+     */
+    @Test
+    public void testLegacyAllocates() {
+        System.out.println("legacy calcCharge allocation");
+        LegacyChargeCalculator legacy = new LegacyChargeCalculator();
+
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        float sink = 0;
+        for (int i = 0; i < 10000; i++) {
+            sink += legacy.calcCharge(START + i * 60000L, START + i * 60000L + 3 * DAY);
+        }
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+        System.out.println("legacy: " + (double) allocated / 10000 + " B/op, checksum " + sink);
+        assertTrue(allocated > 0);
+    }
+
+    private long chargeMany(ITariffEngine engine) {
+        long total = 0;
+        for (int i = 0; i < CALLS; i++) {
+            long start = START + i * 60000L;
+            total += engine.calcChargeCents(start, start + (i % 30) * DAY + i);
+        }
+        return total;
+    }
+
+}
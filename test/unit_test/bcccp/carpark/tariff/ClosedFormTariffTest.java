@@ -0,0 +1,235 @@
+package unit_test.bcccp.carpark.tariff;
+
+import bcccp.carpark.tariff.ClosedFormTariff;
+import bcccp.carpark.tariff.HolidayCalendar;
+import bcccp.carpark.tariff.TariffRules;
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the closed form tariff against the day by day calculation it replaced.
+ */
+public class ClosedFormTariffTest {
+
+    private static final long MINUTE = 60000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    private static final long ANCHOR = 1504760400000L; //Thursday 7 September 2017, 15:00 AEST
+
+    private TimeZone defaultZone;
+    private TimeZone zone;
+    private ClosedFormTariff sut;
+    private LegacyChargeCalculator legacy;
+
+    @Before
+    public void setUp() {
+        //the legacy calculation reads the default zone through Date, so run both in a zone with daylight saving
+        defaultZone = TimeZone.getDefault();
+        zone = TimeZone.getTimeZone("Australia/Sydney");
+        TimeZone.setDefault(zone);
+        sut = new ClosedFormTariff(4, 2, zone, ANCHOR);
+        legacy = new LegacyChargeCalculator();
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(defaultZone);
+    }
+
+    /**
+     * Test of calcChargeCents against the legacy calculation over a randomized corpus of stays.
+     */
+    @Test
+    public void testMatchesLegacyOverRandomIntervals() {
+        System.out.println("calcChargeCents random corpus");
+        Random random = new Random(20170901L);
+        long from = 946684800000L; //1 January 2000
+        long span = 30 * 365 * DAY;
+        int compared = 0;
+
+        while (compared < 100000) {
+            long start = from + (long) (random.nextDouble() * span);
+            long length;
+            switch (random.nextInt(3)) {
+                case 0: length = (long) (random.nextDouble() * 12 * HOUR); break;
+                case 1: length = (long) (random.nextDouble() * 7 * DAY); break;
+                default: length = (long) (random.nextDouble() * 60 * DAY); break;
+            }
+            long end = start + length;
+
+            //the legacy calculation charges nothing for a day that starts or ends exactly on 07:00:00 or 19:00:00,
+            //charges a whole day for an entry at 23:59:59, drops a day whenever a stay runs over New Year,
+            //and charges wall clock time rather than time parked across a daylight saving transition
+            if (onBusinessHoursBoundary(start) || onBusinessHoursBoundary(end)
+                    || secondOfDay(start) == 86399 || yearOf(start) != yearOf(end)
+                    || zone.getOffset(start) != zone.getOffset(end)) {
+                continue;
+            }
+
+            float expected = legacy.calcCharge(start, end);
+            float result = sut.calcChargeCents(start, end) / 100f;
+            assertEquals("start " + start + " end " + end, expected, result, 0.005);
+            compared++;
+        }
+    }
+
+    /**
+     * Test of calcChargesCents, which should match calcChargeCents for every stay.
+     */
+    @Test
+    public void testBatchMatchesScalar() {
+        System.out.println("calcChargesCents");
+        Random random = new Random(42L);
+        long end = 1504706400000L + 17 * HOUR;
+        long[] starts = new long[50000];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = end - (long) (random.nextDouble() * 90 * DAY) + (i % 10 == 0 ? 2 * HOUR : 0);
+        }
+        long[] charges = new long[starts.length];
+
+        sut.calcChargesCents(starts, end, charges);
+
+        for (int i = 0; i < starts.length; i++) {
+            assertEquals(sut.calcChargeCents(starts[i], end), charges[i]);
+        }
+    }
+
+    /**
+     * Test of calcChargeCents for a whole business day, Thursday 7 September 2017.
+     */
+    @Test
+    public void testWholeBusinessDay() {
+        long midnight = 1504706400000L;
+        assertEquals(7200, sut.calcChargeCents(midnight, midnight + DAY - 1000));
+    }
+
+    /**
+     * Test of calcChargeCents for three weeks, which is charged at 21 whole days.
+     */
+    @Test
+    public void testThreeWeeks() {
+        long midnight = 1504706400000L;
+        assertEquals(3 * 43200, sut.calcChargeCents(midnight, midnight + 21 * DAY));
+    }
+
+    /**
+     * Test of calcChargeCents at the start of business hours, which the legacy calculation did not charge.
+     */
+    @Test
+    public void testStartOnBusinessHoursBoundary() {
+        long sevenAm = 1504706400000L + 7 * HOUR;
+        assertEquals(400, sut.calcChargeCents(sevenAm, sevenAm + HOUR));
+    }
+
+    /**
+     * Test of calcChargeCents over New Year, which the legacy calculation charged one day short.
+     */
+    @Test
+    public void testOverNewYear() {
+        long midnight = 1514638800000L; //Sunday 31 December 2017, then a business day
+        assertEquals(4800 + 7200, sut.calcChargeCents(midnight, midnight + 2 * DAY));
+    }
+
+    /**
+     * Test of calcChargeCents on the Sunday daylight saving starts, which has 23 hours.
+     */
+    @Test
+    public void testDaylightSavingStarts() {
+        System.out.println("calcChargeCents daylight saving");
+        long midnight = 1506780000000L; //Sunday 1 October 2017, 00:00 AEST
+        long noon = 1506819600000L; //12:00 AEDT, 11 hours later
+        assertEquals(2200, sut.calcChargeCents(midnight, noon));
+        assertEquals(4600, sut.calcChargeCents(midnight, midnight + 23 * HOUR));
+    }
+
+    /**
+     * Test of calcChargeCents on the Sunday daylight saving ends, which has 25 hours.
+     */
+    @Test
+    public void testDaylightSavingEnds() {
+        long midnight = 1491051600000L; //Sunday 2 April 2017, 00:00 AEDT
+        long noon = 1491098400000L; //12:00 AEST, 13 hours later
+        assertEquals(2600, sut.calcChargeCents(midnight, noon));
+        assertEquals(5000, sut.calcChargeCents(midnight, midnight + 25 * HOUR));
+    }
+
+    /**
+     * Test of calcChargeCents for a stay of several days around the start of daylight saving.
+     */
+    @Test
+    public void testStayOverDaylightSaving() {
+        long saturday = 1506693600000L; //Saturday 30 September 2017, 00:00 AEST
+        long tuesday = 1506949200000L; //Tuesday 3 October 2017, 00:00 AEDT
+        assertEquals(4800 + 4600 + 7200, sut.calcChargeCents(saturday, tuesday));
+    }
+
+    /**
+     * Test of calcChargeCents for a three year stay, which crosses six transitions and
+     * the end of the offset window. The short and long Sundays cancel out, so the charge
+     * is the same as for the same local times in a zone without daylight saving.
+     */
+    @Test
+    public void testStayOverSeveralYears() {
+        ClosedFormTariff utc = new ClosedFormTariff(4, 2, TimeZone.getTimeZone("UTC"), ANCHOR);
+        long sydney2016 = 1451566800000L; //Friday 1 January 2016, 00:00 AEDT
+        long sydney2019 = 1546261200000L; //Tuesday 1 January 2019, 00:00 AEDT
+        long utc2016 = 1451606400000L;
+        long utc2019 = 1546300800000L;
+        assertEquals(utc.calcChargeCents(utc2016, utc2019), sut.calcChargeCents(sydney2016, sydney2019));
+    }
+
+    /**
+     * Test that the instant the zone offsets are first tabulated around changes no charge,
+     * only which year is looked up without rebuilding the table.
+     */
+    @Test
+    public void testChargeDoesNotDependOnAnchor() {
+        long start = 1506787200000L; //Sunday 1 October 2017, 03:00 AEDT, as daylight saving starts
+        for (long anchor : new long[] {0L, start, start + 5 * 365 * DAY}) {
+            ClosedFormTariff anchored = new ClosedFormTariff(TariffRules.standard(4, 2), zone.toZoneId(),
+                    HolidayCalendar.NONE, anchor);
+            assertEquals(sut.calcChargeCents(start - DAY, start + DAY), anchored.calcChargeCents(start - DAY, start + DAY));
+        }
+    }
+
+    /**
+     * Test of calcChargesCents for stays that cross the start of daylight saving.
+     */
+    @Test
+    public void testBatchOverDaylightSaving() {
+        Random random = new Random(7L);
+        long end = 1506949200000L + 10 * HOUR;
+        long[] starts = new long[5000];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = end - (long) (random.nextDouble() * 10 * DAY);
+        }
+        long[] charges = new long[starts.length];
+
+        sut.calcChargesCents(starts, end, charges);
+
+        for (int i = 0; i < starts.length; i++) {
+            assertEquals(sut.calcChargeCents(starts[i], end), charges[i]);
+        }
+    }
+
+    private int yearOf(long time) {
+        Calendar calendar = Calendar.getInstance(zone);
+        calendar.setTimeInMillis(time);
+        return calendar.get(Calendar.YEAR);
+    }
+
+    private boolean onBusinessHoursBoundary(long time) {
+        long secondOfDay = secondOfDay(time);
+        return secondOfDay == 7 * 3600 || secondOfDay == 19 * 3600;
+    }
+
+    private long secondOfDay(long time) {
+        return Math.floorMod(Math.floorDiv(time + zone.getOffset(time), 1000L), 86400L);
+    }
+
+}
@@ -0,0 +1,65 @@
+package unit_test.bcccp.carpark.tariff;
+
+import bcccp.carpark.tariff.HolidayCalendar;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of loading and querying a holiday calendar.
+ */
+public class HolidayCalendarTest {
+
+    /**
+     * Test of load, skipping blank lines and comments.
+     */
+    @Test
+    public void testLoad() throws IOException {
+        System.out.println("load");
+        Path file = Files.createTempFile("holidays", ".txt");
+        try {
+            Files.write(file, Arrays.asList(
+                    "# NSW public holidays",
+                    "2017-12-25  # Christmas Day",
+                    "",
+                    "2017-12-26",
+                    "2018-01-01"), StandardCharsets.UTF_8);
+            HolidayCalendar sut = HolidayCalendar.load(file);
+
+            assertEquals(3, sut.getHolidays().size());
+            assertTrue(sut.isHoliday(LocalDate.of(2017, 12, 25)));
+            assertTrue(sut.isHoliday(LocalDate.of(2018, 1, 1)));
+            assertFalse(sut.isHoliday(LocalDate.of(2017, 12, 27)));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test of load with a line that is not a date.
+     */
+    @Test
+    public void testLoadInvalidLine() throws IOException {
+        Path file = Files.createTempFile("holidays", ".txt");
+        try {
+            Files.write(file, Arrays.asList("2017-12-25", "Boxing Day"), StandardCharsets.UTF_8);
+            HolidayCalendar.load(file);
+            fail("Expected RuntimeException");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("line 2"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testSpanTooLong() {
+        new HolidayCalendar(Arrays.asList(LocalDate.of(1900, 1, 1), LocalDate.of(2100, 1, 1)));
+    }
+
+}
@@ -0,0 +1,176 @@
+package unit_test.bcccp.carpark.tariff;
+
+import java.sql.Time;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+/**
+ * The day by day charge calculation that Carpark used before the closed form tariff,
+ * kept as a reference to check the new tariff against. Logging has been removed.
+ */
+public class LegacyChargeCalculator {
+
+        final float BH_RATE = 4; 
+        final float OOH_RATE = 2;
+
+        @SuppressWarnings("deprecation")
+		public float calcCharge(long start, long end) {
+            //create Date objects with given long values
+            Date startTime = new Date(start);
+            Date endTime = new Date(end);
+
+            int daysBetweenDates = daysBetween(startTime, endTime);
+            int curDayBetween = 0;
+            
+            int curDayOfWeek = startTime.getDay();
+            
+            
+            //initialize float = 0, currentStartTime = startTime
+            float charge = 0;
+            Date curStartTime = new Date(startTime.getTime());           
+            
+            //run while look as long as currentDay does not = endDay
+            while (curDayBetween != daysBetweenDates) {
+                Date curEndTime = new Date(startTime.getTime());   //set endDay time to midnight. 
+                curEndTime.setHours(23);
+                curEndTime.setMinutes(59);
+                curEndTime.setSeconds(59);
+                
+                //if the start time is midnight, then have to set all values to 0. 
+                if (curStartTime.getHours() == 23 && curStartTime.getMinutes() == 59 && curStartTime.getSeconds() == 59) {
+                		curStartTime.setHours(0);
+                		curStartTime.setMinutes(0);
+                		curStartTime.setSeconds(0);
+                }
+                //call calcDayCharge method, passing in current values. 
+                charge += calcDayCharge(curStartTime, curEndTime, curDayOfWeek);
+                //reset currentStartTime to endTime
+                curStartTime = new Date(curEndTime.getTime());
+                //increment day, check if passed into new week
+                curDayBetween++;
+                curDayOfWeek++;
+                if (curDayOfWeek == 7) {
+                    curDayOfWeek = 0;
+                }
+            }
+            //if current day is the same as end day, reset midnight to 0 values. 
+            if (curStartTime.getHours() == 23 && curStartTime.getMinutes() == 59 && curStartTime.getSeconds() == 59) {
+        		curStartTime.setHours(0);
+        		curStartTime.setMinutes(0);
+        		curStartTime.setSeconds(0);
+        }
+            //call calc method. 
+            charge += calcDayCharge(curStartTime, endTime, curDayOfWeek);
+            //return accumulated charge
+            return charge;
+        }
+
+        //calcDayCharge checks for BH and OOH and determines correct charge
+        @SuppressWarnings("deprecation")
+		private float calcDayCharge(Date startDate, Date endDate, int day) {
+            
+            //create time objets from given Date objects
+            Time startTime = new Time(startDate.getHours(), startDate.getMinutes(), startDate.getSeconds());
+            Time endTime = new Time(endDate.getHours(), endDate.getMinutes(), endDate.getSeconds());
+            //create Business Hours Time Objects
+            Time startBH = new Time(7, 0, 0);
+            Time endBH = new Time(19, 0, 0);
+
+            //initialize dayCharge
+            float dayCharge = (float) 0.0;
+            //check if it is business day
+            if (isBusinessDay(day)) { 
+                
+                //if isBusiness Day and all Out of Hours
+                if (endTime.before(startBH) || startTime.after(endBH)) {
+                    dayCharge = (float) (((getMinutes(endTime) - getMinutes(startTime))/60.0) * OOH_RATE);
+                    dayCharge = (float) (Math.round(dayCharge * 100.0) / 100.0);
+                }
+                //if isBusiness Day and all in Business Hours
+                else if (startTime.after(startBH) && endTime.before(endBH)) {
+                    dayCharge = (float) (((getMinutes(endTime) - getMinutes(startTime))/60.0) * BH_RATE);
+                    dayCharge = (float) (Math.round(dayCharge * 100.0) / 100.0);
+                }
+                //if isBusiness Day and Out of Hours start / Business Hours end
+                else if (startTime.before(startBH) && endTime.before(endBH)) {
+                    dayCharge = (float) (((getMinutes(startBH) - getMinutes(startTime))/60.0) * OOH_RATE);
+                    dayCharge += ((getMinutes(endTime) - getMinutes(startBH))/60.0) * BH_RATE;
+                    dayCharge = (float) (Math.round(dayCharge * 100.0) / 100.0);
+                }
+                //if isBusinessDay and Business Hours start / Out of Hours end
+                else if (startTime.after(startBH) && startTime.before(endBH) && endTime.after(endBH)) {
+                    dayCharge = (float) (((getMinutes(endBH) - getMinutes(startTime))/60.0) * BH_RATE);
+                    dayCharge += ((getMinutes(endTime) - getMinutes(endBH))/60.0) * OOH_RATE;
+                    dayCharge = (float) (Math.round(dayCharge * 100.0) / 100.0);
+                }
+                //if isBusiness Day Out of Hours start / through Business Hours / Out of Hours end
+                else if (startTime.before(startBH) && endTime.after(endBH)) {
+                    dayCharge = (float) (((getMinutes(startBH) - getMinutes(startTime))/60.0) * OOH_RATE);
+                    dayCharge += ((getMinutes(endBH) - getMinutes(startBH))/60.0) * BH_RATE;
+                    dayCharge += ((getMinutes(endTime) - getMinutes(endBH))/60.0) * OOH_RATE;
+                    dayCharge = (float) (Math.round(dayCharge * 100.0) / 100.0);
+                }
+                else {
+                    //else time error
+                }
+            }
+            //else not Busines Day, all Out of Hours
+            else {
+                dayCharge = (float) (((getMinutes(endTime) - getMinutes(startTime))/60.0) * OOH_RATE);
+                dayCharge = (float) (Math.round(dayCharge * 100.0) / 100.0);
+            }
+            //return dayCharge
+            return dayCharge;
+        }
+        
+        //isBusinessDay() takes int and returns true or false for Business Day
+        private boolean isBusinessDay(int day) {
+            if (day > 0 && day < 5) {
+                return true;
+            }
+            else
+                return false;
+        }
+        
+        //getMinutes() takes a Time object and returns the amount of total minutes. Calculated from hours, minutes and seconds
+        @SuppressWarnings("deprecation")
+        private int getMinutes(Time time) {
+            int minutes = 0;
+            minutes += time.getMinutes();
+            minutes += (time.getHours() * 60);
+            if (time.getSeconds() >= 30) {
+            	minutes++;
+            } 
+            return minutes;
+        }
+        
+        private int daysBetween(Date d1, Date d2) {
+        	Calendar startCal = new GregorianCalendar();
+        	Calendar endCal = new GregorianCalendar();
+        	
+        	startCal.setTime(d1);
+        	endCal.setTime(d2);
+                
+                int currentYear = startCal.get(Calendar.YEAR);
+                int endYear = endCal.get(Calendar.YEAR);
+                
+                int days = 0;
+                
+               while (currentYear != endYear) {
+                   Calendar lastDayOfYear = new GregorianCalendar(currentYear, 11, 31);
+                   int dayDecember31 = lastDayOfYear.get(Calendar.DAY_OF_YEAR);
+                   
+                   days += dayDecember31 - (startCal.get(Calendar.DAY_OF_YEAR));
+                   
+                   currentYear++;
+                   startCal.set(currentYear, 0, 1);  //set current to Jan 1st of next year.            
+               }
+        	
+        	days += (endCal.get(Calendar.DAY_OF_YEAR)) - (startCal.get(Calendar.DAY_OF_YEAR));
+
+        	return days;
+        	
+        	}
+        
+}
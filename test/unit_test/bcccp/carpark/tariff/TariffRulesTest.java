@@ -0,0 +1,90 @@
+package unit_test.bcccp.carpark.tariff;
+
+import bcccp.carpark.tariff.DayType;
+import bcccp.carpark.tariff.HolidayCalendar;
+import bcccp.carpark.tariff.ITariffEngine;
+import bcccp.carpark.tariff.TariffRules;
+import java.time.ZoneId;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of tariff rules compiled into a tariff engine.
+ */
+public class TariffRulesTest {
+
+    private static final long HOUR = 3600000L;
+    private static final long MONDAY = 1504483200000L; //Monday 4 September 2017, 00:00 UTC
+    private static final long SATURDAY = MONDAY + 5 * 24 * HOUR;
+
+    private ZoneId utc;
+
+    @Before
+    public void setUp() {
+        utc = ZoneId.of("UTC");
+    }
+
+    /**
+     * Test of compile for the standard tariff.
+     */
+    @Test
+    public void testStandard() {
+        System.out.println("standard");
+        ITariffEngine sut = TariffRules.standard(4, 2).compile(utc, HolidayCalendar.NONE, MONDAY);
+
+        assertEquals(7200, sut.calcChargeCents(MONDAY, MONDAY + 24 * HOUR));
+        assertEquals(4800, sut.calcChargeCents(SATURDAY, SATURDAY + 24 * HOUR));
+    }
+
+    /**
+     * Test of addBand, where a later band overrides an earlier one.
+     */
+    @Test
+    public void testAddBand() {
+        System.out.println("addBand");
+        TariffRules rules = TariffRules.standard(4, 2);
+        rules.addBand(DayType.BUSINESS, 8 * 60, 9 * 60, 10);
+        rules.addBand(DayType.NON_BUSINESS, 0, 1440, 1);
+        ITariffEngine sut = rules.compile(utc, HolidayCalendar.NONE, MONDAY);
+
+        assertEquals(1000, sut.calcChargeCents(MONDAY + 8 * HOUR, MONDAY + 9 * HOUR));
+        assertEquals(2400, sut.calcChargeCents(SATURDAY, SATURDAY + 24 * HOUR));
+    }
+
+    /**
+     * Test of setDailyCap, applied to each day of a stay.
+     */
+    @Test
+    public void testSetDailyCap() {
+        System.out.println("setDailyCap");
+        TariffRules rules = TariffRules.standard(4, 2);
+        rules.setDailyCap(50);
+        ITariffEngine sut = rules.compile(utc, HolidayCalendar.NONE, MONDAY);
+
+        assertEquals(5000, sut.calcChargeCents(MONDAY, MONDAY + 24 * HOUR));
+        assertEquals(4800, sut.calcChargeCents(SATURDAY, SATURDAY + 24 * HOUR));
+        assertEquals(4 * 5000 + 3 * 4800, sut.calcChargeCents(MONDAY, MONDAY + 7 * 24 * HOUR));
+    }
+
+    /**
+     * Test of setMinimumCharge, applied to the stay as a whole.
+     */
+    @Test
+    public void testSetMinimumCharge() {
+        System.out.println("setMinimumCharge");
+        TariffRules rules = TariffRules.standard(4, 2);
+        rules.setMinimumCharge(5);
+        ITariffEngine sut = rules.compile(utc, HolidayCalendar.NONE, MONDAY);
+
+        assertEquals(500, sut.calcChargeCents(MONDAY + 10 * HOUR, MONDAY + 11 * HOUR));
+        assertEquals(800, sut.calcChargeCents(MONDAY + 10 * HOUR, MONDAY + 12 * HOUR));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testInvalidBand() {
+        TariffRules rules = new TariffRules();
+        rules.addBand(DayType.BUSINESS, 600, 500, 4);
+    }
+
+}
@@ -0,0 +1,77 @@
+package unit_test.bcccp.carpark.tariff;
+
+import bcccp.carpark.tariff.ClosedFormTariff;
+import bcccp.carpark.tariff.TariffRules;
+import bcccp.carpark.tariff.WeeklyRateTable;
+import java.util.TimeZone;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the compiled weekly rate table.
+ */
+public class WeeklyRateTableTest {
+
+    /**
+     * Test of dayCents for whole business and non business days.
+     */
+    @Test
+    public void testWholeDays() {
+        System.out.println("dayCents");
+        WeeklyRateTable sut = new WeeklyRateTable(4, 2);
+
+        assertEquals(4800, sut.dayCents(0, 0, 1440));
+        assertEquals(7200, sut.dayCents(1, 0, 1440));
+        assertEquals(7200, sut.dayCents(4, 0, 1440));
+        assertEquals(4800, sut.dayCents(5, 0, 1440));
+    }
+
+    /**
+     * Test of dayCents across the start and end of business hours.
+     */
+    @Test
+    public void testPartialDay() {
+        WeeklyRateTable sut = new WeeklyRateTable(4, 2);
+
+        //06:00 to 08:00 on a Monday, one hour at each rate
+        assertEquals(600, sut.dayCents(1, 360, 480));
+        //18:30 to 19:30 on a Tuesday
+        assertEquals(300, sut.dayCents(2, 1110, 1170));
+        //one minute of business hours rounds to 7 cents
+        assertEquals(7, sut.dayCents(3, 600, 601));
+    }
+
+    /**
+     * Test of fullDaysCents for runs of days that wrap around the end of the week.
+     */
+    @Test
+    public void testFullDays() {
+        System.out.println("fullDaysCents");
+        WeeklyRateTable sut = new WeeklyRateTable(4, 2);
+
+        assertEquals(0, sut.fullDaysCents(3, 0));
+        //Friday, Saturday, Sunday, Monday
+        assertEquals(3 * 4800 + 7200, sut.fullDaysCents(5, 4));
+        assertEquals(2 * 43200 + 4800, sut.fullDaysCents(6, 15));
+    }
+
+    /**
+     * Test of setRules, which swaps in a new table for later charges.
+     */
+    @Test
+    public void testSetRules() {
+        System.out.println("setRules");
+        long mondayNoon = 1504526400000L; //Monday 4 September 2017, 12:00 UTC
+        ClosedFormTariff sut = new ClosedFormTariff(4, 2, TimeZone.getTimeZone("UTC"), mondayNoon);
+
+        assertEquals(400, sut.calcChargeCents(mondayNoon, mondayNoon + 3600000));
+        sut.setRules(TariffRules.standard(5, 2));
+        assertEquals(500, sut.calcChargeCents(mondayNoon, mondayNoon + 3600000));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testNegativeRate() {
+        new WeeklyRateTable(-1, 2);
+    }
+
+}
@@ -0,0 +1,108 @@
+package unit_test.bcccp.carpark.tariff;
+
+import bcccp.carpark.tariff.ClosedFormTariff;
+import bcccp.carpark.tariff.DayType;
+import bcccp.carpark.tariff.HolidayCalendar;
+import bcccp.carpark.tariff.ITariffEngine;
+import bcccp.carpark.tariff.TariffRules;
+import bcccp.carpark.tariff.WeeklyRateTable;
+import bcccp.carpark.tariff.YearlyRateTable;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of charging public holidays from the compiled yearly table.
+ */
+public class YearlyRateTableTest {
+
+    private static final long DAY = 86400000L;
+    private static final long CHRISTMAS_2017 = 1514160000000L; //Monday 25 December 2017, 00:00 UTC
+
+    private final HolidayCalendar holidays = new HolidayCalendar(Arrays.asList(
+            LocalDate.of(2017, 12, 25), LocalDate.of(2017, 12, 26), LocalDate.of(2019, 1, 1)));
+
+    /**
+     * Test of dayCents on a holiday that falls on a business day.
+     */
+    @Test
+    public void testHolidayCharge() {
+        System.out.println("dayCents");
+        YearlyRateTable sut = new YearlyRateTable(new WeeklyRateTable(4, 2), holidays);
+        long christmas = LocalDate.of(2017, 12, 25).toEpochDay();
+
+        assertTrue(sut.isHoliday(christmas));
+        assertEquals(4800, sut.dayCents(christmas, 0, 1440));
+        assertEquals(7200, sut.dayCents(christmas + 2, 0, 1440));
+        //a Monday a week earlier is not a holiday
+        assertEquals(7200, sut.dayCents(christmas - 7, 0, 1440));
+    }
+
+    /**
+     * Test of a stay over Christmas, charged by the tariff engine.
+     */
+    @Test
+    public void testStayOverHolidays() {
+        System.out.println("calcChargeCents");
+        ITariffEngine sut = TariffRules.standard(4, 2).compile(ZoneId.of("UTC"), holidays, CHRISTMAS_2017);
+
+        //Monday to Wednesday midnight: two holidays and one business day
+        assertEquals(4800 + 4800 + 7200, sut.calcChargeCents(CHRISTMAS_2017, CHRISTMAS_2017 + 3 * DAY));
+    }
+
+    /**
+     * Test of holiday bands, which only apply to holidays.
+     */
+    @Test
+    public void testHolidayBand() {
+        TariffRules rules = TariffRules.standard(4, 2);
+        rules.addBand(DayType.HOLIDAY, 0, 1440, 6);
+        ITariffEngine sut = rules.compile(ZoneId.of("UTC"), holidays, CHRISTMAS_2017);
+
+        assertEquals(600, sut.calcChargeCents(CHRISTMAS_2017 + 12 * 3600000L, CHRISTMAS_2017 + 13 * 3600000L));
+        assertEquals(400, sut.calcChargeCents(CHRISTMAS_2017 + 2 * DAY + 12 * 3600000L,
+                CHRISTMAS_2017 + 2 * DAY + 13 * 3600000L));
+    }
+
+    /**
+     * Test of fullDaysCents against a day by day sum, for runs of days starting and
+     * ending before, inside and after the years the calendar covers.
+     */
+    @Test
+    public void testFullDaysMatchesDayByDay() {
+        System.out.println("fullDaysCents");
+        YearlyRateTable sut = new YearlyRateTable(new WeeklyRateTable(4, 2), holidays);
+        long first = LocalDate.of(2016, 6, 1).toEpochDay();
+        Random random = new Random(8);
+
+        for (int i = 0; i < 2000; i++) {
+            long start = first + random.nextInt(1300);
+            int count = random.nextInt(900);
+            long expected = 0;
+            for (long day = start; day < start + count; day++) {
+                expected += sut.dayCents(day, 0, 1440);
+            }
+            assertEquals("start " + start + " count " + count, expected, sut.fullDaysCents(start, count));
+        }
+    }
+
+    /**
+     * Test of setHolidays, which swaps in a new calendar and keeps the rules.
+     */
+    @Test
+    public void testSetHolidays() {
+        System.out.println("setHolidays");
+        ClosedFormTariff sut = new ClosedFormTariff(TariffRules.standard(5, 2), ZoneId.of("UTC"),
+                HolidayCalendar.NONE, CHRISTMAS_2017);
+
+        assertEquals(8400, sut.calcChargeCents(CHRISTMAS_2017, CHRISTMAS_2017 + DAY));
+        sut.setHolidays(holidays);
+        assertEquals(4800, sut.calcChargeCents(CHRISTMAS_2017, CHRISTMAS_2017 + DAY));
+        sut.setRules(TariffRules.standard(4, 3));
+        assertEquals(7200, sut.calcChargeCents(CHRISTMAS_2017, CHRISTMAS_2017 + DAY));
+    }
+
+}
@@ -0,0 +1,56 @@
+package unit_test.bcccp.carpark.tariff;
+
+import bcccp.carpark.tariff.ZoneOffsetCache;
+import bcccp.carpark.tariff.ZoneOffsetTable;
+import java.time.Instant;
+import java.time.ZoneId;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the active and per-year zone offset tables.
+ */
+public class ZoneOffsetCacheTest {
+
+    private static final long HOUR = 3600000L;
+    private static final long YEAR = 365 * 24 * HOUR;
+    private static final long DST_STARTS_2017 = 1506787200000L; //Sunday 1 October 2017, 02:00 AEST
+    private static final ZoneId SYDNEY = ZoneId.of("Australia/Sydney");
+
+    /**
+     * Test that instants outside the window do not replace the active table.
+     */
+    @Test
+    public void testActiveTableKept() {
+        System.out.println("at");
+        ZoneOffsetCache sut = new ZoneOffsetCache(SYDNEY, DST_STARTS_2017);
+        ZoneOffsetTable active = sut.getActive();
+
+        assertSame(active, sut.at(DST_STARTS_2017));
+        ZoneOffsetTable old = sut.at(DST_STARTS_2017 - 10 * YEAR);
+        assertNotSame(active, old);
+        assertTrue(old.covers(DST_STARTS_2017 - 10 * YEAR));
+        assertSame(active, sut.at(DST_STARTS_2017 + HOUR));
+        assertSame(active, sut.getActive());
+        //a table is built once for the years it covers
+        assertSame(old, sut.at(DST_STARTS_2017 - 10 * YEAR + HOUR));
+    }
+
+    /**
+     * Test of offsets across many years, alternating with the active year.
+     */
+    @Test
+    public void testOffsetsAcrossYears() {
+        System.out.println("offsetMillis");
+        ZoneOffsetCache sut = new ZoneOffsetCache(SYDNEY, DST_STARTS_2017);
+
+        for (int years = -20; years <= 20; years++) {
+            long instant = DST_STARTS_2017 + years * YEAR;
+            assertEquals(SYDNEY.getRules().getOffset(Instant.ofEpochMilli(instant)).getTotalSeconds() * 1000,
+                    sut.offsetMillis(instant));
+            assertEquals(11 * HOUR, sut.offsetMillis(DST_STARTS_2017));
+            assertEquals(10 * HOUR, sut.offsetMillis(DST_STARTS_2017 - 1));
+        }
+    }
+
+}
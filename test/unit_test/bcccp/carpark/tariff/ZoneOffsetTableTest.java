@@ -0,0 +1,58 @@
+package unit_test.bcccp.carpark.tariff;
+
+import bcccp.carpark.tariff.ZoneOffsetTable;
+import java.time.ZoneId;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the precomputed zone offset transitions.
+ */
+public class ZoneOffsetTableTest {
+
+    private static final long HOUR = 3600000L;
+    private static final long DST_ENDS_2017 = 1491062400000L; //Sunday 2 April 2017, 03:00 AEDT
+    private static final long DST_STARTS_2017 = 1506787200000L; //Sunday 1 October 2017, 02:00 AEST
+
+    /**
+     * Test of offsetMillis either side of the Sydney transitions.
+     */
+    @Test
+    public void testOffsets() {
+        System.out.println("offsetMillis");
+        ZoneOffsetTable sut = new ZoneOffsetTable(ZoneId.of("Australia/Sydney"), 2017);
+
+        assertEquals(11 * HOUR, sut.offsetMillis(DST_ENDS_2017 - 1));
+        assertEquals(10 * HOUR, sut.offsetMillis(DST_ENDS_2017));
+        assertEquals(10 * HOUR, sut.offsetMillis(DST_STARTS_2017 - 1));
+        assertEquals(11 * HOUR, sut.offsetMillis(DST_STARTS_2017));
+    }
+
+    /**
+     * Test of nextTransition, which stops at the end of the window.
+     */
+    @Test
+    public void testNextTransition() {
+        System.out.println("nextTransition");
+        ZoneOffsetTable sut = new ZoneOffsetTable(ZoneId.of("Australia/Sydney"), 2017);
+
+        assertEquals(DST_ENDS_2017, sut.nextTransition(DST_ENDS_2017 - 30 * 24 * HOUR));
+        assertEquals(DST_STARTS_2017, sut.nextTransition(DST_ENDS_2017));
+        assertTrue(sut.covers(DST_STARTS_2017 + 365 * 24 * HOUR));
+        assertFalse(sut.covers(DST_STARTS_2017 + 3 * 365 * 24 * HOUR));
+    }
+
+    /**
+     * Test of a zone without daylight saving.
+     */
+    @Test
+    public void testFixedZone() {
+        ZoneOffsetTable sut = ZoneOffsetTable.around(ZoneId.of("Australia/Brisbane"), DST_STARTS_2017);
+
+        assertEquals(2017, sut.getActiveYear());
+        assertEquals(10 * HOUR, sut.offsetMillis(DST_STARTS_2017));
+        //the next change is only the end of the window, 1 January 2019 in Brisbane
+        assertEquals(1546264800000L, sut.nextTransition(DST_STARTS_2017));
+    }
+
+}
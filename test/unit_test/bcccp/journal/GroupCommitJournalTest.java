@@ -0,0 +1,111 @@
+package unit_test.bcccp.journal;
+
+import bcccp.journal.GroupCommitJournal;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of writing, forcing and reading back journal records.
+ */
+public class GroupCommitJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that appended records are read back in order when the journal is opened again.
+     */
+    @Test
+    public void testAppendAndReplay() throws IOException {
+        System.out.println("append");
+        Path file = folder.getRoot().toPath().resolve("test.journal");
+        try (GroupCommitJournal sut = new GroupCommitJournal(file, null, 8, 1)) {
+            for (int i = 0; i < 100; i++) {
+                sut.append(record(i));
+            }
+            assertEquals(100, sut.getWriteLatency().getCount());
+            //one writer waits for each record, so each batch holds one
+            assertEquals(100, sut.getBatchSizes().getCount());
+        }
+
+        List<Integer> read = new ArrayList<>();
+        new GroupCommitJournal(file, record -> read.add(record.getInt()), 8, 1).close();
+        assertEquals(100, read.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (int) read.get(i));
+        }
+    }
+
+    /**
+     * Test that a torn record at the end is cut off and writing carries on after the good ones.
+     */
+    @Test
+    public void testTornTail() throws IOException {
+        System.out.println("recover");
+        Path file = folder.getRoot().toPath().resolve("test.journal");
+        try (GroupCommitJournal sut = new GroupCommitJournal(file, null, 8, 1)) {
+            sut.append(record(1));
+            sut.append(record(2));
+        }
+        long goodSize;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            goodSize = channel.size();
+            //the start of a record whose bytes never made it
+            channel.write(ByteBuffer.allocate(6).putInt(0, 100), goodSize);
+        }
+
+        List<Integer> read = new ArrayList<>();
+        try (GroupCommitJournal sut = new GroupCommitJournal(file, record -> read.add(record.getInt()), 8, 1)) {
+            assertEquals(2, read.size());
+            sut.append(record(3));
+        }
+        read.clear();
+        new GroupCommitJournal(file, record -> read.add(record.getInt()), 8, 1).close();
+        assertEquals(3, read.size());
+        assertEquals(3, (int) read.get(2));
+    }
+
+    /**
+     * Test that records from writers waiting at the same time share a batch.
+     */
+    @Test
+    public void testGroupCommit() throws Exception {
+        System.out.println("group commit");
+        Path file = folder.getRoot().toPath().resolve("test.journal");
+        try (GroupCommitJournal sut = new GroupCommitJournal(file, null, 16, 50)) {
+            Thread[] writers = new Thread[16];
+            for (int t = 0; t < writers.length; t++) {
+                final int writer = t;
+                writers[t] = new Thread(() -> {
+                    for (int i = 0; i < 10; i++) {
+                        sut.append(record(writer * 100 + i));
+                    }
+                });
+                writers[t].start();
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            assertEquals(160, sut.getWriteLatency().getCount());
+            assertTrue(sut.getBatchSizes().getCount() < 160);
+            assertTrue(sut.getBatchSizes().getMax() > 1);
+        }
+
+        List<Integer> read = new ArrayList<>();
+        new GroupCommitJournal(file, record -> read.add(record.getInt()), 16, 50).close();
+        assertEquals(160, read.size());
+    }
+
+    private static byte[] record(int value) {
+        return ByteBuffer.allocate(4).putInt(value).array();
+    }
+}
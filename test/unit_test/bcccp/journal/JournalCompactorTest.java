@@ -0,0 +1,107 @@
+package unit_test.bcccp.journal;
+
+import bcccp.journal.IJournal;
+import bcccp.journal.JournalCompactor;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of snapshots and the deletion of the journal segments they cover.
+ */
+public class JournalCompactorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that opening reads the snapshot and then only the segments written after it.
+     */
+    @Test
+    public void testCompact() {
+        System.out.println("compact");
+        Path directory = folder.getRoot().toPath().resolve("journal");
+        JournalCompactor sut = new JournalCompactor(directory, 4096, 8, 1);
+        try (IJournal journal = sut.open(null)) {
+            for (int i = 0; i < 1000; i++) {
+                journal.append(record(i));
+            }
+            int segments = sut.getJournal().getSegments().size();
+            assertTrue(segments > 3);
+
+            //the state the journal records so far is the sum of its values
+            sut.compact(writer -> writer.add(record(999 * 1000 / 2)));
+            assertEquals(segments, sut.getSegmentsDeleted());
+            assertEquals(1, sut.getJournal().getSegments().size());
+            assertEquals(1, sut.getLastSnapshotRecords());
+            assertEquals(1, sut.getSnapshotMillis().getCount());
+            assertEquals(1, sut.getCompactionMillis().getCount());
+
+            journal.append(record(1000));
+            journal.append(record(1001));
+        }
+
+        List<Integer> read = new ArrayList<>();
+        new JournalCompactor(directory, 4096, 8, 1).open(r -> read.add(r.getInt())).close();
+        assertEquals(3, read.size());
+        assertEquals(999 * 1000 / 2, (int) read.get(0));
+        assertEquals(1000, (int) read.get(1));
+        assertEquals(1001, (int) read.get(2));
+    }
+
+    /**
+     * Test that a second compaction replaces the first snapshot.
+     */
+    @Test
+    public void testCompactTwice() {
+        Path directory = folder.getRoot().toPath().resolve("journal");
+        JournalCompactor sut = new JournalCompactor(directory, 4096, 8, 1);
+        try (IJournal journal = sut.open(null)) {
+            journal.append(record(1));
+            sut.compact(writer -> writer.add(record(1)));
+            journal.append(record(2));
+            sut.compact(writer -> writer.add(record(3)));
+            journal.append(record(4));
+        }
+
+        List<Integer> read = new ArrayList<>();
+        new JournalCompactor(directory, 4096, 8, 1).open(r -> read.add(r.getInt())).close();
+        assertEquals(2, read.size());
+        assertEquals(3, (int) read.get(0));
+        assertEquals(4, (int) read.get(1));
+    }
+
+    /**
+     * Test that a failed snapshot leaves the journal whole.
+     */
+    @Test
+    public void testFailedSnapshot() {
+        Path directory = folder.getRoot().toPath().resolve("journal");
+        JournalCompactor sut = new JournalCompactor(directory, 4096, 8, 1);
+        try (IJournal journal = sut.open(null)) {
+            journal.append(record(1));
+            try {
+                sut.compact(writer -> {
+                    throw new RuntimeException("source failed");
+                });
+                fail("compacted without a snapshot");
+            } catch (RuntimeException e) {
+                assertEquals(0, sut.getSegmentsDeleted());
+            }
+            journal.append(record(2));
+        }
+
+        List<Integer> read = new ArrayList<>();
+        new JournalCompactor(directory, 4096, 8, 1).open(r -> read.add(r.getInt())).close();
+        assertEquals(2, read.size());
+    }
+
+    private static byte[] record(int value) {
+        return ByteBuffer.allocate(16).putInt(value).array();
+    }
+}
@@ -0,0 +1,135 @@
+package unit_test.bcccp.journal;
+
+import bcccp.journal.MappedSegmentJournal;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the journal kept in memory mapped segment files.
+ */
+public class MappedSegmentJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that records spread over several segments are read back in order.
+     */
+    @Test
+    public void testAppendAndReplay() {
+        System.out.println("append");
+        Path directory = folder.getRoot().toPath().resolve("journal");
+        try (MappedSegmentJournal sut = new MappedSegmentJournal(directory, null, 4096, 8, 1)) {
+            for (int i = 0; i < 1000; i++) {
+                sut.append(record(i, 1 + i % 50));
+            }
+            assertTrue(sut.getSegments().size() > 5);
+        }
+
+        List<Integer> read = new ArrayList<>();
+        try (MappedSegmentJournal sut = new MappedSegmentJournal(directory, r -> read.add(r.getInt()), 4096, 8, 1)) {
+            sut.append(record(1000, 10));
+        }
+        new MappedSegmentJournal(directory, null, 4096, 8, 1).close();
+        read.clear();
+        new MappedSegmentJournal(directory, r -> read.add(r.getInt()), 4096, 8, 1).close();
+        assertEquals(1001, read.size());
+        for (int i = 0; i <= 1000; i++) {
+            assertEquals(i, (int) read.get(i));
+        }
+    }
+
+    /**
+     * Test that a torn record ends the journal, and records found after it are cleared.
+     */
+    @Test
+    public void testTornTail() throws IOException {
+        System.out.println("recover");
+        Path directory = folder.getRoot().toPath().resolve("journal");
+        try (MappedSegmentJournal sut = new MappedSegmentJournal(directory, null, 4096, 8, 1)) {
+            for (int i = 0; i < 5; i++) {
+                sut.append(record(i, 4));
+            }
+        }
+        //each frame here is 12 bytes; tear the fourth record
+        Path segment = new MappedSegmentJournal(directory, null, 4096, 8, 1).getSegments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xff}), 3 * 12 + 6);
+        }
+
+        List<Integer> read = new ArrayList<>();
+        try (MappedSegmentJournal sut = new MappedSegmentJournal(directory, r -> read.add(r.getInt()), 4096, 8, 1)) {
+            assertEquals(3, read.size());
+            sut.append(record(99, 1));
+        }
+        read.clear();
+        new MappedSegmentJournal(directory, r -> read.add(r.getInt()), 4096, 8, 1).close();
+        assertEquals(4, read.size());
+        assertEquals(99, (int) read.get(3));
+    }
+
+    /**
+     * Test that a bad record in an earlier segment ends the journal there.
+     */
+    @Test
+    public void testBadRecordInEarlierSegment() throws IOException {
+        Path directory = folder.getRoot().toPath().resolve("journal");
+        List<Path> segments;
+        try (MappedSegmentJournal sut = new MappedSegmentJournal(directory, null, 4096, 8, 1)) {
+            for (int i = 0; i < 1000; i++) {
+                sut.append(record(i, 8));
+            }
+            segments = sut.getSegments();
+        }
+        assertTrue(segments.size() > 2);
+        try (FileChannel channel = FileChannel.open(segments.get(1), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {1, 2, 3}), 100);
+        }
+
+        List<Integer> read = new ArrayList<>();
+        try (MappedSegmentJournal sut = new MappedSegmentJournal(directory, r -> read.add(r.getInt()), 4096, 8, 1)) {
+            assertEquals(2, sut.getSegments().size());
+            assertTrue(read.size() > 4096 / 20 && read.size() < 2 * 4096 / 20);
+        }
+    }
+
+    /**
+     * Test of reading back a large journal, written in batches.
+     */
+    @Test
+    public void testRecoverManyRecords() {
+        System.out.println("recover many");
+        Path directory = folder.getRoot().toPath().resolve("journal");
+        int count = 200000;
+        try (MappedSegmentJournal sut = new MappedSegmentJournal(directory, null, 1 << 20, 1024, 5)) {
+            long seq = 0;
+            for (int i = 0; i < count; i++) {
+                seq = sut.write(record(i, 20));
+            }
+            sut.awaitDurable(seq);
+        }
+
+        long[] total = new long[2];
+        long start = System.nanoTime();
+        new MappedSegmentJournal(directory, r -> {
+            total[0]++;
+            total[1] += r.getInt();
+        }, 1 << 20, 1024, 5).close();
+        System.out.println("read back " + count + " records in " + (System.nanoTime() - start) / 1000000 + " ms");
+        assertEquals(count, total[0]);
+        assertEquals((long) count * (count - 1) / 2, total[1]);
+    }
+
+    private static byte[] record(int value, int length) {
+        return ByteBuffer.allocate(Math.max(4, length)).putInt(value).array();
+    }
+}
@@ -0,0 +1,51 @@
+package unit_test.bcccp.metrics;
+
+import bcccp.metrics.Histogram;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the bucketed histogram.
+ */
+public class HistogramTest {
+
+    /**
+     * Test of percentiles, exact below 16 and within an eighth above.
+     */
+    @Test
+    public void testGetValueAtPercentile() {
+        System.out.println("getValueAtPercentile");
+        Histogram sut = new Histogram("test");
+        assertEquals(0, sut.getValueAtPercentile(99));
+
+        for (long value = 1; value <= 1000; value++) {
+            sut.record(value);
+        }
+        assertEquals(1000, sut.getCount());
+        assertEquals(1000, sut.getMax());
+        assertEquals(500.5, sut.getMean(), 1e-9);
+        assertEquals(1, sut.getValueAtPercentile(0));
+        assertEquals(10, sut.getValueAtPercentile(1));
+        long median = sut.getValueAtPercentile(50);
+        assertTrue(median >= 500 && median <= 500 * 9 / 8);
+        long p99 = sut.getValueAtPercentile(99);
+        assertTrue(p99 >= 990 && p99 <= 1000);
+        assertEquals(1000, sut.getValueAtPercentile(100));
+    }
+
+    /**
+     * Test of very large and negative values.
+     */
+    @Test
+    public void testExtremes() {
+        Histogram sut = new Histogram("test");
+        sut.record(-5);
+        sut.record(Long.MAX_VALUE);
+        assertEquals(0, sut.getValueAtPercentile(50));
+        assertEquals(Long.MAX_VALUE, sut.getValueAtPercentile(100));
+
+        sut.reset();
+        assertEquals(0, sut.getCount());
+        assertEquals(0, sut.getMax());
+    }
+}
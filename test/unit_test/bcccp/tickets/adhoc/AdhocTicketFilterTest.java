@@ -0,0 +1,114 @@
+package unit_test.bcccp.tickets.adhoc;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import bcccp.tickets.adhoc.*;
+import bcccp.time.SimulatedClock;
+
+/**
+ * Tests of filtering and streaming the current tickets of each adhoc ticket DAO.
+ */
+public class AdhocTicketFilterTest {
+
+	private static final long SEPTEMBER_7 = 1504760400000L; //Thursday 7 September 2017, 15:00 AEST
+	private static final int TICKETS = 5000;
+
+	@Test
+	public void testAccepts() {
+		System.out.println("accepts");
+		AdhocTicketFilter sut = new AdhocTicketFilter();
+		assertTrue(sut.accepts(AdhocTicketState.ISSUED, 0));
+		assertTrue(sut.accepts(AdhocTicketState.EXITED, SEPTEMBER_7));
+
+		sut.setStates(AdhocTicketState.CURRENT, AdhocTicketState.PAID);
+		sut.setEntryRange(SEPTEMBER_7, SEPTEMBER_7 + 1000);
+		assertFalse(sut.accepts(AdhocTicketState.ISSUED, SEPTEMBER_7));
+		assertTrue(sut.accepts(AdhocTicketState.CURRENT, SEPTEMBER_7));
+		assertTrue(sut.accepts(AdhocTicketState.PAID, SEPTEMBER_7 + 999));
+		assertFalse(sut.accepts(AdhocTicketState.PAID, SEPTEMBER_7 + 1000));
+		assertFalse(sut.accepts(AdhocTicketState.CURRENT, 0));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testInvalidEntryRange() {
+		new AdhocTicketFilter().setEntryRange(SEPTEMBER_7, SEPTEMBER_7 - 1);
+	}
+
+	@Test
+	public void testStreamCurrentTickets() {
+		System.out.println("streamCurrentTickets");
+		SimulatedClock clock = new SimulatedClock(SEPTEMBER_7);
+		List<IAdhocTicketDAO> daos = Arrays.asList(
+				new AdhocTicketDAO(new AdhocTicketFactory(clock)),
+				new ConcurrentAdhocTicketDAO(new AdhocTicketFactory(clock)),
+				new StripedAdhocTicketDAO(new AdhocTicketFactory(clock), 8),
+				new IndexedAdhocTicketDAO(new AdhocTicketFactory(clock)),
+				new OffHeapAdhocTicketDAO(clock));
+
+		AdhocTicketFilter filter = new AdhocTicketFilter();
+		filter.setStates(AdhocTicketState.CURRENT, AdhocTicketState.PAID);
+		filter.setEntryRange(SEPTEMBER_7 + 1000000, SEPTEMBER_7 + 3000000);
+
+		for (IAdhocTicketDAO sut : daos) {
+			for (int i = 0; i < TICKETS; i++) {
+				IAdhocTicket ticket = sut.createTicket("Bathurst Chase");
+				//one in four tickets is only issued, and the rest enter a second apart
+				if (i % 4 != 0) {
+					ticket.enter(SEPTEMBER_7 + 1000 * i);
+				}
+				if (i % 4 == 2) {
+					ticket.pay(SEPTEMBER_7 + 1000 * i + 1, 500);
+				}
+				if (i % 4 == 3) {
+					ticket.exit(SEPTEMBER_7 + 1000 * i + 1);
+				}
+			}
+
+			String name = sut.getClass().getSimpleName();
+			List<Integer> expected = sut.getCurrentTickets().stream()
+					.filter(filter::accepts)
+					.map(IAdhocTicket::getTicketNo)
+					.sorted()
+					.collect(Collectors.toList());
+			//tickets 1001 to 2999 that entered and have not exited
+			assertEquals(name, 1000, expected.size());
+
+			assertEquals(name, TICKETS, sut.streamCurrentTickets(null).count());
+			assertEquals(name, expected, sut.streamCurrentTickets(filter)
+					.map(IAdhocTicket::getTicketNo)
+					.sorted()
+					.collect(Collectors.toList()));
+			assertEquals(name, expected, sut.streamCurrentTickets(filter).parallel()
+					.map(IAdhocTicket::getTicketNo)
+					.sorted()
+					.collect(Collectors.toList()));
+			assertEquals(name, 500, sut.streamCurrentTickets(filter)
+					.filter(IAdhocTicket::isPaid)
+					.count());
+		}
+	}
+
+	@Test
+	public void testStreamWhileCreating() {
+		System.out.println("stream while creating");
+		IndexedAdhocTicketDAO sut = new IndexedAdhocTicketDAO(new AdhocTicketFactory());
+		for (int i = 0; i < 3000; i++) {
+			sut.createTicket("Bathurst Chase");
+		}
+
+		//the stream does not hold the lock, so the DAO can be used from within it
+		long count = sut.streamCurrentTickets(null)
+				.peek(ticket -> sut.findTicketByBarcode(ticket.getBarcode()))
+				.peek(ticket -> sut.createTicket("Bathurst Chase"))
+				.count();
+		assertTrue(count >= 3000);
+		assertEquals(3000 + count, sut.getCurrentTickets().size());
+	}
+
+}
@@ -0,0 +1,170 @@
+package unit_test.bcccp.tickets.adhoc;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import bcccp.tickets.adhoc.*;
+import bcccp.time.SimulatedClock;
+
+/**
+ * Tests of sweeping exited and abandoned tickets out of an AdhocTicketDAO.
+ */
+public class AdhocTicketSweeperTest {
+
+	private static final long SEPTEMBER_7 = 1504760400000L; //Thursday 7 September 2017, 15:00 AEST
+	private static final long DAY = 86400000L;
+
+	@Test
+	public void testSweep() {
+		System.out.println("sweep");
+		SimulatedClock clock = new SimulatedClock(SEPTEMBER_7);
+		AdhocTicketDAO dao = new AdhocTicketDAO(new AdhocTicketFactory(clock));
+		AdhocTicketArchive archive = new AdhocTicketArchive();
+		AdhocTicketSweeper sut = new AdhocTicketSweeper(dao, archive, clock, DAY, 60000);
+
+		IAdhocTicket exiting = dao.createTicket("Bathurst Chase");
+		IAdhocTicket parked = dao.createTicket("Bathurst Chase");
+		IAdhocTicket abandoned = dao.createTicket("Bathurst Chase");
+		assertEquals(3, sut.getNumberOfTrackedTickets());
+
+		clock.advance(1000);
+		exiting.enter(clock.currentTimeMillis());
+		parked.enter(clock.currentTimeMillis());
+		clock.advance(3600000);
+		exiting.pay(clock.currentTimeMillis(), 500);
+		clock.advance(60000);
+		exiting.exit(clock.currentTimeMillis());
+
+		//the exited ticket goes at its next check, within a minute
+		clock.advance(60000);
+		assertEquals(1, sut.sweep());
+		assertEquals(1, sut.getExitedEvictions());
+		assertSame(exiting, archive.getArchivedTickets().get(0));
+		assertNull(dao.findTicketByBarcode(exiting.getBarcode()));
+		assertEquals(2, dao.getCurrentTickets().size());
+
+		//the unused ticket goes once a day old, the parked car's ticket stays
+		clock.advance(DAY - 3600000 - 60000 * 2 - 1000 - 1);
+		assertEquals(0, sut.sweep());
+		clock.advance(1000);
+		assertEquals(1, sut.sweep());
+		assertEquals(1, sut.getAbandonedEvictions());
+		assertSame(abandoned, archive.getArchivedTickets().get(1));
+		assertEquals(1, dao.getCurrentTickets().size());
+		assertSame(parked, dao.findTicketByBarcode(parked.getBarcode()));
+
+		clock.advance(7 * DAY);
+		assertEquals(0, sut.sweep());
+		assertEquals(1, sut.getNumberOfTrackedTickets());
+		assertEquals(2, archive.getNumberOfArchivedTickets());
+	}
+
+	@Test
+	public void testExitedTicketLookedUpIsStillArchived() {
+		SimulatedClock clock = new SimulatedClock(SEPTEMBER_7);
+		AdhocTicketDAO dao = new AdhocTicketDAO(new AdhocTicketFactory(clock));
+		AdhocTicketArchive archive = new AdhocTicketArchive();
+		AdhocTicketSweeper sut = new AdhocTicketSweeper(dao, archive, clock, DAY, 60000);
+
+		IAdhocTicket ticket = dao.createTicket("Bathurst Chase");
+		ticket.enter(SEPTEMBER_7 + 1000);
+		ticket.pay(SEPTEMBER_7 + 2000, 500);
+		ticket.exit(SEPTEMBER_7 + 3000);
+		//scanned again after leaving, the ticket is found but left for the sweeper
+		assertSame(ticket, dao.findTicketByBarcode(ticket.getBarcode()));
+		assertSame(ticket, dao.findTicketByBarcode(ticket.getBarcode()));
+
+		clock.advance(60000);
+		assertEquals(1, sut.sweep());
+		assertEquals(1, sut.getExitedEvictions());
+		assertSame(ticket, archive.getArchivedTickets().get(0));
+		assertNull(dao.findTicketByBarcode(ticket.getBarcode()));
+		assertEquals(0, sut.getNumberOfTrackedTickets());
+	}
+
+	@Test
+	public void testArchivedBeforeEvicted() {
+		SimulatedClock clock = new SimulatedClock(SEPTEMBER_7);
+		AdhocTicketDAO dao = new AdhocTicketDAO(new AdhocTicketFactory(clock));
+		List<Boolean> heldWhenArchived = new ArrayList<>();
+		AdhocTicketArchive archive = new AdhocTicketArchive() {
+			@Override
+			public void archive(IAdhocTicket ticket) {
+				heldWhenArchived.add(dao.getCurrentTickets().contains(ticket));
+				super.archive(ticket);
+			}
+		};
+		AdhocTicketSweeper sut = new AdhocTicketSweeper(dao, archive, clock, DAY, 60000);
+
+		IAdhocTicket ticket = dao.createTicket("Bathurst Chase");
+		ticket.enter(SEPTEMBER_7 + 1000);
+		ticket.exit(SEPTEMBER_7 + 3000);
+		clock.advance(60000);
+		assertEquals(1, sut.sweep());
+		assertEquals(Arrays.asList(true), heldWhenArchived);
+		assertTrue(dao.getCurrentTickets().isEmpty());
+	}
+
+	@Test
+	public void testStopWaitsForSweep() throws Exception {
+		SimulatedClock clock = new SimulatedClock(SEPTEMBER_7);
+		AdhocTicketDAO dao = new AdhocTicketDAO(new AdhocTicketFactory(clock));
+		CountDownLatch archiving = new CountDownLatch(1);
+		List<Boolean> interrupted = new ArrayList<>();
+		AdhocTicketArchive archive = new AdhocTicketArchive() {
+			@Override
+			public void archive(IAdhocTicket ticket) {
+				archiving.countDown();
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				interrupted.add(Thread.currentThread().isInterrupted());
+				super.archive(ticket);
+			}
+		};
+		AdhocTicketSweeper sut = new AdhocTicketSweeper(dao, archive, clock, DAY, 60000);
+		IAdhocTicket ticket = dao.createTicket("Bathurst Chase");
+		ticket.enter(SEPTEMBER_7 + 1000);
+		ticket.exit(SEPTEMBER_7 + 3000);
+		clock.advance(60000);
+
+		sut.start();
+		assertTrue(archiving.await(5, TimeUnit.SECONDS));
+		sut.stop();
+		//the sweep under way finished, uninterrupted, before stop returned
+		assertEquals(Arrays.asList(false), interrupted);
+		assertEquals(1, archive.getNumberOfArchivedTickets());
+		assertTrue(dao.getCurrentTickets().isEmpty());
+	}
+
+	@Test
+	public void testTracksTicketsAlreadyHeld() {
+		SimulatedClock clock = new SimulatedClock(SEPTEMBER_7);
+		AdhocTicketDAO dao = new AdhocTicketDAO(new AdhocTicketFactory(clock));
+		dao.createTicket("Bathurst Chase");
+		AdhocTicketSweeper sut = new AdhocTicketSweeper(dao, new AdhocTicketArchive(), clock, DAY);
+
+		assertEquals(1, sut.getNumberOfTrackedTickets());
+		clock.advance(DAY);
+		assertEquals(1, sut.sweep());
+		assertTrue(dao.getCurrentTickets().isEmpty());
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testSecondSweeper() {
+		SimulatedClock clock = new SimulatedClock(SEPTEMBER_7);
+		AdhocTicketDAO dao = new AdhocTicketDAO(new AdhocTicketFactory(clock));
+		new AdhocTicketSweeper(dao, new AdhocTicketArchive(), clock, DAY);
+		new AdhocTicketSweeper(dao, new AdhocTicketArchive(), clock, DAY);
+	}
+
+}
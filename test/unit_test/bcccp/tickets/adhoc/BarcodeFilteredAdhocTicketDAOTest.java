@@ -0,0 +1,158 @@
+package unit_test.bcccp.tickets.adhoc;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import bcccp.tickets.adhoc.*;
+import bcccp.time.SimulatedClock;
+
+/**
+ * Tests of the adhoc ticket DAO that screens barcodes through a Bloom filter.
+ */
+public class BarcodeFilteredAdhocTicketDAOTest {
+
+	private static final long SEPTEMBER_7 = 1504760400000L; //Thursday 7 September 2017, 15:00 AEST
+
+	@Test
+	public void testFindTicketByBarcode() {
+		System.out.println("findTicketByBarcode");
+		BarcodeFilteredAdhocTicketDAO sut = new BarcodeFilteredAdhocTicketDAO(
+				new AdhocTicketDAO(new AdhocTicketFactory(new SimulatedClock(SEPTEMBER_7))), 1000, 0.01);
+		List<IAdhocTicket> tickets = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			tickets.add(sut.createTicket("Bathurst Chase"));
+		}
+		for (IAdhocTicket ticket : tickets) {
+			assertSame(ticket, sut.findTicketByBarcode(ticket.getBarcode()));
+		}
+		assertEquals(500, sut.getLookups());
+		assertEquals(0, sut.getRejections());
+
+		for (int i = 0; i < 1000; i++) {
+			assertNull(sut.findTicketByBarcode("scan " + i));
+		}
+		assertEquals(1000, sut.getRejections() + sut.getFalsePositives());
+		assertTrue(sut.getRejections() > 950);
+		assertEquals((double) sut.getFalsePositives() / 1000, sut.getFalsePositiveRate(), 1e-9);
+		assertTrue(sut.getExpectedFalsePositiveRate() < 0.01);
+	}
+
+	@Test
+	public void testExitedTicketStaysInFilter() {
+		System.out.println("exited ticket stays in filter");
+		BarcodeFilteredAdhocTicketDAO sut = new BarcodeFilteredAdhocTicketDAO(
+				new AdhocTicketDAO(new AdhocTicketFactory(new SimulatedClock(SEPTEMBER_7))), 1000, 0.01);
+		IAdhocTicket ticket = sut.createTicket("Bathurst Chase");
+		ticket.enter(SEPTEMBER_7 + 1000);
+		ticket.pay(SEPTEMBER_7 + 2000, 500);
+		ticket.exit(SEPTEMBER_7 + 3000);
+
+		//returned once more when exited, as by the DAO screened, and then looked up and not found
+		assertSame(ticket, sut.findTicketByBarcode(ticket.getBarcode()));
+		assertNull(sut.findTicketByBarcode(ticket.getBarcode()));
+		assertEquals(0, sut.getRejections());
+		assertEquals(1, sut.getFalsePositives());
+
+		//until the filter is rebuilt from the tickets held
+		sut.rebuild();
+		assertNull(sut.findTicketByBarcode(ticket.getBarcode()));
+		assertEquals(1, sut.getRejections());
+	}
+
+	@Test
+	public void testConcurrentLookupsOfExitedTickets() throws Exception {
+		System.out.println("concurrent lookups of exited tickets");
+		//lookups race to see each exited ticket before the DAO removes it
+		scanExitedTickets(new ConcurrentAdhocTicketDAO(new AdhocTicketFactory(new SimulatedClock(SEPTEMBER_7))));
+	}
+
+	@Test
+	public void testConcurrentLookupsBeforeSweep() throws Exception {
+		System.out.println("concurrent lookups before sweep");
+		//a DAO with a sweeper returns an exited ticket to every lookup until it is swept
+		SimulatedClock clock = new SimulatedClock(SEPTEMBER_7);
+		AdhocTicketDAO dao = new AdhocTicketDAO(new AdhocTicketFactory(clock));
+		new AdhocTicketSweeper(dao, new AdhocTicketArchive(), clock, 86400000L);
+		scanExitedTickets(dao);
+	}
+
+	//has every lane scan every exited ticket at once, then checks each held ticket still passes
+	private static void scanExitedTickets(IAdhocTicketDAO dao) throws Exception {
+		//a small filter with few counters, so that barcodes share them
+		BarcodeFilteredAdhocTicketDAO sut = new BarcodeFilteredAdhocTicketDAO(dao, 4000, 0.5);
+		List<IAdhocTicket> held = new ArrayList<>();
+		List<String> exited = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			IAdhocTicket ticket = sut.createTicket("Bathurst Chase");
+			ticket.enter(SEPTEMBER_7 + 1000);
+			if (i % 2 == 0) {
+				held.add(ticket);
+			} else {
+				ticket.pay(SEPTEMBER_7 + 2000, 500);
+				ticket.exit(SEPTEMBER_7 + 3000);
+				exited.add(ticket.getBarcode());
+			}
+		}
+
+		int lanes = 8;
+		CyclicBarrier start = new CyclicBarrier(lanes);
+		ExecutorService executor = Executors.newFixedThreadPool(lanes);
+		List<Future<?>> scans = new ArrayList<>();
+		for (int lane = 0; lane < lanes; lane++) {
+			scans.add(executor.submit(() -> {
+				start.await();
+				for (String barcode : exited) {
+					sut.findTicketByBarcode(barcode);
+				}
+				return null;
+			}));
+		}
+		for (Future<?> scan : scans) {
+			scan.get();
+		}
+		executor.shutdown();
+
+		for (IAdhocTicket ticket : held) {
+			assertSame(ticket, sut.findTicketByBarcode(ticket.getBarcode()));
+		}
+	}
+
+	@Test
+	public void testFilledFromExistingTickets() {
+		System.out.println("filled from existing tickets");
+		AdhocTicketDAO dao = new AdhocTicketDAO(new AdhocTicketFactory(new SimulatedClock(SEPTEMBER_7)));
+		IAdhocTicket ticket = dao.createTicket("Bathurst Chase");
+		BarcodeFilteredAdhocTicketDAO sut = new BarcodeFilteredAdhocTicketDAO(dao, 1000, 0.01);
+		assertSame(ticket, sut.findTicketByBarcode(ticket.getBarcode()));
+	}
+
+	@Test
+	public void testRebuiltWhenFull() {
+		System.out.println("rebuilt when full");
+		BarcodeFilteredAdhocTicketDAO sut = new BarcodeFilteredAdhocTicketDAO(
+				new AdhocTicketDAO(new AdhocTicketFactory(new SimulatedClock(SEPTEMBER_7))), 100, 0.01);
+		List<IAdhocTicket> tickets = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			tickets.add(sut.createTicket("Bathurst Chase"));
+		}
+		assertTrue(sut.getNumberOfRebuilds() > 1);
+		assertTrue(sut.getExpectedFalsePositiveRate() < 0.01);
+		for (IAdhocTicket ticket : tickets) {
+			assertSame(ticket, sut.findTicketByBarcode(ticket.getBarcode()));
+		}
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testNullDAO() {
+		new BarcodeFilteredAdhocTicketDAO(null);
+	}
+
+}
@@ -0,0 +1,120 @@
+package unit_test.bcccp.tickets.adhoc;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import bcccp.tickets.adhoc.*;
+import bcccp.time.SimulatedClock;
+
+/**
+ * Tests of decoding barcodes into keys and of the open addressing table.
+ */
+public class BarcodeIndexTest {
+
+	private static final long SEPTEMBER_7 = 1504760400000L; //Thursday 7 September 2017, 15:00 AEST
+
+	@Test
+	public void testKeyOfFactoryBarcodes() {
+		System.out.println("key");
+		//the 7th of a month gives an 11 digit date, and the 27th a 12 digit date
+		for (long time : new long[] {SEPTEMBER_7, SEPTEMBER_7 + 20 * 86400000L}) {
+			AdhocTicketFactory factory = new AdhocTicketFactory(new SimulatedClock(time));
+			for (int ticketNo : new int[] {1, 15, 16, 4095, 123456789}) {
+				IAdhocTicket ticket = factory.make("Bathurst Chase", ticketNo);
+				long key = BarcodeIndex.key(ticketNo, ticket.getBarcode());
+				assertNotEquals(ticket.getBarcode(), BarcodeIndex.NO_KEY, key);
+				assertEquals(ticketNo, (int) (key >>> 32));
+			}
+		}
+	}
+
+	@Test
+	public void testKeyOfEveryDateLength() {
+		System.out.println("key of every date length");
+		//the 1st of January to September gives a 10 digit date, the 1st of October to
+		//December and days 2 to 17 an 11 digit date, and days 18 to 31 a 12 digit date
+		List<Long> times = new ArrayList<>();
+		for (int month = Calendar.JANUARY; month <= Calendar.DECEMBER; month++) {
+			times.add(new GregorianCalendar(2017, month, 1, 12, 0).getTimeInMillis());
+		}
+		for (int day = 2; day <= 31; day++) {
+			times.add(new GregorianCalendar(2017, Calendar.OCTOBER, day, 12, 0).getTimeInMillis());
+		}
+		int[] lengths = new int[13];
+		for (long time : times) {
+			AdhocTicketFactory factory = new AdhocTicketFactory(new SimulatedClock(time));
+			for (int ticketNo : new int[] {1, 16, 123456789}) {
+				String barcode = factory.make("Bathurst Chase", ticketNo).getBarcode();
+				long key = BarcodeIndex.key(ticketNo, barcode);
+				assertNotEquals(barcode, BarcodeIndex.NO_KEY, key);
+				assertEquals(key, BarcodeIndex.key(ticketNo, AdhocTicketFactory.barcodeDate(time)));
+				int dateDigits = barcode.length() - 1 - Integer.toHexString(ticketNo).length();
+				assertEquals(barcode, key, BarcodeIndex.key(barcode, dateDigits));
+				lengths[dateDigits]++;
+			}
+		}
+		assertEquals(9 * 3, lengths[10]);
+		assertEquals((3 + 16) * 3, lengths[11]);
+		assertEquals(14 * 3, lengths[12]);
+	}
+
+	@Test
+	public void testKeysOfDifferentSecondsDiffer() {
+		AdhocTicketFactory first = new AdhocTicketFactory(new SimulatedClock(SEPTEMBER_7));
+		AdhocTicketFactory second = new AdhocTicketFactory(new SimulatedClock(SEPTEMBER_7 + 1000));
+		String a = first.make("Bathurst Chase", 7).getBarcode();
+		String b = second.make("Bathurst Chase", 7).getBarcode();
+		assertEquals(1, BarcodeIndex.key(7, b) - BarcodeIndex.key(7, a));
+	}
+
+	@Test
+	public void testMalformedBarcodes() {
+		System.out.println("key malformed");
+		String[] malformed = {null, "", "A111", "B1" + "67342b6c0b0", "A0" + "67342b6c0b0",
+				"A1" + "67342B6C0B0", "A1" + "67342b6c0g0", "A123456789" + "67342b6c0b0ab", "A1ffffffffffff"};
+		for (String barcode : malformed) {
+			assertEquals(barcode, BarcodeIndex.NO_KEY, BarcodeIndex.key(barcode, 11));
+			assertEquals(barcode, BarcodeIndex.NO_KEY, BarcodeIndex.key(barcode, 12));
+		}
+	}
+
+	@Test
+	public void testTableMatchesHashMap() {
+		System.out.println("put, get and remove");
+		BarcodeIndex sut = new BarcodeIndex();
+		Map<Long, Integer> expected = new HashMap<>();
+		Random random = new Random(15L);
+
+		for (int i = 0; i < 200000; i++) {
+			long key = ((long) (1 + random.nextInt(5000)) << 32) | random.nextInt(4);
+			switch (random.nextInt(3)) {
+				case 0:
+					sut.put(key, i);
+					expected.put(key, i);
+					break;
+				case 1:
+					Integer removed = expected.remove(key);
+					assertEquals(removed == null ? BarcodeIndex.NO_SLOT : removed.intValue(), sut.remove(key));
+					break;
+				default:
+					Integer found = expected.get(key);
+					assertEquals(found == null ? BarcodeIndex.NO_SLOT : found.intValue(), sut.get(key));
+					break;
+			}
+		}
+		assertEquals(expected.size(), sut.size());
+		for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+			assertEquals(entry.getValue().intValue(), sut.get(entry.getKey()));
+		}
+	}
+
+}
@@ -0,0 +1,220 @@
+package unit_test.bcccp.tickets.adhoc;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import bcccp.metrics.Histogram;
+import bcccp.tickets.adhoc.*;
+import bcccp.time.SimulatedClock;
+
+/**
+ * Tests of the archive that keeps tickets on disk in compressed columns.
+ */
+public class ColumnarAdhocTicketArchiveTest {
+
+	private static final long SEPTEMBER_7 = 1504760400000L; //Thursday 7 September 2017, 15:00 AEST
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	//tickets exiting a few seconds apart, each staying an hour or two
+	private List<IAdhocTicket> exitedTickets(int count) {
+		SimulatedClock clock = new SimulatedClock(SEPTEMBER_7);
+		AdhocTicketFactory factory = new AdhocTicketFactory(clock);
+		List<IAdhocTicket> tickets = new ArrayList<>();
+		for (int i = 1; i <= count; i++) {
+			IAdhocTicket ticket = factory.make(i % 3 == 0 ? "Bathurst Chase" : "Kelso", i);
+			long entry = SEPTEMBER_7 + 5000L * i;
+			ticket.enter(entry);
+			ticket.pay(entry + 3600000 + 1000 * (i % 60), 500 + 100 * (i % 7));
+			ticket.exit(entry + 3700000 + 1000 * (i % 60));
+			tickets.add(ticket);
+			clock.advance(5000);
+		}
+		return tickets;
+	}
+
+	@Test
+	public void testArchive() {
+		System.out.println("archive");
+		Path directory = folder.getRoot().toPath().resolve("archive");
+		List<IAdhocTicket> tickets = exitedTickets(2500);
+		IAdhocTicket abandoned = new AdhocTicket("Kelso", 9999, "not a factory barcode");
+		try (ColumnarAdhocTicketArchive sut = new ColumnarAdhocTicketArchive(directory, 1000)) {
+			for (IAdhocTicket ticket : tickets) {
+				sut.archive(ticket);
+			}
+			sut.archive(abandoned);
+			assertEquals(2, sut.getNumberOfBlocks());
+			assertEquals(2501, sut.getNumberOfArchivedTickets());
+			assertEquals(2501, sut.getArchivedTickets().size());
+		}
+
+		//a closed archive has written all its tickets, and is read back when opened again
+		ColumnarAdhocTicketArchive sut = new ColumnarAdhocTicketArchive(directory, 1000);
+		assertEquals(3, sut.getNumberOfBlocks());
+		List<IAdhocTicket> archived = sut.getArchivedTickets();
+		assertEquals(2501, archived.size());
+		for (int i = 0; i < tickets.size(); i++) {
+			IAdhocTicket expected = tickets.get(i);
+			IAdhocTicket actual = archived.get(i);
+			assertEquals(expected.getTicketNo(), actual.getTicketNo());
+			assertEquals(expected.getBarcode(), actual.getBarcode());
+			assertEquals(expected.getCarparkId(), actual.getCarparkId());
+			assertEquals(expected.getEntryDateTime(), actual.getEntryDateTime());
+			assertEquals(expected.getPaidDateTime(), actual.getPaidDateTime());
+			assertEquals(expected.getExitDateTime(), actual.getExitDateTime());
+			assertEquals(expected.getCharge(), actual.getCharge());
+			assertTrue(actual.hasExited());
+		}
+		IAdhocTicket last = archived.get(2500);
+		assertEquals("not a factory barcode", last.getBarcode());
+		assertEquals(0, last.getEntryDateTime());
+		assertFalse(last.hasExited());
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testArchivedTicketCannotChange() {
+		ColumnarAdhocTicketArchive sut = new ColumnarAdhocTicketArchive(folder.getRoot().toPath(), 10);
+		for (IAdhocTicket ticket : exitedTickets(10)) {
+			sut.archive(ticket);
+		}
+		sut.getArchivedTickets().get(0).exit(SEPTEMBER_7);
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testPendingTicketCannotChange() {
+		ColumnarAdhocTicketArchive sut = new ColumnarAdhocTicketArchive(folder.getRoot().toPath(), 10);
+		IAdhocTicket ticket = exitedTickets(1).get(0);
+		sut.archive(ticket);
+		assertEquals(0, sut.getNumberOfBlocks());
+		assertNotSame(ticket, sut.getArchivedTickets().get(0));
+		assertEquals(ticket.getBarcode(), sut.getArchivedTickets().get(0).getBarcode());
+		sut.getArchivedTickets().get(0).exit(ticket.getExitDateTime() + 1000);
+	}
+
+	@Test
+	public void testScansReadOnlyTheirColumns() {
+		System.out.println("scans read only their columns");
+		ColumnarAdhocTicketArchive sut = new ColumnarAdhocTicketArchive(folder.getRoot().toPath(), 1000);
+		List<IAdhocTicket> tickets = exitedTickets(5000);
+		for (IAdhocTicket ticket : tickets) {
+			sut.archive(ticket);
+		}
+		sut.flush();
+
+		long from = tickets.get(1000).getExitDateTime();
+		long before = tickets.get(3000).getExitDateTime();
+		long expected = 0;
+		for (IAdhocTicket ticket : tickets) {
+			if (ticket.getExitDateTime() >= from && ticket.getExitDateTime() < before) {
+				expected += ticket.getCharge();
+			}
+		}
+		assertEquals(expected, sut.getRevenue(from, before));
+		long revenueBytes = sut.getColumnBytesRead();
+		assertTrue(revenueBytes < sut.getArchiveBytes());
+
+		Histogram dwellTimes = sut.getDwellTimes(Long.MIN_VALUE, Long.MAX_VALUE);
+		assertEquals(5000, dwellTimes.getCount());
+		assertTrue(dwellTimes.getMax() <= 3700000 + 59000);
+		assertTrue(sut.getColumnBytesRead() - revenueBytes < sut.getArchiveBytes());
+	}
+
+	@Test
+	public void testCompression() throws Exception {
+		System.out.println("compression");
+		ColumnarAdhocTicketArchive sut = new ColumnarAdhocTicketArchive(folder.getRoot().toPath());
+		for (IAdhocTicket ticket : exitedTickets(20000)) {
+			sut.archive(ticket);
+		}
+		sut.close();
+		long bytes = 0;
+		for (Path block : Files.newDirectoryStream(folder.getRoot().toPath())) {
+			bytes += Files.size(block);
+		}
+		assertEquals(bytes, sut.getArchiveBytes());
+		//an AdhocTicket with its strings takes well over 200 bytes on the heap
+		assertTrue("bytes per ticket " + (double) bytes / 20000, bytes < 20000 * 20);
+	}
+
+	@Test
+	public void testPendingTicketsSurviveCrash() throws Exception {
+		System.out.println("pendingTicketsSurviveCrash");
+		Path directory = folder.getRoot().toPath();
+		List<IAdhocTicket> tickets = exitedTickets(150);
+		ColumnarAdhocTicketArchive crashed = new ColumnarAdhocTicketArchive(directory, 100);
+		for (IAdhocTicket ticket : tickets) {
+			crashed.archive(ticket);
+		}
+		assertEquals(1, crashed.getNumberOfBlocks());
+
+		//never closed, with half a row torn off the end
+		Path rows = directory.resolve("pending.rows");
+		byte[] bytes = Files.readAllBytes(rows);
+		Files.write(rows, Arrays.copyOf(bytes, bytes.length - 5));
+		ColumnarAdhocTicketArchive sut = new ColumnarAdhocTicketArchive(directory, 100);
+		assertEquals(149, sut.getNumberOfArchivedTickets());
+		sut.archive(tickets.get(149));
+		List<IAdhocTicket> archived = sut.getArchivedTickets();
+		assertEquals(150, archived.size());
+		for (int i = 0; i < tickets.size(); i++) {
+			assertEquals(tickets.get(i).getTicketNo(), archived.get(i).getTicketNo());
+			assertEquals(tickets.get(i).getBarcode(), archived.get(i).getBarcode());
+			assertEquals(tickets.get(i).getExitDateTime(), archived.get(i).getExitDateTime());
+			assertEquals(tickets.get(i).getCharge(), archived.get(i).getCharge());
+		}
+		sut.close();
+
+		sut = new ColumnarAdhocTicketArchive(directory, 100);
+		assertEquals(2, sut.getNumberOfBlocks());
+		assertEquals(150, sut.getNumberOfArchivedTickets());
+		assertFalse(Files.exists(rows));
+	}
+
+	@Test
+	public void testPendingRowsOfWrittenBlockDropped() throws Exception {
+		System.out.println("pendingRowsOfWrittenBlockDropped");
+		Path directory = folder.getRoot().toPath();
+		List<IAdhocTicket> tickets = exitedTickets(100);
+		ColumnarAdhocTicketArchive crashed = new ColumnarAdhocTicketArchive(directory, 100);
+		for (IAdhocTicket ticket : tickets.subList(0, 99)) {
+			crashed.archive(ticket);
+		}
+		//a crash after the block is written but before its rows are deleted
+		Path rows = directory.resolve("pending.rows");
+		byte[] bytes = Files.readAllBytes(rows);
+		crashed.archive(tickets.get(99));
+		assertEquals(1, crashed.getNumberOfBlocks());
+		Files.write(rows, bytes);
+
+		ColumnarAdhocTicketArchive sut = new ColumnarAdhocTicketArchive(directory, 100);
+		assertEquals(100, sut.getNumberOfArchivedTickets());
+		assertEquals(100, sut.getArchivedTickets().size());
+		assertFalse(Files.exists(rows));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testCorruptBlock() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		ColumnarAdhocTicketArchive sut = new ColumnarAdhocTicketArchive(directory, 100);
+		for (IAdhocTicket ticket : exitedTickets(100)) {
+			sut.archive(ticket);
+		}
+		Path block = Files.newDirectoryStream(directory).iterator().next();
+		byte[] bytes = Files.readAllBytes(block);
+		bytes[bytes.length - 10] ^= 0x55;
+		Files.write(block, bytes);
+		sut.getArchivedTickets();
+	}
+
+}
@@ -0,0 +1,110 @@
+package unit_test.bcccp.tickets.adhoc;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+import bcccp.tickets.adhoc.*;
+
+/**
+ * Stress test of the concurrent adhoc ticket DAO with many lanes issuing and
+ * looking up tickets at once.
+ */
+public class ConcurrentAdhocTicketDAOTest {
+
+	private static final int THREADS = 64;
+	private static final int TICKETS_PER_THREAD = 500;
+
+	@Test
+	public void testNoLostOrDuplicateTickets() throws InterruptedException {
+		System.out.println("createTicket and findTicketByBarcode from " + THREADS + " threads");
+		final ConcurrentAdhocTicketDAO sut = new ConcurrentAdhocTicketDAO(new AdhocTicketFactory());
+		final int total = THREADS * TICKETS_PER_THREAD;
+		final AtomicIntegerArray issued = new AtomicIntegerArray(total + 1);
+		final List<IAdhocTicket> created = Collections.synchronizedList(new ArrayList<IAdhocTicket>());
+		final AtomicInteger failures = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			final int seed = t;
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					try {
+						start.await();
+						Random random = new Random(seed);
+						List<IAdhocTicket> mine = new ArrayList<>();
+						for (int i = 0; i < TICKETS_PER_THREAD; i++) {
+							IAdhocTicket ticket = sut.createTicket("Bathurst Chase");
+							issued.incrementAndGet(ticket.getTicketNo());
+							mine.add(ticket);
+							created.add(ticket);
+
+							//look up one of this thread's tickets and one from anywhere
+							IAdhocTicket own = mine.get(random.nextInt(mine.size()));
+							if (sut.findTicketByBarcode(own.getBarcode()) != own) {
+								failures.incrementAndGet();
+							}
+							IAdhocTicket any = created.get(random.nextInt(created.size()));
+							if (sut.findTicketByBarcode(any.getBarcode()) != any) {
+								failures.incrementAndGet();
+							}
+						}
+					} catch (Exception e) {
+						failures.incrementAndGet();
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(0, failures.get());
+		assertEquals(total, sut.getNumberOfTicketsIssued());
+		for (int ticketNo = 1; ticketNo <= total; ticketNo++) {
+			assertEquals("ticket " + ticketNo, 1, issued.get(ticketNo));
+		}
+		assertEquals(total, sut.getCurrentTickets().size());
+		for (IAdhocTicket ticket : created) {
+			assertSame(ticket, sut.findTicketByBarcode(ticket.getBarcode()));
+		}
+	}
+
+	@Test
+	public void testExitedTicketIsRemoved() {
+		ConcurrentAdhocTicketDAO sut = new ConcurrentAdhocTicketDAO(new AdhocTicketFactory());
+		IAdhocTicket ticket = sut.createTicket("Bathurst Chase");
+		ticket.enter(1000);
+		ticket.pay(2000, 400);
+		ticket.exit(3000);
+
+		assertSame(ticket, sut.findTicketByBarcode(ticket.getBarcode()));
+		assertNull(sut.findTicketByBarcode(ticket.getBarcode()));
+		assertTrue(sut.getCurrentTickets().isEmpty());
+	}
+
+	@Test
+	public void testFindNullBarcode() {
+		ConcurrentAdhocTicketDAO sut = new ConcurrentAdhocTicketDAO(new AdhocTicketFactory());
+		sut.createTicket("Bathurst Chase");
+		assertNull(sut.findTicketByBarcode(null));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testNullFactory() {
+		new ConcurrentAdhocTicketDAO(null);
+	}
+
+}
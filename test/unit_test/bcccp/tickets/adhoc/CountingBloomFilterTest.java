@@ -0,0 +1,72 @@
+package unit_test.bcccp.tickets.adhoc;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import bcccp.tickets.adhoc.CountingBloomFilter;
+
+/**
+ * Tests of the counting Bloom filter of barcodes.
+ */
+public class CountingBloomFilterTest {
+
+	@Test
+	public void testMightContain() {
+		System.out.println("mightContain");
+		CountingBloomFilter sut = new CountingBloomFilter(10000, 0.01);
+		for (int i = 0; i < 10000; i++) {
+			sut.add("A" + Integer.toHexString(i) + "e867342b6c");
+		}
+		assertEquals(10000, sut.getCount());
+		for (int i = 0; i < 10000; i++) {
+			assertTrue(sut.mightContain("A" + Integer.toHexString(i) + "e867342b6c"));
+		}
+
+		int falsePositives = 0;
+		for (int i = 10000; i < 110000; i++) {
+			if (sut.mightContain("A" + Integer.toHexString(i) + "e867342b6c")) {
+				falsePositives++;
+			}
+		}
+		//about 1% of barcodes not added pass
+		assertTrue("false positives " + falsePositives, falsePositives < 2000);
+		assertEquals(0.01, sut.getExpectedFalsePositiveRate(), 0.002);
+	}
+
+	@Test
+	public void testRemove() {
+		System.out.println("remove");
+		CountingBloomFilter sut = new CountingBloomFilter(100, 0.01);
+		sut.add("A1e867342b6c");
+		sut.add("A2e867342b6c");
+		sut.remove("A1e867342b6c");
+		assertFalse(sut.mightContain("A1e867342b6c"));
+		assertTrue(sut.mightContain("A2e867342b6c"));
+		assertEquals(1, sut.getCount());
+
+		//removing a barcode that was never added leaves the others
+		sut.remove("A3e867342b6c");
+		assertTrue(sut.mightContain("A2e867342b6c"));
+		assertEquals(1, sut.getCount());
+	}
+
+	@Test
+	public void testSaturatedCounters() {
+		CountingBloomFilter sut = new CountingBloomFilter(1, 0.5);
+		for (int i = 0; i < 300; i++) {
+			sut.add("A1e867342b6c");
+		}
+		for (int i = 0; i < 300; i++) {
+			sut.remove("A1e867342b6c");
+		}
+		//a counter that reached its limit never goes back to zero
+		assertTrue(sut.mightContain("A1e867342b6c"));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testInvalidFalsePositiveRate() {
+		new CountingBloomFilter(100, 1.0);
+	}
+
+}
@@ -0,0 +1,104 @@
+package unit_test.bcccp.tickets.adhoc;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Test;
+
+import bcccp.tickets.adhoc.*;
+import bcccp.time.SimulatedClock;
+
+/**
+ * Tests of the index of current adhoc tickets by entry time.
+ */
+public class EntryTimeIndexTest {
+
+	private static final long SEPTEMBER_7 = 1504760400000L; //Thursday 7 September 2017, 15:00 AEST
+
+	@Test
+	public void testTicketsEnteredBefore() {
+		System.out.println("getTicketsEnteredBefore");
+		AdhocTicketDAO sut = new AdhocTicketDAO(new AdhocTicketFactory(new SimulatedClock(SEPTEMBER_7)));
+		List<IAdhocTicket> tickets = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			tickets.add(sut.createTicket("Bathurst Chase"));
+		}
+		//entered in reverse order, two at a time
+		for (int i = 0; i < 100; i++) {
+			tickets.get(i).enter(SEPTEMBER_7 + 1000 * (50 - i / 2));
+		}
+		assertTrue(sut.getTicketsEnteredBefore(SEPTEMBER_7 + 1000).isEmpty());
+
+		Collection<IAdhocTicket> overstayed = sut.getTicketsEnteredBefore(SEPTEMBER_7 + 11000);
+		assertEquals(20, overstayed.size());
+		long previous = 0;
+		for (IAdhocTicket ticket : overstayed) {
+			assertTrue(ticket.getEntryDateTime() >= previous);
+			assertTrue(ticket.getEntryDateTime() < SEPTEMBER_7 + 11000);
+			previous = ticket.getEntryDateTime();
+		}
+		assertEquals(100, sut.getTicketsEnteredBefore(Long.MAX_VALUE).size());
+	}
+
+	@Test
+	public void testTicketsEnteredBetween() {
+		System.out.println("getTicketsEnteredBetween");
+		AdhocTicketDAO sut = new AdhocTicketDAO(new AdhocTicketFactory(new SimulatedClock(SEPTEMBER_7)));
+		for (int i = 0; i < 100; i++) {
+			sut.createTicket("Bathurst Chase").enter(SEPTEMBER_7 + 1000 * i);
+		}
+		assertEquals(10, sut.getTicketsEnteredBetween(SEPTEMBER_7 + 20000, SEPTEMBER_7 + 30000).size());
+		assertEquals(1, sut.getTicketsEnteredBetween(SEPTEMBER_7 + 20000, SEPTEMBER_7 + 20001).size());
+		assertTrue(sut.getTicketsEnteredBetween(SEPTEMBER_7 + 20001, SEPTEMBER_7 + 21000).isEmpty());
+	}
+
+	@Test
+	public void testIndexFollowsTickets() {
+		System.out.println("index follows tickets");
+		AdhocTicketDAO sut = new AdhocTicketDAO(new AdhocTicketFactory(new SimulatedClock(SEPTEMBER_7)));
+		IAdhocTicket issued = sut.createTicket("Bathurst Chase");
+		IAdhocTicket entered = sut.createTicket("Bathurst Chase");
+		IAdhocTicket exited = sut.createTicket("Bathurst Chase");
+		assertTrue(sut.getTicketsEnteredBefore(Long.MAX_VALUE).isEmpty());
+
+		entered.enter(SEPTEMBER_7 + 1000);
+		exited.enter(SEPTEMBER_7 + 2000);
+		assertEquals(2, sut.getTicketsEnteredBefore(Long.MAX_VALUE).size());
+
+		//entering again moves the ticket rather than adding it twice
+		entered.enter(SEPTEMBER_7 + 5000);
+		assertEquals(1, sut.getTicketsEnteredBefore(SEPTEMBER_7 + 5000).size());
+		assertSame(entered, sut.getTicketsEnteredBetween(SEPTEMBER_7 + 5000, SEPTEMBER_7 + 5001).iterator().next());
+
+		exited.pay(SEPTEMBER_7 + 3000, 500);
+		exited.exit(SEPTEMBER_7 + 4000);
+		assertEquals(1, sut.getTicketsEnteredBefore(Long.MAX_VALUE).size());
+		assertFalse(sut.getTicketsEnteredBefore(Long.MAX_VALUE).contains(issued));
+	}
+
+	@Test
+	public void testTicketsEnteringTogether() {
+		EntryTimeIndex sut = new EntryTimeIndex();
+		AdhocTicketFactory factory = new AdhocTicketFactory(new SimulatedClock(SEPTEMBER_7));
+		IAdhocTicket first = factory.make("Bathurst Chase", 1);
+		IAdhocTicket second = factory.make("Bathurst Chase", 2);
+		first.enter(SEPTEMBER_7);
+		second.enter(SEPTEMBER_7);
+		sut.ticketEntered(first, 0);
+		sut.ticketEntered(second, 0);
+		assertEquals(2, sut.size());
+
+		sut.remove(first);
+		assertEquals(1, sut.size());
+		assertSame(second, sut.getTicketsEnteredBefore(SEPTEMBER_7 + 1).iterator().next());
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testInvalidRange() {
+		new EntryTimeIndex().getTicketsEnteredBetween(SEPTEMBER_7, SEPTEMBER_7 - 1);
+	}
+
+}
@@ -0,0 +1,88 @@
+package unit_test.bcccp.tickets.adhoc;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import org.junit.Test;
+
+import bcccp.tickets.adhoc.*;
+import bcccp.time.SimulatedClock;
+
+/**
+ * Tests of the adhoc ticket DAO that finds tickets through a barcode index.
+ */
+public class IndexedAdhocTicketDAOTest {
+
+	@Test
+	public void testFindTicketByBarcode() {
+		System.out.println("findTicketByBarcode");
+		IndexedAdhocTicketDAO sut = new IndexedAdhocTicketDAO(new AdhocTicketFactory());
+		List<IAdhocTicket> created = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			created.add(sut.createTicket("Bathurst Chase"));
+		}
+
+		for (IAdhocTicket ticket : created) {
+			assertSame(ticket, sut.findTicketByBarcode(ticket.getBarcode()));
+			//an equal string from elsewhere, such as a barcode reader, finds the same ticket
+			assertSame(ticket, sut.findTicketByBarcode(new String(ticket.getBarcode().toCharArray())));
+		}
+		assertEquals(1000, sut.getCurrentTickets().size());
+		assertNull(sut.findTicketByBarcode("A3e867342b6c0b0"));
+		assertNull(sut.findTicketByBarcode("not a barcode"));
+	}
+
+	@Test
+	public void testFindTicketsOfEveryDateLength() {
+		System.out.println("findTicketByBarcode of every date length");
+		//the 1st of March, the 12th and the 27th give 10, 11 and 12 digit dates
+		for (int day : new int[] {1, 12, 27}) {
+			long time = new GregorianCalendar(2017, Calendar.MARCH, day, 12, 0).getTimeInMillis();
+			IndexedAdhocTicketDAO sut = new IndexedAdhocTicketDAO(new AdhocTicketFactory(new SimulatedClock(time)));
+			for (int i = 0; i < 20; i++) {
+				IAdhocTicket ticket = sut.createTicket("Bathurst Chase");
+				assertEquals(BarcodeIndex.key(ticket.getTicketNo(), AdhocTicketFactory.barcodeDate(time)),
+						BarcodeIndex.key(ticket.getTicketNo(), ticket.getBarcode()));
+				assertSame(ticket, sut.findTicketByBarcode(ticket.getBarcode()));
+			}
+		}
+	}
+
+	@Test
+	public void testExitedTicketSlotIsReused() {
+		IndexedAdhocTicketDAO sut = new IndexedAdhocTicketDAO(new AdhocTicketFactory());
+		IAdhocTicket ticket = sut.createTicket("Bathurst Chase");
+		ticket.enter(1000);
+		ticket.pay(2000, 400);
+		ticket.exit(3000);
+
+		assertSame(ticket, sut.findTicketByBarcode(ticket.getBarcode()));
+		assertNull(sut.findTicketByBarcode(ticket.getBarcode()));
+		assertTrue(sut.getCurrentTickets().isEmpty());
+
+		IAdhocTicket next = sut.createTicket("Bathurst Chase");
+		assertSame(next, sut.findTicketByBarcode(next.getBarcode()));
+		assertEquals(1, sut.getCurrentTickets().size());
+	}
+
+	@Test
+	public void testOtherBarcodes() {
+		IAdhocTicketFactory factory = mock(IAdhocTicketFactory.class);
+		IAdhocTicket mockTicket = mock(IAdhocTicket.class);
+		when(mockTicket.getBarcode()).thenReturn("A111");
+		when(mockTicket.getTicketNo()).thenReturn(1);
+		when(factory.make("test carpark", 1)).thenReturn(mockTicket);
+		IndexedAdhocTicketDAO sut = new IndexedAdhocTicketDAO(factory);
+
+		IAdhocTicket ticket = sut.createTicket("test carpark");
+
+		assertSame(ticket, sut.findTicketByBarcode("A111"));
+		assertEquals(1, sut.getCurrentTickets().size());
+	}
+
+}
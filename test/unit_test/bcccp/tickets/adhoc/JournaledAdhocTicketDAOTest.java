@@ -0,0 +1,230 @@
+package unit_test.bcccp.tickets.adhoc;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import bcccp.journal.JournalCompactor;
+import bcccp.journal.MappedSegmentJournal;
+import bcccp.tickets.adhoc.*;
+import bcccp.time.SimulatedClock;
+
+/**
+ * Tests of the adhoc ticket DAO that journals tickets so they survive a restart.
+ */
+public class JournaledAdhocTicketDAOTest {
+
+	private static final long SEPTEMBER_7 = 1504760400000L; //Thursday 7 September 2017, 15:00 AEST
+	private static final long DAY = 86400000L;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRestart() {
+		System.out.println("restart");
+		Path file = folder.getRoot().toPath().resolve("adhoc.journal");
+		SimulatedClock clock = new SimulatedClock(SEPTEMBER_7);
+		String parked;
+		String paid;
+		String exited;
+		try (JournaledAdhocTicketDAO sut = new JournaledAdhocTicketDAO(new AdhocTicketFactory(clock), file, clock)) {
+			IAdhocTicket first = sut.createTicket("Bathurst Chase");
+			IAdhocTicket second = sut.createTicket("Bathurst Chase");
+			IAdhocTicket third = sut.createTicket("Bathurst Chase");
+			first.enter(SEPTEMBER_7 + 1000);
+			second.enter(SEPTEMBER_7 + 2000);
+			third.enter(SEPTEMBER_7 + 3000);
+			second.pay(SEPTEMBER_7 + 60000, 500);
+			third.pay(SEPTEMBER_7 + 60000, 500);
+			third.exit(SEPTEMBER_7 + 120000);
+			parked = first.getBarcode();
+			paid = second.getBarcode();
+			exited = third.getBarcode();
+			assertEquals(9, sut.getWriteLatency().getCount());
+		}
+
+		try (JournaledAdhocTicketDAO sut = new JournaledAdhocTicketDAO(new AdhocTicketFactory(clock), file, clock)) {
+			assertEquals(2, sut.getCurrentTickets().size());
+			IAdhocTicket first = sut.findTicketByBarcode(parked);
+			assertEquals(1, first.getTicketNo());
+			assertEquals("Bathurst Chase", first.getCarparkId());
+			assertTrue(first.isCurrent());
+			assertEquals(SEPTEMBER_7 + 1000, first.getEntryDateTime());
+
+			IAdhocTicket second = sut.findTicketByBarcode(paid);
+			assertTrue(second.isPaid());
+			assertEquals(500, second.getCharge());
+			assertNull(sut.findTicketByBarcode(exited));
+
+			//numbering carries on, and changes made after the restart are journaled too
+			assertEquals(4, sut.createTicket("Bathurst Chase").getTicketNo());
+			second.exit(SEPTEMBER_7 + 180000);
+		}
+
+		try (JournaledAdhocTicketDAO sut = new JournaledAdhocTicketDAO(new AdhocTicketFactory(clock), file, clock)) {
+			assertEquals(2, sut.getCurrentTickets().size());
+			assertNull(sut.findTicketByBarcode(paid));
+			assertEquals(5, sut.createTicket("Bathurst Chase").getTicketNo());
+		}
+	}
+
+	@Test
+	public void testFailedChangeIsNotJournaled() {
+		Path file = folder.getRoot().toPath().resolve("adhoc.journal");
+		SimulatedClock clock = new SimulatedClock(SEPTEMBER_7);
+		String barcode;
+		try (JournaledAdhocTicketDAO sut = new JournaledAdhocTicketDAO(new AdhocTicketFactory(clock), file, clock)) {
+			IAdhocTicket ticket = sut.createTicket("Bathurst Chase");
+			barcode = ticket.getBarcode();
+			ticket.enter(SEPTEMBER_7 + 1000);
+			try {
+				ticket.pay(SEPTEMBER_7, 500);
+				fail("paid before entry");
+			} catch (RuntimeException e) {
+			}
+		}
+
+		try (JournaledAdhocTicketDAO sut = new JournaledAdhocTicketDAO(new AdhocTicketFactory(clock), file, clock)) {
+			IAdhocTicket ticket = sut.findTicketByBarcode(barcode);
+			assertTrue(ticket.isCurrent());
+			assertFalse(ticket.isPaid());
+		}
+	}
+
+	@Test
+	public void testRestartFromMappedSegments() {
+		System.out.println("restart from mapped segments");
+		Path directory = folder.getRoot().toPath().resolve("adhoc");
+		SimulatedClock clock = new SimulatedClock(SEPTEMBER_7);
+		String[] barcodes = new String[300];
+		try (JournaledAdhocTicketDAO sut = new JournaledAdhocTicketDAO(new AdhocTicketFactory(clock),
+				reader -> new MappedSegmentJournal(directory, reader, 4096, 64, 1), clock)) {
+			for (int i = 0; i < barcodes.length; i++) {
+				IAdhocTicket ticket = sut.createTicket("Bathurst Chase");
+				ticket.enter(SEPTEMBER_7 + 1000 + i);
+				barcodes[i] = ticket.getBarcode();
+				clock.advance(1000);
+			}
+		}
+
+		try (JournaledAdhocTicketDAO sut = new JournaledAdhocTicketDAO(new AdhocTicketFactory(clock),
+				reader -> new MappedSegmentJournal(directory, reader, 4096, 64, 1), clock)) {
+			assertEquals(barcodes.length, sut.getCurrentTickets().size());
+			for (int i = 0; i < barcodes.length; i++) {
+				IAdhocTicket ticket = sut.findTicketByBarcode(barcodes[i]);
+				assertEquals(i + 1, ticket.getTicketNo());
+				assertEquals(SEPTEMBER_7 + 1000 + i, ticket.getEntryDateTime());
+			}
+		}
+	}
+
+	@Test
+	public void testRestartFromSnapshot() {
+		System.out.println("restart from snapshot");
+		Path directory = folder.getRoot().toPath().resolve("adhoc");
+		SimulatedClock clock = new SimulatedClock(SEPTEMBER_7);
+		JournalCompactor compactor = new JournalCompactor(directory, 4096, 64, 1);
+		String[] barcodes = new String[5];
+		try (JournaledAdhocTicketDAO sut = new JournaledAdhocTicketDAO(new AdhocTicketFactory(clock), compactor, clock)) {
+			IAdhocTicket[] tickets = new IAdhocTicket[5];
+			for (int i = 0; i < tickets.length; i++) {
+				tickets[i] = sut.createTicket("Bathurst Chase");
+				tickets[i].enter(SEPTEMBER_7 + 1000);
+				barcodes[i] = tickets[i].getBarcode();
+			}
+			tickets[0].pay(SEPTEMBER_7 + 2000, 500);
+			tickets[0].exit(SEPTEMBER_7 + 3000);
+
+			//changes made while the snapshot is taken are both in it and in the journal after it
+			compactor.compact(writer -> {
+				tickets[1].pay(SEPTEMBER_7 + 2000, 600);
+				tickets[2].pay(SEPTEMBER_7 + 2000, 700);
+				tickets[2].exit(SEPTEMBER_7 + 3000);
+				sut.createTicket("Bathurst Chase");
+				sut.writeSnapshot(writer);
+			});
+			assertEquals(5, compactor.getLastSnapshotRecords());
+
+			tickets[3].pay(SEPTEMBER_7 + 2000, 800);
+			tickets[4].pay(SEPTEMBER_7 + 2000, 900);
+			tickets[4].exit(SEPTEMBER_7 + 3000);
+		}
+
+		try (JournaledAdhocTicketDAO sut = new JournaledAdhocTicketDAO(new AdhocTicketFactory(clock),
+				new JournalCompactor(directory, 4096, 64, 1), clock)) {
+			assertEquals(3, sut.getCurrentTickets().size());
+			assertNull(sut.findTicketByBarcode(barcodes[0]));
+			assertEquals(600, sut.findTicketByBarcode(barcodes[1]).getCharge());
+			assertNull(sut.findTicketByBarcode(barcodes[2]));
+			assertEquals(800, sut.findTicketByBarcode(barcodes[3]).getCharge());
+			assertNull(sut.findTicketByBarcode(barcodes[4]));
+			assertEquals(7, sut.createTicket("Bathurst Chase").getTicketNo());
+		}
+	}
+
+	@Test
+	public void testLeasedNumbersAndEntryIndex() {
+		System.out.println("leased numbers and entry index");
+		Path directory = folder.getRoot().toPath().resolve("adhoc");
+		Path numbers = folder.getRoot().toPath().resolve("adhoc.seq");
+		SimulatedClock clock = new SimulatedClock(SEPTEMBER_7);
+		try (JournaledAdhocTicketDAO sut = new JournaledAdhocTicketDAO(new AdhocTicketFactory(clock),
+				new JournalCompactor(directory, 4096, 64, 1), clock,
+				new TicketNumberAllocator(new FileTicketNumberCoordinator(numbers), 10))) {
+			for (int i = 0; i < 3; i++) {
+				IAdhocTicket ticket = sut.createTicket("Bathurst Chase");
+				assertEquals(i + 1, ticket.getTicketNo());
+				ticket.enter(SEPTEMBER_7 + 1000 * (3 - i));
+			}
+			assertEquals(3, sut.getTicketsEnteredBefore(Long.MAX_VALUE).size());
+			IAdhocTicket oldest = sut.getTicketsEnteredBefore(SEPTEMBER_7 + 1001).iterator().next();
+			assertEquals(3, oldest.getTicketNo());
+			oldest.pay(SEPTEMBER_7 + 60000, 500);
+			oldest.exit(SEPTEMBER_7 + 120000);
+			assertEquals(2, sut.getTicketsEnteredBefore(Long.MAX_VALUE).size());
+		}
+
+		try (JournaledAdhocTicketDAO sut = new JournaledAdhocTicketDAO(new AdhocTicketFactory(clock),
+				new JournalCompactor(directory, 4096, 64, 1), clock,
+				new TicketNumberAllocator(new FileTicketNumberCoordinator(numbers), 10))) {
+			//the replayed tickets are indexed, and numbering carries on from the next leased block
+			assertEquals(2, sut.getTicketsEnteredBetween(SEPTEMBER_7, SEPTEMBER_7 + 4000).size());
+			IAdhocTicket second = sut.getTicketsEnteredBetween(SEPTEMBER_7 + 2000, SEPTEMBER_7 + 2001).iterator().next();
+			assertEquals(2, second.getTicketNo());
+			assertEquals(11, sut.createTicket("Bathurst Chase").getTicketNo());
+		}
+	}
+
+	@Test
+	public void testEvictionIsJournaled() {
+		System.out.println("eviction is journaled");
+		Path file = folder.getRoot().toPath().resolve("adhoc.journal");
+		SimulatedClock clock = new SimulatedClock(SEPTEMBER_7);
+		String abandoned;
+		String parked;
+		try (JournaledAdhocTicketDAO sut = new JournaledAdhocTicketDAO(new AdhocTicketFactory(clock), file, clock)) {
+			AdhocTicketArchive archive = new AdhocTicketArchive();
+			AdhocTicketSweeper sweeper = new AdhocTicketSweeper(sut, archive, clock, DAY, 60000);
+			abandoned = sut.createTicket("Bathurst Chase").getBarcode();
+			IAdhocTicket ticket = sut.createTicket("Bathurst Chase");
+			ticket.enter(SEPTEMBER_7 + 1000);
+			parked = ticket.getBarcode();
+
+			clock.advance(DAY);
+			assertEquals(1, sweeper.sweep());
+			assertEquals(1, archive.getNumberOfArchivedTickets());
+		}
+
+		try (JournaledAdhocTicketDAO sut = new JournaledAdhocTicketDAO(new AdhocTicketFactory(clock), file, clock)) {
+			assertEquals(1, sut.getCurrentTickets().size());
+			assertNull(sut.findTicketByBarcode(abandoned));
+			assertNotNull(sut.findTicketByBarcode(parked));
+		}
+	}
+
+}
@@ -0,0 +1,146 @@
+package unit_test.bcccp.tickets.adhoc;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import org.junit.Test;
+
+import bcccp.tickets.adhoc.*;
+import bcccp.time.SimulatedClock;
+
+/**
+ * Tests of the adhoc ticket DAO that keeps its tickets in direct memory.
+ */
+public class OffHeapAdhocTicketDAOTest {
+
+	private static final long SEPTEMBER_7 = 1504760400000L; //Thursday 7 September 2017, 15:00 AEST
+
+	@Test
+	public void testCreateAndFind() {
+		System.out.println("createTicket and findTicketByBarcode");
+		SimulatedClock clock = new SimulatedClock(SEPTEMBER_7);
+		OffHeapAdhocTicketDAO sut = new OffHeapAdhocTicketDAO(clock);
+		AdhocTicketFactory factory = new AdhocTicketFactory(clock);
+
+		//enough tickets to fill more than one chunk, over days with 11 and 12 digit dates
+		List<String> barcodes = new ArrayList<>();
+		for (int i = 1; i <= 70000; i++) {
+			IAdhocTicket ticket = sut.createTicket(i % 2 == 0 ? "Bathurst Chase" : "Kelso");
+			assertEquals(i, ticket.getTicketNo());
+			if (i % 10000 == 0) {
+				assertEquals(factory.make("Bathurst Chase", i).getBarcode(), ticket.getBarcode());
+			}
+			barcodes.add(ticket.getBarcode());
+			clock.advance(20000);
+		}
+
+		for (int i = 0; i < barcodes.size(); i++) {
+			IAdhocTicket ticket = sut.findTicketByBarcode(barcodes.get(i));
+			assertEquals(i + 1, ticket.getTicketNo());
+			assertEquals(barcodes.get(i), ticket.getBarcode());
+			assertEquals((i + 1) % 2 == 0 ? "Bathurst Chase" : "Kelso", ticket.getCarparkId());
+		}
+		assertEquals(70000, sut.getNumberOfTickets());
+		assertEquals(70000, sut.getCurrentTickets().size());
+		assertEquals(2L * 49 * 65536, sut.getOffHeapBytes());
+
+		//a barcode with a leading zero decodes to a held key, but is not that ticket's barcode
+		String first = barcodes.get(0);
+		assertNull(sut.findTicketByBarcode("A0" + first.substring(1)));
+		assertNull(sut.findTicketByBarcode("not a barcode"));
+	}
+
+	@Test
+	public void testFindTicketsOfEveryDateLength() {
+		System.out.println("findTicketByBarcode of every date length");
+		//the 1st of March, the 12th and the 27th give 10, 11 and 12 digit dates
+		for (int day : new int[] {1, 12, 27}) {
+			SimulatedClock clock = new SimulatedClock(new GregorianCalendar(2017, Calendar.MARCH, day, 12, 0).getTimeInMillis());
+			OffHeapAdhocTicketDAO sut = new OffHeapAdhocTicketDAO(clock);
+			for (int i = 0; i < 20; i++) {
+				IAdhocTicket ticket = sut.createTicket("Bathurst Chase");
+				assertEquals(ticket, sut.findTicketByBarcode(ticket.getBarcode()));
+			}
+		}
+	}
+
+	@Test
+	public void testTicketLifecycle() {
+		System.out.println("ticket views");
+		SimulatedClock clock = new SimulatedClock(SEPTEMBER_7);
+		OffHeapAdhocTicketDAO sut = new OffHeapAdhocTicketDAO(clock);
+		IAdhocTicket ticket = sut.createTicket("Bathurst Chase");
+		assertFalse(ticket.isCurrent());
+
+		ticket.enter(SEPTEMBER_7 + 1000);
+		IAdhocTicket found = sut.findTicketByBarcode(ticket.getBarcode());
+		assertEquals(ticket, found);
+		assertTrue(found.isCurrent());
+		assertEquals(SEPTEMBER_7 + 1000, found.getEntryDateTime());
+
+		try {
+			found.pay(SEPTEMBER_7, 500);
+			fail("paid before entry");
+		} catch (RuntimeException e) {
+			assertFalse(ticket.isPaid());
+		}
+		found.pay(SEPTEMBER_7 + 2000, 500);
+		assertTrue(ticket.isPaid());
+		assertEquals(500, ticket.getCharge());
+
+		//paid more than 15 minutes ago, so current again
+		clock.advance(900000 + 5000);
+		assertEquals(SEPTEMBER_7 + 2000, ticket.getPaidDateTime());
+		assertTrue(ticket.isCurrent());
+
+		ticket.pay(SEPTEMBER_7 + 905000, 600);
+		ticket.exit(SEPTEMBER_7 + 906000);
+		assertTrue(found.hasExited());
+		assertEquals(SEPTEMBER_7 + 906000, found.getExitDateTime());
+		assertTrue(found.toString().contains("EXITED"));
+	}
+
+	@Test
+	public void testExitedTicketRowIsReused() {
+		OffHeapAdhocTicketDAO sut = new OffHeapAdhocTicketDAO(new SimulatedClock(SEPTEMBER_7));
+		IAdhocTicket ticket = sut.createTicket("Bathurst Chase");
+		String barcode = ticket.getBarcode();
+		ticket.enter(SEPTEMBER_7 + 1000);
+		ticket.pay(SEPTEMBER_7 + 2000, 400);
+		ticket.exit(SEPTEMBER_7 + 3000);
+
+		IAdhocTicket exited = sut.findTicketByBarcode(barcode);
+		assertTrue(exited.hasExited());
+		assertNull(sut.findTicketByBarcode(barcode));
+		assertTrue(sut.getCurrentTickets().isEmpty());
+
+		//still readable until the row is reused, but not changeable
+		assertEquals(SEPTEMBER_7 + 3000, exited.getExitDateTime());
+		try {
+			exited.enter(SEPTEMBER_7 + 4000);
+			fail("entered a removed ticket");
+		} catch (RuntimeException e) {
+		}
+
+		IAdhocTicket next = sut.createTicket("Bathurst Chase");
+		assertEquals(2, next.getTicketNo());
+		assertEquals(65536L * 49, sut.getOffHeapBytes());
+		assertNotEquals(next, exited);
+		try {
+			exited.getExitDateTime();
+			fail("read a ticket whose row was reused");
+		} catch (RuntimeException e) {
+		}
+		assertFalse(next.hasExited());
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testCreateTicketEmptyCarparkId() {
+		new OffHeapAdhocTicketDAO(new SimulatedClock(SEPTEMBER_7)).createTicket("");
+	}
+
+}
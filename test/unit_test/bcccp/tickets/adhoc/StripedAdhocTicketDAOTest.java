@@ -0,0 +1,116 @@
+package unit_test.bcccp.tickets.adhoc;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+import bcccp.tickets.adhoc.*;
+
+/**
+ * Tests of the striped adhoc ticket DAO, including a stress test with many lanes.
+ */
+public class StripedAdhocTicketDAOTest {
+
+	private static final int THREADS = 64;
+	private static final int TICKETS_PER_THREAD = 500;
+
+	@Test
+	public void testNoLostOrDuplicateTickets() throws InterruptedException {
+		System.out.println("striped createTicket and findTicketByBarcode from " + THREADS + " threads");
+		final StripedAdhocTicketDAO sut = new StripedAdhocTicketDAO(new AdhocTicketFactory(), 16);
+		final int total = THREADS * TICKETS_PER_THREAD;
+		final List<IAdhocTicket> created = Collections.synchronizedList(new ArrayList<IAdhocTicket>());
+		final AtomicInteger failures = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					try {
+						start.await();
+						for (int i = 0; i < TICKETS_PER_THREAD; i++) {
+							IAdhocTicket ticket = sut.createTicket("Bathurst Chase");
+							created.add(ticket);
+							if (sut.findTicketByBarcode(ticket.getBarcode()) != ticket) {
+								failures.incrementAndGet();
+							}
+						}
+					} catch (Exception e) {
+						failures.incrementAndGet();
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(0, failures.get());
+		assertEquals(total, created.size());
+		assertEquals(total, sut.getNumberOfTicketsIssued());
+		assertEquals(total, sut.getCurrentTickets().size());
+
+		//numbers come from separate stripe ranges, so they are unique but not contiguous
+		int highest = 0;
+		for (IAdhocTicket ticket : created) {
+			highest = Math.max(highest, ticket.getTicketNo());
+		}
+		AtomicIntegerArray issued = new AtomicIntegerArray(highest + 1);
+		for (IAdhocTicket ticket : created) {
+			assertEquals("ticket " + ticket.getTicketNo(), 1, issued.incrementAndGet(ticket.getTicketNo()));
+			assertSame(ticket, sut.findTicketByBarcode(ticket.getBarcode()));
+		}
+	}
+
+	@Test
+	public void testStripeNumberRange() {
+		System.out.println("stripe ticket numbers");
+		StripedAdhocTicketDAO sut = new StripedAdhocTicketDAO(new AdhocTicketFactory(), 6);
+		assertEquals(8, sut.getNumberOfStripes());
+
+		//one thread takes every number from the same stripe
+		int first = sut.createTicket("Bathurst Chase").getTicketNo();
+		for (int i = 1; i < 10; i++) {
+			assertEquals(first + 8 * i, sut.createTicket("Bathurst Chase").getTicketNo());
+		}
+		assertTrue(first >= 1 && first <= 8);
+		assertEquals(10, sut.getCurrentTickets().size());
+	}
+
+	@Test
+	public void testExitedTicketIsRemoved() {
+		StripedAdhocTicketDAO sut = new StripedAdhocTicketDAO(new AdhocTicketFactory());
+		IAdhocTicket ticket = sut.createTicket("Bathurst Chase");
+		ticket.enter(1000);
+		ticket.pay(2000, 400);
+		ticket.exit(3000);
+
+		assertSame(ticket, sut.findTicketByBarcode(ticket.getBarcode()));
+		assertNull(sut.findTicketByBarcode(ticket.getBarcode()));
+		assertTrue(sut.getCurrentTickets().isEmpty());
+	}
+
+	@Test
+	public void testFindNullBarcode() {
+		StripedAdhocTicketDAO sut = new StripedAdhocTicketDAO(new AdhocTicketFactory());
+		sut.createTicket("Bathurst Chase");
+		assertNull(sut.findTicketByBarcode(null));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testInvalidStripeCount() {
+		new StripedAdhocTicketDAO(new AdhocTicketFactory(), 0);
+	}
+
+}
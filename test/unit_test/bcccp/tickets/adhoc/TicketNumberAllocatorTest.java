@@ -0,0 +1,107 @@
+package unit_test.bcccp.tickets.adhoc;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import bcccp.tickets.adhoc.*;
+
+/**
+ * Tests of ticket numbers leased in blocks from a sequence file.
+ */
+public class TicketNumberAllocatorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testLeaseBlock() throws Exception {
+		System.out.println("leaseBlock");
+		Path file = folder.getRoot().toPath().resolve("numbers.seq");
+		FileTicketNumberCoordinator sut = new FileTicketNumberCoordinator(file);
+		assertEquals(1, sut.leaseBlock(100));
+		assertEquals(101, sut.leaseBlock(100));
+
+		//a coordinator opened later, as after a restart, carries on from the file
+		assertEquals(201, new FileTicketNumberCoordinator(file).leaseBlock(10));
+		assertEquals(211, sut.leaseBlock(1));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testCorruptFile() throws Exception {
+		Path file = folder.getRoot().toPath().resolve("numbers.seq");
+		FileTicketNumberCoordinator sut = new FileTicketNumberCoordinator(file);
+		sut.leaseBlock(100);
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[7] ^= 1;
+		Files.write(file, bytes);
+		sut.leaseBlock(100);
+	}
+
+	@Test
+	public void testNext() {
+		System.out.println("next");
+		Path file = folder.getRoot().toPath().resolve("numbers.seq");
+		TicketNumberAllocator sut = new TicketNumberAllocator(new FileTicketNumberCoordinator(file), 10);
+		for (int i = 1; i <= 25; i++) {
+			assertEquals(i, sut.next());
+		}
+		assertEquals(3, sut.getNumberOfLeases());
+
+		//a restart leaves the rest of the block unused
+		TicketNumberAllocator restarted = new TicketNumberAllocator(new FileTicketNumberCoordinator(file), 10);
+		assertEquals(31, restarted.next());
+	}
+
+	@Test
+	public void testLanesHaveTheirOwnBlocks() throws Exception {
+		System.out.println("lanes have their own blocks");
+		Path file = folder.getRoot().toPath().resolve("numbers.seq");
+		TicketNumberAllocator sut = new TicketNumberAllocator(new FileTicketNumberCoordinator(file), 100);
+		ConcurrentHashMap<Integer, Integer> numbers = new ConcurrentHashMap<>();
+		List<Thread> lanes = new ArrayList<>();
+		for (int lane = 0; lane < 4; lane++) {
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < 1000; i++) {
+					assertNull(numbers.put(sut.next(), i));
+				}
+			});
+			lanes.add(thread);
+			thread.start();
+		}
+		for (Thread thread : lanes) {
+			thread.join();
+		}
+		assertEquals(4000, numbers.size());
+		assertEquals(40, sut.getNumberOfLeases());
+	}
+
+	@Test
+	public void testDAONumbersAfterRestart() {
+		System.out.println("DAO numbers after restart");
+		Path file = folder.getRoot().toPath().resolve("numbers.seq");
+		AdhocTicketDAO sut = new AdhocTicketDAO(new AdhocTicketFactory(),
+				new TicketNumberAllocator(new FileTicketNumberCoordinator(file), 1000));
+		assertEquals(1, sut.createTicket("Bathurst Chase").getTicketNo());
+		assertEquals(2, sut.createTicket("Bathurst Chase").getTicketNo());
+
+		AdhocTicketDAO restarted = new AdhocTicketDAO(new AdhocTicketFactory(),
+				new TicketNumberAllocator(new FileTicketNumberCoordinator(file), 1000));
+		assertEquals(1001, restarted.createTicket("Bathurst Chase").getTicketNo());
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testNumbersExhausted() {
+		TicketNumberAllocator sut = new TicketNumberAllocator(size -> Integer.MAX_VALUE, 10);
+		sut.next();
+	}
+
+}
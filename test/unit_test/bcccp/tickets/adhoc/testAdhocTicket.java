@@ -10,6 +10,7 @@ import bcccp.carpark.ICarpark;
 import bcccp.tickets.adhoc.*;
 
 import bcccp.tickets.season.ISeasonTicketDAO;
+import bcccp.time.SimulatedClock;
 
 
 
@@ -139,6 +140,24 @@ public class testAdhocTicket {
 		assertEquals(dateResult, expDateResult);
 	}
 	
+	@Test
+	public void testPaidTicketExpiresBySimulatedClock() {
+		SimulatedClock clock = new SimulatedClock(1504760400000L);
+		sut = new AdhocTicket("test carpark", 1, "barcode", clock);
+		sut.enter(clock.currentTimeMillis());
+		clock.advance(3600000);
+		sut.pay(clock.currentTimeMillis(), 400);
+		
+		clock.advance(900000);
+		sut.getPaidDateTime();
+		assertTrue(sut.isPaid());
+		
+		clock.advance(1);
+		sut.getPaidDateTime();
+		assertFalse(sut.isPaid());
+		assertTrue(sut.isCurrent());
+	}
+	
 	@Test
 	public void testisCurrent() {
 		//need to use current real objects since STATE.current is set when ticket initialized by DAO. 
@@ -0,0 +1,127 @@
+package unit_test.bcccp.tickets.season;
+
+import bcccp.journal.JournalCompactor;
+import bcccp.journal.MappedSegmentJournal;
+import bcccp.tickets.season.ISeasonTicket;
+import bcccp.tickets.season.JournaledSeasonTicketDAO;
+import bcccp.tickets.season.SeasonTicket;
+import bcccp.tickets.season.UsageRecordFactory;
+import bcccp.time.SimulatedClock;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the season ticket DAO that journals its changes so they survive a restart.
+ */
+public class JournaledSeasonTicketDAOTest {
+
+    private static final long START = 1504760400000L; //Thursday 7 September 2017, 15:00 AEST
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that tickets and their usage are rebuilt after a restart.
+     */
+    @Test
+    public void testRestart() {
+        System.out.println("restart");
+        Path directory = folder.getRoot().toPath().resolve("season");
+        SimulatedClock clock = new SimulatedClock(START);
+        try (JournaledSeasonTicketDAO sut = open(directory, clock)) {
+            sut.registerTicket(new SeasonTicket("S1111", "Bathurst Chase", 1L, 99999999999999999L));
+            sut.registerTicket(new SeasonTicket("S2222", "Bathurst Chase", 1L, 99999999999999999L));
+            sut.registerTicket(new SeasonTicket("S3333", "Bathurst Chase", 1L, 99999999999999999L));
+            sut.deregisterTicket(sut.findTicketById("S3333"));
+            sut.recordTicketEntry("S1111");
+            clock.advance(3600000);
+            sut.recordTicketExit("S1111");
+            sut.recordTicketEntry("S2222");
+        }
+
+        try (JournaledSeasonTicketDAO sut = open(directory, clock)) {
+            assertEquals(2, sut.getNumberOfTickets());
+            assertNull(sut.findTicketById("S3333"));
+
+            ISeasonTicket first = sut.findTicketById("S1111");
+            assertFalse(first.inUse());
+            assertEquals(1, first.getUsageRecords().size());
+            assertEquals(START, first.getUsageRecords().get(0).getStartTime());
+            assertEquals(START + 3600000, first.getUsageRecords().get(0).getEndTime());
+
+            ISeasonTicket second = sut.findTicketById("S2222");
+            assertTrue(second.inUse());
+            assertEquals(START + 3600000, second.getCurrentUsageRecord().getStartTime());
+            clock.advance(60000);
+            sut.recordTicketExit("S2222");
+        }
+
+        try (JournaledSeasonTicketDAO sut = open(directory, clock)) {
+            assertFalse(sut.findTicketById("S2222").inUse());
+            assertEquals(1, sut.findTicketById("S2222").getUsageRecords().size());
+        }
+    }
+
+    /**
+     * Test that an exit with no entry is refused and not journaled.
+     */
+    @Test(expected = RuntimeException.class)
+    public void testRecordTicketExitNotInUse() {
+        Path directory = folder.getRoot().toPath().resolve("season");
+        try (JournaledSeasonTicketDAO sut = open(directory, new SimulatedClock(START))) {
+            sut.registerTicket(new SeasonTicket("S1111", "Bathurst Chase", 1L, 99999999999999999L));
+            sut.recordTicketExit("S1111");
+        }
+    }
+
+    private static JournaledSeasonTicketDAO open(Path directory, SimulatedClock clock) {
+        return new JournaledSeasonTicketDAO(new UsageRecordFactory(),
+                reader -> new MappedSegmentJournal(directory, reader, 1 << 16, 64, 1), clock);
+    }
+
+    /**
+     * Test of a restart from a snapshot taken while tickets were in use.
+     */
+    @Test
+    public void testRestartFromSnapshot() {
+        System.out.println("restart from snapshot");
+        Path directory = folder.getRoot().toPath().resolve("season");
+        SimulatedClock clock = new SimulatedClock(START);
+        JournalCompactor compactor = new JournalCompactor(directory, 4096, 64, 1);
+        try (JournaledSeasonTicketDAO sut = new JournaledSeasonTicketDAO(new UsageRecordFactory(), compactor, clock)) {
+            sut.registerTicket(new SeasonTicket("S1111", "Bathurst Chase", 1L, 99999999999999999L));
+            sut.registerTicket(new SeasonTicket("S2222", "Bathurst Chase", 1L, 99999999999999999L));
+            sut.recordTicketEntry("S1111");
+            sut.recordTicketEntry("S2222");
+            clock.advance(60000);
+
+            //an exit and a new entry made while the snapshot is taken are in both
+            compactor.compact(writer -> {
+                sut.recordTicketExit("S1111");
+                clock.advance(60000);
+                sut.recordTicketEntry("S1111");
+                sut.registerTicket(new SeasonTicket("S3333", "Bathurst Chase", 1L, 99999999999999999L));
+                sut.writeSnapshot(writer);
+            });
+            assertEquals(4, compactor.getLastSnapshotRecords());
+
+            clock.advance(60000);
+            sut.recordTicketExit("S2222");
+        }
+
+        try (JournaledSeasonTicketDAO sut = new JournaledSeasonTicketDAO(new UsageRecordFactory(),
+                new JournalCompactor(directory, 4096, 64, 1), clock)) {
+            assertEquals(3, sut.getNumberOfTickets());
+            ISeasonTicket first = sut.findTicketById("S1111");
+            assertEquals(1, first.getUsageRecords().size());
+            assertTrue(first.inUse());
+            assertEquals(START + 120000, first.getCurrentUsageRecord().getStartTime());
+            ISeasonTicket second = sut.findTicketById("S2222");
+            assertFalse(second.inUse());
+            assertEquals(START + 180000, second.getUsageRecords().get(0).getEndTime());
+        }
+    }
+}
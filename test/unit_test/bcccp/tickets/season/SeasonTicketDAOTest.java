@@ -6,6 +6,7 @@
 package unit_test.bcccp.tickets.season;
 
 import bcccp.tickets.season.*;
+import bcccp.time.SimulatedClock;
 import java.util.HashMap;
 import java.util.concurrent.TimeUnit;
 import org.junit.Test;
@@ -119,7 +120,8 @@ public class SeasonTicketDAOTest {
         ISeasonTicket spySeason = spy(dummySeasonTicket);
         IUsageRecordFactory dummyUsageRecordFactory = new UsageRecordFactory();
         IUsageRecordFactory spyUsageRecordFactory = spy(dummyUsageRecordFactory);
-        SeasonTicketDAO instance = new SeasonTicketDAO(spyUsageRecordFactory);
+        SimulatedClock clock = new SimulatedClock(1504760400000L);
+        SeasonTicketDAO instance = new SeasonTicketDAO(spyUsageRecordFactory, clock);
         
         instance.registerTicket(spySeason);
 
@@ -127,7 +129,7 @@ public class SeasonTicketDAOTest {
         
         instance.recordTicketEntry(ticketId);
         assertTrue(ticketId != null);
-        verify(spyUsageRecordFactory, times(1)).make(ticketId, System.currentTimeMillis());
+        verify(spyUsageRecordFactory, times(1)).make(ticketId, clock.currentTimeMillis());
         // TODO review the generated test code and remove the default call to fail.
         //fail("The test case is a prototype.");
     }
@@ -0,0 +1,57 @@
+package unit_test.bcccp.time;
+
+import bcccp.time.SimulatedClock;
+import bcccp.time.SystemClock;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the simulated and wall clocks.
+ */
+public class SimulatedClockTest {
+
+    private static final long START = 1504760400000L; //Thursday 7 September 2017, 15:00 AEST
+
+    /**
+     * Test of a stopped clock, which only moves when advanced.
+     */
+    @Test
+    public void testStoppedClock() throws InterruptedException {
+        System.out.println("advance");
+        SimulatedClock sut = new SimulatedClock(START);
+
+        Thread.sleep(5);
+        assertEquals(START, sut.currentTimeMillis());
+        sut.advance(30 * 86400000L);
+        assertEquals(START + 30 * 86400000L, sut.currentTimeMillis());
+    }
+
+    /**
+     * Test of a clock running at 1000 times real time.
+     */
+    @Test
+    public void testRunningClock() throws InterruptedException {
+        System.out.println("currentTimeMillis");
+        SimulatedClock sut = new SimulatedClock(START, 1000);
+
+        Thread.sleep(20);
+        long elapsed = sut.currentTimeMillis() - START;
+        assertTrue("elapsed " + elapsed, elapsed >= 20000);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testCannotMoveBackwards() {
+        new SimulatedClock(START).advance(-1);
+    }
+
+    /**
+     * Test of the wall clock.
+     */
+    @Test
+    public void testSystemClock() {
+        long before = System.currentTimeMillis();
+        long result = SystemClock.INSTANCE.currentTimeMillis();
+        assertTrue(result >= before && result <= System.currentTimeMillis());
+    }
+
+}
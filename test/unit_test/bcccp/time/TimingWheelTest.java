@@ -0,0 +1,82 @@
+package unit_test.bcccp.time;
+
+import bcccp.time.TimingWheel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the hierarchical timing wheel.
+ */
+public class TimingWheelTest {
+
+    private static final long START = 1504760400000L; //Thursday 7 September 2017, 15:00 AEST
+
+    /**
+     * Test that items come out on the first advance at or after their deadline.
+     */
+    @Test
+    public void testAdvance() {
+        System.out.println("advance");
+        TimingWheel<Long> sut = new TimingWheel<>(1000, START);
+        Random random = new Random(17L);
+        List<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            //from seconds to months ahead, so every level is used
+            long deadline = START + (long) Math.pow(10, 3 + 7 * random.nextDouble());
+            deadlines.add(deadline);
+            sut.schedule(deadline, deadline);
+        }
+
+        long now = START;
+        int returned = 0;
+        while (sut.size() > 0) {
+            now += 1 + random.nextInt(20000000);
+            List<Long> expired = new ArrayList<>();
+            returned += sut.advance(now, expired);
+            for (long deadline : expired) {
+                assertTrue(deadline <= now);
+                assertTrue(deadlines.remove(deadline));
+            }
+            for (long deadline : deadlines) {
+                assertTrue(deadline > now - 1000);
+            }
+        }
+        assertEquals(5000, returned);
+        assertTrue(deadlines.isEmpty());
+    }
+
+    /**
+     * Test of deadlines to the tick, including ones due at a level boundary.
+     */
+    @Test
+    public void testExactTicks() {
+        TimingWheel<Long> sut = new TimingWheel<>(1, 0);
+        long[] deadlines = {1, 63, 64, 65, 4095, 4096, 4097, 262144, 16777215, 16777216, 40000000};
+        for (long deadline : deadlines) {
+            sut.schedule(deadline, deadline);
+        }
+        for (long deadline : deadlines) {
+            List<Long> expired = new ArrayList<>();
+            assertEquals(0, sut.advance(deadline - 1, expired));
+            assertEquals(1, sut.advance(deadline, expired));
+            assertEquals(Long.valueOf(deadline), expired.get(0));
+        }
+        assertEquals(0, sut.size());
+    }
+
+    /**
+     * Test that a deadline already passed comes out on the next advance.
+     */
+    @Test
+    public void testPastDeadline() {
+        TimingWheel<String> sut = new TimingWheel<>(1000, START);
+        sut.schedule("late", START - 60000);
+        List<String> expired = new ArrayList<>();
+        assertEquals(0, sut.advance(START, expired));
+        assertEquals(1, sut.advance(START + 1000, expired));
+        assertEquals("late", expired.get(0));
+    }
+}